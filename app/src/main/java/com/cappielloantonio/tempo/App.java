@@ -3,6 +3,7 @@ package com.cappielloantonio.tempo;
 import android.app.Application;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.StrictMode;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.OptIn;
@@ -11,6 +12,7 @@ import androidx.preference.PreferenceManager;
 
 import com.cappielloantonio.tempo.github.Github;
 import com.cappielloantonio.tempo.helper.ThemeHelper;
+import com.cappielloantonio.tempo.repository.SearchIndex;
 import com.cappielloantonio.tempo.subsonic.Subsonic;
 import com.cappielloantonio.tempo.subsonic.SubsonicPreferences;
 import com.cappielloantonio.tempo.ui.activity.CrashActivity;
@@ -56,6 +58,18 @@ public class App extends Application {
         preferences = PreferenceManager.getDefaultSharedPreferences(context);
 
         ClientCertManager.setupSslSocketFactory(context);
+
+        // Starts following the tables the local search covers
+        SearchIndex.getInstance();
+
+        if (BuildConfig.DEBUG) {
+            // Report any database or file access left on the main thread
+            StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                    .detectDiskReads()
+                    .detectDiskWrites()
+                    .penaltyLog()
+                    .build());
+        }
     }
 
     public static App getInstance() {
@@ -14,30 +14,42 @@ import com.cappielloantonio.tempo.database.dao.ChronologyDao;
 import com.cappielloantonio.tempo.database.dao.DownloadDao;
 import com.cappielloantonio.tempo.database.dao.FavoriteDao;
 import com.cappielloantonio.tempo.database.dao.InternetRadioStationDao;
+import com.cappielloantonio.tempo.database.dao.LibraryDao;
 import com.cappielloantonio.tempo.database.dao.LyricsDao;
 import com.cappielloantonio.tempo.database.dao.PinnedPlaylistDao;
 import com.cappielloantonio.tempo.database.dao.PlaylistDao;
 import com.cappielloantonio.tempo.database.dao.PlaylistSongDao;
 import com.cappielloantonio.tempo.database.dao.QueueDao;
 import com.cappielloantonio.tempo.database.dao.RecentSearchDao;
+import com.cappielloantonio.tempo.database.dao.ReplayGainCacheDao;
+import com.cappielloantonio.tempo.database.dao.SearchIndexDao;
 import com.cappielloantonio.tempo.database.dao.ServerDao;
 import com.cappielloantonio.tempo.database.dao.SessionMediaItemDao;
 import com.cappielloantonio.tempo.model.Chronology;
 import com.cappielloantonio.tempo.model.Download;
 import com.cappielloantonio.tempo.model.Favorite;
 import com.cappielloantonio.tempo.model.InternetRadioStationCache;
+import com.cappielloantonio.tempo.model.LibraryAlbum;
+import com.cappielloantonio.tempo.model.LibraryArtist;
+import com.cappielloantonio.tempo.model.LibraryGenre;
+import com.cappielloantonio.tempo.model.LibrarySong;
+import com.cappielloantonio.tempo.model.LibrarySyncState;
 import com.cappielloantonio.tempo.model.LyricsCache;
 import com.cappielloantonio.tempo.model.PinnedPlaylist;
 import com.cappielloantonio.tempo.model.PlaylistSong;
+import com.cappielloantonio.tempo.model.PlaylistSongSync;
 import com.cappielloantonio.tempo.model.Queue;
 import com.cappielloantonio.tempo.model.RecentSearch;
+import com.cappielloantonio.tempo.model.ReplayGainCache;
+import com.cappielloantonio.tempo.model.SearchItem;
+import com.cappielloantonio.tempo.model.SearchItemFts;
 import com.cappielloantonio.tempo.model.Server;
 import com.cappielloantonio.tempo.model.SessionMediaItem;
 import com.cappielloantonio.tempo.subsonic.models.Playlist;
 
 @UnstableApi
 @Database(
-        version = 20,
+        version = 24,
         entities = {
             Queue.class,
             Server.class,
@@ -51,6 +63,15 @@ import com.cappielloantonio.tempo.subsonic.models.Playlist;
             LyricsCache.class,
             InternetRadioStationCache.class,
             PlaylistSong.class,
+            ReplayGainCache.class,
+            PlaylistSongSync.class,
+            LibraryAlbum.class,
+            LibraryArtist.class,
+            LibraryGenre.class,
+            LibrarySong.class,
+            LibrarySyncState.class,
+            SearchItem.class,
+            SearchItemFts.class,
         },
         autoMigrations = {
                 @AutoMigration(from = 10, to = 11),
@@ -63,6 +84,10 @@ import com.cappielloantonio.tempo.subsonic.models.Playlist;
                 @AutoMigration(from = 17, to = 18),
                 @AutoMigration(from = 18, to = 19),
                 @AutoMigration(from = 19, to = 20),
+                @AutoMigration(from = 20, to = 21),
+                @AutoMigration(from = 21, to = 22),
+                @AutoMigration(from = 22, to = 23),
+                @AutoMigration(from = 23, to = 24),
         }
 )
 @TypeConverters({DateConverters.class, StringListConverter.class})
@@ -74,6 +99,7 @@ public abstract class AppDatabase extends RoomDatabase {
         if (instance == null) {
             instance = Room.databaseBuilder(App.getContext(), AppDatabase.class, DB_NAME)
                     .fallbackToDestructiveMigration()
+                    .setQueryExecutor(DatabaseExecutor.getExecutor())
                     .build();
         }
 
@@ -103,4 +129,10 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract LyricsDao lyricsDao();
 
     public abstract InternetRadioStationDao internetRadioStationDao();
+
+    public abstract ReplayGainCacheDao replayGainCacheDao();
+
+    public abstract LibraryDao libraryDao();
+
+    public abstract SearchIndexDao searchIndexDao();
 }
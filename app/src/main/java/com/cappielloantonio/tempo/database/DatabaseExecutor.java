@@ -0,0 +1,45 @@
+package com.cappielloantonio.tempo.database;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool shared by Room and the repositories. Reads are submitted as futures so callers
+ * never have to spawn a thread and join it to get a result off the main thread.
+ */
+public class DatabaseExecutor {
+    private static final int POOL_SIZE = 4;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(POOL_SIZE, runnable -> {
+        Thread thread = new Thread(runnable, "tempo-db-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Serial view of the pool, for repositories whose writes and reads must run in order.
+     */
+    public static Executor newSequentialExecutor() {
+        return MoreExecutors.newSequentialExecutor(executor);
+    }
+
+    public static <T> ListenableFuture<T> submit(Callable<T> callable) {
+        return Futures.submit(callable, executor);
+    }
+
+    public static <T> ListenableFuture<T> submit(Callable<T> callable, Executor executor) {
+        return Futures.submit(callable, executor);
+    }
+}
@@ -0,0 +1,161 @@
+package com.cappielloantonio.tempo.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import com.cappielloantonio.tempo.model.LibraryAlbum;
+import com.cappielloantonio.tempo.model.LibraryArtist;
+import com.cappielloantonio.tempo.model.LibraryGenre;
+import com.cappielloantonio.tempo.model.LibrarySong;
+import com.cappielloantonio.tempo.model.LibrarySyncState;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+@Dao
+public interface LibraryDao {
+    @Query("SELECT * FROM library_album ORDER BY name COLLATE NOCASE")
+    List<LibraryAlbum> getAlbums();
+
+    @Query("SELECT id FROM library_album")
+    List<String> getAlbumIds();
+
+    @Query("SELECT id FROM library_album WHERE id IN (:ids)")
+    List<String> getKnownAlbumIds(List<String> ids);
+
+    @Query("SELECT * FROM library_album WHERE id IN (:ids)")
+    List<LibraryAlbum> getAlbums(List<String> ids);
+
+    @Query("SELECT * FROM library_album WHERE starred IS NOT NULL")
+    List<LibraryAlbum> getStarredAlbums();
+
+    @Query("UPDATE library_album SET play_count = :playCount, played = :played WHERE id = :id")
+    void updateAlbumPlays(String id, long playCount, Date played);
+
+    @Query("UPDATE library_album SET starred = :starred WHERE id = :id")
+    int updateAlbumStarred(String id, Date starred);
+
+    @Query("SELECT COUNT(*) FROM library_album")
+    int countAlbums();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAlbums(List<LibraryAlbum> albums);
+
+    @Query("DELETE FROM library_album WHERE id IN (:ids)")
+    void deleteAlbums(List<String> ids);
+
+    @Query("DELETE FROM library_album WHERE artist_id = :artistId")
+    void deleteAlbumsByArtist(String artistId);
+
+    @Query("DELETE FROM library_album WHERE artist_id IS NOT NULL AND artist_id NOT IN (SELECT id FROM library_artist)")
+    void deleteOrphanAlbums();
+
+    @Query("SELECT * FROM library_artist ORDER BY name COLLATE NOCASE")
+    List<LibraryArtist> getArtists();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertArtists(List<LibraryArtist> artists);
+
+    @Query("DELETE FROM library_artist")
+    void deleteArtists();
+
+    @Query("SELECT * FROM library_genre ORDER BY genre COLLATE NOCASE")
+    List<LibraryGenre> getGenres();
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertGenres(List<LibraryGenre> genres);
+
+    @Query("DELETE FROM library_genre")
+    void deleteGenres();
+
+    @Query("SELECT * FROM library_song WHERE album_id = :albumId ORDER BY disc_number, track")
+    List<LibrarySong> getAlbumSongs(String albumId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertSongs(List<LibrarySong> songs);
+
+    @Query("DELETE FROM library_song WHERE album_id = :albumId")
+    void deleteAlbumSongs(String albumId);
+
+    @Query("DELETE FROM library_song WHERE album_id IS NOT NULL AND album_id NOT IN (SELECT id FROM library_album)")
+    void deleteOrphanSongs();
+
+    @Query("DELETE FROM library_album")
+    void deleteAllAlbums();
+
+    @Query("DELETE FROM library_song")
+    void deleteAllSongs();
+
+    @Query("SELECT * FROM library_sync_state WHERE server_id = :serverId")
+    LibrarySyncState getSyncState(String serverId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertSyncState(LibrarySyncState state);
+
+    @Query("DELETE FROM library_sync_state")
+    void deleteSyncStates();
+
+    @Transaction
+    default void replaceArtists(List<LibraryArtist> artists) {
+        deleteArtists();
+        insertArtists(artists);
+    }
+
+    @Transaction
+    default void replaceGenres(List<LibraryGenre> genres) {
+        deleteGenres();
+        insertGenres(genres);
+    }
+
+    @Transaction
+    default void replaceArtistAlbums(String artistId, List<LibraryAlbum> albums) {
+        deleteAlbumsByArtist(artistId);
+        insertAlbums(albums);
+    }
+
+    @Transaction
+    default void replaceAlbumSongs(String albumId, List<LibrarySong> songs) {
+        deleteAlbumSongs(albumId);
+        insertSongs(songs);
+    }
+
+    @Transaction
+    default void updatePlays(List<LibraryAlbum> albums) {
+        for (LibraryAlbum album : albums) updateAlbumPlays(album.getId(), album.getPlayCount(), album.getPlayed());
+    }
+
+    /**
+     * Sets the star date of each album, null to unstar it, and returns how many rows changed.
+     */
+    @Transaction
+    default int updateStarred(Map<String, Date> starred) {
+        int updated = 0;
+        for (Map.Entry<String, Date> entry : starred.entrySet()) updated += updateAlbumStarred(entry.getKey(), entry.getValue());
+        return updated;
+    }
+
+    /**
+     * Drops albums whose artist is gone, and the songs of any album that is gone.
+     */
+    @Transaction
+    default void deleteOrphans() {
+        deleteOrphanAlbums();
+        deleteOrphanSongs();
+    }
+
+    /**
+     * Empties the mirror, e.g. before syncing it against another server.
+     */
+    @Transaction
+    default void clear() {
+        deleteAllSongs();
+        deleteAllAlbums();
+        deleteArtists();
+        deleteGenres();
+        deleteSyncStates();
+    }
+}
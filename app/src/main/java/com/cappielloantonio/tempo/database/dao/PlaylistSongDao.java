@@ -5,25 +5,50 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Transaction;
 
 import com.cappielloantonio.tempo.model.PlaylistSong;
+import com.cappielloantonio.tempo.model.PlaylistSongSync;
 
 import java.util.List;
 
 @Dao
 public interface PlaylistSongDao {
-    @Query("SELECT * FROM playlist_song WHERE playlist_id = :playlistId")
+    @Query("SELECT * FROM playlist_song WHERE playlist_id = :playlistId ORDER BY position")
     LiveData<List<PlaylistSong>> getSongsForPlaylist(String playlistId);
 
-    @Query("SELECT * FROM playlist_song WHERE playlist_id = :playlistId")
+    @Query("SELECT * FROM playlist_song WHERE playlist_id = :playlistId ORDER BY position")
     List<PlaylistSong> getSongsForPlaylistSync(String playlistId);
 
+    @Query("SELECT COUNT(*) FROM playlist_song WHERE playlist_id = :playlistId")
+    int countForPlaylist(String playlistId);
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(List<PlaylistSong> playlistSongs);
 
     @Query("DELETE FROM playlist_song WHERE playlist_id = :playlistId")
     void deleteForPlaylist(String playlistId);
 
+    @Query("DELETE FROM playlist_song WHERE playlist_id = :playlistId AND id IN (:songIds)")
+    void deleteSongs(String playlistId, List<String> songIds);
+
     @Query("DELETE FROM playlist_song")
     void deleteAll();
+
+    @Query("SELECT * FROM playlist_song_sync WHERE playlist_id = :playlistId")
+    PlaylistSongSync getSync(String playlistId);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertSync(PlaylistSongSync sync);
+
+    /**
+     * Applies a diff against the cached songs: drops the removed ones and rewrites only
+     * the rows that are new or changed (metadata or position).
+     */
+    @Transaction
+    default void applyChanges(String playlistId, List<String> removedIds, List<PlaylistSong> upserts, PlaylistSongSync sync) {
+        if (!removedIds.isEmpty()) deleteSongs(playlistId, removedIds);
+        if (!upserts.isEmpty()) insertAll(upserts);
+        insertSync(sync);
+    }
 }
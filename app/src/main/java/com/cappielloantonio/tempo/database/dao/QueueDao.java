@@ -8,6 +8,7 @@ import androidx.room.Query;
 import androidx.room.Transaction;
 
 import com.cappielloantonio.tempo.model.Queue;
+import com.cappielloantonio.tempo.util.QueueOrderUtil;
 
 import java.util.List;
 
@@ -19,21 +20,42 @@ public interface QueueDao {
     @Query("SELECT * FROM queue ORDER BY track_order ASC")
     List<Queue> getAllSimple();
 
+    @Query("SELECT * FROM queue ORDER BY track_order ASC LIMIT :count OFFSET :position")
+    List<Queue> getRange(int position, int count);
+
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insert(Queue songQueueObject);
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(List<Queue> songQueueObjects);
 
-    @Query("DELETE FROM queue WHERE queue.track_order=:position")
+    @Query("DELETE FROM queue WHERE track_order = (SELECT track_order FROM queue ORDER BY track_order ASC LIMIT 1 OFFSET :position)")
     void delete(int position);
 
+    @Query("DELETE FROM queue WHERE track_order IN (SELECT track_order FROM queue ORDER BY track_order ASC LIMIT :count OFFSET :position)")
+    void deleteRange(int position, int count);
+
     @Query("DELETE FROM queue")
     void deleteAll();
 
     @Query("SELECT COUNT(*) FROM queue")
     int count();
 
+    @Query("SELECT id FROM queue")
+    List<String> getIds();
+
+    @Query("SELECT id FROM queue ORDER BY track_order ASC LIMIT :count OFFSET :position")
+    List<String> getIdsInRange(int position, int count);
+
+    @Query("SELECT track_order FROM queue ORDER BY track_order ASC LIMIT 1 OFFSET :position")
+    Long getOrderAt(int position);
+
+    @Query("SELECT track_order FROM queue ORDER BY track_order ASC LIMIT :count OFFSET :position")
+    List<Long> getOrdersInRange(int position, int count);
+
+    @Query("UPDATE queue SET track_order=:newOrder WHERE track_order=:oldOrder")
+    void setOrder(long oldOrder, long newOrder);
+
     @Query("UPDATE queue SET last_play=:timestamp WHERE id=:id")
     void setLastPlay(String id, long timestamp);
 
@@ -43,9 +65,84 @@ public interface QueueDao {
     @Query("SELECT * FROM queue ORDER BY last_play DESC LIMIT 1")
     Queue getLastPlayed();
 
+    @Query("SELECT COUNT(*) FROM queue WHERE track_order < (SELECT track_order FROM queue ORDER BY last_play DESC LIMIT 1)")
+    int getLastPlayedPosition();
+
     @Transaction
     default void replaceQueue(List<Queue> newQueue) {
         deleteAll();
         insertAll(newQueue);
     }
-}
\ No newline at end of file
+
+    /**
+     * Inserts the items at the given position, picking keys between the two neighbouring rows.
+     * Only falls back to renumbering the whole queue when those neighbours have no gap left.
+     */
+    @Transaction
+    default void insertAt(int position, List<Queue> items) {
+        if (items.isEmpty()) return;
+
+        int index = Math.max(0, Math.min(position, count()));
+        Long lower = index > 0 ? getOrderAt(index - 1) : null;
+        Long upper = getOrderAt(index);
+        long[] keys = QueueOrderUtil.between(lower, upper, items.size());
+
+        if (keys == null) {
+            List<Queue> queue = getAllSimple();
+            queue.addAll(index, items);
+            QueueOrderUtil.renumber(queue);
+            replaceQueue(queue);
+            return;
+        }
+
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setTrackOrder(keys[i]);
+        }
+
+        insertAll(items);
+    }
+
+    @Transaction
+    default void move(int from, int to) {
+        if (from == to) return;
+
+        Long moving = getOrderAt(from);
+        if (moving == null) return;
+
+        // Neighbours of the target slot once the moved row has left its old one
+        Long lower = to > from ? getOrderAt(to) : (to > 0 ? getOrderAt(to - 1) : null);
+        Long upper = to > from ? getOrderAt(to + 1) : getOrderAt(to);
+        if (lower == null && upper == null) return;
+
+        long[] keys = QueueOrderUtil.between(lower, upper, 1);
+
+        if (keys == null) {
+            List<Queue> queue = getAllSimple();
+            queue.add(to, queue.remove(from));
+            QueueOrderUtil.renumber(queue);
+            replaceQueue(queue);
+            return;
+        }
+
+        setOrder(moving, keys[0]);
+    }
+
+    /**
+     * Replaces the rows starting at the given position with the items, reusing their keys.
+     * Returns false, without writing anything, when there are fewer rows than items there.
+     */
+    @Transaction
+    default boolean replaceRange(int position, List<Queue> items) {
+        List<Long> orders = getOrdersInRange(position, items.size());
+        if (orders.size() != items.size()) return false;
+
+        deleteRange(position, items.size());
+
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setTrackOrder(orders.get(i));
+        }
+
+        insertAll(items);
+        return true;
+    }
+}
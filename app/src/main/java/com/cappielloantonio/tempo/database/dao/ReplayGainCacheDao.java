@@ -0,0 +1,22 @@
+package com.cappielloantonio.tempo.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.cappielloantonio.tempo.model.ReplayGainCache;
+
+import java.util.List;
+
+@Dao
+public interface ReplayGainCacheDao {
+    @Query("SELECT * FROM replay_gain_cache WHERE server_id = :serverId AND song_id IN (:songIds)")
+    List<ReplayGainCache> getAll(String serverId, List<String> songIds);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(ReplayGainCache replayGainCache);
+
+    @Query("DELETE FROM replay_gain_cache WHERE server_id = :serverId")
+    void deleteAll(String serverId);
+}
@@ -0,0 +1,172 @@
+package com.cappielloantonio.tempo.database.dao;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import com.cappielloantonio.tempo.model.SearchItem;
+
+import java.util.List;
+
+/**
+ * Keeps the index in step with one source table at a time: rows whose indexed columns no
+ * longer match the source are deleted, the copy statement adds what isn't indexed (again),
+ * and rows no source has any more are dropped. Only what changed is written.
+ *
+ * Rows are deleted and inserted rather than replaced with {@code INSERT OR REPLACE}, whose
+ * implicit delete doesn't fire the triggers that keep the full-text table in step.
+ */
+@Dao
+public interface SearchIndexDao {
+    @Query("SELECT search_item.* FROM search_item JOIN search_item_fts ON search_item.rowid = search_item_fts.rowid "
+            + "WHERE search_item_fts MATCH :query AND search_item.type = :type LIMIT :limit")
+    List<SearchItem> search(String query, String type, int limit);
+
+    @Query("INSERT OR IGNORE INTO search_item (`key`, type, item_id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year) "
+            + "SELECT 'song:' || id, 'song', id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year FROM library_song")
+    void indexLibrarySongs();
+
+    @Query("INSERT OR IGNORE INTO search_item (`key`, type, item_id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year) "
+            + "SELECT 'album:' || id, 'album', id, name, artist, NULL, genre, id, artist_id, cover_art_id, duration, year FROM library_album")
+    void indexLibraryAlbums();
+
+    @Query("INSERT OR IGNORE INTO search_item (`key`, type, item_id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year) "
+            + "SELECT 'artist:' || id, 'artist', id, name, name, NULL, NULL, NULL, id, cover_art_id, NULL, NULL FROM library_artist")
+    void indexLibraryArtists();
+
+    @Query("INSERT OR IGNORE INTO search_item (`key`, type, item_id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year) "
+            + "SELECT 'song:' || id, 'song', id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year FROM download")
+    void indexDownloads();
+
+    @Query("INSERT OR IGNORE INTO search_item (`key`, type, item_id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year) "
+            + "SELECT 'song:' || id, 'song', id, title, artist, album, NULL, album_id, artist_id, cover_art_id, duration, NULL FROM playlist_song")
+    void indexPlaylistSongs();
+
+    @Query("INSERT OR IGNORE INTO search_item (`key`, type, item_id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year) "
+            + "SELECT 'song:' || id, 'song', id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year FROM queue")
+    void indexQueue();
+
+    @Query("INSERT OR IGNORE INTO search_item (`key`, type, item_id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year) "
+            + "SELECT 'song:' || id, 'song', id, title, artist, album, genre, album_id, artist_id, cover_art_id, duration, year FROM chronology WHERE server = :server")
+    void indexChronology(String server);
+
+    @Query("DELETE FROM search_item WHERE `key` IN (SELECT i.`key` FROM library_song s JOIN search_item i ON i.`key` = 'song:' || s.id "
+            + "WHERE i.title IS NOT s.title OR i.artist IS NOT s.artist OR i.album IS NOT s.album OR i.genre IS NOT s.genre "
+            + "OR i.album_id IS NOT s.album_id OR i.artist_id IS NOT s.artist_id OR i.cover_art_id IS NOT s.cover_art_id "
+            + "OR i.duration IS NOT s.duration OR i.year IS NOT s.year)")
+    void deleteChangedLibrarySongs();
+
+    @Query("DELETE FROM search_item WHERE `key` IN (SELECT i.`key` FROM library_album a JOIN search_item i ON i.`key` = 'album:' || a.id "
+            + "WHERE i.title IS NOT a.name OR i.artist IS NOT a.artist OR i.genre IS NOT a.genre OR i.artist_id IS NOT a.artist_id "
+            + "OR i.cover_art_id IS NOT a.cover_art_id OR i.duration IS NOT a.duration OR i.year IS NOT a.year)")
+    void deleteChangedLibraryAlbums();
+
+    @Query("DELETE FROM search_item WHERE `key` IN (SELECT i.`key` FROM library_artist a JOIN search_item i ON i.`key` = 'artist:' || a.id "
+            + "WHERE i.title IS NOT a.name OR i.cover_art_id IS NOT a.cover_art_id)")
+    void deleteChangedLibraryArtists();
+
+    @Query("DELETE FROM search_item WHERE `key` IN (SELECT i.`key` FROM download s JOIN search_item i ON i.`key` = 'song:' || s.id "
+            + "WHERE i.title IS NOT s.title OR i.artist IS NOT s.artist OR i.album IS NOT s.album OR i.genre IS NOT s.genre "
+            + "OR i.album_id IS NOT s.album_id OR i.artist_id IS NOT s.artist_id OR i.cover_art_id IS NOT s.cover_art_id "
+            + "OR i.duration IS NOT s.duration OR i.year IS NOT s.year)")
+    void deleteChangedDownloads();
+
+    // Playlist songs carry no genre or year; a row indexed from elsewhere keeps its own
+    @Query("DELETE FROM search_item WHERE `key` IN (SELECT i.`key` FROM playlist_song s JOIN search_item i ON i.`key` = 'song:' || s.id "
+            + "WHERE i.title IS NOT s.title OR i.artist IS NOT s.artist OR i.album IS NOT s.album "
+            + "OR i.album_id IS NOT s.album_id OR i.artist_id IS NOT s.artist_id OR i.cover_art_id IS NOT s.cover_art_id "
+            + "OR i.duration IS NOT s.duration)")
+    void deleteChangedPlaylistSongs();
+
+    @Query("DELETE FROM search_item WHERE `key` IN (SELECT i.`key` FROM queue s JOIN search_item i ON i.`key` = 'song:' || s.id "
+            + "WHERE i.title IS NOT s.title OR i.artist IS NOT s.artist OR i.album IS NOT s.album OR i.genre IS NOT s.genre "
+            + "OR i.album_id IS NOT s.album_id OR i.artist_id IS NOT s.artist_id OR i.cover_art_id IS NOT s.cover_art_id "
+            + "OR i.duration IS NOT s.duration OR i.year IS NOT s.year)")
+    void deleteChangedQueue();
+
+    @Query("DELETE FROM search_item WHERE `key` IN (SELECT i.`key` FROM chronology s JOIN search_item i ON i.`key` = 'song:' || s.id "
+            + "WHERE s.server = :server AND (i.title IS NOT s.title OR i.artist IS NOT s.artist OR i.album IS NOT s.album OR i.genre IS NOT s.genre "
+            + "OR i.album_id IS NOT s.album_id OR i.artist_id IS NOT s.artist_id OR i.cover_art_id IS NOT s.cover_art_id "
+            + "OR i.duration IS NOT s.duration OR i.year IS NOT s.year))")
+    void deleteChangedChronology(String server);
+
+    @Query("DELETE FROM search_item WHERE type = 'artist' AND item_id NOT IN (SELECT id FROM library_artist)")
+    void deleteRemovedArtists();
+
+    @Query("DELETE FROM search_item WHERE type = 'album' AND item_id NOT IN (SELECT id FROM library_album)")
+    void deleteRemovedAlbums();
+
+    @Query("DELETE FROM search_item WHERE type = 'song' AND item_id NOT IN (SELECT id FROM library_song UNION ALL SELECT id FROM download "
+            + "UNION ALL SELECT id FROM playlist_song UNION ALL SELECT id FROM queue UNION ALL SELECT id FROM chronology WHERE server = :server)")
+    void deleteRemovedSongs(String server);
+
+    @Query("SELECT NOT EXISTS (SELECT 1 FROM search_item)")
+    boolean isEmpty();
+
+    @Query("DELETE FROM search_item")
+    void deleteAll();
+
+    @Transaction
+    default void updateLibraryArtists() {
+        deleteChangedLibraryArtists();
+        indexLibraryArtists();
+        deleteRemovedArtists();
+    }
+
+    @Transaction
+    default void updateLibraryAlbums() {
+        deleteChangedLibraryAlbums();
+        indexLibraryAlbums();
+        deleteRemovedAlbums();
+    }
+
+    @Transaction
+    default void updateLibrarySongs(String server) {
+        deleteChangedLibrarySongs();
+        indexLibrarySongs();
+        deleteRemovedSongs(server);
+    }
+
+    @Transaction
+    default void updateDownloads(String server) {
+        deleteChangedDownloads();
+        indexDownloads();
+        deleteRemovedSongs(server);
+    }
+
+    @Transaction
+    default void updatePlaylistSongs(String server) {
+        deleteChangedPlaylistSongs();
+        indexPlaylistSongs();
+        deleteRemovedSongs(server);
+    }
+
+    @Transaction
+    default void updateQueue(String server) {
+        deleteChangedQueue();
+        indexQueue();
+        deleteRemovedSongs(server);
+    }
+
+    @Transaction
+    default void updateChronology(String server) {
+        deleteChangedChronology(server);
+        indexChronology(server);
+        deleteRemovedSongs(server);
+    }
+
+    /**
+     * Indexes everything from scratch.
+     */
+    @Transaction
+    default void rebuild(String server) {
+        deleteAll();
+        indexLibraryArtists();
+        indexLibraryAlbums();
+        indexLibrarySongs();
+        indexDownloads();
+        indexPlaylistSongs();
+        indexQueue();
+        indexChronology(server);
+    }
+}
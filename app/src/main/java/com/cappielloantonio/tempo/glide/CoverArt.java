@@ -0,0 +1,66 @@
+package com.cappielloantonio.tempo.glide;
+
+import androidx.annotation.NonNull;
+
+import com.cappielloantonio.tempo.util.Preferences;
+
+import java.util.Objects;
+
+/**
+ * Glide model for a server cover. Unlike the getCoverArt URL it does not carry the
+ * auth parameters or the server address, so a new salt or a switch between local and
+ * public address keeps hitting the same cache entries.
+ */
+public final class CoverArt {
+    private final String serverId;
+    private final String coverArtId;
+    private final int size;
+
+    private CoverArt(String serverId, String coverArtId, int size) {
+        this.serverId = serverId;
+        this.coverArtId = coverArtId;
+        this.size = size;
+    }
+
+    public static CoverArt of(@NonNull String coverArtId, int size) {
+        return new CoverArt(Objects.toString(Preferences.getServerId(), ""), coverArtId, size);
+    }
+
+    public String getCoverArtId() {
+        return coverArtId;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getCacheKey() {
+        return serverId + "/" + coverArtId + "/" + size;
+    }
+
+    /**
+     * Built on every fetch, so it always carries the current credentials.
+     */
+    public String toUrl() {
+        return CustomGlideRequest.createUrl(coverArtId, size);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CoverArt)) return false;
+        CoverArt that = (CoverArt) o;
+        return size == that.size && serverId.equals(that.serverId) && coverArtId.equals(that.coverArtId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serverId, coverArtId, size);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return getCacheKey();
+    }
+}
@@ -0,0 +1,66 @@
+package com.cappielloantonio.tempo.glide;
+
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts where each finished image load came from. Registered as a global request
+ * listener, so the hit ratio covers every Glide load in the process.
+ */
+public class CoverArtCacheStats implements RequestListener<Object> {
+    private static final String TAG = "CoverArtCacheStats";
+    private static final int LOG_EVERY = 50;
+
+    private static final AtomicLong memoryHits = new AtomicLong();
+    private static final AtomicLong diskHits = new AtomicLong();
+    private static final AtomicLong remoteLoads = new AtomicLong();
+    private static final AtomicLong failures = new AtomicLong();
+    private static final AtomicLong loads = new AtomicLong();
+
+    public static float getHitRatio() {
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + remoteLoads.get();
+        return total == 0 ? 0f : (float) hits / total;
+    }
+
+    @Override
+    public boolean onLoadFailed(@Nullable GlideException e, @Nullable Object model, @NonNull Target<Object> target, boolean isFirstResource) {
+        failures.incrementAndGet();
+        return false;
+    }
+
+    @Override
+    public boolean onResourceReady(@NonNull Object resource, @NonNull Object model, Target<Object> target, @NonNull DataSource dataSource, boolean isFirstResource) {
+        switch (dataSource) {
+            case MEMORY_CACHE:
+                memoryHits.incrementAndGet();
+                break;
+            case DATA_DISK_CACHE:
+            case RESOURCE_DISK_CACHE:
+                diskHits.incrementAndGet();
+                break;
+            default:
+                remoteLoads.incrementAndGet();
+                break;
+        }
+
+        if (loads.incrementAndGet() % LOG_EVERY == 0) {
+            Log.d(TAG, "memory=" + memoryHits.get()
+                    + " disk=" + diskHits.get()
+                    + " remote=" + remoteLoads.get()
+                    + " failed=" + failures.get()
+                    + " hitRatio=" + getHitRatio());
+        }
+        return false;
+    }
+}
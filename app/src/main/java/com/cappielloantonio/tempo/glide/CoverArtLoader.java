@@ -0,0 +1,54 @@
+package com.cappielloantonio.tempo.glide;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.InputStream;
+
+import okhttp3.Call;
+
+/**
+ * Keys {@link CoverArt} by server, cover id and size; the URL is only resolved
+ * once the fetch actually has to go to the network.
+ */
+public class CoverArtLoader implements ModelLoader<CoverArt, InputStream> {
+    private final Call.Factory client;
+
+    CoverArtLoader(Call.Factory client) {
+        this.client = client;
+    }
+
+    @Override
+    public boolean handles(@NonNull CoverArt model) {
+        return true;
+    }
+
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull CoverArt model, int width, int height, @NonNull Options options) {
+        return new LoadData<>(new ObjectKey(model.getCacheKey()), new OkHttpStreamFetcher(client, model::toUrl));
+    }
+
+    public static class Factory implements ModelLoaderFactory<CoverArt, InputStream> {
+        private final Call.Factory client;
+
+        public Factory(Call.Factory client) {
+            this.client = client;
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<CoverArt, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new CoverArtLoader(client);
+        }
+
+        @Override
+        public void teardown() {
+            // No-op
+        }
+    }
+}
@@ -12,9 +12,14 @@ import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
 import com.bumptech.glide.Registry;
 import com.bumptech.glide.module.AppGlideModule;
 import com.bumptech.glide.request.RequestOptions;
+import com.cappielloantonio.tempo.subsonic.RetrofitClient;
 import com.cappielloantonio.tempo.util.Preferences;
 
 import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 
 @GlideModule
 public class CustomGlideModule extends AppGlideModule {
@@ -23,10 +28,22 @@ public class CustomGlideModule extends AppGlideModule {
         int diskCacheSize = Preferences.getImageCacheSize() * 1024 * 1024;
         builder.setDiskCache(new InternalCacheDiskCacheFactory(context, "cache", diskCacheSize));
         builder.setDefaultRequestOptions(new RequestOptions().format(DecodeFormat.PREFER_RGB_565));
+        builder.addGlobalRequestListener(new CoverArtCacheStats());
     }
 
     @Override
     public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
-        registry.replace(String.class, InputStream.class, new IPv6StringLoader.Factory());
+        // Shares the API client's connection pool and TLS setup (client certificate included).
+        // A dispatcher of its own keeps a grid of covers from queueing API calls to the same host,
+        // and Glide keeps its own disk cache, so the HTTP cache is left out
+        OkHttpClient client = RetrofitClient.getOkHttpClient().newBuilder()
+                .dispatcher(new Dispatcher())
+                .cache(null)
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(15, TimeUnit.SECONDS)
+                .build();
+
+        registry.replace(String.class, InputStream.class, new HttpStringLoader.Factory(client));
+        registry.prepend(CoverArt.class, InputStream.class, new CoverArtLoader.Factory(client));
     }
 }
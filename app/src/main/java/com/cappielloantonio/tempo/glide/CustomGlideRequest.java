@@ -82,7 +82,6 @@ public class CustomGlideRequest {
     }
 
     public static String createUrl(String item, int size) {
-        // TODO Removed log statement but we should considering caching cover art using a hash
         Map<String, String> params = App.getSubsonicClientInstance(false).getParams();
 
         StringBuilder uri = new StringBuilder();
@@ -114,10 +113,9 @@ public class CustomGlideRequest {
                                           String coverId,
                                           int size,
                                           CustomTarget<Bitmap> target) {
-        String url = createUrl(coverId, size);
         var builder = Glide.with(context)
                 .asBitmap()
-                .load(url)
+                .load(coverId != null ? CoverArt.of(coverId, size) : null)
                 .apply(createRequestOptions(context, coverId, ResourceType.Album));
         if (Preferences.isDataSavingMode()) {
             builder = builder.onlyRetrieveFromCache(true);
@@ -127,13 +125,13 @@ public class CustomGlideRequest {
 
     public static class Builder {
         private final RequestManager requestManager;
-        private String item;
+        private CoverArt item;
 
         private Builder(Context context, String item, ResourceType type) {
             this.requestManager = Glide.with(context);
 
             if (item != null) {
-                this.item = createUrl(item, Preferences.getImageSize());
+                this.item = CoverArt.of(item, Preferences.getImageSize());
             }
 
             requestManager.applyDefaultRequestOptions(createRequestOptions(context, item, type));
@@ -0,0 +1,53 @@
+package com.cappielloantonio.tempo.glide;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.InputStream;
+
+import okhttp3.Call;
+
+public class HttpStringLoader implements ModelLoader<String, InputStream> {
+    private final Call.Factory client;
+
+    HttpStringLoader(Call.Factory client) {
+        this.client = client;
+    }
+
+    @Override
+    public boolean handles(@NonNull String model) {
+        return model.startsWith("http://") || model.startsWith("https://");
+    }
+
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull String model, int width, int height, @NonNull Options options) {
+        if (!handles(model)) {
+            return null;
+        }
+        return new LoadData<>(new ObjectKey(model), new OkHttpStreamFetcher(client, () -> model));
+    }
+
+    public static class Factory implements ModelLoaderFactory<String, InputStream> {
+        private final Call.Factory client;
+
+        public Factory(Call.Factory client) {
+            this.client = client;
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<String, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new HttpStringLoader(client);
+        }
+
+        @Override
+        public void teardown() {
+            // No-op
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cappielloantonio.tempo.glide;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.HttpException;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.util.ContentLengthInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Supplier;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Fetches an image through Glide's OkHttp client, which shares the API client's connection
+ * pool and TLS setup. The call is enqueued on Glide's own dispatcher, so covers queue behind
+ * each other rather than behind API calls, and Glide cancelling a request (e.g. its view was
+ * recycled) cancels the call.
+ */
+class OkHttpStreamFetcher implements DataFetcher<InputStream>, Callback {
+    private final Call.Factory client;
+    private final Supplier<String> url;
+
+    private volatile Call call;
+    private DataCallback<? super InputStream> callback;
+    private InputStream stream;
+    private ResponseBody responseBody;
+
+    OkHttpStreamFetcher(Call.Factory client, Supplier<String> url) {
+        this.client = client;
+        this.url = url;
+    }
+
+    @Override
+    public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+        Request request;
+        try {
+            request = new Request.Builder().url(url.get()).build();
+        } catch (IllegalArgumentException e) {
+            callback.onLoadFailed(e);
+            return;
+        }
+
+        this.callback = callback;
+        call = client.newCall(request);
+        call.enqueue(this);
+    }
+
+    @Override
+    public void onFailure(@NonNull Call call, @NonNull IOException e) {
+        callback.onLoadFailed(e);
+    }
+
+    @Override
+    public void onResponse(@NonNull Call call, @NonNull Response response) {
+        responseBody = response.body();
+        if (!response.isSuccessful()) {
+            callback.onLoadFailed(new HttpException(response.message(), response.code()));
+            return;
+        }
+
+        stream = ContentLengthInputStream.obtain(responseBody.byteStream(), responseBody.contentLength());
+        callback.onDataReady(stream);
+    }
+
+    @Override
+    public void cleanup() {
+        try {
+            if (stream != null) stream.close();
+        } catch (IOException ignored) {
+        }
+        if (responseBody != null) responseBody.close();
+        callback = null;
+    }
+
+    @Override
+    public void cancel() {
+        Call local = call;
+        if (local != null) local.cancel();
+    }
+
+    @NonNull
+    @Override
+    public Class<InputStream> getDataClass() {
+        return InputStream.class;
+    }
+
+    @NonNull
+    @Override
+    public DataSource getDataSource() {
+        return DataSource.REMOTE;
+    }
+}
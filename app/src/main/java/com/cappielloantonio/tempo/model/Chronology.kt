@@ -6,6 +6,7 @@ import androidx.room.ColumnInfo
 import androidx.room.Entity
 import androidx.room.PrimaryKey
 import com.cappielloantonio.tempo.subsonic.models.Child
+import com.cappielloantonio.tempo.util.MediaExtrasRegistry
 import com.cappielloantonio.tempo.util.Preferences
 import kotlinx.parcelize.Parcelize
 import java.util.Date
@@ -21,43 +22,42 @@ class Chronology(
     var server: String? = null,
 ) : Child(id) {
     constructor(mediaItem: MediaItem) : this(mediaItem.mediaMetadata.extras!!.getString("id")!!) {
-        parentId = mediaItem.mediaMetadata.extras!!.getString("parentId")
-        isDir = mediaItem.mediaMetadata.extras!!.getBoolean("isDir")
-        title = mediaItem.mediaMetadata.extras!!.getString("title")
-        album = mediaItem.mediaMetadata.extras!!.getString("album")
-        artist = mediaItem.mediaMetadata.extras!!.getString("artist")
-        track = mediaItem.mediaMetadata.extras!!.getInt("track")
-        year = mediaItem.mediaMetadata.extras!!.getInt("year")
-        genre = mediaItem.mediaMetadata.extras!!.getString("genre")
-        coverArtId = mediaItem.mediaMetadata.extras!!.getString("coverArtId")
-        size = mediaItem.mediaMetadata.extras!!.getLong("size")
-        contentType = mediaItem.mediaMetadata.extras!!.getString("contentType")
-        suffix = mediaItem.mediaMetadata.extras!!.getString("suffix")
-        transcodedContentType = mediaItem.mediaMetadata.extras!!.getString("transcodedContentType")
-        transcodedSuffix = mediaItem.mediaMetadata.extras!!.getString("transcodedSuffix")
-        duration = mediaItem.mediaMetadata.extras!!.getInt("duration")
-        bitrate = mediaItem.mediaMetadata.extras!!.getInt("bitrate")
-        samplingRate = mediaItem.mediaMetadata.extras!!.getInt("samplingRate")
-        bitDepth = mediaItem.mediaMetadata.extras!!.getInt("bitDepth")
-        path = mediaItem.mediaMetadata.extras!!.getString("path")
-        isVideo = mediaItem.mediaMetadata.extras!!.getBoolean("isVideo")
-        userRating = mediaItem.mediaMetadata.extras!!.getInt("userRating")
-        averageRating = mediaItem.mediaMetadata.extras!!.getDouble("averageRating")
-        playCount = mediaItem.mediaMetadata.extras!!.getLong("playCount")
-        discNumber = mediaItem.mediaMetadata.extras!!.getInt("discNumber")
-        val createdLong = mediaItem.mediaMetadata.extras!!.getLong("created")
+        val extras = MediaExtrasRegistry.get(mediaItem.mediaMetadata)!!
+        parentId = extras.getString("parentId")
+        isDir = extras.getBoolean("isDir")
+        title = extras.getString("title")
+        album = extras.getString("album")
+        artist = extras.getString("artist")
+        track = extras.getInt("track")
+        year = extras.getInt("year")
+        genre = extras.getString("genre")
+        coverArtId = extras.getString("coverArtId")
+        size = extras.getLong("size")
+        contentType = extras.getString("contentType")
+        suffix = extras.getString("suffix")
+        transcodedContentType = extras.getString("transcodedContentType")
+        transcodedSuffix = extras.getString("transcodedSuffix")
+        duration = extras.getInt("duration")
+        bitrate = extras.getInt("bitrate")
+        samplingRate = extras.getInt("samplingRate")
+        bitDepth = extras.getInt("bitDepth")
+        path = extras.getString("path")
+        isVideo = extras.getBoolean("isVideo")
+        userRating = extras.getInt("userRating")
+        averageRating = extras.getDouble("averageRating")
+        playCount = extras.getLong("playCount")
+        discNumber = extras.getInt("discNumber")
+        val createdLong = extras.getLong("created")
         created = if (createdLong > 0) Date(createdLong) else null
-        val starredLong = mediaItem.mediaMetadata.extras!!.getLong("starred")
+        val starredLong = extras.getLong("starred")
         starred = if (starredLong > 0) Date(starredLong) else null
-        albumId = mediaItem.mediaMetadata.extras!!.getString("albumId")
-        artistId = mediaItem.mediaMetadata.extras!!.getString("artistId")
-        type = mediaItem.mediaMetadata.extras!!.getString("type")
-        bookmarkPosition = mediaItem.mediaMetadata.extras!!.getLong("bookmarkPosition")
-        originalWidth = mediaItem.mediaMetadata.extras!!.getInt("originalWidth")
-        originalHeight = mediaItem.mediaMetadata.extras!!.getInt("originalHeight")
-        replayGain = com.cappielloantonio.tempo.util.ReplayGainBundleUtil.fromBundle(
-            mediaItem.mediaMetadata.extras
-        )
+        albumId = extras.getString("albumId")
+        artistId = extras.getString("artistId")
+        type = extras.getString("type")
+        bookmarkPosition = extras.getLong("bookmarkPosition")
+        originalWidth = extras.getInt("originalWidth")
+        originalHeight = extras.getInt("originalHeight")
+        replayGain = com.cappielloantonio.tempo.util.ReplayGainBundleUtil.fromBundle(extras)
         server = Preferences.getServerId()
         timestamp = Date().time
     }
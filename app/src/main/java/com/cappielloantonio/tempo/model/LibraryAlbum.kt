@@ -0,0 +1,79 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Ignore
+import androidx.room.Index
+import androidx.room.PrimaryKey
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3
+import java.util.Date
+
+/**
+ * An album of the local library mirror, with the fields the catalogue shows and sorts by.
+ */
+@Keep
+@Entity(tableName = "library_album", indices = [Index(value = ["artist_id"])])
+data class LibraryAlbum(
+    @PrimaryKey
+    @ColumnInfo(name = "id")
+    var id: String,
+    @ColumnInfo(name = "name")
+    var name: String? = null,
+    @ColumnInfo(name = "artist")
+    var artist: String? = null,
+    @ColumnInfo(name = "artist_id")
+    var artistId: String? = null,
+    @ColumnInfo(name = "cover_art_id")
+    var coverArtId: String? = null,
+    @ColumnInfo(name = "song_count")
+    var songCount: Int = 0,
+    @ColumnInfo(name = "duration")
+    var duration: Int = 0,
+    @ColumnInfo(name = "play_count")
+    var playCount: Long = 0,
+    @ColumnInfo(name = "year")
+    var year: Int = 0,
+    @ColumnInfo(name = "genre")
+    var genre: String? = null,
+    @ColumnInfo(name = "created")
+    var created: Date? = null,
+    @ColumnInfo(name = "starred")
+    var starred: Date? = null,
+    @ColumnInfo(name = "played")
+    var played: Date? = null,
+) {
+    @Ignore
+    constructor(album: AlbumID3) : this(album.id!!) {
+        name = album.name
+        artist = album.artist
+        artistId = album.artistId
+        coverArtId = album.coverArtId
+        songCount = album.songCount ?: 0
+        duration = album.duration ?: 0
+        playCount = album.playCount ?: 0
+        year = album.year
+        genre = album.genre
+        created = album.created
+        starred = album.starred
+        played = album.played
+    }
+
+    fun toAlbumID3(): AlbumID3 {
+        return AlbumID3(
+            id = id,
+            name = name,
+            artist = artist,
+            artistId = artistId,
+            coverArtId = coverArtId,
+            songCount = songCount,
+            duration = duration,
+            playCount = playCount,
+            created = created,
+            starred = starred,
+            year = year,
+            genre = genre,
+            played = played,
+        )
+    }
+}
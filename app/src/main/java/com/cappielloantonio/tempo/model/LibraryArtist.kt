@@ -0,0 +1,41 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Ignore
+import androidx.room.PrimaryKey
+import com.cappielloantonio.tempo.subsonic.models.ArtistID3
+import java.util.Date
+
+/**
+ * An artist of the local library mirror. [albumCount] is the server's count as of the last
+ * sync, which is how a sync tells whose albums changed.
+ */
+@Keep
+@Entity(tableName = "library_artist")
+data class LibraryArtist(
+    @PrimaryKey
+    @ColumnInfo(name = "id")
+    var id: String,
+    @ColumnInfo(name = "name")
+    var name: String? = null,
+    @ColumnInfo(name = "cover_art_id")
+    var coverArtId: String? = null,
+    @ColumnInfo(name = "album_count")
+    var albumCount: Int = 0,
+    @ColumnInfo(name = "starred")
+    var starred: Date? = null,
+) {
+    @Ignore
+    constructor(artist: ArtistID3) : this(artist.id!!) {
+        name = artist.name
+        coverArtId = artist.coverArtId
+        albumCount = artist.albumCount
+        starred = artist.starred
+    }
+
+    fun toArtistID3(): ArtistID3 {
+        return ArtistID3(id, name, coverArtId, albumCount, starred)
+    }
+}
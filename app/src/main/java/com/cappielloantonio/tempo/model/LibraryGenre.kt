@@ -0,0 +1,23 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+import com.cappielloantonio.tempo.subsonic.models.Genre
+
+@Keep
+@Entity(tableName = "library_genre")
+data class LibraryGenre(
+    @PrimaryKey
+    @ColumnInfo(name = "genre")
+    var genre: String,
+    @ColumnInfo(name = "song_count")
+    var songCount: Int = 0,
+    @ColumnInfo(name = "album_count")
+    var albumCount: Int = 0,
+) {
+    fun toGenre(): Genre {
+        return Genre(genre, songCount, albumCount)
+    }
+}
@@ -0,0 +1,54 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+import com.cappielloantonio.tempo.subsonic.models.Child
+import kotlinx.parcelize.Parcelize
+
+/**
+ * A song of the local library mirror. Songs are mirrored album by album, as albums are opened.
+ */
+@Keep
+@Parcelize
+@Entity(tableName = "library_song", indices = [Index(value = ["album_id"])])
+class LibrarySong(
+    @PrimaryKey override val id: String,
+) : Child(id) {
+    constructor(child: Child) : this(child.id) {
+        parentId = child.parentId
+        isDir = child.isDir
+        title = child.title
+        album = child.album
+        artist = child.artist
+        track = child.track
+        year = child.year
+        genre = child.genre
+        coverArtId = child.coverArtId
+        size = child.size
+        contentType = child.contentType
+        suffix = child.suffix
+        transcodedContentType = child.transcodedContentType
+        transcodedSuffix = child.transcodedSuffix
+        duration = child.duration
+        bitrate = child.bitrate
+        samplingRate = child.samplingRate
+        bitDepth = child.bitDepth
+        path = child.path
+        isVideo = child.isVideo
+        userRating = child.userRating
+        averageRating = child.averageRating
+        playCount = child.playCount
+        discNumber = child.discNumber
+        created = child.created
+        starred = child.starred
+        albumId = child.albumId
+        artistId = child.artistId
+        type = child.type
+        bookmarkPosition = child.bookmarkPosition
+        originalWidth = child.originalWidth
+        originalHeight = child.originalHeight
+        replayGain = child.replayGain
+    }
+}
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * What the library mirror was last synced against: the server it belongs to, the artist
+ * index's `lastModified`, the scanned item count and the newest album `created` seen.
+ */
+@Keep
+@Entity(tableName = "library_sync_state")
+data class LibrarySyncState(
+    @PrimaryKey
+    @ColumnInfo(name = "server_id")
+    var serverId: String,
+    @ColumnInfo(name = "index_last_modified")
+    var indexLastModified: Long = 0,
+    @ColumnInfo(name = "scan_count")
+    var scanCount: Long = -1,
+    @ColumnInfo(name = "newest_created")
+    var newestCreated: Long = 0,
+    @ColumnInfo(name = "synced_at")
+    var syncedAt: Long = 0,
+    @ColumnInfo(name = "full_synced_at")
+    var fullSyncedAt: Long = 0,
+)
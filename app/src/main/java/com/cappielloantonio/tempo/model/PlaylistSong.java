@@ -10,6 +10,8 @@ import androidx.room.Index;
 import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.subsonic.models.Playlist;
 
+import java.util.Objects;
+
 @Keep
 @Entity(
     tableName = "playlist_song",
@@ -44,6 +46,8 @@ public class PlaylistSong {
     private String albumId;
     @ColumnInfo(name = "artist_id")
     private String artistId;
+    @ColumnInfo(name = "position", defaultValue = "0")
+    private int position;
 
     public PlaylistSong(String playlistId, String id, String title, String artist, String album, Integer track, String coverArtId, Integer duration, String albumId, String artistId) {
         this.playlistId = playlistId;
@@ -152,4 +156,35 @@ public class PlaylistSong {
     public void setArtistId(String artistId) {
         this.artistId = artistId;
     }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public void setPosition(int position) {
+        this.position = position;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PlaylistSong)) return false;
+        PlaylistSong that = (PlaylistSong) o;
+        return position == that.position
+                && playlistId.equals(that.playlistId)
+                && id.equals(that.id)
+                && Objects.equals(title, that.title)
+                && Objects.equals(artist, that.artist)
+                && Objects.equals(album, that.album)
+                && Objects.equals(track, that.track)
+                && Objects.equals(coverArtId, that.coverArtId)
+                && Objects.equals(duration, that.duration)
+                && Objects.equals(albumId, that.albumId)
+                && Objects.equals(artistId, that.artistId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(playlistId, id, position);
+    }
 }
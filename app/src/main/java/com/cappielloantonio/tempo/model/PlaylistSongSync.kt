@@ -0,0 +1,22 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * What the cached songs of a playlist were last synced against: the server's `changed`
+ * timestamp and a hash of the ordered song ids.
+ */
+@Keep
+@Entity(tableName = "playlist_song_sync")
+data class PlaylistSongSync(
+    @PrimaryKey
+    @ColumnInfo(name = "playlist_id")
+    var playlistId: String,
+    @ColumnInfo(name = "changed")
+    var changed: Long = 0,
+    @ColumnInfo(name = "ids_hash")
+    var idsHash: String = ""
+)
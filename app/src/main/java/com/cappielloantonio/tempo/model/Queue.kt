@@ -14,7 +14,7 @@ class Queue(
     override val id: String,
     @PrimaryKey
     @ColumnInfo(name = "track_order")
-    var trackOrder: Int = 0,
+    var trackOrder: Long = 0,
     @ColumnInfo(name = "last_play")
     var lastPlay: Long = 0,
     @ColumnInfo(name = "playing_changed")
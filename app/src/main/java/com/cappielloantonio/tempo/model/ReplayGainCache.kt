@@ -0,0 +1,24 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+
+@Keep
+@Entity(tableName = "replay_gain_cache", primaryKeys = ["server_id", "song_id"])
+data class ReplayGainCache(
+    @ColumnInfo(name = "server_id")
+    var serverId: String,
+    @ColumnInfo(name = "song_id")
+    var songId: String,
+    @ColumnInfo(name = "track_gain")
+    var trackGain: Float = 0f,
+    @ColumnInfo(name = "album_gain")
+    var albumGain: Float = 0f,
+    @ColumnInfo(name = "track_peak")
+    var trackPeak: Float = 0f,
+    @ColumnInfo(name = "album_peak")
+    var albumPeak: Float = 0f,
+    @ColumnInfo(name = "updated_at")
+    var updatedAt: Long = System.currentTimeMillis()
+)
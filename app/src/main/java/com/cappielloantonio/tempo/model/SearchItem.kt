@@ -0,0 +1,46 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+
+/**
+ * A song, album or artist the device knows about, from the library mirror, downloads,
+ * cached playlists, the queue or the play history. Content table of [SearchItemFts].
+ */
+@Keep
+@Entity(tableName = "search_item")
+data class SearchItem(
+    @PrimaryKey
+    @ColumnInfo(name = "key")
+    var key: String,
+    @ColumnInfo(name = "type")
+    var type: String,
+    @ColumnInfo(name = "item_id")
+    var itemId: String,
+    @ColumnInfo(name = "title")
+    var title: String? = null,
+    @ColumnInfo(name = "artist")
+    var artist: String? = null,
+    @ColumnInfo(name = "album")
+    var album: String? = null,
+    @ColumnInfo(name = "genre")
+    var genre: String? = null,
+    @ColumnInfo(name = "album_id")
+    var albumId: String? = null,
+    @ColumnInfo(name = "artist_id")
+    var artistId: String? = null,
+    @ColumnInfo(name = "cover_art_id")
+    var coverArtId: String? = null,
+    @ColumnInfo(name = "duration")
+    var duration: Int? = null,
+    @ColumnInfo(name = "year")
+    var year: Int? = null,
+) {
+    companion object {
+        const val TYPE_SONG = "song"
+        const val TYPE_ALBUM = "album"
+        const val TYPE_ARTIST = "artist"
+    }
+}
@@ -0,0 +1,30 @@
+package com.cappielloantonio.tempo.model
+
+import androidx.annotation.Keep
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+import androidx.room.FtsOptions
+
+/**
+ * Full-text index over [SearchItem]. Room keeps it in step with the content table through
+ * triggers; unicode61 without diacritics makes "bjork" match "Björk".
+ */
+@Keep
+@Fts4(
+    contentEntity = SearchItem::class,
+    tokenizer = FtsOptions.TOKENIZER_UNICODE61,
+    tokenizerArgs = ["remove_diacritics=1"],
+    prefix = [2, 3]
+)
+@Entity(tableName = "search_item_fts")
+data class SearchItemFts(
+    @ColumnInfo(name = "title")
+    var title: String? = null,
+    @ColumnInfo(name = "artist")
+    var artist: String? = null,
+    @ColumnInfo(name = "album")
+    var album: String? = null,
+    @ColumnInfo(name = "genre")
+    var genre: String? = null,
+)
@@ -21,6 +21,7 @@ import com.cappielloantonio.tempo.subsonic.models.InternetRadioStation
 import com.cappielloantonio.tempo.subsonic.models.PodcastEpisode
 import com.cappielloantonio.tempo.subsonic.models.ReplayGainInfo
 import com.cappielloantonio.tempo.util.Constants
+import com.cappielloantonio.tempo.util.MediaExtrasRegistry
 import com.cappielloantonio.tempo.util.MusicUtil
 import com.cappielloantonio.tempo.util.Preferences.getImageSize
 import com.cappielloantonio.tempo.util.ReplayGainBundleUtil
@@ -252,6 +253,10 @@ class SessionMediaItem() {
         bundle.putString("uri", uri.toString())
         ReplayGainBundleUtil.writeToBundle(bundle, replayGain)
 
+        val extras = MediaExtrasRegistry.register(bundle)
+        val requestExtras = Bundle()
+        requestExtras.putString("id", id)
+
         return MediaItem.Builder()
             .setMediaId(id!!)
             .setMediaMetadata(
@@ -270,7 +275,7 @@ class SessionMediaItem() {
                             Constants.CUSTOM_COMMAND_TOGGLE_HEART_OFF
                         )
                     )
-                    .setExtras(bundle)
+                    .setExtras(extras)
                     .setIsBrowsable(false)
                     .setIsPlayable(true)
                     .build()
@@ -278,7 +283,7 @@ class SessionMediaItem() {
             .setRequestMetadata(
                 RequestMetadata.Builder()
                     .setMediaUri(uri)
-                    .setExtras(bundle)
+                    .setExtras(requestExtras)
                     .build()
             )
             .setMimeType(MimeTypes.BASE_TYPE_AUDIO)
@@ -62,7 +62,7 @@ public class BottomSheetHelper {
 
     public void checkAfterStateChanged(MainViewModel mainViewModel) {
         final Handler handler = new Handler();
-        final Runnable runnable = () -> setStateInPeek(mainViewModel.isQueueLoaded());
+        final Runnable runnable = () -> mainViewModel.isQueueLoaded(this::setStateInPeek);
         handler.postDelayed(runnable, 100);
     }
 
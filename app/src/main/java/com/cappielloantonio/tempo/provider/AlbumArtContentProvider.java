@@ -16,7 +16,7 @@ import androidx.annotation.Nullable;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.cappielloantonio.tempo.BuildConfig;
-import com.cappielloantonio.tempo.glide.CustomGlideRequest;
+import com.cappielloantonio.tempo.glide.CoverArt;
 import com.cappielloantonio.tempo.util.Preferences;
 import com.cappielloantonio.tempo.util.RadioCoverArtDownloader;
 
@@ -55,7 +55,7 @@ public class AlbumArtContentProvider extends ContentProvider {
     public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
         Context context = getContext();
         String albumId = uri.getLastPathSegment();
-        Uri artworkUri = null;
+        Object artworkModel = null;
         File localFile = null;
 
         if (albumId != null && albumId.startsWith("rl_")) {
@@ -66,13 +66,13 @@ public class AlbumArtContentProvider extends ContentProvider {
         } else if (albumId != null && albumId.startsWith("ir_")) {
             String encodedUrl = albumId.substring("ir_".length());
             String decodedUrl = new String(Base64.decode(encodedUrl, Base64.URL_SAFE | Base64.NO_WRAP));
-            artworkUri = Uri.parse(decodedUrl);
-        } else {
-            artworkUri = Uri.parse(CustomGlideRequest.createUrl(albumId, Preferences.getImageSize()));
+            artworkModel = Uri.parse(decodedUrl);
+        } else if (albumId != null) {
+            artworkModel = CoverArt.of(albumId, Preferences.getImageSize());
         }
 
         final File localFileFinal = localFile;
-        final Uri artworkUriFinal = artworkUri;
+        final Object artworkModelFinal = artworkModel;
 
         try {
             // use pipe to communicate between background thread and caller of openFile()
@@ -91,7 +91,7 @@ public class AlbumArtContentProvider extends ContentProvider {
                     } else {
                         var fileRequest = Glide.with(context)
                                 .asFile()
-                                .load(artworkUriFinal)
+                                .load(artworkModelFinal)
                                 .diskCacheStrategy(DiskCacheStrategy.DATA);
                         if (Preferences.isDataSavingMode()) {
                             fileRequest = fileRequest.onlyRetrieveFromCache(true);
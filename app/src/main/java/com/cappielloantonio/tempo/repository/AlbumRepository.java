@@ -12,6 +12,9 @@ import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
 import com.cappielloantonio.tempo.subsonic.models.AlbumInfo;
 import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.util.Constants.SeedType;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -24,6 +27,8 @@ import retrofit2.Callback;
 import retrofit2.Response;
 
 public class AlbumRepository {
+    private final LibraryRepository libraryRepository = new LibraryRepository();
+
     public MutableLiveData<List<AlbumID3>> getAlbums(String type, int size, Integer fromYear, Integer toYear) {
         MutableLiveData<List<AlbumID3>> listLiveAlbums = new MutableLiveData<>(new ArrayList<>());
 
@@ -119,6 +124,7 @@ public class AlbumRepository {
                             if (response.body().getSubsonicResponse().getAlbum().getSongs() != null) {
                                 tracks.addAll(response.body().getSubsonicResponse().getAlbum().getSongs());
                             }
+                            libraryRepository.cacheAlbumSongs(id, tracks);
                         }
 
                         albumTracks.setValue(tracks);
@@ -126,7 +132,18 @@ public class AlbumRepository {
 
                     @Override
                     public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
+                        // Offline: fall back to the songs mirrored the last time the album was opened
+                        Futures.addCallback(libraryRepository.getAlbumSongs(id), new FutureCallback<List<Child>>() {
+                            @Override
+                            public void onSuccess(List<Child> songs) {
+                                if (!songs.isEmpty()) albumTracks.postValue(songs);
+                            }
 
+                            @Override
+                            public void onFailure(@NonNull Throwable t) {
+                                Log.w("AlbumRepository", "Mirrored songs unavailable: " + t);
+                            }
+                        }, MoreExecutors.directExecutor());
                     }
                 });
 
@@ -0,0 +1,165 @@
+package com.cappielloantonio.tempo.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.cappielloantonio.tempo.App;
+import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import retrofit2.Response;
+
+/**
+ * Loads the songs of many albums with a few requests in flight and hands them over in
+ * album order, every album's songs sorted by disc and track. Albums loaded in the last
+ * few minutes come from memory. An album that can't be loaded is left out rather than
+ * holding up the others.
+ */
+final class AlbumTrackLoader {
+    private static final String TAG = "AlbumTrackLoader";
+
+    static final int CONCURRENCY = 4;
+    static final int CACHE_SIZE = 200;
+    static final long CACHE_MAX_AGE_MS = TimeUnit.MINUTES.toMillis(10);
+
+    static final Comparator<Child> DISC_TRACK_ORDER = Comparator
+            .comparing((Child song) -> song.getDiscNumber() != null ? song.getDiscNumber() : 0)
+            .thenComparing(song -> song.getTrack() != null ? song.getTrack() : 0);
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    // Shared by every load, so loading many artists at once still keeps CONCURRENCY requests out
+    private static final ExecutorService albumExecutor = Executors.newFixedThreadPool(CONCURRENCY, runnable -> {
+        Thread thread = new Thread(runnable, "tempo-album-tracks-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static AlbumTrackLoader instance;
+
+    interface Source {
+        List<Child> getAlbumSongs(String albumId) throws IOException;
+    }
+
+    private static final class CachedAlbum {
+        final List<Child> songs;
+        final long loadedAt;
+
+        CachedAlbum(List<Child> songs, long loadedAt) {
+            this.songs = songs;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final Source source;
+    private final PagedFetcher<Child> fetcher;
+    private final LongSupplier clock;
+
+    // Guarded by itself; iteration order is least recently used first
+    private final Map<String, CachedAlbum> cache = new LinkedHashMap<String, CachedAlbum>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedAlbum> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    static synchronized AlbumTrackLoader getInstance() {
+        if (instance == null) {
+            instance = new AlbumTrackLoader(new ServerSource(), albumExecutor, new Handler(Looper.getMainLooper())::post, System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    AlbumTrackLoader(Source source, Executor fetchExecutor, Executor deliveryExecutor, LongSupplier clock) {
+        this.source = source;
+        this.fetcher = new PagedFetcher<>(fetchExecutor, deliveryExecutor, CONCURRENCY);
+        this.clock = clock;
+    }
+
+    /**
+     * Loads the songs of {@code albums}; {@code listener} gets them album by album, or a
+     * few albums at once when they arrive together.
+     */
+    PagedFetcher.Handle load(List<AlbumID3> albums, PagedFetcher.Listener<Child> listener) {
+        List<String> ids = new ArrayList<>(albums.size());
+        for (AlbumID3 album : albums) {
+            if (album != null && album.getId() != null) ids.add(album.getId());
+        }
+        return fetcher.fetch(ids.size(), page -> getSongs(ids.get(page)), listener);
+    }
+
+    private List<Child> getSongs(String albumId) {
+        long now = clock.getAsLong();
+        synchronized (cache) {
+            CachedAlbum cached = cache.get(albumId);
+            if (cached != null && now - cached.loadedAt < CACHE_MAX_AGE_MS) return cached.songs;
+        }
+
+        List<Child> songs;
+        try {
+            songs = new ArrayList<>(source.getAlbumSongs(albumId));
+        } catch (IOException e) {
+            Log.w(TAG, "Songs of album " + albumId + " unavailable: " + e.getMessage());
+            return Collections.emptyList();
+        }
+        songs.sort(DISC_TRACK_ORDER);
+        songs = Collections.unmodifiableList(songs);
+
+        synchronized (cache) {
+            cache.put(albumId, new CachedAlbum(songs, now));
+        }
+        return songs;
+    }
+
+    private static class ServerSource implements Source {
+        private final LibraryRepository libraryRepository = new LibraryRepository();
+
+        @Override
+        public List<Child> getAlbumSongs(String albumId) throws IOException {
+            try {
+                Response<ApiResponse> response = App.getSubsonicClientInstance(false).getBrowsingClient().getAlbum(albumId).execute();
+                if (!response.isSuccessful() || response.body() == null || response.body().getSubsonicResponse().getAlbum() == null) {
+                    throw new IOException("HTTP " + response.code());
+                }
+
+                List<Child> songs = response.body().getSubsonicResponse().getAlbum().getSongs();
+                if (songs == null) songs = new ArrayList<>();
+                libraryRepository.cacheAlbumSongs(albumId, songs);
+                return songs;
+            } catch (IOException e) {
+                // Offline: fall back to the songs mirrored the last time the album was opened
+                List<Child> mirrored = getMirrored(albumId);
+                if (mirrored.isEmpty()) throw e;
+                return mirrored;
+            }
+        }
+
+        private List<Child> getMirrored(String albumId) {
+            try {
+                return libraryRepository.getAlbumSongs(albumId).get();
+            } catch (ExecutionException e) {
+                return Collections.emptyList();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Collections.emptyList();
+            }
+        }
+    }
+}
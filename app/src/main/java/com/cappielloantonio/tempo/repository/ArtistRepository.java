@@ -14,97 +14,155 @@ import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.subsonic.models.IndexID3;
 import com.cappielloantonio.tempo.util.Constants.SeedType;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
 public class ArtistRepository {
-    private final AlbumRepository albumRepository;
+    /**
+     * Collects every song of the artist and hands them over at once; see {@link #loadArtistSongs}.
+     */
+    public void getArtistAllSongs(String artistId, ArtistSongsCallback callback) {
+        List<Child> allSongs = new ArrayList<>();
+        loadArtistSongs(artistId, (songs, complete) -> {
+            allSongs.addAll(songs);
+            if (complete) callback.onSongsCollected(allSongs);
+        });
+    }
 
-    public ArtistRepository() {
-        this.albumRepository = new AlbumRepository();
+    /**
+     * Loads every song of the artist, a few albums at a time, in album, disc and track order.
+     * {@code listener} gets the songs as the albums arrive, so playing or downloading can
+     * start with the first one.
+     */
+    public PagedFetcher.Handle loadArtistSongs(String artistId, ArtistSongsListener listener) {
+        return loadArtistAlbums(artistId, listener, albums -> albums);
     }
 
-    public void getArtistAllSongs(String artistId, ArtistSongsCallback callback) {
-        Log.d("ArtistSync", "Getting albums for artist: " + artistId);
+    /**
+     * Shuffled songs of the artist, up to {@code count}, a few from each of a random set of
+     * albums. {@code listener} gets the songs of the first albums to arrive, then the rest
+     * mixed together once every album is in; see {@link RandomSongPick}.
+     */
+    public PagedFetcher.Handle getRandomSongs(ArtistID3 artist, int count, ArtistSongsListener listener) {
+        RandomSongPick pick = new RandomSongPick(count, new Random(), listener);
+        return loadArtistAlbums(artist.getId(), pick, pick::pickAlbums);
+    }
 
-        // Get the artist info first, which contains the albums
-        App.getSubsonicClientInstance(false)
+    private ArtistSongsLoad loadArtistAlbums(String artistId, ArtistSongsListener listener, UnaryOperator<List<AlbumID3>> pickAlbums) {
+        ArtistSongsLoad load = new ArtistSongsLoad();
+        Call<ApiResponse> call = App.getSubsonicClientInstance(false)
                 .getBrowsingClient()
-                .getArtist(artistId)
-                .enqueue(new Callback<ApiResponse>() {
+                .getArtist(artistId);
+        load.setArtistCall(call);
+
+        call.enqueue(new Callback<ApiResponse>() {
+            @Override
+            public void onResponse(@NonNull Call<ApiResponse> call, @NonNull Response<ApiResponse> response) {
+                List<AlbumID3> albums = null;
+                if (response.isSuccessful() && response.body() != null && response.body().getSubsonicResponse().getArtist() != null) {
+                    albums = response.body().getSubsonicResponse().getArtist().getAlbums();
+                }
+
+                if (albums == null || albums.isEmpty()) {
+                    Log.d("ArtistRepository", "No albums for artist " + artistId);
+                    load.finish(() -> listener.onSongs(new ArrayList<>(), true));
+                    return;
+                }
+
+                List<AlbumID3> picked = pickAlbums.apply(albums);
+                load.start(() -> AlbumTrackLoader.getInstance().load(picked, new PagedFetcher.Listener<Child>() {
                     @Override
-                    public void onResponse(@NonNull Call<ApiResponse> call, @NonNull Response<ApiResponse> response) {
-                        if (response.isSuccessful() && response.body() != null && 
-                            response.body().getSubsonicResponse().getArtist() != null && 
-                            response.body().getSubsonicResponse().getArtist().getAlbums() != null) {
-                            
-                            List<AlbumID3> albums = response.body().getSubsonicResponse().getArtist().getAlbums();
-                            Log.d("ArtistSync", "Got albums directly: " + albums.size());
-                            
-                            if (!albums.isEmpty()) {
-                                fetchAllAlbumSongsWithCallback(albums, callback);
-                            } else {
-                                Log.d("ArtistSync", "No albums found in artist response");
-                                callback.onSongsCollected(new ArrayList<>());
-                            }
-                        } else {
-                            Log.d("ArtistSync", "Failed to get artist info");
-                            callback.onSongsCollected(new ArrayList<>());
-                        }
+                    public void onItems(List<Child> items, boolean complete) {
+                        listener.onSongs(items, complete);
                     }
 
                     @Override
-                    public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
-                        Log.d("ArtistSync", "Error getting artist info: " + t.getMessage());
-                        callback.onSongsCollected(new ArrayList<>());
+                    public void onFailure(IOException e) {
+                        listener.onSongs(new ArrayList<>(), true);
                     }
-                });
-    }
+                }));
+            }
 
-    private void fetchAllAlbumSongsWithCallback(List<AlbumID3> albums, ArtistSongsCallback callback) {
-        if (albums == null || albums.isEmpty()) {
-            Log.d("ArtistSync", "No albums to process");
-            callback.onSongsCollected(new ArrayList<>());
-            return;
-        }
+            @Override
+            public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
+                Log.d("ArtistRepository", "Error getting artist info: " + t.getMessage());
+                load.finish(() -> listener.onSongs(new ArrayList<>(), true));
+            }
+        });
 
-        List<Child> allSongs = new ArrayList<>();
-        AtomicInteger remainingAlbums = new AtomicInteger(albums.size());
-        Log.d("ArtistSync", "Processing " + albums.size() + " albums");
-        
-        for (AlbumID3 album : albums) {
-            Log.d("ArtistSync", "Getting tracks for album: " + album.getName());
-            MutableLiveData<List<Child>> albumTracks = albumRepository.getAlbumTracks(album.getId());
-            albumTracks.observeForever(songs -> {
-                Log.d("ArtistSync", "Got " + (songs != null ? songs.size() : 0) + " songs from album");
-                if (songs != null) {
-                    allSongs.addAll(songs);
-                }
-                albumTracks.removeObservers(null);
-                
-                int remaining = remainingAlbums.decrementAndGet();
-                Log.d("ArtistSync", "Remaining albums: " + remaining);
-                
-                if (remaining == 0) {
-                    Log.d("ArtistSync", "All albums processed. Total songs: " + allSongs.size());
-                    callback.onSongsCollected(allSongs);
-                }
-            });
-        }
+        return load;
     }
 
     public interface ArtistSongsCallback {
         void onSongsCollected(List<Child> songs);
     }
 
+    public interface ArtistSongsListener {
+        /**
+         * Songs of the albums that arrived since the last call; {@code complete} is set on
+         * the last call. Called on the main thread.
+         */
+        void onSongs(List<Child> songs, boolean complete);
+    }
+
+    /**
+     * The artist request, then the album loads it starts; cancelling stops whichever is running.
+     */
+    private static final class ArtistSongsLoad implements PagedFetcher.Handle {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private Call<ApiResponse> artistCall;
+        private PagedFetcher.Handle albumsLoad;
+        private boolean cancelled = false;
+
+        synchronized void setArtistCall(Call<ApiResponse> call) {
+            artistCall = call;
+        }
+
+        void start(Supplier<PagedFetcher.Handle> albumsLoadStarter) {
+            synchronized (this) {
+                if (!cancelled) albumsLoad = albumsLoadStarter.get();
+            }
+            started.countDown();
+        }
+
+        void finish(Runnable onFinished) {
+            synchronized (this) {
+                if (!cancelled) onFinished.run();
+            }
+            started.countDown();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                cancelled = true;
+                if (artistCall != null) artistCall.cancel();
+                if (albumsLoad != null) albumsLoad.cancel();
+            }
+            started.countDown();
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            started.await();
+            PagedFetcher.Handle load;
+            synchronized (this) {
+                load = albumsLoad;
+            }
+            if (load != null) load.await();
+        }
+    }
+
     public MutableLiveData<List<ArtistID3>> getStarredArtists(boolean random, int size) {
         MutableLiveData<List<ArtistID3>> starredArtists = new MutableLiveData<>(new ArrayList<>());
 
@@ -293,53 +351,6 @@ public class ArtistRepository {
         return new SongRepository().getInstantMix(artist.getId(), SeedType.ARTIST, count);
     }
 
-    public MutableLiveData<List<Child>> getRandomSong(ArtistID3 artist, int count) {
-        MutableLiveData<List<Child>> randomSongs = new MutableLiveData<>();
-
-        App.getSubsonicClientInstance(false)
-                .getBrowsingClient()
-                .getArtist(artist.getId())
-                .enqueue(new Callback<ApiResponse>() {
-                    @Override
-                    public void onResponse(@NonNull Call<ApiResponse> call, @NonNull Response<ApiResponse> response) {
-                        if (response.isSuccessful() && response.body() != null &&
-                                response.body().getSubsonicResponse().getArtist() != null &&
-                                response.body().getSubsonicResponse().getArtist().getAlbums() != null) {
-
-                            List<AlbumID3> albums = response.body().getSubsonicResponse().getArtist().getAlbums();
-                            Log.d("ArtistRepository", "Got albums directly: " + albums.size());
-                            if (albums.isEmpty()) {
-                                Log.d("ArtistRepository", "No albums found in artist response");
-                                return;
-                            }
-
-                            Collections.shuffle(albums);
-                            int[] counts = albums.stream().mapToInt(AlbumID3::getSongCount).toArray();
-                            Arrays.parallelPrefix(counts, Integer::sum);
-                            int albumLimit = 0;
-                            int multiplier = 4; // get more than the limit so we can shuffle them
-                            while (albumLimit < albums.size() && counts[albumLimit] < count * multiplier)
-                                albumLimit++;
-                            Log.d("ArtistRepository", String.format("Retaining %d/%d albums", albumLimit, albums.size()));
-
-                            fetchAllAlbumSongsWithCallback(albums.stream().limit(albumLimit).collect(Collectors.toList()), songs -> {
-                                Collections.shuffle(songs);
-                                randomSongs.setValue(songs.stream().limit(count).collect(Collectors.toList()));
-                            });
-                        } else {
-                            Log.d("ArtistRepository", "Failed to get artist info");
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
-                        Log.d("ArtistRepository", "Error getting artist info: " + t.getMessage());
-                    }
-                });
-
-        return randomSongs;
-    }
-
     public MutableLiveData<List<Child>> getTopSongs(String artistName, int count) {
         MutableLiveData<List<Child>> topSongs = new MutableLiveData<>(new ArrayList<>());
 
@@ -1,213 +1,93 @@
 package com.cappielloantonio.tempo.repository;
 
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.LiveData;
 
 import com.cappielloantonio.tempo.database.AppDatabase;
+import com.cappielloantonio.tempo.database.DatabaseExecutor;
 import com.cappielloantonio.tempo.database.dao.DownloadDao;
-import com.cappielloantonio.tempo.database.dao.FavoriteDao;
 import com.cappielloantonio.tempo.model.Download;
-import com.cappielloantonio.tempo.model.Favorite;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 public class DownloadRepository {
-    private final DownloadDao downloadDao = AppDatabase.getInstance().downloadDao();
+    private static final String TAG = "DownloadRepository";
 
-    public LiveData<List<Download>> getLiveDownload() {
-        return downloadDao.getAll();
-    }
+    // Writes run in the order asked, so a completed download never updates a row not inserted yet
+    private static final Executor sequentialExecutor = DatabaseExecutor.newSequentialExecutor();
 
-    public List<Download> getAllDownloads() {
-        GetAllDownloadsThreadSafe getDownloads = new GetAllDownloadsThreadSafe(downloadDao);
-        Thread thread = new Thread(getDownloads);
-        thread.start();
-
-        try {
-            thread.join();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    private final DownloadDao downloadDao;
+    private final Executor dbExecutor;
 
-        return getDownloads.getDownloads();
+    public DownloadRepository() {
+        this(AppDatabase.getInstance().downloadDao(), sequentialExecutor);
     }
 
-    public Download getDownload(String id) {
-        Download download = null;
-
-        GetDownloadThreadSafe getDownloadThreadSafe = new GetDownloadThreadSafe(downloadDao, id);
-        Thread thread = new Thread(getDownloadThreadSafe);
-        thread.start();
-
-        try {
-            thread.join();
-            download = getDownloadThreadSafe.getDownload();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        return download;
+    @VisibleForTesting
+    public DownloadRepository(DownloadDao downloadDao, Executor dbExecutor) {
+        this.downloadDao = downloadDao;
+        this.dbExecutor = dbExecutor;
     }
 
-    private static class GetAllDownloadsThreadSafe implements Runnable {
-        private final DownloadDao downloadDao;
-        private List<Download> downloads;
-
-        public GetAllDownloadsThreadSafe(DownloadDao downloadDao) {
-            this.downloadDao = downloadDao;
-        }
-
-        @Override
-        public void run() {
-            downloads = downloadDao.getAllSync();
-        }
-
-        public List<Download> getDownloads() {
-            return downloads;
-        }
+    public LiveData<List<Download>> getLiveDownload() {
+        return downloadDao.getAll();
     }
 
-    private static class GetDownloadThreadSafe implements Runnable {
-        private final DownloadDao downloadDao;
-        private final String id;
-        private Download download;
-
-        public GetDownloadThreadSafe(DownloadDao downloadDao, String id) {
-            this.downloadDao = downloadDao;
-            this.id = id;
-        }
-
-        @Override
-        public void run() {
-            download = downloadDao.getOne(id);
-        }
-
-        public Download getDownload() {
-            return download;
-        }
+    public List<Download> getAllDownloads() {
+        return query(downloadDao::getAllSync);
     }
 
-    public void insert(Download download) {
-        InsertThreadSafe insert = new InsertThreadSafe(downloadDao, download);
-        Thread thread = new Thread(insert);
-        thread.start();
+    public Download getDownload(String id) {
+        return query(() -> downloadDao.getOne(id));
     }
 
-    private static class InsertThreadSafe implements Runnable {
-        private final DownloadDao downloadDao;
-        private final Download download;
-
-        public InsertThreadSafe(DownloadDao downloadDao, Download download) {
-            this.downloadDao = downloadDao;
-            this.download = download;
-        }
-
-        @Override
-        public void run() {
-            downloadDao.insert(download);
-        }
+    public void insert(Download download) {
+        dbExecutor.execute(() -> downloadDao.insert(download));
     }
 
     public void update(String id) {
-        UpdateThreadSafe update = new UpdateThreadSafe(downloadDao, id);
-        Thread thread = new Thread(update);
-        thread.start();
-    }
-
-    private static class UpdateThreadSafe implements Runnable {
-        private final DownloadDao downloadDao;
-        private final String id;
-
-        public UpdateThreadSafe(DownloadDao downloadDao, String id) {
-            this.downloadDao = downloadDao;
-            this.id = id;
-        }
-
-        @Override
-        public void run() {
-            downloadDao.update(id);
-        }
+        dbExecutor.execute(() -> downloadDao.update(id));
     }
 
+    /**
+     * Writes all rows in one transaction.
+     */
     public void insertAll(List<Download> downloads) {
-        InsertAllThreadSafe insertAll = new InsertAllThreadSafe(downloadDao, downloads);
-        Thread thread = new Thread(insertAll);
-        thread.start();
-    }
-
-    private static class InsertAllThreadSafe implements Runnable {
-        private final DownloadDao downloadDao;
-        private final List<Download> downloads;
-
-        public InsertAllThreadSafe(DownloadDao downloadDao, List<Download> downloads) {
-            this.downloadDao = downloadDao;
-            this.downloads = downloads;
-        }
-
-        @Override
-        public void run() {
-            downloadDao.insertAll(downloads);
-        }
+        dbExecutor.execute(() -> downloadDao.insertAll(downloads));
     }
 
     public void deleteAll() {
-        DeleteAllThreadSafe deleteAll = new DeleteAllThreadSafe(downloadDao);
-        Thread thread = new Thread(deleteAll);
-        thread.start();
-    }
-
-    private static class DeleteAllThreadSafe implements Runnable {
-        private final DownloadDao downloadDao;
-
-        public DeleteAllThreadSafe(DownloadDao downloadDao) {
-            this.downloadDao = downloadDao;
-        }
-
-        @Override
-        public void run() {
-            downloadDao.deleteAll();
-        }
+        dbExecutor.execute(downloadDao::deleteAll);
     }
 
     public void delete(String id) {
-        DeleteThreadSafe delete = new DeleteThreadSafe(downloadDao, id);
-        Thread thread = new Thread(delete);
-        thread.start();
+        dbExecutor.execute(() -> downloadDao.delete(id));
     }
 
     public void delete(List<String> ids) {
-        DeleteMultipleThreadSafe delete = new DeleteMultipleThreadSafe(downloadDao, ids);
-        Thread thread = new Thread(delete);
-        thread.start();
-    }
-
-    private static class DeleteThreadSafe implements Runnable {
-        private final DownloadDao downloadDao;
-        private final String id;
-
-        public DeleteThreadSafe(DownloadDao downloadDao, String id) {
-            this.downloadDao = downloadDao;
-            this.id = id;
-        }
-
-        @Override
-        public void run() {
-            downloadDao.delete(id);
-        }
+        dbExecutor.execute(() -> downloadDao.deleteByIds(ids));
     }
 
-    private static class DeleteMultipleThreadSafe implements Runnable {
-        private final DownloadDao downloadDao;
-        private final List<String> ids;
+    /**
+     * Room refuses queries on the main thread, so only those are handed to the executor;
+     * a query made from a worker, possibly one of the executor's own, runs in place.
+     */
+    private <T> T query(Supplier<T> query) {
+        if (Looper.myLooper() != Looper.getMainLooper()) return query.get();
 
-        public DeleteMultipleThreadSafe(DownloadDao downloadDao, List<String> ids) {
-            this.downloadDao = downloadDao;
-            this.ids = ids;
-        }
-
-        @Override
-        public void run() {
-            downloadDao.deleteByIds(ids);
+        try {
+            return DatabaseExecutor.submit(query::get, dbExecutor).get();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Download query failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        return null;
     }
 }
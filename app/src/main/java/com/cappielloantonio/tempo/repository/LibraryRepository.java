@@ -0,0 +1,338 @@
+package com.cappielloantonio.tempo.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+
+import com.cappielloantonio.tempo.App;
+import com.cappielloantonio.tempo.database.AppDatabase;
+import com.cappielloantonio.tempo.database.DatabaseExecutor;
+import com.cappielloantonio.tempo.database.dao.LibraryDao;
+import com.cappielloantonio.tempo.model.LibraryAlbum;
+import com.cappielloantonio.tempo.model.LibraryArtist;
+import com.cappielloantonio.tempo.model.LibraryGenre;
+import com.cappielloantonio.tempo.model.LibrarySong;
+import com.cappielloantonio.tempo.model.LibrarySyncState;
+import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+import com.cappielloantonio.tempo.subsonic.models.Genre;
+import com.cappielloantonio.tempo.subsonic.models.IndexID3;
+import com.cappielloantonio.tempo.subsonic.models.ScanStatus;
+import com.cappielloantonio.tempo.subsonic.models.SubsonicResponse;
+import com.cappielloantonio.tempo.util.Preferences;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import retrofit2.Call;
+import retrofit2.Response;
+
+/**
+ * Local mirror of the server's albums, artists and genres, plus the songs of the albums
+ * that were opened. Screens read the mirror first and ask for a {@link #sync}, which only
+ * goes over the network for what changed; see {@link LibrarySync}.
+ */
+public class LibraryRepository {
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    private static final ExecutorService syncExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tempo-library-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Callbacks of the sync in flight; one sync serves every screen that asked for it
+    private static final List<SyncCallback> syncCallbacks = new CopyOnWriteArrayList<>();
+    private static boolean syncing = false;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final LibraryDao libraryDao = AppDatabase.getInstance().libraryDao();
+
+    /**
+     * Called on the main thread.
+     */
+    public interface SyncCallback {
+        /**
+         * Part of a first sync was written; worth showing if nothing is showing yet.
+         */
+        default void onProgress() {
+        }
+
+        void onFinished(boolean changed);
+    }
+
+    public ListenableFuture<List<AlbumID3>> getAlbums() {
+        return DatabaseExecutor.submit(() -> {
+            List<LibraryAlbum> rows = libraryDao.getAlbums();
+            List<AlbumID3> albums = new ArrayList<>(rows.size());
+            for (LibraryAlbum row : rows) albums.add(row.toAlbumID3());
+            return albums;
+        });
+    }
+
+    public ListenableFuture<List<ArtistID3>> getArtists() {
+        return DatabaseExecutor.submit(() -> {
+            List<LibraryArtist> rows = libraryDao.getArtists();
+            List<ArtistID3> artists = new ArrayList<>(rows.size());
+            for (LibraryArtist row : rows) artists.add(row.toArtistID3());
+            return artists;
+        });
+    }
+
+    public ListenableFuture<List<Genre>> getGenres() {
+        return DatabaseExecutor.submit(() -> {
+            List<LibraryGenre> rows = libraryDao.getGenres();
+            List<Genre> genres = new ArrayList<>(rows.size());
+            for (LibraryGenre row : rows) genres.add(row.toGenre());
+            return genres;
+        });
+    }
+
+    public ListenableFuture<List<Child>> getAlbumSongs(String albumId) {
+        return DatabaseExecutor.submit(() -> new ArrayList<>(libraryDao.getAlbumSongs(albumId)));
+    }
+
+    public void cacheAlbumSongs(String albumId, List<Child> songs) {
+        List<LibrarySong> rows = new ArrayList<>(songs.size());
+        for (Child song : songs) rows.add(new LibrarySong(song));
+        DatabaseExecutor.getExecutor().execute(() -> libraryDao.replaceAlbumSongs(albumId, rows));
+    }
+
+    /**
+     * Syncs the mirror with the current server, or joins the sync already running.
+     */
+    public void sync(SyncCallback callback) {
+        synchronized (syncCallbacks) {
+            syncCallbacks.add(callback);
+            if (syncing) return;
+            syncing = true;
+        }
+
+        String serverId = Preferences.getServerId();
+        syncExecutor.execute(() -> {
+            LibrarySync.Result result = serverId == null
+                    ? LibrarySync.Result.SKIPPED
+                    : new LibrarySync(new ServerSource(), new DaoStore(libraryDao), System::currentTimeMillis, LibrarySync.PAGE_CONCURRENCY)
+                    .run(serverId, () -> mainHandler.post(() -> {
+                        for (SyncCallback pending : syncCallbacks) pending.onProgress();
+                    }));
+
+            List<SyncCallback> finished;
+            synchronized (syncCallbacks) {
+                finished = new ArrayList<>(syncCallbacks);
+                syncCallbacks.clear();
+                syncing = false;
+            }
+
+            boolean changed = result == LibrarySync.Result.UPDATED || result == LibrarySync.Result.ACTIVITY_UPDATED;
+
+            mainHandler.post(() -> {
+                for (SyncCallback pending : finished) pending.onFinished(changed);
+            });
+        });
+    }
+
+    /**
+     * Stops delivering to {@code callback}; the sync itself runs to the end.
+     */
+    public void removeSyncCallback(SyncCallback callback) {
+        syncCallbacks.remove(callback);
+    }
+
+    private static SubsonicResponse execute(Call<ApiResponse> call) throws IOException {
+        Response<ApiResponse> response = call.execute();
+        if (!response.isSuccessful() || response.body() == null || response.body().getSubsonicResponse() == null) {
+            throw new IOException("HTTP " + response.code());
+        }
+
+        SubsonicResponse subsonicResponse = response.body().getSubsonicResponse();
+        if (subsonicResponse.getError() != null) {
+            throw new IOException(subsonicResponse.getError().getMessage());
+        }
+        return subsonicResponse;
+    }
+
+    private static class ServerSource implements LibrarySync.Source {
+        @Override
+        public ScanStatus getScanStatus() throws IOException {
+            return execute(App.getSubsonicClientInstance(false).getMediaLibraryScanningClient().getScanStatus()).getScanStatus();
+        }
+
+        @Override
+        public long getIndexLastModified(@Nullable Long ifModifiedSince) throws IOException {
+            SubsonicResponse response = execute(App.getSubsonicClientInstance(false).getBrowsingClient().getIndexes(null, ifModifiedSince));
+            return response.getIndexes() != null ? response.getIndexes().getLastModified() : 0;
+        }
+
+        @Override
+        public List<ArtistID3> getArtists() throws IOException {
+            SubsonicResponse response = execute(App.getSubsonicClientInstance(false).getBrowsingClient().getArtists());
+
+            List<ArtistID3> artists = new ArrayList<>();
+            if (response.getArtists() != null && response.getArtists().getIndices() != null) {
+                for (IndexID3 index : response.getArtists().getIndices()) {
+                    if (index.getArtists() != null) artists.addAll(index.getArtists());
+                }
+            }
+            return artists;
+        }
+
+        @Override
+        public List<Genre> getGenres() throws IOException {
+            SubsonicResponse response = execute(App.getSubsonicClientInstance(false).getBrowsingClient().getGenres());
+            return response.getGenres() != null && response.getGenres().getGenres() != null
+                    ? response.getGenres().getGenres()
+                    : new ArrayList<>();
+        }
+
+        @Override
+        public List<AlbumID3> getAlbums(String type, int size, int offset) throws IOException {
+            SubsonicResponse response = execute(App.getSubsonicClientInstance(false).getAlbumSongListClient().getAlbumList2(type, size, offset, null, null));
+            return response.getAlbumList2() != null && response.getAlbumList2().getAlbums() != null
+                    ? response.getAlbumList2().getAlbums()
+                    : new ArrayList<>();
+        }
+
+        @Override
+        public List<AlbumID3> getArtistAlbums(String artistId) throws IOException {
+            SubsonicResponse response = execute(App.getSubsonicClientInstance(false).getBrowsingClient().getArtist(artistId));
+            return response.getArtist() != null && response.getArtist().getAlbums() != null
+                    ? response.getArtist().getAlbums()
+                    : new ArrayList<>();
+        }
+    }
+
+    private static class DaoStore implements LibrarySync.Store {
+        private final LibraryDao libraryDao;
+
+        DaoStore(LibraryDao libraryDao) {
+            this.libraryDao = libraryDao;
+        }
+
+        @Nullable
+        @Override
+        public LibrarySyncState getState(String serverId) {
+            return libraryDao.getSyncState(serverId);
+        }
+
+        @Override
+        public void putState(LibrarySyncState state) {
+            libraryDao.insertSyncState(state);
+        }
+
+        @Override
+        public void clear() {
+            libraryDao.clear();
+        }
+
+        @Override
+        public Map<String, Integer> getArtistAlbumCounts() {
+            Map<String, Integer> counts = new HashMap<>();
+            for (LibraryArtist artist : libraryDao.getArtists()) counts.put(artist.getId(), artist.getAlbumCount());
+            return counts;
+        }
+
+        @Override
+        public void replaceArtists(List<ArtistID3> artists) {
+            List<LibraryArtist> rows = new ArrayList<>(artists.size());
+            for (ArtistID3 artist : artists) rows.add(new LibraryArtist(artist));
+            libraryDao.replaceArtists(rows);
+        }
+
+        @Override
+        public void replaceGenres(List<Genre> genres) {
+            List<LibraryGenre> rows = new ArrayList<>(genres.size());
+            for (Genre genre : genres) {
+                if (genre.getGenre() != null) rows.add(new LibraryGenre(genre.getGenre(), genre.getSongCount(), genre.getAlbumCount()));
+            }
+            libraryDao.replaceGenres(rows);
+        }
+
+        @Override
+        public Set<String> getAlbumIds() {
+            return new HashSet<>(libraryDao.getAlbumIds());
+        }
+
+        @Override
+        public Set<String> getKnownAlbumIds(List<String> ids) {
+            return ids.isEmpty() ? new HashSet<>() : new HashSet<>(libraryDao.getKnownAlbumIds(ids));
+        }
+
+        @Override
+        public void upsertAlbums(List<AlbumID3> albums) {
+            libraryDao.insertAlbums(toRows(albums));
+        }
+
+        @Override
+        public void replaceArtistAlbums(String artistId, List<AlbumID3> albums) {
+            libraryDao.replaceArtistAlbums(artistId, toRows(albums));
+        }
+
+        @Override
+        public void deleteAlbums(Collection<String> ids) {
+            // Stay under SQLite's bound variable limit
+            List<String> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+            for (String id : ids) {
+                batch.add(id);
+                if (batch.size() == DELETE_BATCH_SIZE) {
+                    libraryDao.deleteAlbums(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) libraryDao.deleteAlbums(batch);
+        }
+
+        @Override
+        public Map<String, Long> getPlayedAt(List<String> ids) {
+            Map<String, Long> playedAt = new HashMap<>();
+            if (ids.isEmpty()) return playedAt;
+            for (LibraryAlbum album : libraryDao.getAlbums(ids)) {
+                playedAt.put(album.getId(), album.getPlayed() != null ? album.getPlayed().getTime() : 0);
+            }
+            return playedAt;
+        }
+
+        @Override
+        public void updatePlays(List<AlbumID3> albums) {
+            libraryDao.updatePlays(toRows(albums));
+        }
+
+        @Override
+        public Map<String, Date> getStarred() {
+            Map<String, Date> starred = new HashMap<>();
+            for (LibraryAlbum album : libraryDao.getStarredAlbums()) starred.put(album.getId(), album.getStarred());
+            return starred;
+        }
+
+        @Override
+        public int updateStarred(Map<String, Date> starred) {
+            return libraryDao.updateStarred(starred);
+        }
+
+        @Override
+        public void deleteOrphans() {
+            libraryDao.deleteOrphans();
+        }
+
+        private static List<LibraryAlbum> toRows(List<AlbumID3> albums) {
+            List<LibraryAlbum> rows = new ArrayList<>(albums.size());
+            for (AlbumID3 album : albums) rows.add(new LibraryAlbum(album));
+            return rows;
+        }
+    }
+}
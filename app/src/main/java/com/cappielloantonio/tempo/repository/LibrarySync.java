@@ -0,0 +1,410 @@
+package com.cappielloantonio.tempo.repository;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.cappielloantonio.tempo.model.LibrarySyncState;
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
+import com.cappielloantonio.tempo.subsonic.models.Genre;
+import com.cappielloantonio.tempo.subsonic.models.ScanStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Brings the local library mirror up to date with the server, doing as little as it can.
+ *
+ * The scan count and the artist index's {@code lastModified} tell whether anything changed
+ * since the last sync; if neither moved, nothing else is requested. Otherwise artists and
+ * genres are replaced (one request each), new albums are read from the "newest" list until
+ * it reaches albums the mirror already has, and the albums of every artist whose album
+ * count changed are re-read. The first sync, and one a week after that, pages through the
+ * whole album list instead, which is also what catches retagged albums.
+ *
+ * Plays and stars change without moving either marker, so every sync that isn't a full one
+ * also reads the "recent" list down to the first album whose last play the mirror already
+ * has (a play bumps the play count too), and the whole "starred" list.
+ *
+ * Blocks the calling thread on the network; a full sync requests a few album pages at once.
+ */
+final class LibrarySync {
+    private static final String TAG = "LibrarySync";
+
+    static final int PAGE_SIZE = 500;
+    static final int PAGE_CONCURRENCY = 3;
+    static final long MAX_AGE_MS = TimeUnit.HOURS.toMillis(24);
+    static final long FULL_SYNC_MAX_AGE_MS = TimeUnit.DAYS.toMillis(7);
+
+    // Past this many changed artists, paging the whole list is cheaper
+    static final int MAX_ARTIST_REFRESHES = 100;
+
+    enum Result {
+        UNCHANGED,
+        UPDATED,
+        /**
+         * Only the plays or stars of mirrored albums changed.
+         */
+        ACTIVITY_UPDATED,
+        SKIPPED,
+        FAILED
+    }
+
+    interface Source {
+        ScanStatus getScanStatus() throws IOException;
+
+        /**
+         * The artist index's lastModified, or 0 when the server didn't send one.
+         */
+        long getIndexLastModified(@Nullable Long ifModifiedSince) throws IOException;
+
+        List<ArtistID3> getArtists() throws IOException;
+
+        List<Genre> getGenres() throws IOException;
+
+        List<AlbumID3> getAlbums(String type, int size, int offset) throws IOException;
+
+        List<AlbumID3> getArtistAlbums(String artistId) throws IOException;
+    }
+
+    interface Store {
+        @Nullable
+        LibrarySyncState getState(String serverId);
+
+        void putState(LibrarySyncState state);
+
+        /**
+         * Empties the mirror, sync state included.
+         */
+        void clear();
+
+        /**
+         * Album count of every mirrored artist, as the server reported it last time.
+         */
+        Map<String, Integer> getArtistAlbumCounts();
+
+        void replaceArtists(List<ArtistID3> artists);
+
+        void replaceGenres(List<Genre> genres);
+
+        Set<String> getAlbumIds();
+
+        Set<String> getKnownAlbumIds(List<String> ids);
+
+        void upsertAlbums(List<AlbumID3> albums);
+
+        void replaceArtistAlbums(String artistId, List<AlbumID3> albums);
+
+        void deleteAlbums(Collection<String> ids);
+
+        /**
+         * Last play time of each mirrored album among {@code ids}, 0 if never played.
+         */
+        Map<String, Long> getPlayedAt(List<String> ids);
+
+        void updatePlays(List<AlbumID3> albums);
+
+        /**
+         * Star date of every starred mirrored album.
+         */
+        Map<String, Date> getStarred();
+
+        /**
+         * Sets the star date of each album, null to unstar it.
+         *
+         * @return how many mirrored albums were updated
+         */
+        int updateStarred(Map<String, Date> starred);
+
+        /**
+         * Drops albums of artists that are gone, and songs of albums that are gone.
+         */
+        void deleteOrphans();
+    }
+
+    interface Listener {
+        /**
+         * A page of albums was written during a full sync.
+         */
+        void onProgress();
+    }
+
+    private final Source source;
+    private final Store store;
+    private final LongSupplier clock;
+    private final PagedFetcher<AlbumID3> albumFetcher;
+
+    /**
+     * {@code pageConcurrency} is how many album pages a full sync requests at once.
+     */
+    LibrarySync(Source source, Store store, LongSupplier clock, int pageConcurrency) {
+        this.source = source;
+        this.store = store;
+        this.clock = clock;
+        // Writes the pages on the fetch threads, one page at a time and in order
+        this.albumFetcher = new PagedFetcher<>(pageConcurrency, Runnable::run);
+    }
+
+    Result run(String serverId, Listener listener) {
+        try {
+            return sync(serverId, listener);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Library sync failed: " + e);
+            return Result.FAILED;
+        }
+    }
+
+    private Result sync(String serverId, Listener listener) throws IOException {
+        LibrarySyncState state = store.getState(serverId);
+        if (state == null) {
+            // Never synced, or synced against another server
+            store.clear();
+            state = new LibrarySyncState(serverId, 0, -1, 0, 0, 0);
+        }
+
+        long now = clock.getAsLong();
+        boolean neverSynced = state.getSyncedAt() == 0;
+
+        // Servers that can't tell either of these still sync, on age alone
+        ScanStatus scan = null;
+        long lastModified = 0;
+        try {
+            scan = source.getScanStatus();
+            lastModified = source.getIndexLastModified(neverSynced ? null : state.getIndexLastModified());
+        } catch (IOException e) {
+            Log.d(TAG, "No change markers from the server: " + e.getMessage());
+        }
+
+        if (scan != null && scan.isScanning() && !neverSynced) {
+            Log.d(TAG, "Server is scanning, keeping the mirror as it is");
+            return Result.SKIPPED;
+        }
+
+        long scanCount = scan != null && scan.getCount() != null ? scan.getCount() : -1;
+
+        boolean full = neverSynced || now - state.getFullSyncedAt() >= FULL_SYNC_MAX_AGE_MS;
+        boolean changed = lastModified > state.getIndexLastModified() || scanCount != state.getScanCount();
+        if (!full && !changed && now - state.getSyncedAt() < MAX_AGE_MS) {
+            return syncActivity() ? Result.ACTIVITY_UPDATED : Result.UNCHANGED;
+        }
+
+        Map<String, Integer> previousCounts = store.getArtistAlbumCounts();
+        List<ArtistID3> artists = artistsWithIds(source.getArtists());
+        store.replaceArtists(artists);
+        store.replaceGenres(source.getGenres());
+
+        List<ArtistID3> changedArtists = new ArrayList<>();
+        if (!full) {
+            for (ArtistID3 artist : artists) {
+                Integer previous = previousCounts.get(artist.getId());
+                if (previous == null || previous != artist.getAlbumCount()) changedArtists.add(artist);
+            }
+            full = changedArtists.size() > MAX_ARTIST_REFRESHES;
+        }
+
+        long newestCreated;
+        if (full) {
+            newestCreated = syncAllAlbums(listener);
+            state.setFullSyncedAt(now);
+        } else {
+            newestCreated = syncNewAlbums(state.getNewestCreated());
+            for (ArtistID3 artist : changedArtists) {
+                store.replaceArtistAlbums(artist.getId(), albumsWithIds(source.getArtistAlbums(artist.getId())));
+            }
+            // A full sync's pages carry these already
+            syncActivity();
+        }
+        store.deleteOrphans();
+
+        state.setIndexLastModified(Math.max(lastModified, state.getIndexLastModified()));
+        state.setScanCount(scanCount);
+        state.setNewestCreated(Math.max(newestCreated, state.getNewestCreated()));
+        state.setSyncedAt(now);
+        store.putState(state);
+
+        Log.d(TAG, (full ? "Full" : "Incremental") + " library sync done, "
+                + artists.size() + " artists, " + changedArtists.size() + " re-read");
+        return Result.UPDATED;
+    }
+
+    /**
+     * Pages through every album, then drops the mirrored ones the server no longer has.
+     */
+    private long syncAllAlbums(Listener listener) throws IOException {
+        Set<String> seen = new HashSet<>();
+        long[] newestCreated = {0};
+        IOException[] failure = {null};
+
+        PagedFetcher.Handle handle = albumFetcher.fetchUntilShort(PAGE_SIZE,
+                page -> source.getAlbums("alphabeticalByName", PAGE_SIZE, page * PAGE_SIZE),
+                new PagedFetcher.Listener<AlbumID3>() {
+                    @Override
+                    public void onItems(List<AlbumID3> items, boolean complete) {
+                        List<AlbumID3> albums = albumsWithIds(items);
+                        store.upsertAlbums(albums);
+                        for (AlbumID3 album : albums) {
+                            seen.add(album.getId());
+                            newestCreated[0] = Math.max(newestCreated[0], created(album));
+                        }
+                        listener.onProgress();
+                    }
+
+                    @Override
+                    public void onFailure(IOException e) {
+                        failure[0] = e;
+                    }
+                });
+
+        try {
+            handle.await();
+        } catch (InterruptedException e) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        }
+        if (failure[0] != null) throw failure[0];
+
+        Set<String> removed = store.getAlbumIds();
+        removed.removeAll(seen);
+        if (!removed.isEmpty()) store.deleteAlbums(removed);
+
+        return newestCreated[0];
+    }
+
+    /**
+     * Reads the newest albums until a page reaches one the mirror already had at the last
+     * sync; everything after it is older.
+     */
+    private long syncNewAlbums(long knownNewest) throws IOException {
+        long newestCreated = 0;
+
+        for (int offset = 0; ; offset += PAGE_SIZE) {
+            List<AlbumID3> page = source.getAlbums("newest", PAGE_SIZE, offset);
+            List<AlbumID3> albums = albumsWithIds(page);
+
+            List<String> ids = new ArrayList<>(albums.size());
+            for (AlbumID3 album : albums) ids.add(album.getId());
+            Set<String> known = store.getKnownAlbumIds(ids);
+
+            boolean reachedKnown = false;
+            for (AlbumID3 album : albums) {
+                newestCreated = Math.max(newestCreated, created(album));
+                if (known.contains(album.getId()) && created(album) <= knownNewest) reachedKnown = true;
+            }
+            store.upsertAlbums(albums);
+
+            if (reachedKnown || page.size() < PAGE_SIZE) break;
+        }
+
+        return newestCreated;
+    }
+
+    /**
+     * Brings the plays and stars of the mirrored albums up to date.
+     *
+     * @return whether any of them changed
+     */
+    private boolean syncActivity() throws IOException {
+        boolean played = syncPlays();
+        boolean starred = syncStarred();
+        return played || starred;
+    }
+
+    /**
+     * Reads the recently played albums until one whose last play the mirror already has;
+     * everything after it was played before that and is unchanged too.
+     */
+    private boolean syncPlays() throws IOException {
+        boolean updated = false;
+
+        for (int offset = 0; ; offset += PAGE_SIZE) {
+            List<AlbumID3> page = source.getAlbums("recent", PAGE_SIZE, offset);
+            List<AlbumID3> albums = albumsWithIds(page);
+
+            List<String> ids = new ArrayList<>(albums.size());
+            for (AlbumID3 album : albums) ids.add(album.getId());
+            Map<String, Long> playedAt = store.getPlayedAt(ids);
+
+            List<AlbumID3> changed = new ArrayList<>();
+            boolean reachedKnown = false;
+            for (AlbumID3 album : albums) {
+                // Not mirrored yet; the next library sync brings it in with its plays
+                Long known = playedAt.get(album.getId());
+                if (known == null) continue;
+                if (known == played(album)) {
+                    reachedKnown = true;
+                    break;
+                }
+                changed.add(album);
+            }
+
+            if (!changed.isEmpty()) {
+                store.updatePlays(changed);
+                updated = true;
+            }
+
+            if (reachedKnown || page.size() < PAGE_SIZE) break;
+        }
+
+        return updated;
+    }
+
+    private boolean syncStarred() throws IOException {
+        Map<String, Date> starred = new HashMap<>();
+        for (int offset = 0; ; offset += PAGE_SIZE) {
+            List<AlbumID3> page = source.getAlbums("starred", PAGE_SIZE, offset);
+            for (AlbumID3 album : albumsWithIds(page)) {
+                if (album.getStarred() != null) starred.put(album.getId(), album.getStarred());
+            }
+            if (page.size() < PAGE_SIZE) break;
+        }
+
+        Map<String, Date> mirrored = store.getStarred();
+        Map<String, Date> changes = new HashMap<>();
+        for (Map.Entry<String, Date> entry : starred.entrySet()) {
+            if (!entry.getValue().equals(mirrored.get(entry.getKey()))) changes.put(entry.getKey(), entry.getValue());
+        }
+        for (String id : mirrored.keySet()) {
+            if (!starred.containsKey(id)) changes.put(id, null);
+        }
+
+        // Starred albums the mirror doesn't have yet update nothing
+        return !changes.isEmpty() && store.updateStarred(changes) > 0;
+    }
+
+    private static long played(AlbumID3 album) {
+        return album.getPlayed() != null ? album.getPlayed().getTime() : 0;
+    }
+
+    private static long created(AlbumID3 album) {
+        return album.getCreated() != null ? album.getCreated().getTime() : 0;
+    }
+
+    private static List<AlbumID3> albumsWithIds(@Nullable List<AlbumID3> albums) {
+        List<AlbumID3> result = new ArrayList<>();
+        if (albums == null) return result;
+        for (AlbumID3 album : albums) {
+            if (album != null && album.getId() != null) result.add(album);
+        }
+        return result;
+    }
+
+    private static List<ArtistID3> artistsWithIds(@Nullable List<ArtistID3> artists) {
+        List<ArtistID3> result = new ArrayList<>();
+        if (artists == null) return result;
+        for (ArtistID3 artist : artists) {
+            if (artist != null && artist.getId() != null) result.add(artist);
+        }
+        return result;
+    }
+}
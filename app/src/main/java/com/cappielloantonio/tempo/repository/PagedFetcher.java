@@ -0,0 +1,232 @@
+package com.cappielloantonio.tempo.repository;
+
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads a paged list with a few pages in flight at once and hands the items over in page
+ * order. Pages that arrive together are delivered as one batch, and no page is requested
+ * more than twice the concurrency ahead of the first one still missing, so a slow page
+ * holds the others back instead of letting them pile up.
+ */
+public final class PagedFetcher<T> {
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    // Page requests block on the network; every fetch caps how many of them it runs at once
+    private static final ExecutorService networkExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tempo-page-fetch-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public interface Source<T> {
+        /**
+         * Runs on a fetch thread and may block.
+         */
+        List<T> fetch(int page) throws IOException;
+    }
+
+    public interface Listener<T> {
+        /**
+         * The items of the pages that arrived since the last call, in page order;
+         * {@code complete} is set on the last call.
+         */
+        void onItems(List<T> items, boolean complete);
+
+        /**
+         * A page failed; nothing is delivered after this.
+         */
+        default void onFailure(IOException e) {
+        }
+    }
+
+    public interface Handle {
+        /**
+         * Stops requesting pages and drops everything not delivered yet.
+         */
+        void cancel();
+
+        /**
+         * Blocks until the last items were handed to the delivery executor, a page failed or
+         * the fetch was cancelled.
+         */
+        void await() throws InterruptedException;
+    }
+
+    private final Executor fetchExecutor;
+    private final Executor deliveryExecutor;
+    private final int concurrency;
+
+    /**
+     * {@code deliveryExecutor} must run tasks in the order they were submitted.
+     */
+    PagedFetcher(int concurrency, Executor deliveryExecutor) {
+        this(networkExecutor, deliveryExecutor, concurrency);
+    }
+
+    PagedFetcher(Executor fetchExecutor, Executor deliveryExecutor, int concurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency < 1");
+        this.fetchExecutor = fetchExecutor;
+        this.deliveryExecutor = deliveryExecutor;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Fetches pages {@code 0} to {@code pageCount - 1}.
+     */
+    Handle fetch(int pageCount, Source<T> source, Listener<T> listener) {
+        Job job = new Job(pageCount - 1, 0, source, listener);
+        job.start();
+        return job;
+    }
+
+    /**
+     * Fetches pages until one has fewer than {@code pageSize} items. The first page is
+     * fetched alone, so a short list costs one request; after that, at most
+     * {@code concurrency - 1} pages past the end are requested and thrown away.
+     */
+    Handle fetchUntilShort(int pageSize, Source<T> source, Listener<T> listener) {
+        Job job = new Job(Integer.MAX_VALUE - 1, pageSize, source, listener);
+        job.start();
+        return job;
+    }
+
+    private final class Job implements Handle {
+        private final Source<T> source;
+        private final Listener<T> listener;
+        private final int pageSize;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile boolean cancelled = false;
+
+        // All guarded by this
+        private final Map<Integer, List<T>> arrived = new HashMap<>();
+        private int lastPage;
+        private int nextToRequest = 0;
+        private int nextToDeliver = 0;
+        private int inFlight = 0;
+        private boolean probing;
+        private boolean finished = false;
+
+        Job(int lastPage, int pageSize, Source<T> source, Listener<T> listener) {
+            this.lastPage = lastPage;
+            this.pageSize = pageSize;
+            this.source = source;
+            this.listener = listener;
+            this.probing = pageSize > 0;
+        }
+
+        void start() {
+            synchronized (this) {
+                if (lastPage < 0) {
+                    finished = true;
+                    deliver(Collections.emptyList(), true);
+                    done.countDown();
+                    return;
+                }
+            }
+            launch();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (finished) return;
+                finished = true;
+                cancelled = true;
+                arrived.clear();
+            }
+            done.countDown();
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            done.await();
+        }
+
+        private void launch() {
+            List<Integer> pages = new ArrayList<>();
+            synchronized (this) {
+                while (!finished
+                        && nextToRequest <= lastPage
+                        && inFlight < concurrency
+                        && nextToRequest < nextToDeliver + 2 * concurrency
+                        && !(probing && nextToRequest > 0)) {
+                    pages.add(nextToRequest++);
+                    inFlight++;
+                }
+            }
+            for (int page : pages) fetchExecutor.execute(() -> run(page));
+        }
+
+        private void run(int page) {
+            List<T> items = null;
+            IOException error = null;
+            if (!cancelled) {
+                try {
+                    items = source.fetch(page);
+                } catch (IOException e) {
+                    error = e;
+                } catch (RuntimeException e) {
+                    error = new IOException(e);
+                }
+            }
+            onPageDone(page, items != null ? items : Collections.emptyList(), error);
+            launch();
+        }
+
+        private synchronized void onPageDone(int page, List<T> items, @Nullable IOException error) {
+            inFlight--;
+            if (finished) return;
+
+            if (error != null) {
+                finished = true;
+                arrived.clear();
+                deliveryExecutor.execute(() -> {
+                    if (!cancelled) listener.onFailure(error);
+                });
+                done.countDown();
+                return;
+            }
+
+            if (pageSize > 0) {
+                if (page == 0) probing = false;
+                if (items.size() < pageSize) lastPage = Math.min(lastPage, page);
+            }
+            if (page <= lastPage) arrived.put(page, items);
+
+            List<T> batch = new ArrayList<>();
+            while (nextToDeliver <= lastPage && arrived.containsKey(nextToDeliver)) {
+                batch.addAll(arrived.remove(nextToDeliver));
+                nextToDeliver++;
+            }
+
+            boolean complete = nextToDeliver > lastPage;
+            if (!batch.isEmpty() || complete) deliver(batch, complete);
+            if (complete) {
+                // Pages requested past the end are dropped when they come back
+                finished = true;
+                arrived.clear();
+                done.countDown();
+            }
+        }
+
+        private void deliver(List<T> batch, boolean complete) {
+            List<T> items = Collections.unmodifiableList(batch);
+            deliveryExecutor.execute(() -> {
+                if (!cancelled) listener.onItems(items, complete);
+            });
+        }
+    }
+}
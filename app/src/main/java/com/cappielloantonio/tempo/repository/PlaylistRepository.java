@@ -14,20 +14,27 @@ import androidx.media3.common.util.UnstableApi;
 import com.cappielloantonio.tempo.App;
 import com.cappielloantonio.tempo.R;
 import com.cappielloantonio.tempo.database.AppDatabase;
+import com.cappielloantonio.tempo.database.DatabaseExecutor;
 import com.cappielloantonio.tempo.database.dao.PlaylistDao;
 import com.cappielloantonio.tempo.database.dao.PinnedPlaylistDao;
 import com.cappielloantonio.tempo.database.dao.PlaylistSongDao;
 import com.cappielloantonio.tempo.model.PinnedPlaylist;
 import com.cappielloantonio.tempo.model.PlaylistSong;
+import com.cappielloantonio.tempo.model.PlaylistSongSync;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.subsonic.models.Playlist;
 import com.cappielloantonio.tempo.subsonic.models.SubsonicResponse;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import retrofit2.Call;
@@ -162,45 +169,53 @@ public class PlaylistRepository {
 
     public MutableLiveData<List<Child>> getPlaylistSongs(String id) {
         MutableLiveData<List<Child>> listLivePlaylistSongs = new MutableLiveData<>();
+        Handler mainHandler = new Handler(Looper.getMainLooper());
 
-        App.getSubsonicClientInstance(false)
-                .getPlaylistClient()
-                .getPlaylist(id)
-                .enqueue(new Callback<ApiResponse>() {
-                    @Override
-                    public void onResponse(@NonNull Call<ApiResponse> call, @NonNull Response<ApiResponse> response) {
-                        if (response.isSuccessful() && response.body() != null) {
-                            SubsonicResponse sr = response.body().getSubsonicResponse();
-                            if (sr.getPlaylist() != null) {
-                                List<Child> songs = sr.getPlaylist().getEntries();
-                                if (songs == null) {
-                                    songs = new ArrayList<>();
+        // Cached songs show right away; the server answer replaces them when it arrives
+        StaleWhileRevalidate.load(
+                () -> readCachedPlaylistSongs(id),
+                (onFresh, onFailed) -> App.getSubsonicClientInstance(false)
+                        .getPlaylistClient()
+                        .getPlaylist(id)
+                        .enqueue(new Callback<ApiResponse>() {
+                            @Override
+                            public void onResponse(@NonNull Call<ApiResponse> call, @NonNull Response<ApiResponse> response) {
+                                if (response.isSuccessful() && response.body() != null) {
+                                    SubsonicResponse sr = response.body().getSubsonicResponse();
+                                    if (sr.getPlaylist() != null) {
+                                        List<Child> songs = sr.getPlaylist().getEntries();
+                                        if (songs == null) {
+                                            songs = new ArrayList<>();
+                                        }
+                                        onFresh.accept(songs);
+                                        cachePlaylistSongs(sr.getPlaylist(), songs);
+                                    } else if (sr.getError() != null && sr.getError().getCode() != null && sr.getError().getCode() == 70) {
+                                        // Subsonic Standard Error Code 70: The requested data was not found.
+                                        handleMissingPlaylist(id, null);
+                                        onFresh.accept(null);
+                                    } else {
+                                        onFailed.run();
+                                    }
+                                } else {
+                                    onFailed.run();
                                 }
-                                listLivePlaylistSongs.setValue(songs);
-                                cachePlaylistSongs(sr.getPlaylist(), songs);
-                            } else if (sr.getError() != null && sr.getError().getCode() != null && sr.getError().getCode() == 70) {
-                                // Subsonic Standard Error Code 70: The requested data was not found.
-                                handleMissingPlaylist(id, null);
-                                listLivePlaylistSongs.setValue(null);
-                            } else {
-                                listLivePlaylistSongs.setValue(null);
                             }
-                        } else {
-                            listLivePlaylistSongs.setValue(null);
-                        }
-                    }
 
-                    @Override
-                    public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
-                        fetchCachedPlaylistSongs(id, listLivePlaylistSongs);
-                    }
-                });
+                            @Override
+                            public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
+                                // Cached songs, if any, stay
+                                onFailed.run();
+                            }
+                        }),
+                DatabaseExecutor.getExecutor(),
+                mainHandler::post,
+                listLivePlaylistSongs::setValue);
 
         return listLivePlaylistSongs;
     }
 
     private void cachePlaylistSongs(Playlist playlist, List<Child> songs) {
-        new Thread(() -> {
+        DatabaseExecutor.getExecutor().execute(() -> {
             String playlistId = playlist.getId();
             // playlist_song has a foreign key to playlist.id, so the playlist row must
             // exist before its songs are inserted. The full-list path caches playlists via
@@ -209,53 +224,75 @@ public class PlaylistRepository {
             // Insert before the early-return dedup checks so the row is ensured even when
             // the songs are already cached. See issue #729.
             playlistDao.insertIfAbsent(playlist);
-            List<PlaylistSong> cached = playlistSongDao.getSongsForPlaylistSync(playlistId);
-            if (songs == null || songs.isEmpty()) {
-                if (cached != null && !cached.isEmpty()) {
-                    playlistSongDao.deleteForPlaylist(playlistId);
-                    android.util.Log.d("PlaylistRepository", "Cleared songs for playlist " + playlistId);
-                }
+
+            List<String> ids = new ArrayList<>(songs.size());
+            for (Child child : songs) ids.add(child.getId());
+
+            long changed = playlist.getChanged() != null ? playlist.getChanged().getTime() : 0;
+            PlaylistSongSync sync = new PlaylistSongSync(playlistId, changed, hashIds(ids));
+
+            // The count guards against songs deleted elsewhere while the sync row stayed
+            PlaylistSongSync previous = playlistSongDao.getSync(playlistId);
+            if (sync.equals(previous) && playlistSongDao.countForPlaylist(playlistId) == new HashSet<>(ids).size()) {
+                android.util.Log.d("PlaylistRepository", "Songs for playlist " + playlistId + " unchanged.");
                 return;
             }
 
-            // Simple check: compare sizes
-            if (cached != null && cached.size() == songs.size()) {
-                // If sizes match, assume no change for now to avoid expensive deep equality check
-                // TODO it would be better to check update/create dates if possible then do actual song id comparison
-                android.util.Log.d("PlaylistRepository", "Songs for playlist " + playlistId + " already cached (size match).");
-                return;
+            Map<String, PlaylistSong> cachedById = new HashMap<>();
+            for (PlaylistSong cached : playlistSongDao.getSongsForPlaylistSync(playlistId)) {
+                cachedById.put(cached.getId(), cached);
             }
 
-            List<PlaylistSong> playlistSongs = new ArrayList<>();
-            for (Child child : songs) {
-                playlistSongs.add(new PlaylistSong(playlistId, child));
+            List<PlaylistSong> upserts = new ArrayList<>();
+            for (int i = 0; i < songs.size(); i++) {
+                PlaylistSong row = new PlaylistSong(playlistId, songs.get(i));
+                row.setPosition(i);
+                if (!row.equals(cachedById.remove(row.getId()))) {
+                    upserts.add(row);
+                }
             }
-            playlistSongDao.deleteForPlaylist(playlistId);
-            playlistSongDao.insertAll(playlistSongs);
-            android.util.Log.d("PlaylistRepository", "Cached " + playlistSongs.size() + " songs for playlist " + playlistId);
-        }).start();
+
+            // Whatever was not matched is no longer in the playlist
+            List<String> removedIds = new ArrayList<>(cachedById.keySet());
+            playlistSongDao.applyChanges(playlistId, removedIds, upserts, sync);
+            android.util.Log.d("PlaylistRepository", "Synced playlist " + playlistId + ": "
+                    + upserts.size() + " written, " + removedIds.size() + " removed.");
+        });
     }
 
-    private void fetchCachedPlaylistSongs(String playlistId, MutableLiveData<List<Child>> liveData) {
-        new Thread(() -> {
-            List<PlaylistSong> cached = playlistSongDao.getSongsForPlaylistSync(playlistId);
-            if (cached != null && !cached.isEmpty()) {
-                List<Child> songs = new ArrayList<>();
-                for (PlaylistSong ps : cached) {
-                    Child child = new Child(ps.getId());
-                    child.setTitle(ps.getTitle());
-                    child.setArtist(ps.getArtist());
-                    child.setAlbum(ps.getAlbum());
-                    child.setTrack(ps.getTrack());
-                    child.setCoverArtId(ps.getCoverArtId());
-                    child.setDuration(ps.getDuration());
-                    child.setAlbumId(ps.getAlbumId());
-                    child.setArtistId(ps.getArtistId());
-                    songs.add(child);
-                }
-                liveData.postValue(songs);
+    private static String hashIds(List<String> ids) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (String id : ids) {
+                digest.update(String.valueOf(id).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
             }
-        }).start();
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return String.valueOf(ids.hashCode());
+        }
+    }
+
+    private List<Child> readCachedPlaylistSongs(String playlistId) {
+        List<PlaylistSong> cached = playlistSongDao.getSongsForPlaylistSync(playlistId);
+        if (cached == null || cached.isEmpty()) return null;
+
+        List<Child> songs = new ArrayList<>();
+        for (PlaylistSong ps : cached) {
+            Child child = new Child(ps.getId());
+            child.setTitle(ps.getTitle());
+            child.setArtist(ps.getArtist());
+            child.setAlbum(ps.getAlbum());
+            child.setTrack(ps.getTrack());
+            child.setCoverArtId(ps.getCoverArtId());
+            child.setDuration(ps.getDuration());
+            child.setAlbumId(ps.getAlbumId());
+            child.setArtistId(ps.getArtistId());
+            songs.add(child);
+        }
+        return songs;
     }
 
     public MutableLiveData<Playlist> getPlaylist(String id) {
@@ -3,21 +3,29 @@ package com.cappielloantonio.tempo.repository;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.cappielloantonio.tempo.App;
 import com.cappielloantonio.tempo.database.AppDatabase;
+import com.cappielloantonio.tempo.database.DatabaseExecutor;
 import com.cappielloantonio.tempo.database.dao.QueueDao;
 import com.cappielloantonio.tempo.model.Queue;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.subsonic.models.PlayQueue;
+import com.cappielloantonio.tempo.util.QueueOrderUtil;
+import com.google.common.util.concurrent.ListenableFuture;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import retrofit2.Call;
@@ -26,7 +34,11 @@ import retrofit2.Response;
 
 public class QueueRepository {
     private static final String TAG = "QueueRepository";
-    private static final ExecutorService dbExecutor = Executors.newSingleThreadExecutor();
+    private static final Executor dbExecutor = DatabaseExecutor.newSequentialExecutor();
+
+    // Multiset of the ids in the queue table, only written from dbExecutor
+    private static final Map<String, Integer> queuedIds = new ConcurrentHashMap<>();
+    private static volatile boolean queuedIdsLoaded = false;
 
     private final QueueDao queueDao = AppDatabase.getInstance().queueDao();
 
@@ -34,24 +46,41 @@ public class QueueRepository {
         return queueDao.getAll();
     }
 
-    public List<Child> getMedia() {
-        List<Child> media = new ArrayList<>();
-
-        GetMediaThreadSafe getMedia = new GetMediaThreadSafe(queueDao);
-        Thread thread = new Thread(getMedia);
-        thread.start();
+    public ListenableFuture<List<Child>> getMedia() {
+        return DatabaseExecutor.submit(() -> toChildren(queueDao.getAllSimple()), dbExecutor);
+    }
 
-        try {
-            thread.join();
-            media = getMedia.getMedia().stream()
-                    .map(Child.class::cast)
-                    .collect(Collectors.toList());
+    /**
+     * Reads the rows around the last played one, at most {@code behind} before and
+     * {@code ahead} after it, together with the ordered ids of the whole queue.
+     */
+    public ListenableFuture<QueueWindow> getMediaWindow(int behind, int ahead) {
+        return DatabaseExecutor.submit(() -> {
+            int count = queueDao.count();
+            if (count == 0) return new QueueWindow(Collections.emptyList(), 0, Collections.emptyList(), 0, 0L);
+
+            int lastIndex = Math.max(0, Math.min(queueDao.getLastPlayedPosition(), count - 1));
+            Queue lastPlayed = queueDao.getLastPlayed();
+            long lastPosition = lastPlayed != null ? Math.max(0L, lastPlayed.getPlayingChanged()) : 0L;
+
+            int start = Math.max(0, lastIndex - behind);
+            int end = Math.min(count, lastIndex + ahead + 1);
+
+            return new QueueWindow(
+                    queueDao.getIdsInRange(0, count),
+                    start,
+                    toChildren(queueDao.getRange(start, end - start)),
+                    lastIndex - start,
+                    lastPosition);
+        }, dbExecutor);
+    }
 
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    public ListenableFuture<List<Child>> getMediaRange(int position, int count) {
+        return DatabaseExecutor.submit(() -> toChildren(queueDao.getRange(position, count)), dbExecutor);
+    }
 
-        return media;
+    private static List<Child> toChildren(List<Queue> rows) {
+        return rows.stream().map(Child.class::cast).collect(Collectors.toList());
     }
 
     public MutableLiveData<PlayQueue> getPlayQueue() {
@@ -110,195 +139,216 @@ public class QueueRepository {
     }
 
     public void insert(Child media, boolean reset, int afterIndex) {
-        dbExecutor.execute(() -> {
-            List<Queue> mediaList = new ArrayList<>();
+        Queue queueItem = new Queue(media);
 
-            if (!reset) {
-                mediaList = queueDao.getAllSimple();
+        dbExecutor.execute(() -> {
+            List<Queue> toInsert = Collections.singletonList(queueItem);
+
+            if (reset) {
+                queueDao.replaceQueue(toInsert);
+                resetIndex(toInsert);
+            } else {
+                loadIndex();
+                queueDao.insertAt(afterIndex, toInsert);
+                addToIndex(toInsert);
             }
+        });
+    }
 
-            Queue queueItem = new Queue(media);
-            mediaList.add(afterIndex, queueItem);
+    public void insertAll(List<Child> toAdd, boolean reset, int afterIndex) {
+        List<Child> toAddCopy = new ArrayList<>(toAdd);
 
-            for (int i = 0; i < mediaList.size(); i++) {
-                mediaList.get(i).setTrackOrder(i);
+        dbExecutor.execute(() -> {
+            if (reset) {
+                List<Queue> media = toAddCopy.stream().map(Queue::new).collect(Collectors.toList());
+                QueueOrderUtil.renumber(media);
+                queueDao.replaceQueue(media);
+                resetIndex(media);
+                return;
             }
 
-            queueDao.replaceQueue(mediaList);
+            loadIndex();
+
+            Set<String> added = new HashSet<>();
+            List<Queue> filteredToAdd = toAddCopy.stream()
+                    .filter(child -> child != null && !isQueued(child.getId()) && added.add(child.getId()))
+                    .map(Queue::new)
+                    .collect(Collectors.toList());
+
+            queueDao.insertAt(afterIndex, filteredToAdd);
+            addToIndex(filteredToAdd);
         });
     }
 
-    private boolean isMediaInQueue(List<Queue> queue, Child media) {
-        if (queue == null || media == null) return false;
-        return queue.stream().anyMatch(queueItem ->
-                queueItem != null && media.getId() != null &&
-                        queueItem.getId().equals(media.getId())
-        );
-    }
+    /**
+     * Stores the items at the given position exactly as given, duplicates included, for
+     * callers that put the very same items into the player and dedup them there.
+     */
+    public void insertAt(int index, List<Child> media) {
+        List<Queue> toInsert = media.stream().map(Queue::new).collect(Collectors.toList());
 
-    public void insertAll(List<Child> toAdd, boolean reset, int afterIndex) {
         dbExecutor.execute(() -> {
-            List<Queue> media = new ArrayList<>();
-
-            if (!reset) {
-                media = queueDao.getAllSimple();
-            }
+            loadIndex();
+            queueDao.insertAt(index, toInsert);
+            addToIndex(toInsert);
+        });
+    }
 
-            final List<Queue> finalMedia = media;
-            List<Child> toAddCopy = new ArrayList<>(toAdd);
-            List<Child> filteredToAdd = toAddCopy.stream()
-                    .filter(child -> !isMediaInQueue(finalMedia, child))
-                    .collect(Collectors.toList());
+    public void move(int from, int to) {
+        dbExecutor.execute(() -> queueDao.move(from, to));
+    }
 
-            for (int i = 0; i < filteredToAdd.size(); i++) {
-                Queue queueItem = new Queue(filteredToAdd.get(i));
-                media.add(afterIndex + i, queueItem);
-            }
+    public void replaceRange(int fromIndex, List<Child> media) {
+        List<Queue> items = media.stream().map(Queue::new).collect(Collectors.toList());
 
-            for (int i = 0; i < media.size(); i++) {
-                media.get(i).setTrackOrder(i);
-            }
+        dbExecutor.execute(() -> {
+            loadIndex();
+            List<String> replaced = queueDao.getIdsInRange(fromIndex, items.size());
+            if (!queueDao.replaceRange(fromIndex, items)) return;
 
-            queueDao.replaceQueue(media);
+            removeFromIndex(replaced);
+            addToIndex(items);
         });
     }
 
     public void delete(int position) {
-        dbExecutor.execute(() -> queueDao.delete(position));
+        deleteRange(position, position + 1);
     }
 
     public void deleteAll() {
-        dbExecutor.execute(queueDao::deleteAll);
+        dbExecutor.execute(() -> {
+            queueDao.deleteAll();
+            resetIndex(Collections.emptyList());
+        });
     }
 
-    public int count() {
-        int count = 0;
-
-        CountThreadSafe countThread = new CountThreadSafe(queueDao);
-        Thread thread = new Thread(countThread);
-        thread.start();
-
-        try {
-            thread.join();
-            count = countThread.getCount();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    /**
+     * Drops the candidates whose id is already in the persisted queue, using the in-memory id
+     * index. Returns null while the index has not been loaded yet.
+     */
+    @Nullable
+    public List<Child> excludeQueued(List<Child> candidates) {
+        if (!queuedIdsLoaded) {
+            dbExecutor.execute(this::loadIndex);
+            return null;
         }
 
-        return count;
-    }
-
-    public void setLastPlayedTimestamp(String id) {
-        dbExecutor.execute(() -> queueDao.setLastPlay(id, System.currentTimeMillis()));
+        return candidates.stream()
+                .filter(child -> child != null && !isQueued(child.getId()))
+                .collect(Collectors.toList());
     }
 
-    public void setPlayingPausedTimestamp(String id, long ms) {
-        dbExecutor.execute(() -> queueDao.setPlayingChanged(id, ms));
+    private static boolean isQueued(String id) {
+        return id != null && queuedIds.containsKey(id);
     }
 
-    public int getLastPlayedMediaIndex() {
-        int index = 0;
-
-        GetLastPlayedMediaThreadSafe getLastPlayedMediaThreadSafe = new GetLastPlayedMediaThreadSafe(queueDao);
-        Thread thread = new Thread(getLastPlayedMediaThreadSafe);
-        thread.start();
+    private void loadIndex() {
+        if (queuedIdsLoaded) return;
 
-        try {
-            thread.join();
-            Queue lastMediaPlayed = getLastPlayedMediaThreadSafe.getQueueItem();
-            if (lastMediaPlayed != null) {
-                index = lastMediaPlayed.getTrackOrder();
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        queuedIds.clear();
+        for (String id : queueDao.getIds()) {
+            queuedIds.merge(id, 1, Integer::sum);
         }
-
-        return index;
+        queuedIdsLoaded = true;
     }
 
-    public long getLastPlayedMediaTimestamp() {
-        long timestamp = 0;
+    private static void resetIndex(List<Queue> media) {
+        queuedIds.clear();
+        addToIndex(media);
+        queuedIdsLoaded = true;
+    }
 
-        GetLastPlayedMediaThreadSafe getLastPlayedMediaThreadSafe = new GetLastPlayedMediaThreadSafe(queueDao);
-        Thread thread = new Thread(getLastPlayedMediaThreadSafe);
-        thread.start();
+    private static void addToIndex(List<Queue> media) {
+        for (Queue item : media) {
+            queuedIds.merge(item.getId(), 1, Integer::sum);
+        }
+    }
 
-        try {
-            thread.join();
-            Queue lastMediaPlayed = getLastPlayedMediaThreadSafe.getQueueItem();
-            if (lastMediaPlayed != null) {
-                timestamp = lastMediaPlayed.getPlayingChanged();
-            }
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    private static void removeFromIndex(List<String> ids) {
+        for (String id : ids) {
+            queuedIds.computeIfPresent(id, (key, count) -> count > 1 ? count - 1 : null);
         }
+    }
 
-        return timestamp;
+    public ListenableFuture<Integer> count() {
+        return DatabaseExecutor.submit(queueDao::count, dbExecutor);
     }
 
-    private static class GetMediaThreadSafe implements Runnable {
-        private final QueueDao queueDao;
-        private List<Queue> media;
+    public void setLastPlayedTimestamp(String id) {
+        dbExecutor.execute(() -> queueDao.setLastPlay(id, System.currentTimeMillis()));
+    }
 
-        public GetMediaThreadSafe(QueueDao queueDao) {
-            this.queueDao = queueDao;
-        }
+    public void setPlayingPausedTimestamp(String id, long ms) {
+        dbExecutor.execute(() -> queueDao.setPlayingChanged(id, ms));
+    }
 
-        @Override
-        public void run() {
-            media = queueDao.getAllSimple();
-        }
+    public ListenableFuture<Integer> getLastPlayedMediaIndex() {
+        return DatabaseExecutor.submit(queueDao::getLastPlayedPosition, dbExecutor);
+    }
 
-        public List<Queue> getMedia() {
-            return media;
-        }
+    public ListenableFuture<Long> getLastPlayedMediaTimestamp() {
+        return DatabaseExecutor.submit(() -> {
+            Queue lastMediaPlayed = queueDao.getLastPlayed();
+            return lastMediaPlayed != null ? lastMediaPlayed.getPlayingChanged() : 0L;
+        }, dbExecutor);
     }
 
-    private static class CountThreadSafe implements Runnable {
-        private final QueueDao queueDao;
-        private int count = 0;
+    public void deleteRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex >= toIndex) return;
 
-        public CountThreadSafe(QueueDao queueDao) {
-            this.queueDao = queueDao;
-        }
+        dbExecutor.execute(() -> {
+            loadIndex();
+            removeFromIndex(queueDao.getIdsInRange(fromIndex, toIndex - fromIndex));
+            queueDao.deleteRange(fromIndex, toIndex - fromIndex);
+        });
+    }
 
-        @Override
-        public void run() {
-            count = queueDao.count();
+    /**
+     * A slice of the stored queue plus the ids of every row, all read in one go so the
+     * remaining rows can later be checked against it.
+     */
+    public static class QueueWindow {
+        private final List<String> ids;
+        private final int start;
+        private final List<Child> media;
+        private final int lastIndex;
+        private final long lastPosition;
+
+        QueueWindow(List<String> ids, int start, List<Child> media, int lastIndex, long lastPosition) {
+            this.ids = ids;
+            this.start = start;
+            this.media = media;
+            this.lastIndex = lastIndex;
+            this.lastPosition = lastPosition;
         }
 
-        public int getCount() {
-            return count;
+        /**
+         * Ids of the whole queue, in order.
+         */
+        public List<String> getIds() {
+            return ids;
         }
-    }
 
-    private static class GetLastPlayedMediaThreadSafe implements Runnable {
-        private final QueueDao queueDao;
-        private Queue lastMediaPlayed;
-
-        public GetLastPlayedMediaThreadSafe(QueueDao queueDao) {
-            this.queueDao = queueDao;
+        /**
+         * Queue position of the first row in {@link #getMedia()}.
+         */
+        public int getStart() {
+            return start;
         }
 
-        @Override
-        public void run() {
-            lastMediaPlayed = queueDao.getLastPlayed();
+        public List<Child> getMedia() {
+            return media;
         }
 
-        public Queue getQueueItem() {
-            return lastMediaPlayed;
+        /**
+         * Index of the last played row within {@link #getMedia()}.
+         */
+        public int getLastIndex() {
+            return lastIndex;
         }
-    }
 
-    public void deleteRange(int fromIndex, int toIndex) {
-        dbExecutor.execute(() -> {
-            List<Queue> media = queueDao.getAllSimple();
-            if (fromIndex < 0 || toIndex > media.size() || fromIndex >= toIndex) return;
-            media.subList(fromIndex, toIndex).clear();
-            for (int i = 0; i < media.size(); i++) {
-                media.get(i).setTrackOrder(i);
-            }
-            queueDao.replaceQueue(media);
-        });
+        public long getLastPosition() {
+            return lastPosition;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,117 @@
+package com.cappielloantonio.tempo.repository;
+
+import android.util.Log;
+
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Picks up to {@code count} random songs of an artist, no more than a fair share from any one
+ * album. The share of the first albums to arrive goes out right away, so playback can start;
+ * the rest goes out once every picked album is in, shuffled together so the albums mix.
+ * Albums too short for their share are made up for from the songs the others left over.
+ */
+final class RandomSongPick implements ArtistRepository.ArtistSongsListener {
+    private static final String TAG = "RandomSongPick";
+
+    // Picks albums holding this many times the songs asked for, so each one gives a few
+    static final int ALBUM_SONGS_MULTIPLIER = 4;
+
+    private final int count;
+    private final Random random;
+    private final ArtistRepository.ArtistSongsListener listener;
+
+    private final List<Child> picked = new ArrayList<>();
+    private final List<Child> leftOver = new ArrayList<>();
+    private int perAlbum;
+    private int remaining;
+    private boolean started = false;
+
+    RandomSongPick(int count, Random random, ArtistRepository.ArtistSongsListener listener) {
+        this.count = count;
+        this.random = random;
+        this.listener = listener;
+        this.perAlbum = count;
+        this.remaining = count;
+    }
+
+    /**
+     * Shuffles the albums and keeps the first ones that hold enough songs between them.
+     */
+    List<AlbumID3> pickAlbums(List<AlbumID3> albums) {
+        albums = new ArrayList<>(albums);
+        Collections.shuffle(albums, random);
+
+        int songs = 0;
+        int albumLimit = 0;
+        while (albumLimit < albums.size() && songs < count * ALBUM_SONGS_MULTIPLIER) {
+            Integer songCount = albums.get(albumLimit).getSongCount();
+            songs += songCount != null ? songCount : 0;
+            albumLimit++;
+        }
+        Log.d(TAG, String.format("Retaining %d/%d albums", albumLimit, albums.size()));
+
+        perAlbum = albumLimit > 0 ? (count + albumLimit - 1) / albumLimit : count;
+        return albums.subList(0, albumLimit);
+    }
+
+    @Override
+    public void onSongs(List<Child> songs, boolean complete) {
+        List<Child> batch = new ArrayList<>();
+        for (List<Child> albumSongs : byAlbum(songs).values()) {
+            Collections.shuffle(albumSongs, random);
+            int share = Math.min(perAlbum, albumSongs.size());
+            batch.addAll(albumSongs.subList(0, share));
+            leftOver.addAll(albumSongs.subList(share, albumSongs.size()));
+        }
+
+        if (!started && !batch.isEmpty() && !complete) {
+            started = true;
+            Collections.shuffle(batch, random);
+            deliver(batch, false);
+            return;
+        }
+
+        picked.addAll(batch);
+        if (!complete) return;
+
+        // Too few from the fair shares: top up from what the albums had beyond theirs
+        if (picked.size() < remaining) {
+            Collections.shuffle(leftOver, random);
+            picked.addAll(leftOver.subList(0, Math.min(leftOver.size(), remaining - picked.size())));
+        }
+        Collections.shuffle(picked, random);
+        deliver(picked, true);
+    }
+
+    private void deliver(List<Child> songs, boolean complete) {
+        List<Child> capped = new ArrayList<>(songs.subList(0, Math.min(remaining, songs.size())));
+        remaining -= capped.size();
+        if (complete) {
+            listener.onSongs(capped, true);
+        } else if (!capped.isEmpty()) {
+            listener.onSongs(capped, false);
+        }
+    }
+
+    private static Map<String, List<Child>> byAlbum(List<Child> songs) {
+        Map<String, List<Child>> albums = new LinkedHashMap<>();
+        for (Child song : songs) {
+            String albumId = song.getAlbumId() != null ? song.getAlbumId() : "";
+            List<Child> albumSongs = albums.get(albumId);
+            if (albumSongs == null) {
+                albumSongs = new ArrayList<>();
+                albums.put(albumId, albumSongs);
+            }
+            albumSongs.add(song);
+        }
+        return albums;
+    }
+}
@@ -0,0 +1,47 @@
+package com.cappielloantonio.tempo.repository;
+
+import com.cappielloantonio.tempo.database.AppDatabase;
+import com.cappielloantonio.tempo.database.DatabaseExecutor;
+import com.cappielloantonio.tempo.database.dao.ReplayGainCacheDao;
+import com.cappielloantonio.tempo.model.ReplayGain;
+import com.cappielloantonio.tempo.model.ReplayGainCache;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tag-extracted ReplayGain values, persisted per server and song so they survive the
+ * service being killed. Server-provided values are not stored: they come with every
+ * song response anyway.
+ */
+public class ReplayGainRepository {
+    private final ReplayGainCacheDao replayGainCacheDao = AppDatabase.getInstance().replayGainCacheDao();
+
+    public ListenableFuture<Map<String, ReplayGain>> getGains(String serverId, List<String> songIds) {
+        return DatabaseExecutor.submit(() -> {
+            Map<String, ReplayGain> gains = new HashMap<>();
+            for (ReplayGainCache cached : replayGainCacheDao.getAll(serverId, songIds)) {
+                gains.put(cached.getSongId(), new ReplayGain(
+                        cached.getTrackGain(),
+                        cached.getAlbumGain(),
+                        cached.getTrackPeak(),
+                        cached.getAlbumPeak()));
+            }
+            return gains;
+        });
+    }
+
+    public void insert(String serverId, String songId, ReplayGain gain) {
+        ReplayGainCache cached = new ReplayGainCache(
+                serverId,
+                songId,
+                gain.getTrackGain(),
+                gain.getAlbumGain(),
+                gain.getTrackPeak(),
+                gain.getAlbumPeak(),
+                System.currentTimeMillis());
+        DatabaseExecutor.getExecutor().execute(() -> replayGainCacheDao.insert(cached));
+    }
+}
@@ -0,0 +1,317 @@
+package com.cappielloantonio.tempo.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import com.cappielloantonio.tempo.App;
+import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+import com.cappielloantonio.tempo.subsonic.models.SearchResult3;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Runs the search screen's requests. Suggestions are debounced while typing, and every
+ * new query (suggestion or search) supersedes the previous one: its scheduled work is
+ * dropped, its in-flight calls are cancelled and nothing more is delivered for it.
+ * Suggestions and top results come from the on-device index first and only go to the
+ * server when it has too little. The "all songs" result is paged in the background,
+ * a few pages at a time, and delivered in order as the pages arrive.
+ */
+public class SearchEngine {
+    private static final long SUGGESTION_DEBOUNCE_MS = 300;
+    private static final int SUGGESTION_COUNT = 5;
+    private static final int TOP_RESULT_COUNT = 20;
+    private static final int SONG_PAGE_SIZE = 500;
+    private static final int SONG_PAGE_CONCURRENCY = 3;
+
+    public interface Source {
+        Call<ApiResponse> search3(String query, int songCount, int songOffset, int albumCount, int albumOffset, int artistCount, int artistOffset);
+    }
+
+    public interface LocalIndex {
+        /**
+         * Called off the main thread; never null.
+         */
+        SearchResult3 search(String query, int limit);
+    }
+
+    public interface Listener<T> {
+        void onResult(T result);
+    }
+
+    public interface SongsListener {
+        /**
+         * Songs found so far, growing with every page; {@code complete} is set on the last one.
+         */
+        void onSongs(List<Child> songs, boolean complete);
+    }
+
+    private final Source source;
+    private final LocalIndex localIndex;
+    private final Executor deliveryExecutor;
+    private final long debounceMs;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService pagingExecutor;
+
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Set<Call<ApiResponse>> inFlight = new HashSet<>();
+    private ScheduledFuture<?> pendingSuggestion;
+    private PagedFetcher.Handle songFetch;
+
+    // Delivers under the fetch's lock, which keeps pages in order for the snapshots
+    private final PagedFetcher<Child> songFetcher = new PagedFetcher<>(SONG_PAGE_CONCURRENCY, Runnable::run);
+
+    public SearchEngine() {
+        this((query, songCount, songOffset, albumCount, albumOffset, artistCount, artistOffset) ->
+                        App.getSubsonicClientInstance(false)
+                                .getSearchingClient()
+                                .search3(query, songCount, songOffset, albumCount, albumOffset, artistCount, artistOffset),
+                SearchIndex.getInstance(),
+                new Handler(Looper.getMainLooper())::post,
+                SUGGESTION_DEBOUNCE_MS);
+    }
+
+    SearchEngine(Source source, Executor deliveryExecutor, long debounceMs) {
+        this(source, (query, limit) -> new SearchResult3(), deliveryExecutor, debounceMs);
+    }
+
+    SearchEngine(Source source, LocalIndex localIndex, Executor deliveryExecutor, long debounceMs) {
+        this.source = source;
+        this.localIndex = localIndex;
+        this.deliveryExecutor = deliveryExecutor;
+        this.debounceMs = debounceMs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> newThread(runnable, "tempo-search-debounce"));
+        this.pagingExecutor = Executors.newSingleThreadExecutor(runnable -> newThread(runnable, "tempo-search-paging"));
+    }
+
+    /**
+     * Fetches suggestions for {@code query} once the input has been quiet for the
+     * debounce delay. Local matches are delivered at once; the server is only asked
+     * when there are fewer of them than suggestions to show, and its answers are
+     * added after them.
+     */
+    public void suggest(String query, Listener<List<String>> listener) {
+        int myGeneration = supersede();
+        synchronized (this) {
+            pendingSuggestion = scheduler.schedule(() -> {
+                List<String> local = toSuggestions(localIndex.search(query, SUGGESTION_COUNT));
+                if (!local.isEmpty()) deliver(myGeneration, () -> listener.onResult(local));
+                if (local.size() >= SUGGESTION_COUNT) return;
+
+                enqueue(myGeneration,
+                        source.search3(query, SUGGESTION_COUNT, 0, SUGGESTION_COUNT, 0, SUGGESTION_COUNT, 0),
+                        result -> listener.onResult(merge(local, toSuggestions(result))));
+            }, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Fetches the top artists, albums and songs for {@code query} and streams every
+     * matching song, page by page, to {@code songsListener}. The top results come from
+     * the local index when it has any.
+     */
+    public void search(String query, Listener<SearchResult3> topResultsListener, SongsListener songsListener) {
+        int myGeneration = supersede();
+
+        pagingExecutor.execute(() -> {
+            topResults(myGeneration, query, topResultsListener);
+            pageSongs(myGeneration, query, songsListener);
+        });
+    }
+
+    /**
+     * Drops all scheduled and in-flight work without starting anything new.
+     */
+    public void cancel() {
+        supersede();
+    }
+
+    public void release() {
+        cancel();
+        scheduler.shutdownNow();
+        pagingExecutor.shutdownNow();
+    }
+
+    private int supersede() {
+        int myGeneration = generation.incrementAndGet();
+        List<Call<ApiResponse>> calls;
+        synchronized (this) {
+            if (pendingSuggestion != null) {
+                pendingSuggestion.cancel(false);
+                pendingSuggestion = null;
+            }
+            if (songFetch != null) {
+                songFetch.cancel();
+                songFetch = null;
+            }
+            calls = new ArrayList<>(inFlight);
+            inFlight.clear();
+        }
+        for (Call<ApiResponse> call : calls) call.cancel();
+        return myGeneration;
+    }
+
+    private boolean isCurrent(int myGeneration) {
+        return generation.get() == myGeneration;
+    }
+
+    /**
+     * Registers the call so a later query can cancel it; returns false if this
+     * generation was superseded in the meantime.
+     */
+    private boolean track(int myGeneration, Call<ApiResponse> call) {
+        synchronized (this) {
+            if (!isCurrent(myGeneration)) return false;
+            inFlight.add(call);
+            return true;
+        }
+    }
+
+    private void untrack(Call<ApiResponse> call) {
+        synchronized (this) {
+            inFlight.remove(call);
+        }
+    }
+
+    private void enqueue(int myGeneration, Call<ApiResponse> call, Listener<SearchResult3> listener) {
+        if (!track(myGeneration, call)) return;
+
+        call.enqueue(new Callback<ApiResponse>() {
+            @Override
+            public void onResponse(@NonNull Call<ApiResponse> call, @NonNull Response<ApiResponse> response) {
+                untrack(call);
+                if (!response.isSuccessful() || response.body() == null) return;
+                SearchResult3 result = response.body().getSubsonicResponse().getSearchResult3();
+                deliver(myGeneration, () -> listener.onResult(result));
+            }
+
+            @Override
+            public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
+                untrack(call);
+            }
+        });
+    }
+
+    private void topResults(int myGeneration, String query, Listener<SearchResult3> listener) {
+        if (!isCurrent(myGeneration)) return;
+
+        SearchResult3 local = localIndex.search(query, TOP_RESULT_COUNT);
+        if (!isEmpty(local)) {
+            deliver(myGeneration, () -> listener.onResult(local));
+            return;
+        }
+
+        enqueue(myGeneration,
+                source.search3(query, TOP_RESULT_COUNT, 0, TOP_RESULT_COUNT, 0, TOP_RESULT_COUNT, 0),
+                listener);
+    }
+
+    private void pageSongs(int myGeneration, String query, SongsListener listener) {
+        List<Child> songs = new ArrayList<>();
+
+        PagedFetcher.Handle handle = songFetcher.fetchUntilShort(SONG_PAGE_SIZE, page -> {
+            Call<ApiResponse> call = source.search3(query, SONG_PAGE_SIZE, page * SONG_PAGE_SIZE, 0, 0, 0, 0);
+            if (!track(myGeneration, call)) throw new IOException("Superseded");
+
+            try {
+                Response<ApiResponse> response = call.execute();
+                if (response.isSuccessful() && response.body() != null) {
+                    SearchResult3 result = response.body().getSubsonicResponse().getSearchResult3();
+                    if (result != null && result.getSongs() != null) return result.getSongs();
+                }
+                return Collections.emptyList();
+            } finally {
+                untrack(call);
+            }
+        }, new PagedFetcher.Listener<Child>() {
+            @Override
+            public void onItems(List<Child> items, boolean complete) {
+                songs.addAll(items);
+                deliverSongs(myGeneration, songs, complete, listener);
+            }
+
+            @Override
+            public void onFailure(IOException e) {
+                // Cancelled by a newer query, or a network error: stop either way
+                deliverSongs(myGeneration, songs, true, listener);
+            }
+        });
+
+        synchronized (this) {
+            if (isCurrent(myGeneration)) {
+                songFetch = handle;
+                return;
+            }
+        }
+        handle.cancel();
+    }
+
+    private void deliverSongs(int myGeneration, List<Child> songs, boolean complete, SongsListener listener) {
+        List<Child> snapshot = Collections.unmodifiableList(new ArrayList<>(songs));
+        deliver(myGeneration, () -> listener.onSongs(snapshot, complete));
+    }
+
+    private void deliver(int myGeneration, Runnable runnable) {
+        if (!isCurrent(myGeneration)) return;
+        deliveryExecutor.execute(() -> {
+            if (isCurrent(myGeneration)) runnable.run();
+        });
+    }
+
+    private static List<String> toSuggestions(SearchResult3 result) {
+        LinkedHashSet<String> suggestions = new LinkedHashSet<>();
+        if (result == null) return new ArrayList<>(suggestions);
+
+        if (result.getArtists() != null) {
+            for (ArtistID3 artistID3 : result.getArtists()) suggestions.add(artistID3.getName());
+        }
+        if (result.getAlbums() != null) {
+            for (AlbumID3 albumID3 : result.getAlbums()) suggestions.add(albumID3.getName());
+        }
+        if (result.getSongs() != null) {
+            for (Child song : result.getSongs()) suggestions.add(song.getTitle());
+        }
+        return new ArrayList<>(suggestions);
+    }
+
+    private static List<String> merge(List<String> first, List<String> second) {
+        LinkedHashSet<String> merged = new LinkedHashSet<>(first);
+        merged.addAll(second);
+        return new ArrayList<>(merged);
+    }
+
+    private static boolean isEmpty(SearchResult3 result) {
+        return (result.getArtists() == null || result.getArtists().isEmpty())
+                && (result.getAlbums() == null || result.getAlbums().isEmpty())
+                && (result.getSongs() == null || result.getSongs().isEmpty());
+    }
+
+    private static Thread newThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
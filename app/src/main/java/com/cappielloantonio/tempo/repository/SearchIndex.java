@@ -0,0 +1,179 @@
+package com.cappielloantonio.tempo.repository;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.cappielloantonio.tempo.database.AppDatabase;
+import com.cappielloantonio.tempo.database.DatabaseExecutor;
+import com.cappielloantonio.tempo.database.dao.SearchIndexDao;
+import com.cappielloantonio.tempo.model.SearchItem;
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+import com.cappielloantonio.tempo.subsonic.models.SearchResult3;
+import com.cappielloantonio.tempo.util.Preferences;
+import com.cappielloantonio.tempo.util.SearchQueryUtil;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Full-text index over everything the device already has: the library mirror, downloads,
+ * cached playlists, the queue and the play history. It is built once, when it is empty, and
+ * from then on brought up to date a couple of seconds after one of those tables changes,
+ * which also drops what was removed. Created with the app, so no change goes unseen.
+ */
+public class SearchIndex implements SearchEngine.LocalIndex {
+    private static final String TAG = "SearchIndex";
+
+    private static final long REINDEX_DELAY_MS = 2000;
+
+    private static final String[] SOURCE_TABLES = {
+            "library_artist", "library_album", "library_song", "download", "playlist_song", "queue", "chronology"
+    };
+
+    private static SearchIndex instance;
+
+    private final SearchIndexDao searchIndexDao = AppDatabase.getInstance().searchIndexDao();
+    private final Executor indexExecutor = DatabaseExecutor.newSequentialExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Tables changed since the last top-up; guarded by itself
+    private final Set<String> changedTables = new HashSet<>();
+    private volatile boolean built = false;
+
+    public static synchronized SearchIndex getInstance() {
+        if (instance == null) {
+            instance = new SearchIndex();
+        }
+        return instance;
+    }
+
+    private SearchIndex() {
+        // Registering touches the database, so it stays off the calling thread too
+        indexExecutor.execute(() -> {
+            AppDatabase.getInstance().getInvalidationTracker().addObserver(new InvalidationTracker.Observer(SOURCE_TABLES) {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    onTablesChanged(tables);
+                }
+            });
+            // The index outlives the process; only a new one is built from scratch
+            if (searchIndexDao.isEmpty()) searchIndexDao.rebuild(Preferences.getServerId());
+            built = true;
+        });
+    }
+
+    /**
+     * Blocks on the database; call it off the main thread. Returns an empty result until
+     * the first build is done, or when the query has no words.
+     */
+    @Override
+    public SearchResult3 search(String query, int limit) {
+        SearchResult3 result = new SearchResult3();
+        String match = SearchQueryUtil.toMatchQuery(query);
+        if (!built || match == null) return result;
+
+        try {
+            List<ArtistID3> artists = new ArrayList<>();
+            for (SearchItem item : searchIndexDao.search(match, SearchItem.TYPE_ARTIST, limit)) artists.add(toArtist(item));
+
+            List<AlbumID3> albums = new ArrayList<>();
+            for (SearchItem item : searchIndexDao.search(match, SearchItem.TYPE_ALBUM, limit)) albums.add(toAlbum(item));
+
+            List<Child> songs = new ArrayList<>();
+            for (SearchItem item : searchIndexDao.search(match, SearchItem.TYPE_SONG, limit)) songs.add(toSong(item));
+
+            result.setArtists(artists);
+            result.setAlbums(albums);
+            result.setSongs(songs);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Local search failed: " + e);
+        }
+        return result;
+    }
+
+    private void onTablesChanged(Set<String> tables) {
+        boolean schedule;
+        synchronized (changedTables) {
+            schedule = changedTables.isEmpty();
+            changedTables.addAll(tables);
+        }
+        // A sync or a queue rewrite touches the tables many times in a row; index once after
+        if (schedule) mainHandler.postDelayed(() -> indexExecutor.execute(this::indexChanged), REINDEX_DELAY_MS);
+    }
+
+    private void indexChanged() {
+        Set<String> tables;
+        synchronized (changedTables) {
+            tables = new HashSet<>(changedTables);
+            changedTables.clear();
+        }
+
+        String server = Preferences.getServerId();
+        for (String table : tables) {
+            switch (table) {
+                case "library_artist":
+                    searchIndexDao.updateLibraryArtists();
+                    break;
+                case "library_album":
+                    searchIndexDao.updateLibraryAlbums();
+                    break;
+                case "library_song":
+                    searchIndexDao.updateLibrarySongs(server);
+                    break;
+                case "download":
+                    searchIndexDao.updateDownloads(server);
+                    break;
+                case "playlist_song":
+                    searchIndexDao.updatePlaylistSongs(server);
+                    break;
+                case "queue":
+                    searchIndexDao.updateQueue(server);
+                    break;
+                case "chronology":
+                    searchIndexDao.updateChronology(server);
+                    break;
+            }
+        }
+    }
+
+    private static ArtistID3 toArtist(SearchItem item) {
+        return new ArtistID3(item.getItemId(), item.getTitle(), item.getCoverArtId(), 0, null);
+    }
+
+    private static AlbumID3 toAlbum(SearchItem item) {
+        AlbumID3 album = new AlbumID3();
+        album.setId(item.getItemId());
+        album.setName(item.getTitle());
+        album.setArtist(item.getArtist());
+        album.setArtistId(item.getArtistId());
+        album.setCoverArtId(item.getCoverArtId());
+        album.setGenre(item.getGenre());
+        album.setDuration(item.getDuration());
+        if (item.getYear() != null) album.setYear(item.getYear());
+        return album;
+    }
+
+    private static Child toSong(SearchItem item) {
+        Child song = new Child(item.getItemId());
+        song.setTitle(item.getTitle());
+        song.setArtist(item.getArtist());
+        song.setAlbum(item.getAlbum());
+        song.setGenre(item.getGenre());
+        song.setAlbumId(item.getAlbumId());
+        song.setArtistId(item.getArtistId());
+        song.setCoverArtId(item.getCoverArtId());
+        song.setDuration(item.getDuration());
+        song.setYear(item.getYear());
+        song.setType("music");
+        return song;
+    }
+}
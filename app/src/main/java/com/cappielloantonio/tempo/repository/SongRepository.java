@@ -1,5 +1,7 @@
 package com.cappielloantonio.tempo.repository;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -11,6 +13,7 @@ import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.subsonic.models.SubsonicResponse;
 import com.cappielloantonio.tempo.util.Constants.SeedType;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -26,6 +29,11 @@ public class SongRepository {
 
     private static final String TAG = "SongRepository";
 
+    private static final int GENRE_SONG_COUNT = 500;
+    private static final int GENRE_CONCURRENCY = 3;
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
     public interface MediaCallbackInternal {
         void onSongsAvailable(List<Child> songs);
     }
@@ -365,24 +373,31 @@ public class SongRepository {
         return songsByGenre;
     }
 
-    public MutableLiveData<List<Child>> getSongsByGenres(ArrayList<String> genresId) {
-        MutableLiveData<List<Child>> songsByGenre = new MutableLiveData<>();
-        for (String id : genresId) {
-            App.getSubsonicClientInstance(false).getAlbumSongListClient().getSongsByGenre(id, 500, 0).enqueue(new Callback<ApiResponse>() {
-                @Override public void onResponse(@NonNull Call<ApiResponse> call, @NonNull Response<ApiResponse> response) {
-                    List<Child> songs = new ArrayList<>();
-                    if (response.isSuccessful() && response.body() != null && response.body().getSubsonicResponse().getSongsByGenre() != null) {
-                        List<Child> returned = response.body().getSubsonicResponse().getSongsByGenre().getSongs();
-                        if (returned != null) {
-                            songs.addAll(returned);
-                        }
-                    }
-                    songsByGenre.setValue(songs);
+    /**
+     * Fills {@code songsByGenres} with the songs of every genre, in genre order, a few
+     * genres at a time. A genre that fails is left out rather than ending the load.
+     */
+    public PagedFetcher.Handle getSongsByGenres(List<String> genresId, MutableLiveData<List<Child>> songsByGenres) {
+        List<Child> songs = new ArrayList<>();
+
+        return new PagedFetcher<Child>(GENRE_CONCURRENCY, mainHandler::post).fetch(genresId.size(), page -> {
+            try {
+                Response<ApiResponse> response = App.getSubsonicClientInstance(false)
+                        .getAlbumSongListClient()
+                        .getSongsByGenre(genresId.get(page), GENRE_SONG_COUNT, 0)
+                        .execute();
+                if (response.isSuccessful() && response.body() != null && response.body().getSubsonicResponse().getSongsByGenre() != null) {
+                    List<Child> returned = response.body().getSubsonicResponse().getSongsByGenre().getSongs();
+                    if (returned != null) return returned;
                 }
-                @Override public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {}
-            });
-        }
-        return songsByGenre;
+            } catch (IOException e) {
+                Log.w(TAG, "Loading genre " + genresId.get(page) + " failed: " + e.getMessage());
+            }
+            return Collections.emptyList();
+        }, (items, complete) -> {
+            songs.addAll(items);
+            songsByGenres.setValue(new ArrayList<>(songs));
+        });
     }
 
     public MutableLiveData<Child> getSong(String id) {
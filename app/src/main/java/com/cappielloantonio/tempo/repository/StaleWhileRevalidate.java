@@ -0,0 +1,88 @@
+package com.cappielloantonio.tempo.repository;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Emits the locally cached value as soon as it is read and the server's value once it
+ * arrives, so an unreachable server no longer delays what is already on disk. Both go
+ * through the main executor, which is what keeps a late cache read from overwriting a
+ * fresh value. When the server has no answer, null is emitted only if the cache has none
+ * either, once it has been read.
+ */
+final class StaleWhileRevalidate {
+    private static final String TAG = "StaleWhileRevalidate";
+
+    interface Network<T> {
+        /**
+         * Starts the request; either {@code onFresh} or {@code onFailed} must be called, on
+         * the main executor.
+         */
+        void fetch(Consumer<T> onFresh, Runnable onFailed);
+    }
+
+    private StaleWhileRevalidate() {
+    }
+
+    static <T> void load(Callable<T> readCache,
+                         Network<T> network,
+                         Executor ioExecutor,
+                         Executor mainExecutor,
+                         Consumer<T> sink) {
+        Load<T> load = new Load<>(sink);
+
+        ioExecutor.execute(() -> {
+            T cached = null;
+            try {
+                cached = readCache.call();
+            } catch (Exception e) {
+                Log.d(TAG, "Cache read failed: " + e);
+            }
+
+            T read = cached;
+            mainExecutor.execute(() -> load.onCached(read));
+        });
+
+        network.fetch(load::onFresh, load::onFailed);
+    }
+
+    private static final class Load<T> {
+        private final Consumer<T> sink;
+
+        private boolean cacheRead = false;
+        private boolean emitted = false;
+        private boolean fresh = false;
+        private boolean failed = false;
+
+        Load(Consumer<T> sink) {
+            this.sink = sink;
+        }
+
+        synchronized void onCached(@Nullable T cached) {
+            cacheRead = true;
+            if (fresh || (cached == null && !failed)) return;
+
+            emitted = true;
+            sink.accept(cached);
+        }
+
+        synchronized void onFresh(T value) {
+            fresh = true;
+            emitted = true;
+            sink.accept(value);
+        }
+
+        synchronized void onFailed() {
+            failed = true;
+            if (!cacheRead || emitted) return;
+
+            emitted = true;
+            sink.accept(null);
+        }
+    }
+}
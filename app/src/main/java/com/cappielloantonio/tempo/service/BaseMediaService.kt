@@ -1,5 +1,6 @@
 package com.cappielloantonio.tempo.service
 
+import android.app.ActivityManager
 import android.app.PendingIntent.FLAG_IMMUTABLE
 import android.app.PendingIntent.FLAG_UPDATE_CURRENT
 import android.app.TaskStackBuilder
@@ -17,7 +18,6 @@ import android.os.Looper
 import android.util.Log
 import androidx.media3.common.*
 import androidx.media3.common.util.UnstableApi
-import androidx.media3.exoplayer.DefaultLoadControl
 import androidx.media3.exoplayer.DefaultRenderersFactory
 import androidx.media3.exoplayer.ExoPlayer
 import androidx.media3.exoplayer.audio.AudioSink
@@ -34,7 +34,6 @@ import com.cappielloantonio.tempo.equalizer.EqualizerBackend
 import com.cappielloantonio.tempo.equalizer.EqualizerManager
 import com.cappielloantonio.tempo.equalizer.ExternalBackend
 import com.cappielloantonio.tempo.equalizer.DefaultBackend
-import com.cappielloantonio.tempo.repository.QueueRepository
 import com.cappielloantonio.tempo.ui.activity.MainActivity
 import com.cappielloantonio.tempo.util.*
 import com.cappielloantonio.tempo.util.SleepTimerManager
@@ -68,7 +67,9 @@ open class BaseMediaService : MediaLibraryService() {
     protected var sessionCallback: MediaLibrarySession.Callback? = null
     private lateinit var bitmapLoader: SyncBitmapLoader
     private lateinit var networkCallback: CustomNetworkCallback
+    private lateinit var loadControl: AdaptiveLoadControl
     private lateinit var equalizerManager: EqualizerManager
+    private val queueRestorer by lazy { QueueRestorer(this) { mediaLibrarySession.player } }
     private val widgetUpdateHandler = Handler(Looper.getMainLooper())
     private var widgetUpdateScheduled = false
     private val widgetUpdateRunnable = object : Runnable {
@@ -78,7 +79,7 @@ open class BaseMediaService : MediaLibraryService() {
                 widgetUpdateScheduled = false
                 return
             }
-            updateWidget(player)
+            updateWidgetProgress(player)
             widgetUpdateHandler.postDelayed(this, WIDGET_UPDATE_INTERVAL_MS)
         }
     }
@@ -169,29 +170,7 @@ open class BaseMediaService : MediaLibraryService() {
 
     fun restorePlayerFromQueue(player: Player) {
         if (player.mediaItemCount > 0) return
-
-        val queueRepository = QueueRepository()
-        val storedQueue = queueRepository.media
-        if (storedQueue.isNullOrEmpty()) return
-
-        val mediaItems = MappingUtil.mapMediaItems(storedQueue)
-        if (mediaItems.isEmpty()) return
-
-        val lastIndex = try {
-            queueRepository.lastPlayedMediaIndex
-        } catch (_: Exception) {
-            0
-        }.coerceIn(0, mediaItems.size - 1)
-
-        val lastPosition = try {
-            queueRepository.lastPlayedMediaTimestamp
-        } catch (_: Exception) {
-            0L
-        }.let { if (it < 0L) 0L else it }
-
-        player.setMediaItems(mediaItems, lastIndex, lastPosition)
-        player.prepare()
-        updateWidget(player)
+        queueRestorer.restore { restored -> updateWidget(restored) }
     }
 
     private var lastRadioArtist: String? = null
@@ -211,6 +190,9 @@ open class BaseMediaService : MediaLibraryService() {
                 // failure (bad URL, auth) can't spin in an endless prepare loop.
                 Log.w(TAG, "onPlayerError: ${error.errorCodeName}", error)
 
+                // Local files are looked up without touching storage; re-check the one that failed
+                ExternalAudioReader.onPlaybackFailed(player.currentMediaItem?.localConfiguration?.uri)
+
                 val recoverable = when (error.errorCode) {
                     PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_FAILED,
                     PlaybackException.ERROR_CODE_IO_NETWORK_CONNECTION_TIMEOUT,
@@ -278,6 +260,11 @@ open class BaseMediaService : MediaLibraryService() {
                 }
 
                 updateWidget(player)
+                try {
+                    ReplayGainUtil.prefetchQueueGains(player)
+                } catch (t: Throwable) {
+                    Log.w(TAG, "prefetchQueueGains failed: $t")
+                }
                 QueuePreloader.preload(this@BaseMediaService, player)
             }
 
@@ -455,6 +442,7 @@ open class BaseMediaService : MediaLibraryService() {
             override fun onPlaybackStateChanged(playbackState: Int) {
                 Log.d(TAG, "onPlaybackStateChanged")
                 super.onPlaybackStateChanged(playbackState)
+                QueuePreloader.setForegroundBuffering(playbackState == Player.STATE_BUFFERING)
                 if (!player.hasNextMediaItem() &&
                     playbackState == Player.STATE_ENDED &&
                     player.mediaMetadata.extras?.getString("type") == Constants.MEDIA_TYPE_MUSIC
@@ -606,12 +594,18 @@ open class BaseMediaService : MediaLibraryService() {
         restorePlayerFromQueue(mediaLibrarySession.player)
     }
 
+    override fun onTrimMemory(level: Int) {
+        super.onTrimMemory(level)
+        loadControl.onTrimMemory(level)
+    }
+
     override fun onGetSession(controllerInfo: ControllerInfo): MediaLibrarySession {
         return mediaLibrarySession
     }
 
     override fun onDestroy() {
         QueuePreloader.cancel()
+        queueRestorer.release()
         releaseNetworkCallback()
         equalizerManager.release(exoplayer.audioSessionId)
         ReplayGainUtil.release()
@@ -717,17 +711,17 @@ open class BaseMediaService : MediaLibraryService() {
         updateMediaItems(mediaLibrarySession.player)
     }
 
-    private fun initializeLoadControl(): DefaultLoadControl {
-        val preloadSec = Preferences.getSongPreloadBuffer().toLong()
-        val preloadMs = TimeUnit.SECONDS.toMillis(preloadSec).toInt()
-        return DefaultLoadControl.Builder()
-            .setBufferDurationsMs(
-                preloadMs,
-                preloadMs,
-                DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
-                DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS
-            )
-            .build()
+    private fun initializeLoadControl(): AdaptiveLoadControl {
+        val connectivityManager = getSystemService(ConnectivityManager::class.java)
+        val capabilities = connectivityManager.getNetworkCapabilities(connectivityManager.activeNetwork)
+        val unmetered = capabilities?.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED) == true
+        val activityManager = getSystemService(ActivityManager::class.java)
+        val heapLimitBytes = activityManager.memoryClass * 1024L * 1024L
+
+        loadControl = AdaptiveLoadControl(
+            Preferences.getSongPreloadBuffer(), unmetered, activityManager.isLowRamDevice, heapLimitBytes
+        )
+        return loadControl
     }
 
     private fun releaseNetworkCallback() {
@@ -769,6 +763,12 @@ open class BaseMediaService : MediaLibraryService() {
         )
     }
 
+    private fun updateWidgetProgress(player: Player) {
+        val position = player.currentPosition.takeIf { it != C.TIME_UNSET } ?: 0L
+        val duration = player.duration.takeIf { it != C.TIME_UNSET } ?: 0L
+        WidgetUpdateManager.updateProgress(this, position, duration)
+    }
+
     private fun scheduleWidgetUpdates() {
         if (widgetUpdateScheduled) return
         widgetUpdateHandler.postDelayed(widgetUpdateRunnable, WIDGET_UPDATE_INTERVAL_MS)
@@ -939,6 +939,8 @@ open class BaseMediaService : MediaLibraryService() {
                 enableFloatOutput: Boolean,
                 enableAudioTrackPlaybackParams: Boolean
             ): AudioSink {
+                ReplayGainUtil.getAudioProcessor()
+                    .setLimiterEnabled(Preferences.isReplayGainLimiterEnabled())
                 return DefaultAudioSink.Builder(context)
                     .setAudioProcessors(arrayOf(ReplayGainUtil.getAudioProcessor()))
                     .setEnableFloatOutput(enableFloatOutput)
@@ -965,6 +967,8 @@ open class BaseMediaService : MediaLibraryService() {
             network: Network,
             networkCapabilities: NetworkCapabilities
         ) {
+            loadControl.setUnmetered(networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED))
+
             val isWifi = networkCapabilities.hasTransport(NetworkCapabilities.TRANSPORT_WIFI)
             if (isWifi != wasWifi) {
                 wasWifi = isWifi
@@ -987,6 +991,10 @@ open class BaseMediaService : MediaLibraryService() {
         fun getPlayer(): ExoPlayer {
             return exoplayer
         }
+
+        fun getBufferHealth(): AdaptiveLoadControl.BufferHealth {
+            return loadControl.getHealth()
+        }
     }
 }
 
@@ -0,0 +1,69 @@
+package com.cappielloantonio.tempo.service;
+
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Player;
+
+import java.util.List;
+
+/**
+ * The queue of a connected player, as {@link QueueMutator} changes it.
+ */
+final class BrowserPlayerQueue implements QueueMutator.PlayerQueue<MediaItem> {
+    private final Player player;
+    private final Runnable onStart;
+
+    /**
+     * {@code onStart} runs whenever a new queue is set, before it plays.
+     */
+    BrowserPlayerQueue(Player player, Runnable onStart) {
+        this.player = player;
+        this.onStart = onStart;
+    }
+
+    @Override
+    public int size() {
+        return player.getMediaItemCount();
+    }
+
+    @Override
+    public int nextIndex() {
+        return player.getNextMediaItemIndex();
+    }
+
+    @Override
+    public int currentIndex() {
+        return player.getCurrentMediaItemIndex();
+    }
+
+    @Override
+    public String idAt(int index) {
+        return player.getMediaItemAt(index).mediaId;
+    }
+
+    /**
+     * Plays right away; the tracks added around the start track later keep it current, so
+     * nothing may seek once they arrive.
+     */
+    @Override
+    public void start(List<MediaItem> items, int startIndex) {
+        onStart.run();
+        player.setMediaItems(items, startIndex, 0);
+        player.prepare();
+        player.play();
+    }
+
+    @Override
+    public void add(int index, List<MediaItem> items) {
+        player.addMediaItems(index, items);
+    }
+
+    @Override
+    public void move(int from, int to) {
+        player.moveMediaItem(from, to);
+    }
+
+    @Override
+    public void remove(int fromIndex, int toIndex) {
+        player.removeMediaItems(fromIndex, toIndex);
+    }
+}
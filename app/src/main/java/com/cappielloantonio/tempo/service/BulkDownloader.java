@@ -0,0 +1,105 @@
+package com.cappielloantonio.tempo.service;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Queues many downloads at once without a thread, intent or transaction per item.
+ *
+ * All rows are stored with one call, made before the first batch goes out, so the write is
+ * queued ahead of the update a completed download makes to its row. The downloads are handed
+ * over in batches, one batch per turn of the main loop, so a large starred set doesn't stall
+ * the main thread while the requests are built. The rows of items that couldn't be handed
+ * over are deleted again, so they don't show as downloading forever.
+ */
+final class BulkDownloader<T> {
+    private static final String TAG = "BulkDownloader";
+
+    static final int BATCH_SIZE = 100;
+
+    interface Submitter<T> {
+        /**
+         * Hands the batch over and returns the items that couldn't be.
+         */
+        List<T> submit(List<T> batch);
+    }
+
+    interface Listener {
+        /**
+         * Called on the main executor after every batch, with {@code handled} of {@code total}
+         * downloads handed over or dropped so far, counting every list still being queued.
+         */
+        void onProgress(int handled, int total);
+    }
+
+    private final Executor mainExecutor;
+    private final Consumer<List<T>> store;
+    private final Submitter<T> submitter;
+    private final Consumer<List<T>> unstore;
+    private final int batchSize;
+    @Nullable
+    private final Listener listener;
+
+    // Only touched on the main executor
+    private int handled = 0;
+    private int total = 0;
+
+    /**
+     * {@code store} runs on the calling thread and must only queue the write, as one
+     * transaction; {@code submitter} and {@code unstore}, which deletes the rows of items
+     * that weren't handed over, run on {@code mainExecutor}.
+     */
+    BulkDownloader(Executor mainExecutor, Consumer<List<T>> store, Submitter<T> submitter, Consumer<List<T>> unstore,
+                   int batchSize, @Nullable Listener listener) {
+        this.mainExecutor = mainExecutor;
+        this.store = store;
+        this.submitter = submitter;
+        this.unstore = unstore;
+        this.batchSize = batchSize;
+        this.listener = listener;
+    }
+
+    void download(List<T> items) {
+        List<T> copy = Collections.unmodifiableList(new ArrayList<>(items));
+        if (copy.isEmpty()) return;
+
+        store.accept(copy);
+        mainExecutor.execute(() -> {
+            total += copy.size();
+            submitFrom(copy, 0);
+        });
+    }
+
+    private void submitFrom(List<T> items, int offset) {
+        int end = Math.min(items.size(), offset + batchSize);
+        List<T> batch = items.subList(offset, end);
+
+        List<T> failed;
+        try {
+            failed = submitter.submit(batch);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to queue downloads " + offset + " to " + end, e);
+            failed = batch;
+        }
+        if (!failed.isEmpty()) {
+            Log.w(TAG, failed.size() + " of " + batch.size() + " downloads not queued");
+            unstore.accept(new ArrayList<>(failed));
+        }
+
+        handled += batch.size();
+        if (listener != null) listener.onProgress(handled, total);
+        if (handled == total) {
+            handled = 0;
+            total = 0;
+        }
+
+        if (end < items.size()) mainExecutor.execute(() -> submitFrom(items, end));
+    }
+}
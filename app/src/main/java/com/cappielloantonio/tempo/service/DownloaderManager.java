@@ -3,6 +3,8 @@ package com.cappielloantonio.tempo.service;
 import static androidx.media3.common.util.Assertions.checkNotNull;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.Nullable;
 import androidx.media3.common.MediaItem;
@@ -18,10 +20,12 @@ import androidx.media3.exoplayer.offline.DownloadManager;
 import androidx.media3.exoplayer.offline.DownloadRequest;
 import androidx.media3.exoplayer.offline.DownloadService;
 
+import com.cappielloantonio.tempo.R;
 import com.cappielloantonio.tempo.repository.DownloadRepository;
 import com.cappielloantonio.tempo.util.DownloadUtil;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -31,16 +35,42 @@ public class DownloaderManager {
 
     private final Context context;
     private final DataSource.Factory dataSourceFactory;
+    private final DownloadManager downloadManager;
     private final DownloadIndex downloadIndex;
+    private final BulkDownloader<PendingDownload> bulkDownloader;
 
     private static HashMap<String, Download> downloads;
 
+    // Shown in the download notification while a large list is being queued
+    @Nullable
+    private static volatile String queueingMessage;
+
+    private static final class PendingDownload {
+        final MediaItem mediaItem;
+        final com.cappielloantonio.tempo.model.Download download;
+
+        PendingDownload(MediaItem mediaItem, com.cappielloantonio.tempo.model.Download download) {
+            this.mediaItem = mediaItem;
+            this.download = download;
+        }
+    }
+
     public DownloaderManager(Context context, DataSource.Factory dataSourceFactory, DownloadManager downloadManager) {
         this.context = context.getApplicationContext();
         this.dataSourceFactory = dataSourceFactory;
+        this.downloadManager = downloadManager;
 
         downloads = new HashMap<>();
         downloadIndex = downloadManager.getDownloadIndex();
+        bulkDownloader = new BulkDownloader<>(
+                new Handler(Looper.getMainLooper())::post,
+                this::insertAllDatabase,
+                this::submitDownloads,
+                DownloaderManager::deletePendingDatabase,
+                BulkDownloader.BATCH_SIZE,
+                (handled, total) -> queueingMessage = handled < total
+                        ? this.context.getString(R.string.download_queueing_notification, handled, total)
+                        : null);
 
         loadDownloads();
     }
@@ -77,9 +107,41 @@ public class DownloaderManager {
     }
 
     public void download(List<MediaItem> mediaItems, List<com.cappielloantonio.tempo.model.Download> downloads) {
+        List<PendingDownload> pending = new ArrayList<>(mediaItems.size());
         for (int counter = 0; counter < mediaItems.size(); counter++) {
-            download(mediaItems.get(counter), downloads.get(counter));
+            MediaItem mediaItem = mediaItems.get(counter);
+            com.cappielloantonio.tempo.model.Download download = downloads.get(counter);
+            download.setDownloadUri(mediaItem.requestMetadata.mediaUri.toString());
+            pending.add(new PendingDownload(mediaItem, download));
+        }
+
+        bulkDownloader.download(pending);
+    }
+
+    /**
+     * Hands a batch straight to the download manager and returns the items whose request
+     * couldn't be built. Only the last request goes as an intent, which starts the service
+     * if it isn't running yet.
+     */
+    private List<PendingDownload> submitDownloads(List<PendingDownload> batch) {
+        List<PendingDownload> failed = new ArrayList<>();
+        DownloadRequest last = null;
+        for (PendingDownload item : batch) {
+            DownloadRequest request;
+            try {
+                request = buildDownloadRequest(item.mediaItem);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to build download request for " + item.mediaItem.mediaId, e);
+                failed.add(item);
+                continue;
+            }
+
+            if (last != null) downloadManager.addDownload(last);
+            last = request;
         }
+
+        if (last != null) DownloadService.sendAddDownload(context, DownloaderService.class, last, false);
+        return failed;
     }
 
     public void remove(MediaItem mediaItem, com.cappielloantonio.tempo.model.Download download) {
@@ -111,6 +173,11 @@ public class DownloaderManager {
         }
     }
 
+    @Nullable
+    public static String getQueueingMessage() {
+        return queueingMessage;
+    }
+
     public static String getDownloadNotificationMessage(String id) {
         com.cappielloantonio.tempo.model.Download download = getDownloadRepository().getDownload(id);
         return download != null ? download.getTitle() : null;
@@ -134,10 +201,22 @@ public class DownloaderManager {
         getDownloadRepository().insert(download);
     }
 
+    private void insertAllDatabase(List<PendingDownload> pending) {
+        List<com.cappielloantonio.tempo.model.Download> rows = new ArrayList<>(pending.size());
+        for (PendingDownload item : pending) rows.add(item.download);
+        getDownloadRepository().insertAll(rows);
+    }
+
     private static void deleteDatabase(String id) {
         getDownloadRepository().delete(id);
     }
 
+    private static void deletePendingDatabase(List<PendingDownload> pending) {
+        List<String> ids = new ArrayList<>(pending.size());
+        for (PendingDownload item : pending) ids.add(item.download.getId());
+        getDownloadRepository().delete(ids);
+    }
+
     private static void deleteAllDatabase() {
         getDownloadRepository().deleteAll();
     }
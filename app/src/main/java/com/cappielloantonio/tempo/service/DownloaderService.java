@@ -47,7 +47,7 @@ public class DownloaderService extends androidx.media3.exoplayer.offline.Downloa
     @NonNull
     @Override
     protected Notification getForegroundNotification(@NonNull List<Download> downloads, @Requirements.RequirementFlags int notMetRequirements) {
-        return DownloadUtil.getDownloadNotificationHelper(this).buildProgressNotification(this, R.drawable.ic_download, null, null, downloads, notMetRequirements);
+        return DownloadUtil.getDownloadNotificationHelper(this).buildProgressNotification(this, R.drawable.ic_download, null, DownloaderManager.getQueueingMessage(), downloads, notMetRequirements);
     }
 
     private static final class TerminalStateNotificationHelper implements DownloadManager.Listener {
@@ -7,14 +7,15 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.OptIn;
+import androidx.core.content.ContextCompat;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.Observer;
 import androidx.media3.common.MediaItem;
 import androidx.media3.common.Player;
-import androidx.media3.common.Timeline;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.session.MediaBrowser;
 
+import com.cappielloantonio.tempo.App;
 import com.cappielloantonio.tempo.database.dao.QueueDao;
 import com.cappielloantonio.tempo.interfaces.MediaIndexCallback;
 import com.cappielloantonio.tempo.model.Chronology;
@@ -35,13 +36,12 @@ import com.google.common.util.concurrent.MoreExecutors;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -51,7 +51,49 @@ public class MediaManager {
     public static AtomicBoolean justStarted = new AtomicBoolean(false);
     public static AtomicBoolean continuousPlayIsRunning = new AtomicBoolean(false);
 
-    private static final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private static final QueueMutator<MediaItem> queueMutator = new QueueMutator<>(
+            new QueueMutator.StoredQueue() {
+                @Override
+                public void replace(List<Child> media) {
+                    getQueueRepository().insertAll(media, true, 0);
+                }
+
+                @Override
+                public void insertAt(int index, List<Child> media) {
+                    getQueueRepository().insertAt(index, media);
+                }
+
+                @Override
+                public void move(int from, int to) {
+                    getQueueRepository().move(from, to);
+                }
+
+                @Override
+                public void deleteRange(int fromIndex, int toIndex) {
+                    getQueueRepository().deleteRange(fromIndex, toIndex);
+                }
+
+                @Nullable
+                @Override
+                public List<Child> excludeQueued(List<Child> media) {
+                    return getQueueRepository().excludeQueued(media);
+                }
+            },
+            MappingUtil::mapMediaItem,
+            new Handler(Looper.getMainLooper())::post,
+            QueueMutator.CHUNK_SIZE);
+
+    /**
+     * Holds back queue edits while the stored queue is being restored into the player;
+     * starting a new queue runs {@code onSuperseded} instead of waiting.
+     */
+    static void holdQueueChanges(Runnable onSuperseded) {
+        queueMutator.hold(onSuperseded);
+    }
+
+    static void releaseQueueChanges() {
+        queueMutator.release();
+    }
 
     public static void registerPlaybackObserver(
             ListenableFuture<MediaBrowser> browserFuture,
@@ -155,10 +197,19 @@ public class MediaManager {
                 try {
                     if (mediaBrowserListenableFuture.isDone()) {
                         if (mediaBrowserListenableFuture.get().getMediaItemCount() < 1) {
-                            List<Child> media = getQueueRepository().getMedia();
-                            if (media != null && media.size() >= 1) {
-                                init(mediaBrowserListenableFuture, media);
-                            }
+                            Futures.addCallback(getQueueRepository().getMedia(), new FutureCallback<List<Child>>() {
+                                @Override
+                                public void onSuccess(List<Child> media) {
+                                    if (media != null && media.size() >= 1) {
+                                        init(mediaBrowserListenableFuture, media);
+                                    }
+                                }
+
+                                @Override
+                                public void onFailure(@NonNull Throwable t) {
+                                    Log.e(TAG, "Failed to read the stored queue", t);
+                                }
+                            }, ContextCompat.getMainExecutor(App.getContext()));
                         }
                     }
                 } catch (ExecutionException | InterruptedException e) {
@@ -170,58 +221,32 @@ public class MediaManager {
 
     public static void init(ListenableFuture<MediaBrowser> mediaBrowserListenableFuture, List<Child> media) {
         if (mediaBrowserListenableFuture != null) {
-            mediaBrowserListenableFuture.addListener(() -> {
+            QueueRepository queueRepository = getQueueRepository();
+            ListenableFuture<Integer> lastIndex = queueRepository.getLastPlayedMediaIndex();
+            ListenableFuture<Long> lastPosition = queueRepository.getLastPlayedMediaTimestamp();
+
+            Futures.whenAllSucceed(mediaBrowserListenableFuture, lastIndex, lastPosition).run(() -> {
                 try {
-                    if (mediaBrowserListenableFuture.isDone()) {
-                        mediaBrowserListenableFuture.get().clearMediaItems();
-                        mediaBrowserListenableFuture.get().setMediaItems(MappingUtil.mapMediaItems(media));
-                        mediaBrowserListenableFuture.get().seekTo(getQueueRepository().getLastPlayedMediaIndex(), getQueueRepository().getLastPlayedMediaTimestamp());
-                        mediaBrowserListenableFuture.get().prepare();
-                    }
-                } catch (ExecutionException | InterruptedException e) {
+                    MediaBrowser browser = Futures.getDone(mediaBrowserListenableFuture);
+                    List<MediaItem> items = MappingUtil.mapMediaItems(media);
+                    int startIndex = Math.max(0, Math.min(Futures.getDone(lastIndex), items.size() - 1));
+
+                    browser.clearMediaItems();
+                    browser.setMediaItems(items, startIndex, Futures.getDone(lastPosition));
+                    browser.prepare();
+                } catch (ExecutionException e) {
                     e.printStackTrace();
                 }
-            }, MoreExecutors.directExecutor());
+            }, ContextCompat.getMainExecutor(App.getContext()));
         }
     }
 
-    @OptIn(markerClass = UnstableApi.class)
     public static void startQueue(ListenableFuture<MediaBrowser> mediaBrowserListenableFuture, List<Child> media, int startIndex) {
         if (mediaBrowserListenableFuture != null) {
-
             mediaBrowserListenableFuture.addListener(() -> {
                 try {
                     if (mediaBrowserListenableFuture.isDone()) {
-                        final MediaBrowser browser = mediaBrowserListenableFuture.get();
-                        final List<MediaItem> items = MappingUtil.mapMediaItems(media);
-                        
-                        new Handler(Looper.getMainLooper()).post(() -> {
-                            justStarted.set(true);
-                            browser.setMediaItems(items, startIndex, 0);
-                            browser.prepare();
-
-                            Player.Listener timelineListener = new Player.Listener() {
-                                @Override
-                                public void onTimelineChanged(Timeline timeline, int reason) {
-                                    
-                                    int itemCount = browser.getMediaItemCount();
-                                    if (itemCount > 0 && startIndex >= 0 && startIndex < itemCount) {
-                                        browser.seekTo(startIndex, 0);
-                                        browser.play();
-                                        browser.removeListener(this);
-                                    } else {
-                                        Log.d(TAG, "Cannot start playback: itemCount=" + itemCount + ", startIndex=" + startIndex);
-                                    }
-                                }
-                            };
-                            
-                            browser.addListener(timelineListener);
-                        });
-
-                        backgroundExecutor.execute(() -> {
-                            Log.d(TAG, "Background: enqueuing to database");
-                            enqueueDatabase(media, true, 0);
-                        });
+                        queueMutator.start(playerQueue(mediaBrowserListenableFuture.get()), media, startIndex);
                     }
                 } catch (ExecutionException | InterruptedException e) {
                     Log.e(TAG, "Error in startQueue: " + e.getMessage(), e);
@@ -231,22 +256,7 @@ public class MediaManager {
     }
 
     public static void startQueue(ListenableFuture<MediaBrowser> mediaBrowserListenableFuture, Child media) {
-        if (mediaBrowserListenableFuture != null) {
-            mediaBrowserListenableFuture.addListener(() -> {
-                try {
-                    if (mediaBrowserListenableFuture.isDone()) {
-                        MediaBrowser browser = mediaBrowserListenableFuture.get();
-                        justStarted.set(true);
-                        browser.setMediaItem(MappingUtil.mapMediaItem(media));
-                        browser.prepare();
-                        browser.play();
-                        enqueueDatabase(media, true, 0);
-                    }
-                } catch (ExecutionException | InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }, MoreExecutors.directExecutor());
-        }
+        startQueue(mediaBrowserListenableFuture, Collections.singletonList(media), 0);
     }
 
     public static void playDownloadedMediaItem(ListenableFuture<MediaBrowser> mediaBrowserListenableFuture, MediaItem mediaItem) {
@@ -310,14 +320,7 @@ public class MediaManager {
                 try {
                     if (mediaBrowserListenableFuture.isDone()) {
                         Log.d(TAG, "enqueue");
-                        MediaBrowser browser = mediaBrowserListenableFuture.get();
-                        if (playImmediatelyAfter && browser.getNextMediaItemIndex() != -1) {
-                            enqueueDatabase(media, false, browser.getNextMediaItemIndex());
-                            browser.addMediaItems(browser.getNextMediaItemIndex(), MappingUtil.mapMediaItems(media));
-                        } else {
-                            enqueueDatabase(media, false, mediaBrowserListenableFuture.get().getMediaItemCount());
-                            mediaBrowserListenableFuture.get().addMediaItems(MappingUtil.mapMediaItems(media));
-                        }
+                        queueMutator.enqueue(playerQueue(mediaBrowserListenableFuture.get()), media, playImmediatelyAfter);
                     }
                 } catch (ExecutionException | InterruptedException e) {
                     e.printStackTrace();
@@ -327,37 +330,17 @@ public class MediaManager {
     }
 
     public static void enqueue(ListenableFuture<MediaBrowser> mediaBrowserListenableFuture, Child media, boolean playImmediatelyAfter) {
-        if (mediaBrowserListenableFuture != null) {
-            mediaBrowserListenableFuture.addListener(() -> {
-                try {
-                    if (mediaBrowserListenableFuture.isDone()) {
-                        Log.e(TAG, "enqueue");
-                        MediaBrowser browser = mediaBrowserListenableFuture.get();
-                        if (playImmediatelyAfter && browser.getNextMediaItemIndex() != -1) {
-                            enqueueDatabase(media, false, browser.getNextMediaItemIndex());
-                            browser.addMediaItem(browser.getNextMediaItemIndex(), MappingUtil.mapMediaItem(media));
-                        } else {
-                            enqueueDatabase(media, false, mediaBrowserListenableFuture.get().getMediaItemCount());
-                            mediaBrowserListenableFuture.get().addMediaItem(MappingUtil.mapMediaItem(media));
-                        }
-                    }
-                } catch (ExecutionException | InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }, MoreExecutors.directExecutor());
-        }
+        enqueue(mediaBrowserListenableFuture, Collections.singletonList(media), playImmediatelyAfter);
     }
 
     public static void shuffle(ListenableFuture<MediaBrowser> mediaBrowserListenableFuture, List<Child> media, int startIndex, int endIndex) {
         if (mediaBrowserListenableFuture != null) {
+            List<Child> shuffled = new ArrayList<>(media.subList(startIndex, endIndex + 1));
             mediaBrowserListenableFuture.addListener(() -> {
                 try {
                     if (mediaBrowserListenableFuture.isDone()) {
-                        Log.e(TAG, "shuffle");
-                        MediaBrowser browser = mediaBrowserListenableFuture.get();
-                        browser.removeMediaItems(startIndex, endIndex + 1);
-                        browser.addMediaItems(MappingUtil.mapMediaItems(media).subList(startIndex, endIndex + 1));
-                        swapDatabase(media);
+                        Log.d(TAG, "shuffle");
+                        queueMutator.replace(playerQueue(mediaBrowserListenableFuture.get()), startIndex, shuffled);
                     }
                 } catch (ExecutionException | InterruptedException e) {
                     e.printStackTrace();
@@ -371,9 +354,8 @@ public class MediaManager {
             mediaBrowserListenableFuture.addListener(() -> {
                 try {
                     if (mediaBrowserListenableFuture.isDone()) {
-                        Log.e(TAG, "swap");
-                        mediaBrowserListenableFuture.get().moveMediaItem(from, to);
-                        swapDatabase(media);
+                        Log.d(TAG, "swap");
+                        queueMutator.move(playerQueue(mediaBrowserListenableFuture.get()), from, to);
                     }
                 } catch (ExecutionException | InterruptedException e) {
                     e.printStackTrace();
@@ -387,12 +369,11 @@ public class MediaManager {
             mediaBrowserListenableFuture.addListener(() -> {
                 try {
                     if (mediaBrowserListenableFuture.isDone()) {
-                        Log.e(TAG, "remove");
-                        if (mediaBrowserListenableFuture.get().getMediaItemCount() > 1 && mediaBrowserListenableFuture.get().getCurrentMediaItemIndex() != toRemove) {
-                            mediaBrowserListenableFuture.get().removeMediaItem(toRemove);
-                            removeDatabase(media, toRemove);
-                        } else {
-                            removeDatabase(media, -1);
+                        Log.d(TAG, "remove");
+                        MediaBrowser browser = mediaBrowserListenableFuture.get();
+                        if (browser.getMediaItemCount() > 1 && browser.getCurrentMediaItemIndex() != toRemove) {
+                            media.remove(toRemove);
+                            queueMutator.remove(playerQueue(browser), toRemove, toRemove + 1);
                         }
                     }
                 } catch (ExecutionException | InterruptedException e) {
@@ -407,9 +388,9 @@ public class MediaManager {
             mediaBrowserListenableFuture.addListener(() -> {
                 try {
                     if (mediaBrowserListenableFuture.isDone()) {
-                        Log.e(TAG, "remove range");
-                        mediaBrowserListenableFuture.get().removeMediaItems(fromItem, toItem);
-                        removeRangeDatabase(media, fromItem, toItem);
+                        Log.d(TAG, "remove range");
+                        media.subList(fromItem, toItem).clear();
+                        queueMutator.remove(playerQueue(mediaBrowserListenableFuture.get()), fromItem, toItem);
                     }
                 } catch (ExecutionException | InterruptedException e) {
                     e.printStackTrace();
@@ -423,8 +404,7 @@ public class MediaManager {
             mediaBrowserListenableFuture.addListener(() -> {
                 try {
                     if (mediaBrowserListenableFuture.isDone()) {
-                        mediaBrowserListenableFuture.get().removeMediaItems(fromItem, toItem);
-                        getQueueRepository().deleteRange(fromItem, toItem);
+                        queueMutator.remove(playerQueue(mediaBrowserListenableFuture.get()), fromItem, toItem);
                     }
                 } catch (ExecutionException | InterruptedException e) {
                     e.printStackTrace();
@@ -559,6 +539,9 @@ public class MediaManager {
 
     private static List<Child> dedupAgainstQueue(List<Child> candidates,
                                                   ListenableFuture<MediaBrowser> existingBrowserFuture) {
+        List<Child> notQueued = getQueueRepository().excludeQueued(candidates);
+        if (notQueued != null) return notQueued;
+
         if (existingBrowserFuture == null) return new ArrayList<>(candidates);
 
         final MediaBrowser browser;
@@ -596,31 +579,8 @@ public class MediaManager {
         return new ChronologyRepository();
     }
 
-    private static void enqueueDatabase(List<Child> media, boolean reset, int afterIndex) {
-        getQueueRepository().insertAll(media, reset, afterIndex);
-    }
-
-    private static void enqueueDatabase(Child media, boolean reset, int afterIndex) {
-        getQueueRepository().insert(media, reset, afterIndex);
-    }
-
-    private static void swapDatabase(List<Child> media) {
-        getQueueRepository().insertAll(media, true, 0);
-    }
-
-    private static void removeDatabase(List<Child> media, int toRemove) {
-        if (toRemove != -1) {
-            media.remove(toRemove);
-            getQueueRepository().insertAll(media, true, 0);
-        }
-    }
-
-    private static void removeRangeDatabase(List<Child> media, int fromItem, int toItem) {
-        List<Child> toRemove = media.subList(fromItem, toItem);
-
-        media.removeAll(toRemove);
-
-        getQueueRepository().insertAll(media, true, 0);
+    private static QueueMutator.PlayerQueue<MediaItem> playerQueue(MediaBrowser browser) {
+        return new BrowserPlayerQueue(browser, () -> justStarted.set(true));
     }
 
     public static void clearDatabase() {
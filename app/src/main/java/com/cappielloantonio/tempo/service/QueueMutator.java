@@ -0,0 +1,484 @@
+package com.cappielloantonio.tempo.service;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.cappielloantonio.tempo.subsonic.models.Child;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Applies queue changes to the player and records each one, as the same operation, in the
+ * stored queue, so the two never drift apart.
+ *
+ * Changes run one after another on the main executor. Large additions are mapped and handed
+ * to the player in chunks, one chunk per turn of the main loop, so the first track starts
+ * before the rest of the list has been mapped and sent over binder. Every chunk is stored as
+ * an insert at the position it went to, which keeps the stored queue equal to the player's
+ * after each step. A new queue supersedes the chunks still pending for an older one.
+ *
+ * While something else is still filling the player, e.g. the restored queue, player
+ * positions don't match stored ones yet, so edits are held back until it is done.
+ */
+final class QueueMutator<T> {
+    private static final String TAG = "QueueMutator";
+
+    static final int CHUNK_SIZE = 200;
+
+    interface PlayerQueue<T> {
+        int size();
+
+        /**
+         * Index of the track played after the current one, or -1 if there is none.
+         */
+        int nextIndex();
+
+        /**
+         * Index of the track playing now, or -1 if there is none.
+         */
+        int currentIndex();
+
+        String idAt(int index);
+
+        /**
+         * Replaces the queue and starts playing at {@code startIndex}.
+         */
+        void start(List<T> items, int startIndex);
+
+        void add(int index, List<T> items);
+
+        void move(int from, int to);
+
+        void remove(int fromIndex, int toIndex);
+    }
+
+    interface StoredQueue {
+        void replace(List<Child> media);
+
+        void insertAt(int index, List<Child> media);
+
+        void move(int from, int to);
+
+        void deleteRange(int fromIndex, int toIndex);
+
+        /**
+         * Returns the tracks of {@code media} that aren't stored yet, or null when that isn't
+         * known yet.
+         */
+        @Nullable
+        List<Child> excludeQueued(List<Child> media);
+    }
+
+    private interface Step {
+        /**
+         * Runs one step of a change and returns the next one, or null when it is done.
+         */
+        @Nullable
+        Step run();
+    }
+
+    private final StoredQueue store;
+    private final Function<Child, T> mapper;
+    private final Executor mainExecutor;
+    private final int chunkSize;
+
+    private final ArrayDeque<Step> pending = new ArrayDeque<>();
+    private boolean draining = false;
+    private int generation = 0;
+    private boolean held = false;
+    @Nullable
+    private Runnable onHoldSuperseded;
+
+    QueueMutator(StoredQueue store, Function<Child, T> mapper, Executor mainExecutor, int chunkSize) {
+        this.store = store;
+        this.mapper = mapper;
+        this.mainExecutor = mainExecutor;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Replaces the queue with {@code media} and plays from {@code startIndex}. The chunk
+     * holding the start track goes first, the tracks after it next, the ones before it last.
+     */
+    void start(PlayerQueue<T> player, List<Child> media, int startIndex) {
+        List<Child> copy = new ArrayList<>(media);
+        int myGeneration;
+        Runnable superseded;
+        synchronized (this) {
+            myGeneration = ++generation;
+            superseded = onHoldSuperseded;
+            if (held) {
+                // Edits held for the old queue have nothing left to apply to
+                held = false;
+                onHoldSuperseded = null;
+                pending.clear();
+            }
+        }
+        if (superseded != null) mainExecutor.execute(superseded);
+
+        submit(() -> {
+            if (copy.isEmpty()) return null;
+
+            int first = Math.max(0, Math.min(startIndex, copy.size() - 1));
+            int end = Math.min(copy.size(), first + chunkSize);
+            Mapped<T> mapped = map(copy.subList(first, end));
+
+            player.start(mapped.items, 0);
+            store.replace(mapped.media);
+
+            return fill(myGeneration, player, copy, first, end, mapped.items.size());
+        });
+    }
+
+    /**
+     * Holds back every change until {@link #release()}. A new queue is not held back: it
+     * drops the held edits, runs {@code onSuperseded} on the main executor to stop
+     * whatever is filling the player, and starts right away.
+     */
+    void hold(Runnable onSuperseded) {
+        synchronized (this) {
+            held = true;
+            onHoldSuperseded = onSuperseded;
+        }
+    }
+
+    /**
+     * Applies the changes held back since {@link #hold(Runnable)}, in order.
+     */
+    void release() {
+        synchronized (this) {
+            if (!held) return;
+            held = false;
+            onHoldSuperseded = null;
+            if (draining || pending.isEmpty()) return;
+            draining = true;
+        }
+        mainExecutor.execute(this::drainOne);
+    }
+
+    /**
+     * Adds {@code media} at the end of the queue, or right after the current track when
+     * {@code playNext} is set. Tracks listed twice are added once. Tracks already queued, as
+     * the stored queue's id index tells, are left out when appending; to play next they are
+     * moved up instead, in the order given. Only then is the player searched for them.
+     */
+    void enqueue(PlayerQueue<T> player, List<Child> media, boolean playNext) {
+        List<Child> copy = distinct(media);
+        int myGeneration = currentGeneration();
+
+        submit(() -> {
+            // Until the index is loaded, all of them count as new
+            List<Child> notQueued = store.excludeQueued(copy);
+            Set<String> fresh = ids(notQueued != null ? notQueued : copy);
+
+            if (playNext) return placeNext(myGeneration, player, copy, fresh);
+
+            List<Child> toAdd = new ArrayList<>(copy.size());
+            for (Child child : copy) {
+                if (fresh.contains(child.getId())) toAdd.add(child);
+            }
+            return insert(myGeneration, player, toAdd, 0, player.size());
+        });
+    }
+
+    void move(PlayerQueue<T> player, int from, int to) {
+        submit(() -> {
+            int size = player.size();
+            if (from < 0 || to < 0 || from >= size || to >= size || from == to) return null;
+
+            player.move(from, to);
+            store.move(from, to);
+            return null;
+        });
+    }
+
+    void remove(PlayerQueue<T> player, int fromIndex, int toIndex) {
+        submit(() -> {
+            int to = Math.min(toIndex, player.size());
+            if (fromIndex < 0 || fromIndex >= to) return null;
+
+            player.remove(fromIndex, to);
+            store.deleteRange(fromIndex, to);
+            return null;
+        });
+    }
+
+    /**
+     * Replaces the tracks from {@code index} on with {@code media}, e.g. the same tracks
+     * in a new order.
+     */
+    void replace(PlayerQueue<T> player, int index, List<Child> media) {
+        List<Child> copy = new ArrayList<>(media);
+        int myGeneration = currentGeneration();
+
+        submit(() -> {
+            int to = Math.min(index + copy.size(), player.size());
+            if (index < 0 || index >= to) return null;
+
+            player.remove(index, to);
+            store.deleteRange(index, to);
+            return insert(myGeneration, player, copy, 0, index);
+        });
+    }
+
+    /**
+     * Adds the rest of {@code media} around the part already in the player, which holds
+     * {@code media[from, to)} as its first {@code count} items.
+     */
+    @Nullable
+    private Step fill(int myGeneration, PlayerQueue<T> player, List<Child> media, int from, int to, int count) {
+        if (to < media.size()) {
+            return () -> {
+                if (isSuperseded(myGeneration)) return null;
+
+                int end = Math.min(media.size(), to + chunkSize);
+                Mapped<T> mapped = map(media.subList(to, end));
+                add(player, count, mapped);
+                return fill(myGeneration, player, media, from, end, count + mapped.items.size());
+            };
+        }
+
+        if (from > 0) {
+            return () -> {
+                if (isSuperseded(myGeneration)) return null;
+
+                int start = Math.max(0, from - chunkSize);
+                Mapped<T> mapped = map(media.subList(start, from));
+                add(player, 0, mapped);
+                return fill(myGeneration, player, media, start, to, count + mapped.items.size());
+            };
+        }
+
+        return null;
+    }
+
+    /**
+     * Puts {@code media} in order right after the current track, or at the end if it is the
+     * last one: the queued tracks are moved there first, in one step, then the {@code fresh}
+     * ones are added between them. The track playing now stays where it is.
+     */
+    @Nullable
+    private Step placeNext(int myGeneration, PlayerQueue<T> player, List<Child> media, Set<String> fresh) {
+        int next = player.nextIndex();
+        int slot = next != -1 ? next : player.size();
+        int current = player.currentIndex();
+        Map<String, Integer> positions = positionsOf(player, media, fresh);
+
+        List<Run> runs = new ArrayList<>();
+        List<Child> run = new ArrayList<>();
+        int moved = 0;
+        int skip = 0;
+        for (Child child : media) {
+            Integer from = positions.remove(child.getId());
+            if (from == null) {
+                // New, or indexed but not in the player after all
+                run.add(child);
+                continue;
+            }
+            if (from == current) continue;
+
+            if (!run.isEmpty()) {
+                runs.add(new Run(run, skip));
+                run = new ArrayList<>();
+                skip = 0;
+            }
+
+            // Taking out a track before the slot moves the slot up by one
+            if (from < slot) slot--;
+            int to = slot + moved;
+            if (from != to) {
+                player.move(from, to);
+                store.move(from, to);
+                positions.replaceAll((id, index) -> shifted(index, from, to));
+                current = shifted(current, from, to);
+            }
+            moved++;
+            skip++;
+        }
+        if (!run.isEmpty()) runs.add(new Run(run, skip));
+
+        return insertRuns(myGeneration, player, runs, 0, slot);
+    }
+
+    /**
+     * Adds the runs one after the other from {@code index}, each after the moved tracks that
+     * go before it.
+     */
+    @Nullable
+    private Step insertRuns(int myGeneration, PlayerQueue<T> player, List<Run> runs, int run, int index) {
+        if (run >= runs.size()) return null;
+
+        Run next = runs.get(run);
+        return () -> insert(myGeneration, player, next.media, 0, index + next.skip,
+                end -> insertRuns(myGeneration, player, runs, run + 1, end));
+    }
+
+    /**
+     * Adds {@code media[offset, ...)} at {@code index}, one chunk per step.
+     */
+    @Nullable
+    private Step insert(int myGeneration, PlayerQueue<T> player, List<Child> media, int offset, int index) {
+        return insert(myGeneration, player, media, offset, index, null);
+    }
+
+    /**
+     * As {@link #insert(int, PlayerQueue, List, int, int)}, then continues with the step
+     * {@code then} returns for the index after the added tracks.
+     */
+    @Nullable
+    private Step insert(int myGeneration, PlayerQueue<T> player, List<Child> media, int offset, int index,
+                        @Nullable IntFunction<Step> then) {
+        if (isSuperseded(myGeneration)) return null;
+        if (offset >= media.size()) return then != null ? then.apply(index) : null;
+
+        int end = Math.min(media.size(), offset + chunkSize);
+        Mapped<T> mapped = map(media.subList(offset, end));
+        add(player, index, mapped);
+
+        int after = index + mapped.items.size();
+        if (end >= media.size()) return then != null ? then.apply(after) : null;
+        return () -> insert(myGeneration, player, media, end, after, then);
+    }
+
+    private void add(PlayerQueue<T> player, int index, Mapped<T> mapped) {
+        if (mapped.items.isEmpty()) return;
+        player.add(index, mapped.items);
+        store.insertAt(index, mapped.media);
+    }
+
+    private static List<Child> distinct(List<Child> media) {
+        Set<String> seen = new HashSet<>();
+        List<Child> distinct = new ArrayList<>(media.size());
+        for (Child child : media) {
+            if (child != null && seen.add(child.getId())) distinct.add(child);
+        }
+        return distinct;
+    }
+
+    private static Set<String> ids(List<Child> media) {
+        Set<String> ids = new HashSet<>();
+        for (Child child : media) ids.add(child.getId());
+        return ids;
+    }
+
+    /**
+     * Finds where the tracks of {@code media} that aren't {@code fresh} sit in the player,
+     * stopping as soon as all of them are found.
+     */
+    private static Map<String, Integer> positionsOf(PlayerQueue<?> player, List<Child> media, Set<String> fresh) {
+        Set<String> wanted = new HashSet<>();
+        for (Child child : media) {
+            if (!fresh.contains(child.getId())) wanted.add(child.getId());
+        }
+
+        Map<String, Integer> positions = new HashMap<>();
+        for (int i = 0, size = player.size(); i < size && positions.size() < wanted.size(); i++) {
+            String id = player.idAt(i);
+            if (wanted.contains(id)) positions.putIfAbsent(id, i);
+        }
+        return positions;
+    }
+
+    /**
+     * Where the track at {@code index} ends up once the one at {@code from} moved to {@code to}.
+     */
+    private static int shifted(int index, int from, int to) {
+        if (index == from) return to;
+        if (from < to && index > from && index <= to) return index - 1;
+        if (to < from && index >= to && index < from) return index + 1;
+        return index;
+    }
+
+    /**
+     * Maps the chunk, leaving out tracks that can't be mapped on both sides.
+     */
+    private Mapped<T> map(List<Child> chunk) {
+        Mapped<T> mapped = new Mapped<>(chunk.size());
+        for (Child child : chunk) {
+            T item;
+            try {
+                item = mapper.apply(child);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Skipping un-mappable song: " + (child != null ? child.getId() : "null"), e);
+                continue;
+            }
+            if (item == null) continue;
+
+            mapped.items.add(item);
+            mapped.media.add(child);
+        }
+        return mapped;
+    }
+
+    private synchronized int currentGeneration() {
+        return generation;
+    }
+
+    private synchronized boolean isSuperseded(int myGeneration) {
+        return myGeneration != generation;
+    }
+
+    private void submit(Step step) {
+        synchronized (this) {
+            pending.addLast(step);
+            if (draining || held) return;
+            draining = true;
+        }
+        mainExecutor.execute(this::drainOne);
+    }
+
+    private void drainOne() {
+        Step step;
+        synchronized (this) {
+            step = held ? null : pending.pollFirst();
+            if (step == null) {
+                draining = false;
+                return;
+            }
+        }
+
+        Step next = null;
+        try {
+            next = step.run();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Queue change failed", e);
+        }
+
+        synchronized (this) {
+            // The rest of a change goes before anything submitted in the meantime
+            if (next != null) pending.addFirst(next);
+        }
+        mainExecutor.execute(this::drainOne);
+    }
+
+    private static final class Run {
+        final List<Child> media;
+        // Moved tracks between this run and the previous one
+        final int skip;
+
+        Run(List<Child> media, int skip) {
+            this.media = media;
+            this.skip = skip;
+        }
+    }
+
+    private static final class Mapped<T> {
+        final List<T> items;
+        final List<Child> media;
+
+        Mapped(int capacity) {
+            items = new ArrayList<>(capacity);
+            media = new ArrayList<>(capacity);
+        }
+    }
+}
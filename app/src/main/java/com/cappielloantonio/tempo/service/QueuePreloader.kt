@@ -4,6 +4,8 @@ import android.content.Context
 import android.net.ConnectivityManager
 import android.net.Uri
 import android.util.Log
+import androidx.lifecycle.LiveData
+import androidx.lifecycle.MutableLiveData
 import androidx.media3.common.C
 import androidx.media3.common.Player
 import androidx.media3.common.util.UnstableApi
@@ -14,8 +16,11 @@ import com.cappielloantonio.tempo.util.Constants
 import com.cappielloantonio.tempo.util.DownloadUtil
 import com.cappielloantonio.tempo.util.Preferences
 import com.cappielloantonio.tempo.util.StreamingCacheKeyFactory
+import com.cappielloantonio.tempo.util.TranscodeSegmentCache
+import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.Executors
 import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.abs
 
 /**
  * Pre-caches the next tracks of the play queue into the streaming cache, so
@@ -26,22 +31,53 @@ import java.util.concurrent.atomic.AtomicInteger
  * Runs only when the user enabled it (settings > data), never for radio
  * streams or already-downloaded tracks, and by default only on unmetered
  * networks.
+ *
+ * Up to [MAX_CONCURRENT_WRITERS] tracks are written in parallel, nearest
+ * first, each at the full speed of the connection. While the player is
+ * buffering the current track no new track is started; tracks already being
+ * written finish first, so no writer ever waits while holding the cache.
  */
 @UnstableApi
 object QueuePreloader {
     private const val TAG = "QueuePreloader"
 
-    private val executor = Executors.newSingleThreadExecutor { runnable ->
-        Thread(runnable, "queue-preloader").apply { priority = Thread.MIN_PRIORITY }
+    /** Upper bound on tracks written at the same time. */
+    private const val MAX_CONCURRENT_WRITERS = 3
+
+    /** Longest single wait, so cancel() and resumed playback are noticed promptly. */
+    private const val MAX_WAIT_MS = 250L
+
+    private val threadCount = AtomicInteger(0)
+    private val executor = Executors.newFixedThreadPool(MAX_CONCURRENT_WRITERS) { runnable ->
+        Thread(runnable, "queue-preloader-" + threadCount.incrementAndGet()).apply {
+            priority = Thread.MIN_PRIORITY
+        }
     }
     private val generation = AtomicInteger(0)
 
+    /** Guarded by this. */
+    private val activeWriters = HashSet<CacheWriter>()
+
+    /** Target of the tasks currently queued/executing; empty when idle. */
     @Volatile
-    private var activeWriter: CacheWriter? = null
+    private var runningTargets: List<Target> = emptyList()
 
-    /** Target of the task currently queued/executing; empty when idle. */
     @Volatile
-    private var runningUris: List<Uri> = emptyList()
+    private var foregroundBuffering = false
+    private val pauseLock = Object()
+
+    private val progress = ConcurrentHashMap<String, Float>()
+    private val progressLiveData = MutableLiveData<Map<String, Float>>(emptyMap())
+
+    private data class Target(val mediaId: String, val uri: Uri)
+
+    /**
+     * Cached fraction of each upcoming track, keyed by media id. 1f means the
+     * track is fully cached and plays offline; transcodes of unknown length
+     * only show up once they complete.
+     */
+    @JvmStatic
+    fun getProgress(): LiveData<Map<String, Float>> = progressLiveData
 
     /** Must be called from the player's application thread. */
     fun preload(context: Context, player: Player) {
@@ -56,33 +92,48 @@ object QueuePreloader {
             return
         }
 
-        val uris = collectUpcomingStreamUris(appContext, player, count)
+        val targets = collectUpcomingTargets(appContext, player, count)
 
         val myGeneration: Int
         synchronized(this) {
-            // The in-flight task is already working towards exactly this target:
-            // leave it alone. preload() fires on every timeline/metadata/network
-            // event, and restarting the writer each time discards all progress on
+            // The in-flight tasks are already working towards exactly this target:
+            // leave them alone. preload() fires on every timeline/metadata/network
+            // event, and restarting the writers each time discards all progress on
             // unknown-length (transcoded) content, so the precache never finishes.
-            if (uris == runningUris) return
+            if (targets == runningTargets) return
 
             myGeneration = generation.incrementAndGet()
-            runningUris = uris
-            activeWriter?.cancel()
+            runningTargets = targets
+            activeWriters.forEach { it.cancel() }
         }
 
-        if (uris.isEmpty()) return
-
-        executor.execute {
-            for (uri in uris) {
-                if (generation.get() != myGeneration) return@execute
-                if (isFullyCached(appContext, uri)) continue
-                cacheTrack(appContext, uri, myGeneration)
-            }
-            // Clear the target so the next preload() retries tracks that failed
-            // (fully cached ones are skipped by the check above anyway).
-            synchronized(this) {
-                if (generation.get() == myGeneration) runningUris = emptyList()
+        progress.keys.retainAll(targets.map { it.mediaId }.toSet())
+        publishProgress()
+
+        if (targets.isEmpty()) return
+
+        // Targets are ordered by distance from the current item and the pool
+        // starts them first-in first-out, so the next track is always written
+        // first and the furthest one only gets a writer once a nearer one is done.
+        val pending = AtomicInteger(targets.size)
+        for (target in targets) {
+            executor.execute {
+                try {
+                    if (generation.get() != myGeneration) return@execute
+                    if (isFullyCached(appContext, target.uri)) {
+                        updateProgress(target.mediaId, 1f)
+                    } else {
+                        cacheTrack(appContext, target, myGeneration)
+                    }
+                } finally {
+                    // Clear the target so the next preload() retries tracks that failed
+                    // (fully cached ones are skipped by the check above anyway).
+                    if (pending.decrementAndGet() == 0) {
+                        synchronized(this) {
+                            if (generation.get() == myGeneration) runningTargets = emptyList()
+                        }
+                    }
+                }
             }
         }
     }
@@ -90,22 +141,36 @@ object QueuePreloader {
     fun cancel() {
         synchronized(this) {
             generation.incrementAndGet()
-            runningUris = emptyList()
-            activeWriter?.cancel()
+            runningTargets = emptyList()
+            activeWriters.forEach { it.cancel() }
+        }
+        synchronized(pauseLock) { pauseLock.notifyAll() }
+    }
+
+    /**
+     * Holds back the next track while the player itself is waiting for data, so
+     * the foreground stream gets the connection back as soon as the tracks in
+     * flight are written.
+     */
+    fun setForegroundBuffering(buffering: Boolean) {
+        if (foregroundBuffering == buffering) return
+        foregroundBuffering = buffering
+        if (!buffering) {
+            synchronized(pauseLock) { pauseLock.notifyAll() }
         }
     }
 
-    private fun collectUpcomingStreamUris(context: Context, player: Player, count: Int): List<Uri> {
+    private fun collectUpcomingTargets(context: Context, player: Player, count: Int): List<Target> {
         val timeline = player.currentTimeline
         if (timeline.isEmpty) return emptyList()
 
         val currentIndex = player.currentMediaItemIndex
         if (currentIndex == C.INDEX_UNSET) return emptyList()
 
-        val uris = ArrayList<Uri>(count)
+        val targets = ArrayList<Target>(count)
         var index = currentIndex
 
-        while (uris.size < count) {
+        while (targets.size < count) {
             index = timeline.getNextWindowIndex(index, player.repeatMode, player.shuffleModeEnabled)
             if (index == C.INDEX_UNSET || index == currentIndex) break
 
@@ -123,34 +188,51 @@ object QueuePreloader {
             val scheme = uri.scheme
             if (scheme != "http" && scheme != "https") continue
 
-            uris.add(uri)
+            targets.add(Target(mediaItem.mediaId, uri))
         }
 
-        return uris
+        return targets
     }
 
-    private fun cacheTrack(context: Context, uri: Uri, myGeneration: Int) {
+    private fun cacheTrack(context: Context, target: Target, myGeneration: Int) {
+        if (!awaitForeground(myGeneration)) return
+
+        val uri = target.uri
         val dataSpec = DataSpec.Builder().setUri(uri).build()
         val dataSource = DownloadUtil.getStreamingCacheWriterFactory(context).createDataSource()
         val cacheKey = dataSource.cacheKeyFactory.buildCacheKey(dataSpec)
 
+        // A resumable transcode segment is continued by the player with timeOffset;
+        // writing it from here would resume it with a range request instead.
+        if (TranscodeSegmentCache.isResumable(DownloadUtil.getStreamingCacheForPreload(context), cacheKey)) {
+            Log.d(TAG, "Skipping resumable transcode segment $cacheKey")
+            return
+        }
+
         // A leftover unknown-length partial from an interrupted earlier run can't
         // be resumed with a range request; drop it so this run starts clean.
         removePartialResource(context, cacheKey)
 
-        val writer = CacheWriter(dataSource, dataSpec, null, null)
+        // Runs while the writer holds the cache span, so it must never block
+        val listener = CacheWriter.ProgressListener { requestLength, bytesCached, _ ->
+            if (requestLength > 0) {
+                updateProgress(target.mediaId, bytesCached.toFloat() / requestLength)
+            }
+        }
+        val writer = CacheWriter(dataSource, dataSpec, null, listener)
 
         // Re-check the generation while holding the same lock cancel() takes:
         // otherwise a cancel() landing between the caller's generation check and
-        // this assignment would miss the writer and the stale write would run to
+        // this registration would miss the writer and the stale write would run to
         // completion.
         synchronized(this) {
             if (generation.get() != myGeneration) return
-            activeWriter = writer
+            activeWriters.add(writer)
         }
 
         try {
             writer.cache()
+            updateProgress(target.mediaId, 1f)
             Log.d(TAG, "Pre-cached $uri")
         } catch (exception: Exception) {
             Log.d(TAG, "Pre-cache aborted for $uri: $exception")
@@ -165,11 +247,38 @@ object QueuePreloader {
             }
         } finally {
             synchronized(this) {
-                if (activeWriter === writer) activeWriter = null
+                activeWriters.remove(writer)
             }
         }
     }
 
+    /** Returns false when the generation went stale while waiting. */
+    private fun awaitForeground(myGeneration: Int): Boolean {
+        synchronized(pauseLock) {
+            while (foregroundBuffering && generation.get() == myGeneration) {
+                try {
+                    pauseLock.wait(MAX_WAIT_MS)
+                } catch (exception: InterruptedException) {
+                    Thread.currentThread().interrupt()
+                    return false
+                }
+            }
+        }
+        return generation.get() == myGeneration
+    }
+
+    private fun updateProgress(mediaId: String, fraction: Float) {
+        val previous = progress[mediaId]
+        // Whole percents are plenty for the UI and keep postValue off the hot path
+        if (previous != null && fraction < 1f && abs(fraction - previous) < 0.01f) return
+        progress[mediaId] = fraction.coerceIn(0f, 1f)
+        publishProgress()
+    }
+
+    private fun publishProgress() {
+        progressLiveData.postValue(HashMap(progress))
+    }
+
     private fun isFullyCached(context: Context, uri: Uri): Boolean {
         return try {
             val cache = DownloadUtil.getStreamingCacheForPreload(context)
@@ -184,13 +293,14 @@ object QueuePreloader {
     /**
      * Same policy as StreamingCacheDataSource.close(): a resource whose total
      * length never became known is an unfinished transcode fragment that can't
-     * be safely resumed with a range request, so drop it.
+     * be safely resumed with a range request, so drop it, unless the player
+     * recorded it as a resumable time segment.
      */
     private fun removePartialResource(context: Context, cacheKey: String) {
         try {
             val cache = DownloadUtil.getStreamingCacheForPreload(context)
             val contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(cacheKey))
-            if (contentLength == C.LENGTH_UNSET.toLong()) {
+            if (contentLength == C.LENGTH_UNSET.toLong() && !TranscodeSegmentCache.isResumable(cache, cacheKey)) {
                 cache.removeResource(cacheKey)
             }
         } catch (exception: Exception) {
@@ -0,0 +1,185 @@
+package com.cappielloantonio.tempo.service
+
+import android.content.Context
+import android.os.SystemClock
+import android.util.Log
+import androidx.core.content.ContextCompat
+import androidx.media3.common.MediaItem
+import androidx.media3.common.Player
+import androidx.media3.common.util.UnstableApi
+import com.cappielloantonio.tempo.repository.QueueRepository
+import com.cappielloantonio.tempo.subsonic.models.Child
+import com.cappielloantonio.tempo.util.MappingUtil
+import com.google.common.util.concurrent.FutureCallback
+import com.google.common.util.concurrent.Futures
+import com.google.common.util.concurrent.ListenableFuture
+import java.util.concurrent.Executors
+
+/**
+ * Restores the persisted play queue without mapping all of it up front.
+ *
+ * Only a window around the last played track is read and handed to the player, so
+ * it is ready after a few dozen rows whatever the length of the queue. The rest is
+ * then read and added in chunks, tracks ahead first. Every chunk is checked against
+ * the ids read with the window and against the player: as soon as either changed,
+ * e.g. because the user started something else, filling stops.
+ *
+ * Until then the player holds a slice of the stored queue at an offset, so queue
+ * edits from [MediaManager] are held back; starting a new queue cancels the restore.
+ *
+ * Must be used from the main thread.
+ */
+@UnstableApi
+class QueueRestorer(
+    context: Context,
+    private val playerProvider: () -> Player
+) {
+    companion object {
+        private const val TAG = "QueueRestorer"
+
+        private const val WINDOW_BEHIND = 10
+        private const val WINDOW_AHEAD = 40
+        private const val CHUNK_SIZE = 250
+    }
+
+    private val mainExecutor = ContextCompat.getMainExecutor(context)
+    private val mappingExecutor = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "tempo-queue-restore").apply { isDaemon = true }
+    }
+    private val queueRepository = QueueRepository()
+
+    private var generation = 0
+
+    /** Rows of the stored queue that are in the player, as [from, to). */
+    private var ids: List<String> = emptyList()
+    private var loadedFrom = 0
+    private var loadedTo = 0
+    private var expectedCount = 0
+
+    private var startedAt = 0L
+
+    fun restore(onRestored: (Player) -> Unit) {
+        if (playerProvider().mediaItemCount > 0) return
+
+        val myGeneration = ++generation
+        startedAt = SystemClock.elapsedRealtime()
+        MediaManager.holdQueueChanges { cancel() }
+
+        val windowFuture = queueRepository.getMediaWindow(WINDOW_BEHIND, WINDOW_AHEAD)
+        val mappedFuture = Futures.transform(windowFuture, { window ->
+            // Mapped in two parts, so a skipped un-mappable row can't move the start index
+            val before = MappingUtil.mapMediaItems(window.media.subList(0, window.lastIndex))
+            val rest = MappingUtil.mapMediaItems(window.media.subList(window.lastIndex, window.media.size))
+            MappedWindow(window, before, rest)
+        }, mappingExecutor)
+
+        onMain(mappedFuture, myGeneration) { mapped ->
+            // The user may have started something else while the queue was being read
+            val player = playerProvider()
+            val items = mapped.before + mapped.rest
+            if (player.mediaItemCount > 0 || items.isEmpty()) {
+                finish()
+                return@onMain
+            }
+
+            val startIndex = mapped.before.size.coerceAtMost(items.size - 1)
+            player.setMediaItems(items, startIndex, mapped.window.lastPosition)
+            player.prepare()
+            logTimeToReady(player, mapped.window.ids.size, items.size)
+            onRestored(player)
+
+            ids = mapped.window.ids
+            loadedFrom = mapped.window.start
+            loadedTo = mapped.window.start + mapped.window.media.size
+            expectedCount = items.size
+            fillNext(myGeneration)
+        }
+    }
+
+    /**
+     * Stops filling in the rest of the queue; what is already in the player stays.
+     */
+    fun cancel() {
+        generation++
+        finish()
+    }
+
+    fun release() {
+        cancel()
+        mappingExecutor.shutdownNow()
+    }
+
+    private fun fillNext(myGeneration: Int) {
+        val append = loadedTo < ids.size
+        val position = if (append) loadedTo else maxOf(0, loadedFrom - CHUNK_SIZE)
+        val count = if (append) minOf(CHUNK_SIZE, ids.size - loadedTo) else loadedFrom - position
+
+        if (count <= 0) {
+            Log.d(TAG, "Restored all ${ids.size} items in ${SystemClock.elapsedRealtime() - startedAt} ms")
+            finish()
+            return
+        }
+
+        val expected = ids.subList(position, position + count)
+        val chunkFuture = Futures.transform(queueRepository.getMediaRange(position, count), { media ->
+            if (media.map(Child::id) != expected) null else MappingUtil.mapMediaItems(media)
+        }, mappingExecutor)
+
+        onMain(chunkFuture, myGeneration) { items ->
+            val player = playerProvider()
+            if (items == null || player.mediaItemCount != expectedCount) {
+                Log.d(TAG, "Queue changed while restoring, keeping $expectedCount of ${ids.size} items")
+                finish()
+                return@onMain
+            }
+
+            if (append) {
+                player.addMediaItems(items)
+                loadedTo += count
+            } else {
+                player.addMediaItems(0, items)
+                loadedFrom = position
+            }
+            expectedCount += items.size
+            fillNext(myGeneration)
+        }
+    }
+
+    /** Lets the queue edits held back during the restore through. */
+    private fun finish() {
+        MediaManager.releaseQueueChanges()
+    }
+
+    private fun <T> onMain(future: ListenableFuture<T>, myGeneration: Int, block: (T) -> Unit) {
+        Futures.addCallback(future, object : FutureCallback<T> {
+            override fun onSuccess(result: T) {
+                if (myGeneration == generation) block(result)
+            }
+
+            override fun onFailure(t: Throwable) {
+                Log.e(TAG, "Queue restore failed", t)
+                if (myGeneration == generation) finish()
+            }
+        }, mainExecutor)
+    }
+
+    private fun logTimeToReady(player: Player, queueSize: Int, windowSize: Int) {
+        player.addListener(object : Player.Listener {
+            override fun onPlaybackStateChanged(playbackState: Int) {
+                if (playbackState == Player.STATE_READY) {
+                    Log.d(TAG, "Ready in ${SystemClock.elapsedRealtime() - startedAt} ms " +
+                            "with $windowSize of $queueSize items")
+                }
+                if (playbackState == Player.STATE_READY || playbackState == Player.STATE_IDLE) {
+                    player.removeListener(this)
+                }
+            }
+        })
+    }
+
+    private class MappedWindow(
+        val window: QueueRepository.QueueWindow,
+        val before: List<MediaItem>,
+        val rest: List<MediaItem>
+    )
+}
@@ -15,21 +15,17 @@ import retrofit2.converter.gson.GsonConverterFactory
 import java.util.Date
 import java.util.concurrent.TimeUnit
 
+/**
+ * Builds the [Retrofit] instance for a [Subsonic] server. Only the base URL is per server: the
+ * [OkHttpClient] (connection pool, dispatcher, disk cache) and the Gson converter are shared by
+ * every client, so all API services talking to the same host reuse the same TLS connections.
+ */
 class RetrofitClient(subsonic: Subsonic) {
-    val retrofit: Retrofit
-
-    init {
-        val gson = GsonBuilder()
-            .registerTypeAdapter(Date::class.java, EmptyDateTypeAdapter())
-            .setLenient()
-            .create()
-
-        retrofit = Retrofit.Builder()
-            .baseUrl(sanitizeBaseUrl(subsonic.url))
-            .addConverterFactory(GsonConverterFactory.create(gson))
-            .client(getOkHttpClient())
-            .build()
-    }
+    val retrofit: Retrofit = Retrofit.Builder()
+        .baseUrl(sanitizeBaseUrl(subsonic.url))
+        .addConverterFactory(converterFactory)
+        .client(okHttpClient)
+        .build()
 
     /**
      * Retrofit requires a syntactically valid base URL with an http/https scheme AND a parseable
@@ -54,57 +50,73 @@ class RetrofitClient(subsonic: Subsonic) {
         }
     }
 
-    /** Constants for [RetrofitClient]. */
+    /** Constants and the process-wide transport shared by every [RetrofitClient]. */
     companion object {
         /** Syntactically valid but unreachable; used only when no usable server URL is configured. */
         private const val PLACEHOLDER_BASE_URL = "https://localhost/rest/"
-    }
 
-    private fun getOkHttpClient(): OkHttpClient {
-        val cacheUtil = CacheUtil(60, 60 * 60 * 24 * 30)
+        private val converterFactory: GsonConverterFactory by lazy {
+            val gson = GsonBuilder()
+                .registerTypeAdapter(Date::class.java, EmptyDateTypeAdapter())
+                .setLenient()
+                .create()
+            GsonConverterFactory.create(gson)
+        }
 
-        // BrowsingClient 60
-        // MediaAnnotationClient 0
-        // MediaLibraryScanningClient 0
-        // MediaRetrievalClient 0
-        // PlaylistClient 0
-        // PodcastClient 60
-        // SearchClient 60
-        // SystemClient 60
-        // AlbumSongListClient 60
+        /**
+         * Single client for all Subsonic traffic. Callers needing different behaviour (timeouts,
+         * extra interceptors) should derive from it with [OkHttpClient.newBuilder], which keeps
+         * the same pool, dispatcher and cache.
+         */
+        @JvmStatic
+        val okHttpClient: OkHttpClient by lazy { buildOkHttpClient() }
 
-        return OkHttpClient.Builder()
-            .callTimeout(2, TimeUnit.MINUTES)
-            .connectTimeout(20, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .writeTimeout(30, TimeUnit.SECONDS)
-            .addInterceptor(getHttpLoggingInterceptor())
-            .addInterceptor(cacheUtil.offlineInterceptor)
-            // .addNetworkInterceptor(cacheUtil.onlineInterceptor)
-            .cache(getCache())
-            .setupSsl()
-            .build()
-    }
+        private fun buildOkHttpClient(): OkHttpClient {
+            val cacheUtil = CacheUtil(60, 60 * 60 * 24 * 30)
 
-    private fun getHttpLoggingInterceptor(): HttpLoggingInterceptor {
-        val loggingInterceptor = HttpLoggingInterceptor()
-        if (BuildConfig.DEBUG) {
-            loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS)
-        } else {
-            loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.NONE)
+            // BrowsingClient 60
+            // MediaAnnotationClient 0
+            // MediaLibraryScanningClient 0
+            // MediaRetrievalClient 0
+            // PlaylistClient 0
+            // PodcastClient 60
+            // SearchClient 60
+            // SystemClient 60
+            // AlbumSongListClient 60
+
+            return OkHttpClient.Builder()
+                .callTimeout(2, TimeUnit.MINUTES)
+                .connectTimeout(20, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS)
+                .addInterceptor(getHttpLoggingInterceptor())
+                .addInterceptor(cacheUtil.offlineInterceptor)
+                // .addNetworkInterceptor(cacheUtil.onlineInterceptor)
+                .cache(getCache())
+                .setupSsl()
+                .build()
         }
-        return loggingInterceptor
-    }
 
-    private fun getCache(): Cache {
-        val cacheSize = 10 * 1024 * 1024
-        return Cache(App.getContext().cacheDir, cacheSize.toLong())
-    }
+        private fun getHttpLoggingInterceptor(): HttpLoggingInterceptor {
+            val loggingInterceptor = HttpLoggingInterceptor()
+            if (BuildConfig.DEBUG) {
+                loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS)
+            } else {
+                loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.NONE)
+            }
+            return loggingInterceptor
+        }
+
+        private fun getCache(): Cache {
+            val cacheSize = 10 * 1024 * 1024
+            return Cache(App.getContext().cacheDir, cacheSize.toLong())
+        }
 
-    private fun OkHttpClient.Builder.setupSsl(): OkHttpClient.Builder {
-        ClientCertManager.sslSocketFactory?.let { sslSocketFactory ->
-            sslSocketFactory(sslSocketFactory, ClientCertManager.trustManager)
+        private fun OkHttpClient.Builder.setupSsl(): OkHttpClient.Builder {
+            ClientCertManager.sslSocketFactory?.let { sslSocketFactory ->
+                sslSocketFactory(sslSocketFactory, ClientCertManager.trustManager)
+            }
+            return this
         }
-        return this
     }
-}
\ No newline at end of file
+}
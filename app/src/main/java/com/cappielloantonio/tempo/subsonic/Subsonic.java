@@ -18,12 +18,15 @@ import com.cappielloantonio.tempo.subsonic.base.Version;
 import java.util.HashMap;
 import java.util.Map;
 
+import retrofit2.Retrofit;
+
 public class Subsonic {
     private static final Version API_MAX_VERSION = Version.of("1.15.0");
 
     private final Version apiVersion = API_MAX_VERSION;
     private final SubsonicPreferences preferences;
 
+    private Retrofit retrofit;
     private SystemClient systemClient;
     private BrowsingClient browsingClient;
     private MediaRetrievalClient mediaRetrievalClient;
@@ -46,6 +49,13 @@ public class Subsonic {
         return apiVersion;
     }
 
+    public synchronized Retrofit getRetrofit() {
+        if (retrofit == null) {
+            retrofit = new RetrofitClient(this).getRetrofit();
+        }
+        return retrofit;
+    }
+
     public SystemClient getSystemClient() {
         if (systemClient == null) {
             systemClient = new SystemClient(this);
@@ -2,7 +2,6 @@ package com.cappielloantonio.tempo.subsonic.api.browsing;
 
 import android.util.Log;
 
-import com.cappielloantonio.tempo.subsonic.RetrofitClient;
 import com.cappielloantonio.tempo.subsonic.Subsonic;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 
@@ -16,7 +15,7 @@ public class BrowsingClient {
 
     public BrowsingClient(Subsonic subsonic) {
         this.subsonic = subsonic;
-        this.browsingService = new RetrofitClient(subsonic).getRetrofit().create(BrowsingService.class);
+        this.browsingService = subsonic.getRetrofit().create(BrowsingService.class);
     }
 
     public Call<ApiResponse> getMusicFolders() {
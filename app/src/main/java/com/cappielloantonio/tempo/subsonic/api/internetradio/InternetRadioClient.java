@@ -2,7 +2,6 @@ package com.cappielloantonio.tempo.subsonic.api.internetradio;
 
 import android.util.Log;
 
-import com.cappielloantonio.tempo.subsonic.RetrofitClient;
 import com.cappielloantonio.tempo.subsonic.Subsonic;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 
@@ -16,7 +15,7 @@ public class InternetRadioClient {
 
     public InternetRadioClient(Subsonic subsonic) {
         this.subsonic = subsonic;
-        this.internetRadioService = new RetrofitClient(subsonic).getRetrofit().create(InternetRadioService.class);
+        this.internetRadioService = subsonic.getRetrofit().create(InternetRadioService.class);
     }
 
     public Call<ApiResponse> getInternetRadioStations() {
@@ -2,7 +2,6 @@ package com.cappielloantonio.tempo.subsonic.api.medialibraryscanning;
 
 import android.util.Log;
 
-import com.cappielloantonio.tempo.subsonic.RetrofitClient;
 import com.cappielloantonio.tempo.subsonic.Subsonic;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 
@@ -16,7 +15,7 @@ public class MediaLibraryScanningClient {
 
     public MediaLibraryScanningClient(Subsonic subsonic) {
         this.subsonic = subsonic;
-        this.mediaLibraryScanningService = new RetrofitClient(subsonic).getRetrofit().create(MediaLibraryScanningService.class);
+        this.mediaLibraryScanningService = subsonic.getRetrofit().create(MediaLibraryScanningService.class);
     }
 
     public Call<ApiResponse> startScan() {
@@ -2,7 +2,6 @@ package com.cappielloantonio.tempo.subsonic.api.playlist;
 
 import android.util.Log;
 
-import com.cappielloantonio.tempo.subsonic.RetrofitClient;
 import com.cappielloantonio.tempo.subsonic.Subsonic;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 
@@ -18,7 +17,7 @@ public class PlaylistClient {
 
     public PlaylistClient(Subsonic subsonic) {
         this.subsonic = subsonic;
-        this.playlistService = new RetrofitClient(subsonic).getRetrofit().create(PlaylistService.class);
+        this.playlistService = subsonic.getRetrofit().create(PlaylistService.class);
     }
 
     public Call<ApiResponse> getPlaylists() {
@@ -2,7 +2,6 @@ package com.cappielloantonio.tempo.subsonic.api.podcast;
 
 import android.util.Log;
 
-import com.cappielloantonio.tempo.subsonic.RetrofitClient;
 import com.cappielloantonio.tempo.subsonic.Subsonic;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 
@@ -16,7 +15,7 @@ public class PodcastClient {
 
     public PodcastClient(Subsonic subsonic) {
         this.subsonic = subsonic;
-        this.podcastService = new RetrofitClient(subsonic).getRetrofit().create(PodcastService.class);
+        this.podcastService = subsonic.getRetrofit().create(PodcastService.class);
     }
 
     public Call<ApiResponse> getPodcasts(boolean includeEpisodes, String channelId) {
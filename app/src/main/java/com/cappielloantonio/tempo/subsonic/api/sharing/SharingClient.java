@@ -2,7 +2,6 @@ package com.cappielloantonio.tempo.subsonic.api.sharing;
 
 import android.util.Log;
 
-import com.cappielloantonio.tempo.subsonic.RetrofitClient;
 import com.cappielloantonio.tempo.subsonic.Subsonic;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 
@@ -16,7 +15,7 @@ public class SharingClient {
 
     public SharingClient(Subsonic subsonic) {
         this.subsonic = subsonic;
-        this.sharingService = new RetrofitClient(subsonic).getRetrofit().create(SharingService.class);
+        this.sharingService = subsonic.getRetrofit().create(SharingService.class);
     }
 
     public Call<ApiResponse> getShares() {
@@ -2,7 +2,6 @@ package com.cappielloantonio.tempo.subsonic.api.system;
 
 import android.util.Log;
 
-import com.cappielloantonio.tempo.subsonic.RetrofitClient;
 import com.cappielloantonio.tempo.subsonic.Subsonic;
 import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
 import com.cappielloantonio.tempo.util.Preferences;
@@ -19,7 +18,7 @@ public class SystemClient {
 
     public SystemClient(Subsonic subsonic) {
         this.subsonic = subsonic;
-        this.systemService = new RetrofitClient(subsonic).getRetrofit().create(SystemService.class);
+        this.systemService = subsonic.getRetrofit().create(SystemService.class);
     }
 
     public Call<ApiResponse> ping() {
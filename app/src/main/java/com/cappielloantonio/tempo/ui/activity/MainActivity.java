@@ -424,7 +424,7 @@ public class MainActivity extends BaseActivity {
     }
 
     public void goFromLogin() {
-        setBottomSheetInPeek(mainViewModel.isQueueLoaded());
+        mainViewModel.isQueueLoaded(this::setBottomSheetInPeek);
         goToHome();
         consumePendingAssetLink();
     }
@@ -16,6 +16,7 @@ import com.cappielloantonio.tempo.interfaces.ClickCallback;
 import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
 import com.cappielloantonio.tempo.util.Constants;
 import com.cappielloantonio.tempo.util.MusicUtil;
+import com.cappielloantonio.tempo.util.SearchQueryUtil;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -30,6 +31,10 @@ public class AlbumCatalogueAdapter extends RecyclerView.Adapter<AlbumCatalogueAd
     private boolean showArtist;
 
     private final Filter filtering = new Filter() {
+        // Folded names of the list filtered last, so a keystroke doesn't fold every name again
+        private List<AlbumID3> foldedList;
+        private String[] foldedNames;
+
         @Override
         protected FilterResults performFiltering(CharSequence constraint) {
             List<AlbumID3> filteredList = new ArrayList<>();
@@ -40,9 +45,17 @@ public class AlbumCatalogueAdapter extends RecyclerView.Adapter<AlbumCatalogueAd
                 String filterPattern = constraint.toString().toLowerCase().trim();
                 currentFilter = filterPattern;
 
-                for (AlbumID3 item : albumsFull) {
-                    if (item.getName().toLowerCase().contains(filterPattern)) {
-                        filteredList.add(item);
+                List<AlbumID3> items = albumsFull;
+                if (items != foldedList) {
+                    foldedNames = new String[items.size()];
+                    for (int i = 0; i < foldedNames.length; i++) foldedNames[i] = SearchQueryUtil.fold(items.get(i).getName());
+                    foldedList = items;
+                }
+
+                String foldedPattern = SearchQueryUtil.fold(filterPattern);
+                for (int i = 0; i < foldedNames.length; i++) {
+                    if (foldedNames[i].contains(foldedPattern)) {
+                        filteredList.add(items.get(i));
                     }
                 }
             }
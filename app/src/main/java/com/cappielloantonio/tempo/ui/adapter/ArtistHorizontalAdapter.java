@@ -17,6 +17,7 @@ import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
 import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
 import com.cappielloantonio.tempo.util.Constants;
 import com.cappielloantonio.tempo.util.MusicUtil;
+import com.cappielloantonio.tempo.util.SearchQueryUtil;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -31,6 +32,10 @@ public class ArtistHorizontalAdapter extends RecyclerView.Adapter<ArtistHorizont
     private String currentFilter;
 
     private final Filter filtering = new Filter() {
+        // Folded names of the list filtered last, so a keystroke doesn't fold every name again
+        private List<ArtistID3> foldedList;
+        private String[] foldedNames;
+
         @Override
         protected FilterResults performFiltering(CharSequence constraint) {
             List<ArtistID3> filteredList = new ArrayList<>();
@@ -41,9 +46,17 @@ public class ArtistHorizontalAdapter extends RecyclerView.Adapter<ArtistHorizont
                 String filterPattern = constraint.toString().toLowerCase().trim();
                 currentFilter = filterPattern;
 
-                for (ArtistID3 item : artistsFull) {
-                    if (item.getName().toLowerCase().contains(filterPattern)) {
-                        filteredList.add(item);
+                List<ArtistID3> items = artistsFull;
+                if (items != foldedList) {
+                    foldedNames = new String[items.size()];
+                    for (int i = 0; i < foldedNames.length; i++) foldedNames[i] = SearchQueryUtil.fold(items.get(i).getName());
+                    foldedList = items;
+                }
+
+                String foldedPattern = SearchQueryUtil.fold(filterPattern);
+                for (int i = 0; i < foldedNames.length; i++) {
+                    if (foldedNames[i].contains(foldedPattern)) {
+                        filteredList.add(items.get(i));
                     }
                 }
             }
@@ -17,6 +17,7 @@ import com.cappielloantonio.tempo.interfaces.ClickCallback;
 import com.cappielloantonio.tempo.subsonic.models.Playlist;
 import com.cappielloantonio.tempo.util.Constants;
 import com.cappielloantonio.tempo.util.MusicUtil;
+import com.cappielloantonio.tempo.util.SearchQueryUtil;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -30,6 +31,10 @@ public class PlaylistHorizontalAdapter extends RecyclerView.Adapter<PlaylistHori
     private List<Playlist> playlistsFull;
 
     private final Filter filtering = new Filter() {
+        // Folded names of the list filtered last, so a keystroke doesn't fold every name again
+        private List<Playlist> foldedList;
+        private String[] foldedNames;
+
         @Override
         protected FilterResults performFiltering(CharSequence constraint) {
             List<Playlist> filteredList = new ArrayList<>();
@@ -39,9 +44,17 @@ public class PlaylistHorizontalAdapter extends RecyclerView.Adapter<PlaylistHori
             } else {
                 String filterPattern = constraint.toString().toLowerCase().trim();
 
-                for (Playlist item : playlistsFull) {
-                    if (item.getName().toLowerCase().contains(filterPattern)) {
-                        filteredList.add(item);
+                List<Playlist> items = playlistsFull;
+                if (items != foldedList) {
+                    foldedNames = new String[items.size()];
+                    for (int i = 0; i < foldedNames.length; i++) foldedNames[i] = SearchQueryUtil.fold(items.get(i).getName());
+                    foldedList = items;
+                }
+
+                String foldedPattern = SearchQueryUtil.fold(filterPattern);
+                for (int i = 0; i < foldedNames.length; i++) {
+                    if (foldedNames[i].contains(foldedPattern)) {
+                        filteredList.add(items.get(i));
                     }
                 }
             }
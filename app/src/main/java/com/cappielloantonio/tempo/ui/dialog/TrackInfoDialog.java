@@ -13,6 +13,7 @@ import com.cappielloantonio.tempo.databinding.DialogTrackInfoBinding;
 import com.cappielloantonio.tempo.glide.CustomGlideRequest;
 import com.cappielloantonio.tempo.util.AssetLinkUtil;
 import com.cappielloantonio.tempo.util.Constants;
+import com.cappielloantonio.tempo.util.MediaExtrasRegistry;
 import com.cappielloantonio.tempo.util.MusicUtil;
 import com.cappielloantonio.tempo.util.Preferences;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
@@ -23,6 +24,7 @@ public class TrackInfoDialog extends DialogFragment {
     private DialogTrackInfoBinding bind;
 
     private final MediaMetadata mediaMetadata;
+    private final Bundle extras;
     private AssetLinkUtil.AssetLink songLink;
     private AssetLinkUtil.AssetLink albumLink;
     private AssetLinkUtil.AssetLink artistLink;
@@ -31,6 +33,7 @@ public class TrackInfoDialog extends DialogFragment {
 
     public TrackInfoDialog(MediaMetadata mediaMetadata) {
         this.mediaMetadata = mediaMetadata;
+        this.extras = MediaExtrasRegistry.get(mediaMetadata);
     }
 
     @NonNull
@@ -62,23 +65,23 @@ public class TrackInfoDialog extends DialogFragment {
         genreLink = null;
         yearLink = null;
         
-        String type = mediaMetadata.extras != null ? mediaMetadata.extras.getString("type") : null;
+        String type = extras != null ? extras.getString("type") : null;
         boolean isRadio = Objects.equals(type, Constants.MEDIA_TYPE_RADIO);
         
         if (isRadio) {
             // For radio: always read from extras first (radioArtist, radioTitle, stationName)
             // MediaMetadata.title/artist are formatted for notification
-            String stationName = mediaMetadata.extras != null
-                    ? mediaMetadata.extras.getString("stationName",
+            String stationName = extras != null
+                    ? extras.getString("stationName",
                     mediaMetadata.artist != null ? String.valueOf(mediaMetadata.artist) : "")
                     : mediaMetadata.artist != null ? String.valueOf(mediaMetadata.artist) : "";
             
-            String artist = mediaMetadata.extras != null
-                    ? mediaMetadata.extras.getString("radioArtist", "")
+            String artist = extras != null
+                    ? extras.getString("radioArtist", "")
                     : "";
             
-            String title = mediaMetadata.extras != null
-                    ? mediaMetadata.extras.getString("radioTitle", "")
+            String title = extras != null
+                    ? extras.getString("radioTitle", "")
                     : "";
             
             // Format: "Artist - Song" or fallback to title or station name
@@ -103,15 +106,15 @@ public class TrackInfoDialog extends DialogFragment {
                             : "");
         }
 
-        if (mediaMetadata.extras != null) {
-            songLink = AssetLinkUtil.buildAssetLink(AssetLinkUtil.TYPE_SONG, mediaMetadata.extras.getString("id"));
-            albumLink = AssetLinkUtil.buildAssetLink(AssetLinkUtil.TYPE_ALBUM, mediaMetadata.extras.getString("albumId"));
-            artistLink = AssetLinkUtil.buildAssetLink(AssetLinkUtil.TYPE_ARTIST, mediaMetadata.extras.getString("artistId"));
-            genreLink = AssetLinkUtil.parseLinkString(mediaMetadata.extras.getString("assetLinkGenre"));
-            yearLink = AssetLinkUtil.parseLinkString(mediaMetadata.extras.getString("assetLinkYear"));
+        if (extras != null) {
+            songLink = AssetLinkUtil.buildAssetLink(AssetLinkUtil.TYPE_SONG, extras.getString("id"));
+            albumLink = AssetLinkUtil.buildAssetLink(AssetLinkUtil.TYPE_ALBUM, extras.getString("albumId"));
+            artistLink = AssetLinkUtil.buildAssetLink(AssetLinkUtil.TYPE_ARTIST, extras.getString("artistId"));
+            genreLink = AssetLinkUtil.parseLinkString(extras.getString("assetLinkGenre"));
+            yearLink = AssetLinkUtil.parseLinkString(extras.getString("assetLinkYear"));
 
             CustomGlideRequest.Builder
-                    .from(requireContext(), mediaMetadata.extras.getString("coverArtId", ""), CustomGlideRequest.ResourceType.Song)
+                    .from(requireContext(), extras.getString("coverArtId", ""), CustomGlideRequest.ResourceType.Song)
                     .build()
                     .into(bind.trackCoverInfoImageView);
 
@@ -119,17 +122,17 @@ public class TrackInfoDialog extends DialogFragment {
             bindAssetLink(bind.trakTitleInfoTextView, songLink);
             bindAssetLink(bind.trakArtistInfoTextView, artistLink != null ? artistLink : songLink);
 
-            String titleValue = mediaMetadata.extras.getString("title", getString(R.string.label_placeholder));
-            String albumValue = mediaMetadata.extras.getString("album", getString(R.string.label_placeholder));
-            String artistValue = mediaMetadata.extras.getString("artist", getString(R.string.label_placeholder));
-            String genreValue = mediaMetadata.extras.getString("genre", getString(R.string.label_placeholder));
-            int yearValue = mediaMetadata.extras.getInt("year", 0);
+            String titleValue = extras.getString("title", getString(R.string.label_placeholder));
+            String albumValue = extras.getString("album", getString(R.string.label_placeholder));
+            String artistValue = extras.getString("artist", getString(R.string.label_placeholder));
+            String genreValue = extras.getString("genre", getString(R.string.label_placeholder));
+            int yearValue = extras.getInt("year", 0);
             
             // Handle radio-specific metadata
             if (isRadio) {
-                String stationName = mediaMetadata.extras.getString("stationName", getString(R.string.label_placeholder));
-                String radioArtist = mediaMetadata.extras.getString("radioArtist", "");
-                String radioTitle = mediaMetadata.extras.getString("radioTitle", "");
+                String stationName = extras.getString("stationName", getString(R.string.label_placeholder));
+                String radioArtist = extras.getString("radioArtist", "");
+                String radioTitle = extras.getString("radioTitle", "");
                 
                 // Show station name in station section
                 bind.stationInfoSector.setVisibility(android.view.View.VISIBLE);
@@ -157,20 +160,20 @@ public class TrackInfoDialog extends DialogFragment {
             bind.titleValueSector.setText(titleValue);
             bind.albumValueSector.setText(albumValue);
             bind.artistValueSector.setText(artistValue);
-            bind.trackNumberValueSector.setText(mediaMetadata.extras.getInt("track", 0) != 0 ? String.valueOf(mediaMetadata.extras.getInt("track", 0)) : getString(R.string.label_placeholder));
+            bind.trackNumberValueSector.setText(extras.getInt("track", 0) != 0 ? String.valueOf(extras.getInt("track", 0)) : getString(R.string.label_placeholder));
             bind.yearValueSector.setText(yearValue != 0 ? String.valueOf(yearValue) : getString(R.string.label_placeholder));
             bind.genreValueSector.setText(genreValue);
-            bind.sizeValueSector.setText(mediaMetadata.extras.getLong("size", 0) != 0 ? MusicUtil.getReadableByteCount(mediaMetadata.extras.getLong("size", 0)) : getString(R.string.label_placeholder));
-            bind.contentTypeValueSector.setText(mediaMetadata.extras.getString("contentType", getString(R.string.label_placeholder)));
-            bind.suffixValueSector.setText(mediaMetadata.extras.getString("suffix", getString(R.string.label_placeholder)));
-            bind.transcodedContentTypeValueSector.setText(mediaMetadata.extras.getString("transcodedContentType", getString(R.string.label_placeholder)));
-            bind.transcodedSuffixValueSector.setText(mediaMetadata.extras.getString("transcodedSuffix", getString(R.string.label_placeholder)));
-            bind.durationValueSector.setText(mediaMetadata.extras.getInt("duration", 0) != 0 ? MusicUtil.getReadableDurationString(mediaMetadata.extras.getInt("duration", 0), false) : getString(R.string.label_placeholder));
-            bind.bitrateValueSector.setText(mediaMetadata.extras.getInt("bitrate", 0) != 0 ? mediaMetadata.extras.getInt("bitrate", 0) + " kbps" : getString(R.string.label_placeholder));
-            bind.samplingRateValueSector.setText(mediaMetadata.extras.getInt("samplingRate", 0) != 0 ? mediaMetadata.extras.getInt("samplingRate", 0) + " Hz" : getString(R.string.label_placeholder));
-            bind.bitDepthValueSector.setText(mediaMetadata.extras.getInt("bitDepth", 0) != 0 ? mediaMetadata.extras.getInt("bitDepth", 0) + " bits" : getString(R.string.label_placeholder));
-            bind.pathValueSector.setText(mediaMetadata.extras.getString("path", getString(R.string.label_placeholder)));
-            bind.discNumberValueSector.setText(mediaMetadata.extras.getInt("discNumber", 0) != 0 ? String.valueOf(mediaMetadata.extras.getInt("discNumber", 0)) : getString(R.string.label_placeholder));
+            bind.sizeValueSector.setText(extras.getLong("size", 0) != 0 ? MusicUtil.getReadableByteCount(extras.getLong("size", 0)) : getString(R.string.label_placeholder));
+            bind.contentTypeValueSector.setText(extras.getString("contentType", getString(R.string.label_placeholder)));
+            bind.suffixValueSector.setText(extras.getString("suffix", getString(R.string.label_placeholder)));
+            bind.transcodedContentTypeValueSector.setText(extras.getString("transcodedContentType", getString(R.string.label_placeholder)));
+            bind.transcodedSuffixValueSector.setText(extras.getString("transcodedSuffix", getString(R.string.label_placeholder)));
+            bind.durationValueSector.setText(extras.getInt("duration", 0) != 0 ? MusicUtil.getReadableDurationString(extras.getInt("duration", 0), false) : getString(R.string.label_placeholder));
+            bind.bitrateValueSector.setText(extras.getInt("bitrate", 0) != 0 ? extras.getInt("bitrate", 0) + " kbps" : getString(R.string.label_placeholder));
+            bind.samplingRateValueSector.setText(extras.getInt("samplingRate", 0) != 0 ? extras.getInt("samplingRate", 0) + " Hz" : getString(R.string.label_placeholder));
+            bind.bitDepthValueSector.setText(extras.getInt("bitDepth", 0) != 0 ? extras.getInt("bitDepth", 0) + " bits" : getString(R.string.label_placeholder));
+            bind.pathValueSector.setText(extras.getString("path", getString(R.string.label_placeholder)));
+            bind.discNumberValueSector.setText(extras.getInt("discNumber", 0) != 0 ? String.valueOf(extras.getInt("discNumber", 0)) : getString(R.string.label_placeholder));
 
             bindAssetLink(bind.titleValueSector, songLink);
             bindAssetLink(bind.albumValueSector, albumLink);
@@ -188,7 +191,7 @@ public class TrackInfoDialog extends DialogFragment {
         String transcodingExtension = MusicUtil.getTranscodingFormatPreference();
         String transcodingBitrate = Integer.parseInt(MusicUtil.getBitratePreference()) != 0 ? Integer.parseInt(MusicUtil.getBitratePreference()) + "kbps" : "Original";
 
-        if (mediaMetadata.extras != null && mediaMetadata.extras.getString("uri", "").contains(Constants.DOWNLOAD_URI)) {
+        if (extras != null && extras.getString("uri", "").contains(Constants.DOWNLOAD_URI)) {
             info.append(getString(R.string.track_info_summary_downloaded_file));
 
             bind.trakTranscodingInfoTextView.setText(info);
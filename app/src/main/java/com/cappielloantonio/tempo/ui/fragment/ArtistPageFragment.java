@@ -33,6 +33,7 @@ import com.cappielloantonio.tempo.glide.CustomGlideRequest;
 import com.cappielloantonio.tempo.helper.recyclerview.CustomLinearSnapHelper;
 import com.cappielloantonio.tempo.helper.recyclerview.GridItemDecoration;
 import com.cappielloantonio.tempo.interfaces.ClickCallback;
+import com.cappielloantonio.tempo.repository.ArtistRepository;
 import com.cappielloantonio.tempo.service.MediaManager;
 import com.cappielloantonio.tempo.service.MediaService;
 import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
@@ -257,13 +258,20 @@ public class ArtistPageFragment extends Fragment implements ClickCallback {
     }
 
     private void initPlayButtons() {
-        bind.artistPageShuffleButton.setOnClickListener(v -> artistPageViewModel.getArtistShuffleList().observe(getViewLifecycleOwner(), new Observer<List<Child>>() {
+        bind.artistPageShuffleButton.setOnClickListener(v -> artistPageViewModel.loadArtistShuffle(new ArtistRepository.ArtistSongsListener() {
+            private boolean started = false;
+
             @Override
-            public void onChanged(List<Child> songs) {
-                if (songs != null && !songs.isEmpty()) {
+            public void onSongs(List<Child> songs, boolean complete) {
+                if (songs.isEmpty()) return;
+
+                // Play the first albums to load, and queue the others behind them
+                if (!started) {
                     MediaManager.startQueue(mediaBrowserListenableFuture, songs, 0);
                     activity.setBottomSheetInPeek(true);
-                    artistPageViewModel.getArtistShuffleList().removeObserver(this);
+                    started = true;
+                } else {
+                    MediaManager.enqueue(mediaBrowserListenableFuture, songs, false);
                 }
             }
         }));
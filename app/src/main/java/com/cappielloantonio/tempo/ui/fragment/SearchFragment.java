@@ -26,6 +26,7 @@ import com.cappielloantonio.tempo.helper.recyclerview.CustomLinearSnapHelper;
 import com.cappielloantonio.tempo.interfaces.ClickCallback;
 import com.cappielloantonio.tempo.service.MediaManager;
 import com.cappielloantonio.tempo.service.MediaService;
+import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.subsonic.models.Playlist;
 import com.cappielloantonio.tempo.ui.activity.MainActivity;
 import com.cappielloantonio.tempo.ui.adapter.AlbumAdapter;
@@ -69,6 +70,7 @@ public class SearchFragment extends Fragment implements ClickCallback {
 
         initSearchResultView();
         initSearchView();
+        observeSearch();
         inputFocus();
 
         return view;
@@ -166,8 +168,9 @@ public class SearchFragment extends Fragment implements ClickCallback {
                     @Override
                     public void onTextChanged(CharSequence charSequence, int start, int before, int count) {
                         if (start + count > 1) {
-                            setSearchSuggestions(charSequence.toString());
+                            searchViewModel.requestSearchSuggestions(charSequence.toString());
                         } else {
+                            searchViewModel.clearSearchSuggestions();
                             setRecentSuggestions();
                         }
                     }
@@ -203,26 +206,24 @@ public class SearchFragment extends Fragment implements ClickCallback {
         }
     }
 
-    public void setSearchSuggestions(String query) {
-        searchViewModel.getSearchSuggestion(query).observe(getViewLifecycleOwner(), suggestions -> {
-            bind.searchViewSuggestionContainer.removeAllViews();
+    public void setSearchSuggestions(List<String> suggestions) {
+        bind.searchViewSuggestionContainer.removeAllViews();
 
-            for (String suggestion : suggestions) {
-                View view = LayoutInflater.from(bind.searchViewSuggestionContainer.getContext()).inflate(R.layout.item_search_suggestion, bind.searchViewSuggestionContainer, false);
+        for (String suggestion : suggestions) {
+            View view = LayoutInflater.from(bind.searchViewSuggestionContainer.getContext()).inflate(R.layout.item_search_suggestion, bind.searchViewSuggestionContainer, false);
 
-                ImageView leadingImageView = view.findViewById(R.id.search_suggestion_icon);
-                TextView titleView = view.findViewById(R.id.search_suggestion_title);
-                ImageView tailingImageView = view.findViewById(R.id.search_suggestion_delete_icon);
+            ImageView leadingImageView = view.findViewById(R.id.search_suggestion_icon);
+            TextView titleView = view.findViewById(R.id.search_suggestion_title);
+            ImageView tailingImageView = view.findViewById(R.id.search_suggestion_delete_icon);
 
-                leadingImageView.setImageDrawable(getResources().getDrawable(R.drawable.ic_search, null));
-                titleView.setText(suggestion);
-                tailingImageView.setVisibility(View.GONE);
+            leadingImageView.setImageDrawable(getResources().getDrawable(R.drawable.ic_search, null));
+            titleView.setText(suggestion);
+            tailingImageView.setVisibility(View.GONE);
 
-                view.setOnClickListener(v -> search(suggestion));
+            view.setOnClickListener(v -> search(suggestion));
 
-                bind.searchViewSuggestionContainer.addView(view);
-            }
-        });
+            bind.searchViewSuggestionContainer.addView(view);
+        }
     }
 
     public void search(String query) {
@@ -244,9 +245,31 @@ public class SearchFragment extends Fragment implements ClickCallback {
             playlistHorizontalAdapter.setItems(Collections.emptyList());
         }
     }
-    private void performSearch(String query) {
-        searchViewModel.search3(this, query).observe(getViewLifecycleOwner(), result -> {
-            if (bind != null) {
+    private void observeSearch() {
+        searchViewModel.resetSearchSuggestions();
+
+        searchViewModel.getSearchSuggestions().observe(getViewLifecycleOwner(), suggestions -> {
+            if (bind != null && suggestions != null) setSearchSuggestions(suggestions);
+        });
+
+        searchViewModel.getAllSongs().observe(getViewLifecycleOwner(), songs -> {
+            if (bind == null || songs == null) return;
+
+            PlaylistWithSongs pws = new PlaylistWithSongs("allsongs", songs);
+            pws.setSongCount(songs.size());
+            long duration = 0;
+            for (Child song : songs) {
+                if (song != null && song.getDuration() != null) {
+                    duration += song.getDuration();
+                }
+            }
+            pws.setDuration(duration);
+            pws.setName(getString(R.string.search_all_songs, String.valueOf(songs.size())));
+            updateUI(Collections.singletonList(pws));
+        });
+
+        searchViewModel.getSearchResult().observe(getViewLifecycleOwner(), result -> {
+            if (bind != null && result != null) {
                 if (result.getArtists() != null) {
                     bind.searchArtistSector.setVisibility(!result.getArtists().isEmpty() ? View.VISIBLE : View.GONE);
                     artistAdapter.setItems(result.getArtists());
@@ -272,7 +295,10 @@ public class SearchFragment extends Fragment implements ClickCallback {
                 }
             }
         });
+    }
 
+    private void performSearch(String query) {
+        searchViewModel.search(query);
         bind.searchResultLayout.setVisibility(View.VISIBLE);
     }
 
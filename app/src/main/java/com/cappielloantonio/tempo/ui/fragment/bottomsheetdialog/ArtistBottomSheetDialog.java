@@ -22,6 +22,7 @@ import com.cappielloantonio.tempo.repository.ArtistRepository;
 import com.cappielloantonio.tempo.service.MediaManager;
 import com.cappielloantonio.tempo.service.MediaService;
 import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
+import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.ui.activity.MainActivity;
 import com.cappielloantonio.tempo.util.Constants;
 import com.cappielloantonio.tempo.util.MusicUtil;
@@ -29,6 +30,9 @@ import com.cappielloantonio.tempo.viewmodel.ArtistBottomSheetViewModel;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 @UnstableApi
 public class ArtistBottomSheetDialog extends BottomSheetDialogFragment implements View.OnClickListener {
@@ -119,14 +123,32 @@ public class ArtistBottomSheetDialog extends BottomSheetDialogFragment implement
 
         TextView playRandom = view.findViewById(R.id.play_random_text_view);
         playRandom.setOnClickListener(v -> {
-            ArtistRepository artistRepository = new ArtistRepository();
-            artistRepository.getRandomSong(artist, 50).observe(getViewLifecycleOwner(), songs -> {
-                MusicUtil.ratingFilter(songs);
-                if (!songs.isEmpty()) {
-                    MediaManager.startQueue(mediaBrowserListenableFuture, songs, 0);
-                    ((MainActivity) requireActivity()).setBottomSheetInPeek(true);
+            MainActivity activity = (MainActivity) getActivity();
+            if (activity == null) return;
+
+            // The rest of the albums keep loading after the sheet is gone
+            ListenableFuture<MediaBrowser> activityBrowserFuture = activity.getMediaBrowserListenableFuture();
+            if (activityBrowserFuture == null) return;
+
+            new ArtistRepository().getRandomSongs(artist, 50, new ArtistRepository.ArtistSongsListener() {
+                private boolean started = false;
+
+                @Override
+                public void onSongs(List<Child> songs, boolean complete) {
+                    List<Child> media = new ArrayList<>(songs);
+                    MusicUtil.ratingFilter(media);
+
+                    if (media.isEmpty()) {
+                        if (complete && !started && isAdded()) dismissBottomSheet();
+                    } else if (!started) {
+                        started = true;
+                        MediaManager.startQueue(activityBrowserFuture, media, 0);
+                        activity.setBottomSheetInPeek(true);
+                        if (isAdded()) dismissBottomSheet();
+                    } else {
+                        MediaManager.enqueue(activityBrowserFuture, media, false);
+                    }
                 }
-                dismissBottomSheet();
             });
         });
     }
@@ -0,0 +1,275 @@
+package com.cappielloantonio.tempo.util;
+
+import android.content.ComponentCallbacks2;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.OptIn;
+import androidx.media3.common.C;
+import androidx.media3.common.Timeline;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DefaultLoadControl;
+import androidx.media3.exoplayer.LoadControl;
+import androidx.media3.exoplayer.analytics.PlayerId;
+import androidx.media3.exoplayer.source.TrackGroupArray;
+import androidx.media3.exoplayer.trackselection.ExoTrackSelection;
+import androidx.media3.exoplayer.upstream.Allocator;
+
+/**
+ * Load control that sizes the forward buffer per song instead of once per player.
+ *
+ * The target comes from {@link BufferPolicy}: the preload preference, the bitrate of the
+ * stream (the transcode cap when the server transcodes, the song's bitrate extra otherwise),
+ * whether the current network is unmetered, the heap limit and whether the system recently
+ * asked for memory. Loading stops at the target or the byte budget, whichever comes first, and
+ * resumes once the buffer has drained to three quarters of the target. Everything else,
+ * including when playback may start, is left to a {@link DefaultLoadControl}.
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class AdaptiveLoadControl implements LoadControl {
+    private static final String TAG = "AdaptiveLoadControl";
+
+    // How long a memory warning keeps the buffer small
+    private static final long MEMORY_PRESSURE_HOLD_MS = 60_000;
+
+    private final DefaultLoadControl delegate;
+    private final int preloadSeconds;
+    private final boolean lowRamDevice;
+    private final int heapCapBytes;
+
+    private volatile boolean unmetered;
+    private volatile long constrainedUntilMs;
+
+    // Only touched on the playback thread
+    private final Timeline.Period period = new Timeline.Period();
+    private final Timeline.Window window = new Timeline.Window();
+    private BufferPolicy policy;
+    private int policyBitrate = -1;
+    private boolean policyUnmetered;
+    private boolean policyConstrained;
+    private boolean loading;
+    private boolean rebuffering;
+
+    private volatile long bufferedMs;
+    private volatile int allocatedBytes;
+    private volatile int rebufferCount;
+
+    /**
+     * @param heapLimitBytes the app's heap limit, see {@code ActivityManager.getMemoryClass()}
+     */
+    public AdaptiveLoadControl(int preloadSeconds, boolean unmetered, boolean lowRamDevice, long heapLimitBytes) {
+        this.preloadSeconds = preloadSeconds;
+        this.unmetered = unmetered;
+        this.lowRamDevice = lowRamDevice;
+        this.heapCapBytes = BufferPolicy.heapCapBytes(heapLimitBytes);
+        this.delegate = new DefaultLoadControl.Builder()
+                .setBufferDurationsMs(
+                        (int) BufferPolicy.MIN_TARGET_MS,
+                        (int) BufferPolicy.MAX_TARGET_MS,
+                        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_MS,
+                        DefaultLoadControl.DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS)
+                .setTargetBufferBytes(heapCapBytes)
+                .build();
+    }
+
+    public void setUnmetered(boolean unmetered) {
+        this.unmetered = unmetered;
+    }
+
+    public void onTrimMemory(int level) {
+        // UI_HIDDEN only means the app went to the background
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            constrainedUntilMs = SystemClock.elapsedRealtime() + MEMORY_PRESSURE_HOLD_MS;
+        }
+    }
+
+    public BufferHealth getHealth() {
+        BufferPolicy current = policy;
+        return new BufferHealth(
+                current != null ? current.targetMs : 0,
+                current != null ? current.maxBytes : 0,
+                bufferedMs,
+                allocatedBytes,
+                rebufferCount,
+                unmetered,
+                isConstrained());
+    }
+
+    @Override
+    public boolean shouldContinueLoading(Parameters parameters) {
+        boolean delegateContinues = delegate.shouldContinueLoading(parameters);
+
+        BufferPolicy current = policyFor(parameters);
+        long buffered = parameters.bufferedDurationUs / 1000;
+        int allocated = delegate.getAllocator().getTotalBytesAllocated();
+        bufferedMs = buffered;
+        allocatedBytes = allocated;
+
+        if (allocated >= current.maxBytes || buffered >= current.targetMs) {
+            loading = false;
+        } else if (buffered < current.targetMs * 3 / 4) {
+            loading = true;
+        }
+
+        return delegateContinues && loading;
+    }
+
+    @Override
+    public boolean shouldStartPlayback(Parameters parameters) {
+        boolean start = delegate.shouldStartPlayback(parameters);
+
+        if (parameters.rebuffering && !rebuffering) {
+            rebuffering = true;
+            rebufferCount++;
+        }
+        if (start) rebuffering = false;
+
+        return start;
+    }
+
+    @Override
+    public void onPrepared(PlayerId playerId) {
+        delegate.onPrepared(playerId);
+    }
+
+    @Override
+    public void onTracksSelected(Parameters parameters, TrackGroupArray trackGroups, ExoTrackSelection[] trackSelections) {
+        delegate.onTracksSelected(parameters, trackGroups, trackSelections);
+    }
+
+    @Override
+    public void onStopped(PlayerId playerId) {
+        loading = false;
+        delegate.onStopped(playerId);
+    }
+
+    @Override
+    public void onReleased(PlayerId playerId) {
+        loading = false;
+        delegate.onReleased(playerId);
+    }
+
+    @Override
+    public Allocator getAllocator() {
+        return delegate.getAllocator();
+    }
+
+    @Override
+    public long getBackBufferDurationUs(PlayerId playerId) {
+        return delegate.getBackBufferDurationUs(playerId);
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe(PlayerId playerId) {
+        return delegate.retainBackBufferFromKeyframe(playerId);
+    }
+
+    private BufferPolicy policyFor(Parameters parameters) {
+        int bitrate = getBitrate(parameters);
+        boolean isUnmetered = unmetered;
+        boolean constrained = isConstrained();
+
+        if (policy == null || bitrate != policyBitrate || isUnmetered != policyUnmetered || constrained != policyConstrained) {
+            policy = BufferPolicy.of(preloadSeconds, bitrate, isUnmetered, constrained, heapCapBytes);
+            policyBitrate = bitrate;
+            policyUnmetered = isUnmetered;
+            policyConstrained = constrained;
+            Log.d(TAG, "Buffer target " + policy.targetMs + " ms / " + policy.maxBytes + " bytes"
+                    + " (bitrate=" + bitrate + ", unmetered=" + isUnmetered + ", constrained=" + constrained + ")");
+        }
+
+        return policy;
+    }
+
+    private int getBitrate(Parameters parameters) {
+        if (parameters.timeline.isEmpty()) return 0;
+
+        int periodIndex = parameters.timeline.getIndexOfPeriod(parameters.mediaPeriodId.periodUid);
+        if (periodIndex == C.INDEX_UNSET) return 0;
+
+        parameters.timeline.getPeriod(periodIndex, period);
+        parameters.timeline.getWindow(period.windowIndex, window);
+        Bundle extras = window.mediaItem.mediaMetadata.extras;
+        int sourceKbps = extras != null ? extras.getInt("bitrate", 0) : 0;
+        return BufferPolicy.streamBitrateKbps(sourceKbps, getMaxBitRate(window.mediaItem.localConfiguration != null
+                ? window.mediaItem.localConfiguration.uri : null));
+    }
+
+    private static int getMaxBitRate(Uri uri) {
+        if (uri == null || uri.isOpaque()) return 0;
+
+        String maxBitRate = uri.getQueryParameter("maxBitRate");
+        if (maxBitRate == null) return 0;
+        try {
+            return Integer.parseInt(maxBitRate);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private boolean isConstrained() {
+        return lowRamDevice || SystemClock.elapsedRealtime() < constrainedUntilMs;
+    }
+
+    /**
+     * Snapshot of the buffer state, for diagnostics.
+     */
+    public static class BufferHealth {
+        private final long targetMs;
+        private final int maxBytes;
+        private final long bufferedMs;
+        private final int allocatedBytes;
+        private final int rebufferCount;
+        private final boolean unmetered;
+        private final boolean constrained;
+
+        BufferHealth(long targetMs, int maxBytes, long bufferedMs, int allocatedBytes, int rebufferCount, boolean unmetered, boolean constrained) {
+            this.targetMs = targetMs;
+            this.maxBytes = maxBytes;
+            this.bufferedMs = bufferedMs;
+            this.allocatedBytes = allocatedBytes;
+            this.rebufferCount = rebufferCount;
+            this.unmetered = unmetered;
+            this.constrained = constrained;
+        }
+
+        public long getTargetMs() {
+            return targetMs;
+        }
+
+        public int getMaxBytes() {
+            return maxBytes;
+        }
+
+        public long getBufferedMs() {
+            return bufferedMs;
+        }
+
+        public int getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        public int getRebufferCount() {
+            return rebufferCount;
+        }
+
+        public boolean isUnmetered() {
+            return unmetered;
+        }
+
+        public boolean isConstrained() {
+            return constrained;
+        }
+
+        @Override
+        public String toString() {
+            return "buffered " + bufferedMs + "/" + targetMs + " ms, "
+                    + allocatedBytes + "/" + maxBytes + " bytes, "
+                    + rebufferCount + " rebuffers"
+                    + (unmetered ? ", unmetered" : "")
+                    + (constrained ? ", constrained" : "");
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.cappielloantonio.tempo.util;
+
+/**
+ * How far ahead the player buffers, in time and in bytes, for a stream of a given bitrate.
+ *
+ * The preload preference is the baseline. Unmetered links get twice that, and a byte budget
+ * per link type keeps high bitrate streams from holding minutes of audio in memory. The
+ * buffer lives on the Java heap next to the UI and image caches, so no budget may take more
+ * than a small share of the app's heap limit. Under memory pressure both shrink.
+ */
+final class BufferPolicy {
+    static final long MIN_TARGET_MS = 15_000;
+    static final long MAX_TARGET_MS = 600_000;
+
+    static final int UNMETERED_MAX_BYTES = 48 * 1024 * 1024;
+    static final int METERED_MAX_BYTES = 24 * 1024 * 1024;
+    static final int CONSTRAINED_MAX_BYTES = 8 * 1024 * 1024;
+    private static final long CONSTRAINED_MAX_TARGET_MS = 30_000;
+
+    // At most an eighth of the heap limit, e.g. 24 MiB of a 192 MiB memory class
+    private static final int HEAP_SHARE = 8;
+
+    // Assumed when the song has no bitrate, e.g. radio or a file the server didn't probe
+    static final int DEFAULT_BITRATE_KBPS = 320;
+
+    final long targetMs;
+    final int maxBytes;
+
+    private BufferPolicy(long targetMs, int maxBytes) {
+        this.targetMs = targetMs;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Largest byte budget the heap limit allows, or the unmetered budget when the limit
+     * is unknown.
+     */
+    static int heapCapBytes(long heapLimitBytes) {
+        if (heapLimitBytes <= 0) return UNMETERED_MAX_BYTES;
+        return (int) Math.min(UNMETERED_MAX_BYTES, heapLimitBytes / HEAP_SHARE);
+    }
+
+    /**
+     * Bitrate of what the server actually sends: a transcode capped with maxBitRate arrives
+     * at no more than that cap, whatever the source bitrate.
+     */
+    static int streamBitrateKbps(int sourceKbps, int maxBitRateKbps) {
+        if (maxBitRateKbps <= 0) return sourceKbps;
+        return sourceKbps > 0 ? Math.min(sourceKbps, maxBitRateKbps) : maxBitRateKbps;
+    }
+
+    static BufferPolicy of(int preloadSeconds, int bitrateKbps, boolean unmetered, boolean constrained, int heapCapBytes) {
+        long targetMs = Math.max(0, preloadSeconds) * 1000L;
+        int maxBytes;
+
+        if (constrained) {
+            targetMs = Math.min(targetMs, CONSTRAINED_MAX_TARGET_MS);
+            maxBytes = CONSTRAINED_MAX_BYTES;
+        } else if (unmetered) {
+            targetMs *= 2;
+            maxBytes = UNMETERED_MAX_BYTES;
+        } else {
+            maxBytes = METERED_MAX_BYTES;
+        }
+        maxBytes = Math.min(maxBytes, heapCapBytes);
+
+        long bytesPerSecond = (bitrateKbps > 0 ? bitrateKbps : DEFAULT_BITRATE_KBPS) * 1000L / 8;
+        long affordableMs = maxBytes * 1000L / bytesPerSecond;
+        targetMs = Math.min(targetMs, affordableMs);
+
+        return new BufferPolicy(Math.max(MIN_TARGET_MS, Math.min(MAX_TARGET_MS, targetMs)), maxBytes);
+    }
+}
@@ -28,9 +28,8 @@ object ClientCertManager {
     fun setupSslSocketFactory(context: Context) {
         sslSocketFactory = createSslSocketFactory(context)
         sslSocketFactory?.let {
-            // HttpsURLConnection is used both by:
-            // - Glide: in IPv6StringLoader
-            // - ExoPlayer: in DefaultHttpDataSource
+            // HttpsURLConnection is used by ExoPlayer in DefaultHttpDataSource.
+            // OkHttp, used by the API and by Glide, takes it from sslSocketFactory in RetrofitClient.
             HttpsURLConnection.setDefaultSSLSocketFactory(it)
         }
     }
@@ -139,6 +139,18 @@ public final class DownloadUtil {
                 .setUpstreamDataSourceFactory(new DefaultDataSource.Factory(context, getHttpDataSourceFactory()));
     }
 
+    /**
+     * Reads only what is already in the streaming cache; a read that would need the
+     * network fails instead of opening a connection.
+     */
+    public static synchronized CacheDataSource.Factory getStreamingCacheReaderFactory(Context context) {
+        return new CacheDataSource.Factory()
+                .setCache(getStreamingCache(context))
+                .setCacheKeyFactory(new StreamingCacheKeyFactory())
+                .setUpstreamDataSourceFactory(null)
+                .setCacheWriteDataSinkFactory(null);
+    }
+
     public static synchronized Cache getStreamingCacheForPreload(Context context) {
         return getStreamingCache(context);
     }
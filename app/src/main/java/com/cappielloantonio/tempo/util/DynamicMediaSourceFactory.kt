@@ -60,7 +60,8 @@ class DynamicMediaSourceFactory(
                 val isTranscoding = uri?.getQueryParameter("format") != null && uri.getQueryParameter("format") != "raw"
                 
                 if (isTranscoding && OpenSubsonicExtensionsUtil.isTranscodeOffsetExtensionAvailable()) {
-                     TranscodingMediaSource(mediaItem, dataSourceFactory, progressiveFactory)
+                     val cache = if (useUpstream) null else DownloadUtil.getStreamingCacheForPreload(context)
+                     TranscodingMediaSource(mediaItem, dataSourceFactory, progressiveFactory, cache)
                 } else {
                      progressiveFactory.createMediaSource(mediaItem)
                 }
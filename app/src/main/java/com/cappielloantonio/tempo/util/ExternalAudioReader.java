@@ -1,8 +1,12 @@
 package com.cappielloantonio.tempo.util;
 
+import android.content.ContentResolver;
+import android.database.Cursor;
 import android.net.Uri;
 import android.os.Looper;
 import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.util.Log;
 
 import androidx.documentfile.provider.DocumentFile;
 import androidx.lifecycle.LiveData;
@@ -23,8 +27,17 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class ExternalAudioReader {
+    private static final String TAG = "ExternalAudioReader";
 
-    private static final Map<String, DocumentFile> cache = new ConcurrentHashMap<>();
+    private static final String[] CHILDREN_PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+
+    private static final Map<String, Uri> cache = new ConcurrentHashMap<>();
     private static final Object LOCK = new Object();
     private static final ExecutorService REFRESH_EXECUTOR = Executors.newSingleThreadExecutor();
     private static final MutableLiveData<Long> refreshEvents = new MutableLiveData<>();
@@ -111,8 +124,7 @@ public class ExternalAudioReader {
         ensureCache();
         if (cachedDirUri == null) return null;
 
-        DocumentFile file = cache.get(buildKey(artist, title, album));
-        return file != null && file.exists() ? file.getUri() : null;
+        return cache.get(buildKey(artist, title, album));
     }
 
     public static Uri getUri(Child media) {
@@ -138,10 +150,14 @@ public class ExternalAudioReader {
         if (cachedDirUri == null) return false;
 
         String key = buildKey(media.getArtist(), media.getTitle(), media.getAlbum());
-        DocumentFile file = cache.get(key);
+        Uri uri = cache.get(key);
         boolean deleted = false;
-        if (file != null && file.exists()) {
-            deleted = file.delete();
+        if (uri != null) {
+            try {
+                deleted = DocumentsContract.deleteDocument(App.getContext().getContentResolver(), uri);
+            } catch (Exception e) {
+                Log.w(TAG, "Unable to delete " + uri, e);
+            }
         }
         if (deleted) {
             cache.remove(key);
@@ -150,6 +166,29 @@ public class ExternalAudioReader {
         return deleted;
     }
 
+    /**
+     * Lookups trust the in-memory index, so a file removed behind our back is only noticed when
+     * playing it fails. Check that uri and drop it from the index if it is gone.
+     */
+    public static void onPlaybackFailed(Uri uri) {
+        if (uri == null || !ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) return;
+
+        REFRESH_EXECUTOR.execute(() -> {
+            DocumentFile file = DocumentFile.fromSingleUri(App.getContext(), uri);
+            if (file != null && file.exists()) return;
+
+            Set<String> missing = new HashSet<>();
+            for (Map.Entry<String, Uri> entry : cache.entrySet()) {
+                if (entry.getValue().equals(uri)) missing.add(entry.getKey());
+            }
+            if (missing.isEmpty()) return;
+
+            cache.keySet().removeAll(missing);
+            ExternalDownloadMetadataStore.removeAll(missing);
+            refreshEvents.postValue(SystemClock.elapsedRealtime());
+        });
+    }
+
     private static void requestRefresh() {
         synchronized (LOCK) {
             scheduleRefreshLocked();
@@ -183,43 +222,49 @@ public class ExternalAudioReader {
             return;
         }
 
-        DocumentFile directory = DocumentFile.fromTreeUri(App.getContext(), Uri.parse(uriString));
+        Uri treeUri = Uri.parse(uriString);
         Map<String, Long> expectedSizes = ExternalDownloadMetadataStore.snapshot();
         Set<String> verifiedKeys = new HashSet<>();
-        Map<String, DocumentFile> newEntries = new HashMap<>();
-
-        if (directory != null && directory.canRead()) {
-            for (DocumentFile file : directory.listFiles()) {
-                if (file == null || file.isDirectory()) continue;
-                String existing = file.getName();
-                if (existing == null) continue;
-
-                String base = existing.replaceFirst("\\.[^\\.]+$", "");
-                String key = normalizeForComparison(base);
-                Long expected = expectedSizes.get(key);
-                long actualLength = file.length();
-
-                if (expected != null && expected > 0 && actualLength == expected) {
-                    newEntries.put(key, file);
-                    verifiedKeys.add(key);
-                } else {
-                    ExternalDownloadMetadataStore.remove(key);
-                }
-            }
+        Map<String, Uri> newEntries = new HashMap<>();
+
+        // One children query instead of a ContentResolver round trip per file and attribute
+        Uri childrenUri;
+        try {
+            childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, DocumentsContract.getTreeDocumentId(treeUri));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Invalid download directory " + uriString, e);
+            childrenUri = null;
         }
 
-        if (!expectedSizes.isEmpty()) {
-            if (verifiedKeys.isEmpty()) {
-                ExternalDownloadMetadataStore.clear();
-            } else {
-                for (String key : expectedSizes.keySet()) {
-                    if (!verifiedKeys.contains(key)) {
-                        ExternalDownloadMetadataStore.remove(key);
+        if (childrenUri != null) {
+            try (Cursor cursor = App.getContext().getContentResolver().query(childrenUri, CHILDREN_PROJECTION, null, null, null)) {
+                while (cursor != null && cursor.moveToNext()) {
+                    String documentId = cursor.getString(0);
+                    String existing = cursor.getString(1);
+                    String mimeType = cursor.getString(3);
+                    if (documentId == null || existing == null) continue;
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) continue;
+
+                    String base = existing.replaceFirst("\\.[^\\.]+$", "");
+                    String key = normalizeForComparison(base);
+                    Long expected = expectedSizes.get(key);
+                    long actualLength = cursor.isNull(2) ? 0L : cursor.getLong(2);
+
+                    if (expected != null && expected > 0 && actualLength == expected) {
+                        newEntries.put(key, DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId));
+                        verifiedKeys.add(key);
                     }
                 }
+            } catch (SecurityException | IllegalArgumentException e) {
+                Log.w(TAG, "Unable to list download directory " + uriString, e);
             }
         }
 
+        // Drop every stale or missing entry in one batch
+        if (!expectedSizes.isEmpty()) {
+            ExternalDownloadMetadataStore.retainOnly(verifiedKeys);
+        }
+
         synchronized (LOCK) {
             cache.clear();
             cache.putAll(newEntries);
@@ -9,6 +9,8 @@ import com.cappielloantonio.tempo.App;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -18,7 +20,10 @@ import java.util.Set;
 
 public final class ExternalDownloadMetadataStore {
 
-    private static final String PREF_KEY = "external_download_metadata";
+    private static final String LEGACY_PREF_KEY = "external_download_metadata";
+    private static final String FILE_NAME = "external_download_metadata.log";
+
+    private static ExternalDownloadSizeLog log;
 
     private ExternalDownloadMetadataStore() {
     }
@@ -27,42 +32,67 @@ public final class ExternalDownloadMetadataStore {
         return App.getInstance().getPreferences();
     }
 
-    private static JSONObject readAll() {
-        String raw = preferences().getString(PREF_KEY, "{}");
-        try {
-            return new JSONObject(raw);
-        } catch (JSONException e) {
-            return new JSONObject();
+    private static ExternalDownloadSizeLog log() {
+        if (log == null) {
+            log = new ExternalDownloadSizeLog(new File(App.getContext().getFilesDir(), FILE_NAME));
+            migrateLegacyPreferences(log);
         }
+        return log;
     }
 
-    private static void writeAll(JSONObject object) {
-        preferences().edit().putString(PREF_KEY, object.toString()).apply();
+    /**
+     * Sizes used to live in a single JSON string in the shared preferences. Move them to the log
+     * once and drop the old entry.
+     */
+    private static void migrateLegacyPreferences(ExternalDownloadSizeLog target) {
+        String raw = preferences().getString(LEGACY_PREF_KEY, null);
+        if (raw == null) {
+            return;
+        }
+
+        if (!target.exists()) {
+            Map<String, Long> sizes = new HashMap<>();
+            try {
+                JSONObject object = new JSONObject(raw);
+                Iterator<String> keys = object.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    long size = object.optLong(key, -1L);
+                    if (size > 0) {
+                        sizes.put(key, size);
+                    }
+                }
+            } catch (JSONException ignored) {
+            }
+            target.putAll(sizes);
+        }
+
+        preferences().edit().remove(LEGACY_PREF_KEY).apply();
     }
 
     public static synchronized void clear() {
-        writeAll(new JSONObject());
+        log().clear();
     }
 
     public static synchronized void recordSize(String key, long size) {
         if (key == null || size <= 0) {
             return;
         }
-        JSONObject object = readAll();
-        try {
-            object.put(key, size);
-        } catch (JSONException ignored) {
-        }
-        writeAll(object);
+        log().put(key, size);
     }
 
     public static synchronized void remove(String key) {
         if (key == null) {
             return;
         }
-        JSONObject object = readAll();
-        object.remove(key);
-        writeAll(object);
+        log().removeAll(Collections.singleton(key));
+    }
+
+    public static synchronized void removeAll(Collection<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        log().removeAll(keys);
     }
 
     @Nullable
@@ -70,29 +100,12 @@ public final class ExternalDownloadMetadataStore {
         if (key == null) {
             return null;
         }
-        JSONObject object = readAll();
-        if (!object.has(key)) {
-            return null;
-        }
-        long size = object.optLong(key, -1L);
-        return size > 0 ? size : null;
+        Long size = log().get(key);
+        return size != null && size > 0 ? size : null;
     }
 
     public static synchronized Map<String, Long> snapshot() {
-        JSONObject object = readAll();
-        if (object.length() == 0) {
-            return Collections.emptyMap();
-        }
-        Map<String, Long> sizes = new HashMap<>();
-        Iterator<String> keys = object.keys();
-        while (keys.hasNext()) {
-            String key = keys.next();
-            long size = object.optLong(key, -1L);
-            if (size > 0) {
-                sizes.put(key, size);
-            }
-        }
-        return sizes;
+        return log().snapshot();
     }
 
     public static synchronized void retainOnly(Set<String> keysToKeep) {
@@ -100,24 +113,8 @@ public final class ExternalDownloadMetadataStore {
             clear();
             return;
         }
-        JSONObject object = readAll();
-        if (object.length() == 0) {
-            return;
-        }
-        Set<String> keys = new HashSet<>();
-        Iterator<String> iterator = object.keys();
-        while (iterator.hasNext()) {
-            keys.add(iterator.next());
-        }
-        boolean changed = false;
-        for (String key : keys) {
-            if (!keysToKeep.contains(key)) {
-                object.remove(key);
-                changed = true;
-            }
-        }
-        if (changed) {
-            writeAll(object);
-        }
+        Set<String> toRemove = new HashSet<>(log().snapshot().keySet());
+        toRemove.removeAll(keysToKeep);
+        removeAll(toRemove);
     }
-}
\ No newline at end of file
+}
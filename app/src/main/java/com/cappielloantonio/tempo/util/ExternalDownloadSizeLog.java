@@ -0,0 +1,162 @@
+package com.cappielloantonio.tempo.util;
+
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only file backing {@link ExternalDownloadMetadataStore}. Every change is one line
+ * ({@code P<TAB>size<TAB>key} or {@code R<TAB>key}) and the file is loaded once into a map, so
+ * lookups are hash hits and updates never rewrite the whole set. The log is compacted when it
+ * grows well past the number of live entries.
+ */
+class ExternalDownloadSizeLog {
+    private static final String TAG = "ExternalDownloadSizeLog";
+    private static final int MIN_COMPACT_LINES = 256;
+
+    private final File file;
+    private Map<String, Long> sizes;
+    private int lines;
+    private int writes;
+
+    ExternalDownloadSizeLog(File file) {
+        this.file = file;
+    }
+
+    synchronized boolean exists() {
+        return file.exists();
+    }
+
+    synchronized Long get(String key) {
+        return load().get(key);
+    }
+
+    synchronized Map<String, Long> snapshot() {
+        Map<String, Long> loaded = load();
+        return loaded.isEmpty() ? Collections.emptyMap() : new HashMap<>(loaded);
+    }
+
+    synchronized void put(String key, long size) {
+        Long previous = load().put(key, size);
+        if (previous != null && previous == size) return;
+        append("P\t" + size + "\t" + key + "\n", 1);
+    }
+
+    synchronized void putAll(Map<String, Long> entries) {
+        Map<String, Long> loaded = load();
+        StringBuilder builder = new StringBuilder();
+        int count = 0;
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            Long previous = loaded.put(entry.getKey(), entry.getValue());
+            if (previous != null && previous.equals(entry.getValue())) continue;
+            builder.append("P\t").append(entry.getValue()).append('\t').append(entry.getKey()).append('\n');
+            count++;
+        }
+        append(builder.toString(), count);
+    }
+
+    synchronized void removeAll(Collection<String> keys) {
+        Map<String, Long> loaded = load();
+        StringBuilder builder = new StringBuilder();
+        int count = 0;
+        for (String key : keys) {
+            if (loaded.remove(key) == null) continue;
+            builder.append("R\t").append(key).append('\n');
+            count++;
+        }
+        append(builder.toString(), count);
+    }
+
+    synchronized void clear() {
+        sizes = new HashMap<>();
+        lines = 0;
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Unable to delete " + file);
+        }
+    }
+
+    /**
+     * Number of times the file was appended to or rewritten.
+     */
+    @VisibleForTesting
+    synchronized int writes() {
+        return writes;
+    }
+
+    private Map<String, Long> load() {
+        if (sizes != null) return sizes;
+
+        sizes = new HashMap<>();
+        lines = 0;
+        if (!file.exists()) return sizes;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                if (line.startsWith("P\t")) {
+                    int separator = line.indexOf('\t', 2);
+                    if (separator < 0) continue;
+                    try {
+                        sizes.put(line.substring(separator + 1), Long.parseLong(line.substring(2, separator)));
+                    } catch (NumberFormatException ignored) {
+                    }
+                } else if (line.startsWith("R\t")) {
+                    sizes.remove(line.substring(2));
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read " + file, e);
+        }
+
+        return sizes;
+    }
+
+    private void append(String text, int count) {
+        if (count == 0) return;
+
+        if (lines + count > Math.max(MIN_COMPACT_LINES, sizes.size() * 2)) {
+            compact();
+            return;
+        }
+
+        try (Writer writer = new BufferedWriter(new FileWriter(file, true))) {
+            writer.write(text);
+            lines += count;
+            writes++;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to append to " + file, e);
+        }
+    }
+
+    private void compact() {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new FileWriter(temp, false))) {
+            for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+                writer.write("P\t" + entry.getValue() + "\t" + entry.getKey() + "\n");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to compact " + file, e);
+            return;
+        }
+
+        if (temp.renameTo(file)) {
+            lines = sizes.size();
+            writes++;
+        } else {
+            Log.w(TAG, "Unable to replace " + file);
+        }
+    }
+}
@@ -115,6 +115,11 @@ public class MappingUtil {
             Integer year = media.getYear();
             bundle.putString("assetLinkYear", year != null && year != 0 ? AssetLinkUtil.buildLink(AssetLinkUtil.TYPE_YEAR, String.valueOf(year)) : null);
 
+            // Only the compact extras travel with the item, see MediaExtrasRegistry
+            Bundle extras = MediaExtrasRegistry.register(bundle);
+            Bundle requestExtras = new Bundle();
+            requestExtras.putString("id", media.getId());
+
             return new MediaItem.Builder()
                     .setMediaId(media.getId())
                     .setMediaMetadata(
@@ -133,7 +138,7 @@ public class MappingUtil {
                                                 Constants.CUSTOM_COMMAND_TOGGLE_HEART_OFF
                                         )
                                     )
-                                    .setExtras(bundle)
+                                    .setExtras(extras)
                                     .setIsBrowsable(false)
                                     .setIsPlayable(true)
                                     .build()
@@ -141,7 +146,7 @@ public class MappingUtil {
                     .setRequestMetadata(
                             new MediaItem.RequestMetadata.Builder()
                                     .setMediaUri(uri)
-                                    .setExtras(bundle)
+                                    .setExtras(requestExtras)
                                     .build()
                     )
                     .setMimeType(MimeTypes.BASE_TYPE_AUDIO)
@@ -383,7 +388,7 @@ public class MappingUtil {
     public static Child mapToChild(MediaItem item) {
         if (item == null) return null;
 
-        Bundle extras = item.mediaMetadata.extras;
+        Bundle extras = MediaExtrasRegistry.get(item.mediaMetadata);
         String id = (extras != null && extras.getString("id") != null) ? extras.getString("id") : item.mediaId;
 
         if (id == null) return null;
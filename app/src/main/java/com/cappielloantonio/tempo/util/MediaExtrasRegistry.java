@@ -0,0 +1,82 @@
+package com.cappielloantonio.tempo.util;
+
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+import androidx.media3.common.MediaMetadata;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-process store of the full extras of mapped songs, keyed by song id.
+ *
+ * Songs carry only their compact extras on the MediaItem: the ids, the uri and what the
+ * player screen, the widget and the media source need. Every queue operation between
+ * the MediaBrowser and the service sends those over binder, so the rest (track info
+ * details, ReplayGain, asset links) is kept here instead. The UI and the service run in
+ * the same process and both map songs through {@link MappingUtil}, so either side finds
+ * the entries the other one registered.
+ */
+public final class MediaExtrasRegistry {
+    private static final int MAX_ENTRIES = 20_000;
+
+    private static final Set<String> COMPACT_KEYS = new HashSet<>(Arrays.asList(
+            "id", "type", "uri",
+            "title", "artist", "album",
+            "albumId", "artistId", "coverArtId",
+            "duration", "suffix", "bitrate", "samplingRate", "bitDepth"
+    ));
+
+    private static final Map<String, Bundle> entries = Collections.synchronizedMap(
+            new LinkedHashMap<String, Bundle>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bundle> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            });
+
+    private MediaExtrasRegistry() {
+    }
+
+    /**
+     * Stores the full extras under their id and returns the compact copy to put on the
+     * MediaItem.
+     */
+    public static Bundle register(Bundle full) {
+        String id = full.getString("id");
+        if (id != null) entries.put(id, full);
+
+        Bundle compact = new Bundle(full);
+        for (String key : full.keySet()) {
+            if (!COMPACT_KEYS.contains(key)) compact.remove(key);
+        }
+        return compact;
+    }
+
+    /**
+     * The full extras of the item: the registered ones overlaid with whatever the item
+     * carries itself, or just the item's own extras when its id is unknown.
+     */
+    @Nullable
+    public static Bundle get(@Nullable Bundle extras) {
+        if (extras == null) return null;
+
+        String id = extras.getString("id");
+        Bundle full = id != null ? entries.get(id) : null;
+        if (full == null) return extras;
+
+        Bundle merged = new Bundle(full);
+        merged.putAll(extras);
+        return merged;
+    }
+
+    @Nullable
+    public static Bundle get(@Nullable MediaMetadata metadata) {
+        return metadata != null ? get(metadata.extras) : null;
+    }
+}
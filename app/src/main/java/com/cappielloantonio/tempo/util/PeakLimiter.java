@@ -0,0 +1,126 @@
+package com.cappielloantonio.tempo.util;
+
+import java.util.Arrays;
+
+/**
+ * Look-ahead peak limiter working on interleaved float samples in place.
+ *
+ * Every frame is held back for {@link #LOOKAHEAD_SECONDS} so the gain can start
+ * falling before an over arrives instead of clipping it. Channels are linked so
+ * the stereo image does not shift while limiting. All buffers are sized in
+ * {@link #configure} and reused, nothing is allocated while processing.
+ */
+final class PeakLimiter {
+
+    private static final float LOOKAHEAD_SECONDS = 0.0015f; // 1.5 ms
+    private static final float RELEASE_SECONDS = 0.05f; // 50 ms
+
+    private int channels = 1;
+    private int lookahead = 1;
+    private float ceiling = 1.0f;
+    private float attackCoefficient;
+    private float releaseCoefficient;
+
+    // Delay line of lookahead frames, written and read at the same position
+    private float[] delay = new float[0];
+    private int delayPosition = 0;
+
+    // Monotonic queue holding the smallest required gain over the look-ahead window
+    private float[] windowGain = new float[0];
+    private int[] windowFrame = new int[0];
+    private int windowHead = 0;
+    private int windowSize = 0;
+
+    private int frame = 0;
+    private float envelope = 1.0f;
+
+    void configure(int sampleRate, int channelCount, float ceiling) {
+        int frames = Math.max(1, (int) (sampleRate * LOOKAHEAD_SECONDS));
+        int channelsOrOne = Math.max(1, channelCount);
+
+        if (frames != lookahead || channelsOrOne != channels || delay.length == 0) {
+            lookahead = frames;
+            channels = channelsOrOne;
+            delay = new float[lookahead * channels];
+            windowGain = new float[lookahead + 1];
+            windowFrame = new int[lookahead + 1];
+        }
+
+        this.ceiling = ceiling;
+        // Reaches ~99% of the target by the time the peak leaves the delay line
+        attackCoefficient = (float) Math.exp(-5.0 / lookahead);
+        releaseCoefficient = (float) Math.exp(-1.0 / Math.max(1.0, sampleRate * RELEASE_SECONDS));
+        reset();
+    }
+
+    void reset() {
+        Arrays.fill(delay, 0f);
+        delayPosition = 0;
+        windowHead = 0;
+        windowSize = 0;
+        frame = 0;
+        envelope = 1.0f;
+    }
+
+    /**
+     * Number of interleaved samples the output lags behind the input.
+     */
+    int getLatencySamples() {
+        return lookahead * channels;
+    }
+
+    /**
+     * Limits {@code count} interleaved samples in place. The output is delayed by
+     * {@link #getLatencySamples()} samples; feed that many zeros to drain the tail.
+     */
+    void process(float[] samples, int count) {
+        final int channels = this.channels;
+        final float ceiling = this.ceiling;
+        final float[] delay = this.delay;
+
+        for (int i = 0; i + channels <= count; i += channels) {
+            float peak = 0f;
+            for (int c = 0; c < channels; c++) {
+                float magnitude = Math.abs(samples[i + c]);
+                if (magnitude > peak) peak = magnitude;
+            }
+
+            float target = pushRequiredGain(peak > ceiling ? ceiling / peak : 1.0f);
+            float coefficient = target < envelope ? attackCoefficient : releaseCoefficient;
+            envelope = target + (envelope - target) * coefficient;
+            float gain = envelope;
+
+            int d = delayPosition;
+            for (int c = 0; c < channels; c++, d++) {
+                float delayed = delay[d] * gain;
+                delay[d] = samples[i + c];
+                // Catches whatever the envelope has not fully pulled down yet
+                if (delayed > ceiling) delayed = ceiling;
+                else if (delayed < -ceiling) delayed = -ceiling;
+                samples[i + c] = delayed;
+            }
+            delayPosition = d == delay.length ? 0 : d;
+            frame++;
+        }
+    }
+
+    private float pushRequiredGain(float required) {
+        int capacity = windowGain.length;
+
+        // Subtraction keeps the comparison valid when the frame counter wraps
+        while (windowSize > 0 && frame - windowFrame[windowHead] > lookahead) {
+            windowHead = (windowHead + 1) % capacity;
+            windowSize--;
+        }
+
+        while (windowSize > 0 && windowGain[(windowHead + windowSize - 1) % capacity] >= required) {
+            windowSize--;
+        }
+        int tail = (windowHead + windowSize) % capacity;
+        windowGain[tail] = required;
+        windowFrame[tail] = frame;
+        windowSize++;
+
+        return windowGain[windowHead];
+    }
+}
@@ -62,6 +62,7 @@ object Preferences {
     private const val MUSIC_DIRECTORY_SECTION_VISIBILITY = "music_directory_section_visibility"
     private const val REPLAY_GAIN_MODE = "replay_gain_mode"
     private const val REPLAY_GAIN_PREVENT_CLIPPING = "replay_gain_prevent_clipping"
+    private const val REPLAY_GAIN_LIMITER = "replay_gain_limiter"
     private const val LOUDNESS_PREAMP = "loudness_preamp"
     private const val AUDIO_TRANSCODE_PRIORITY = "audio_transcode_priority"
     private const val STREAMING_CACHE_STORAGE = "streaming_cache_storage"
@@ -613,6 +614,11 @@ object Preferences {
         return App.getInstance().preferences.getBoolean(REPLAY_GAIN_PREVENT_CLIPPING, true)
     }
 
+    @JvmStatic
+    fun isReplayGainLimiterEnabled(): Boolean {
+        return App.getInstance().preferences.getBoolean(REPLAY_GAIN_LIMITER, true)
+    }
+
     @JvmStatic
     fun getLoudnessPreamp(): Float {
         return App.getInstance().preferences.getInt(LOUDNESS_PREAMP, 0).toFloat()
@@ -0,0 +1,59 @@
+package com.cappielloantonio.tempo.util;
+
+import com.cappielloantonio.tempo.model.Queue;
+
+import java.util.List;
+
+/**
+ * Sparse ordering keys for the persisted queue. Rows are spaced {@link #GAP} apart so an insert
+ * or move only has to pick keys between its two neighbours instead of renumbering the table.
+ */
+public class QueueOrderUtil {
+    public static final long GAP = 1L << 16;
+
+    public static long keyAt(int index) {
+        return index * GAP;
+    }
+
+    public static void renumber(List<Queue> queue) {
+        for (int i = 0; i < queue.size(); i++) {
+            queue.get(i).setTrackOrder(keyAt(i));
+        }
+    }
+
+    /**
+     * Returns {@code count} increasing keys strictly between {@code lower} and {@code upper}.
+     * A null bound means the start or the end of the queue. Returns null when the neighbours
+     * are too close together, in which case the caller has to renumber the queue.
+     */
+    public static long[] between(Long lower, Long upper, int count) {
+        if (count <= 0) return new long[0];
+
+        long from;
+        long to;
+
+        if (lower == null && upper == null) {
+            from = -GAP;
+            to = count * GAP;
+        } else if (lower == null) {
+            from = upper - (count + 1) * GAP;
+            to = upper;
+        } else if (upper == null) {
+            from = lower;
+            to = lower + (count + 1) * GAP;
+        } else {
+            from = lower;
+            to = upper;
+        }
+
+        long step = (to - from) / (count + 1);
+        if (step < 1) return null;
+
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = from + step * (i + 1);
+        }
+
+        return keys;
+    }
+}
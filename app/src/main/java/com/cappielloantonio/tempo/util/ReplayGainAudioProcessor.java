@@ -9,6 +9,9 @@ import androidx.media3.common.util.UnstableApi;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 /**
  * An AudioProcessor that applies ReplayGain adjustment directly to
@@ -17,12 +20,19 @@ import java.nio.ByteOrder;
  * Unlike player.setVolume() or LoudnessEnhancer, this
  * processor operates inside ExoPlayer's audio pipeline, which means
  * gain changes are sample-accurate during gapless transitions.
+ *
+ * When the limiter is enabled, a {@link PeakLimiter} follows the gain stage
+ * so a pre-amp that pushes the signal over full scale is pulled down smoothly
+ * instead of being hard clipped. The limiter adds a constant 1.5 ms delay, so
+ * it stays in the signal path even at unity gain.
  */
 @OptIn(markerClass = UnstableApi.class)
 public final class ReplayGainAudioProcessor extends BaseAudioProcessor {
 
     private static final String TAG = "RGAudioProcessor";
     private static final float RAMP_DURATION_SECONDS = 0.01f; // 10 ms
+    private static final float PCM_24BIT_MAX = 0x7FFFFF;
+    private static final float PCM_24BIT_MIN = -0x800000;
 
     private volatile float targetGainLinear = 1.0f;
 
@@ -67,6 +77,19 @@ public final class ReplayGainAudioProcessor extends BaseAudioProcessor {
     // See full explanation in onConfigure() and onFlush() below.
     private boolean configAfterEos = false;
 
+    // Grown on demand to the largest buffer seen, never shrunk
+    private float[] scratch = new float[0];
+
+    private final PeakLimiter limiter = new PeakLimiter();
+
+    private volatile boolean limiterEnabled = true;
+
+    // Latched from limiterEnabled in onFlush() so the delay never appears or
+    // disappears in the middle of a stream.
+    private boolean limiterActive = false;
+
+    private boolean limiterTailPending = false;
+
     public void setPendingGain(float gainDb) {
         pendingFlushGainLinear = dbToLinear(gainDb);
         hasPendingFlushGain = true;
@@ -84,11 +107,19 @@ public final class ReplayGainAudioProcessor extends BaseAudioProcessor {
         hasPendingFlushGain = false;
     }
 
+    /**
+     * Takes effect at the next flush, i.e. the next seek or format change.
+     */
+    public void setLimiterEnabled(boolean enabled) {
+        limiterEnabled = enabled;
+    }
+
     @Override
     protected AudioFormat onConfigure(AudioFormat inputAudioFormat)
             throws UnhandledAudioFormatException {
         int enc = inputAudioFormat.encoding;
-        if (enc != C.ENCODING_PCM_16BIT && enc != C.ENCODING_PCM_FLOAT) {
+        if (enc != C.ENCODING_PCM_16BIT && enc != C.ENCODING_PCM_24BIT
+                && enc != C.ENCODING_PCM_32BIT && enc != C.ENCODING_PCM_FLOAT) {
             return AudioFormat.NOT_SET;
         }
         rampTotalFrames = Math.max(1,
@@ -147,11 +178,19 @@ public final class ReplayGainAudioProcessor extends BaseAudioProcessor {
         endOfStreamPending = false;
         hasProcessedAnyInput = false;
         configAfterEos = false;
+
+        limiterActive = limiterEnabled && isActive();
+        limiterTailPending = false;
+        if (limiterActive) {
+            limiter.configure(inputAudioFormat.sampleRate, inputAudioFormat.channelCount,
+                    fullScale(inputAudioFormat.encoding));
+        }
     }
 
     @Override
     protected void onQueueEndOfStream() {
         endOfStreamPending = true;
+        limiterTailPending = limiterActive;
     }
 
     @Override
@@ -164,6 +203,9 @@ public final class ReplayGainAudioProcessor extends BaseAudioProcessor {
         configAfterEos = false;
         ramping = false;
         hasProcessedAnyInput = false;
+        limiterActive = false;
+        limiterTailPending = false;
+        limiter.reset();
         Log.d(TAG, "onReset: gain reset to baseline=" + baselineGainLinear);
     }
 
@@ -195,43 +237,148 @@ public final class ReplayGainAudioProcessor extends BaseAudioProcessor {
             ramping = true;
         }
 
-        if (!ramping && Math.abs(activeGainLinear - 1.0f) < 0.0001f) {
+        if (!limiterActive && !ramping && Math.abs(activeGainLinear - 1.0f) < 0.0001f) {
             ByteBuffer output = replaceOutputBuffer(remaining);
             output.put(inputBuffer);
             output.flip();
             return;
         }
 
-        ByteBuffer output = replaceOutputBuffer(remaining);
-        output.order(ByteOrder.nativeOrder());
+        int bytesPerSample = bytesPerSample(inputAudioFormat.encoding);
+        int count = remaining / bytesPerSample;
+        float[] samples = scratch(count);
+        decode(inputBuffer, samples, count);
 
-        if (inputAudioFormat.encoding == C.ENCODING_PCM_16BIT) {
-            process16Bit(inputBuffer, output);
-        } else {
-            processFloat(inputBuffer, output);
+        applyGain(samples, count);
+        if (limiterActive) {
+            limiter.process(samples, count);
         }
 
-        output.flip();
+        ByteBuffer output = replaceOutputBuffer(count * bytesPerSample);
+        encode(samples, count, output);
+        inputBuffer.position(inputBuffer.position() + count * bytesPerSample);
     }
 
-    private void process16Bit(ByteBuffer in, ByteBuffer out) {
-        while (in.remaining() >= 2) {
-            float gain = advanceGain();
-            short sample = in.getShort();
-            float adjusted = sample * gain;
-            if (adjusted > Short.MAX_VALUE) adjusted = Short.MAX_VALUE;
-            else if (adjusted < Short.MIN_VALUE) adjusted = Short.MIN_VALUE;
-            out.putShort((short) adjusted);
+    @Override
+    public ByteBuffer getOutput() {
+        // Like TrimmingAudioProcessor, the delayed tail is only emitted once
+        // everything queued before the end of stream has been handed out.
+        if (limiterTailPending && super.isEnded()) {
+            limiterTailPending = false;
+            int count = limiter.getLatencySamples();
+            float[] samples = scratch(count);
+            Arrays.fill(samples, 0, count, 0f);
+            limiter.process(samples, count);
+            encode(samples, count, replaceOutputBuffer(count * bytesPerSample(inputAudioFormat.encoding)));
+        }
+        return super.getOutput();
+    }
+
+    @Override
+    public boolean isEnded() {
+        return super.isEnded() && !limiterTailPending;
+    }
+
+    // Samples are copied into a reusable float array, gained in one tight loop and written back,
+    // so the render thread does no per-sample ByteBuffer calls and no per-buffer allocation.
+
+    private void decode(ByteBuffer in, float[] samples, int count) {
+        switch (inputAudioFormat.encoding) {
+            case C.ENCODING_PCM_16BIT: {
+                ShortBuffer src = in.duplicate().order(ByteOrder.nativeOrder()).asShortBuffer();
+                for (int i = 0; i < count; i++) {
+                    samples[i] = src.get(i);
+                }
+                break;
+            }
+            case C.ENCODING_PCM_24BIT: {
+                int base = in.position();
+                for (int i = 0, b = base; i < count; i++, b += 3) {
+                    samples[i] = (in.get(b) & 0xFF) | ((in.get(b + 1) & 0xFF) << 8) | (in.get(b + 2) << 16);
+                }
+                break;
+            }
+            // Float keeps 24 bits of mantissa, which is below the noise floor of any real 32-bit source.
+            case C.ENCODING_PCM_32BIT: {
+                IntBuffer src = in.duplicate().order(ByteOrder.nativeOrder()).asIntBuffer();
+                for (int i = 0; i < count; i++) {
+                    samples[i] = src.get(i);
+                }
+                break;
+            }
+            default:
+                in.duplicate().order(ByteOrder.nativeOrder()).asFloatBuffer().get(samples, 0, count);
+                break;
+        }
+    }
+
+    // Writes count samples at the start of out and flips it, clamping integer encodings to full scale.
+    private void encode(float[] samples, int count, ByteBuffer out) {
+        out.order(ByteOrder.nativeOrder());
+        switch (inputAudioFormat.encoding) {
+            case C.ENCODING_PCM_16BIT: {
+                ShortBuffer dst = out.asShortBuffer();
+                for (int i = 0; i < count; i++) {
+                    float adjusted = samples[i];
+                    if (adjusted > Short.MAX_VALUE) adjusted = Short.MAX_VALUE;
+                    else if (adjusted < Short.MIN_VALUE) adjusted = Short.MIN_VALUE;
+                    dst.put(i, (short) adjusted);
+                }
+                break;
+            }
+            case C.ENCODING_PCM_24BIT: {
+                for (int i = 0, b = 0; i < count; i++, b += 3) {
+                    float adjusted = samples[i];
+                    if (adjusted > PCM_24BIT_MAX) adjusted = PCM_24BIT_MAX;
+                    else if (adjusted < PCM_24BIT_MIN) adjusted = PCM_24BIT_MIN;
+                    int value = (int) adjusted;
+                    out.put(b, (byte) value);
+                    out.put(b + 1, (byte) (value >> 8));
+                    out.put(b + 2, (byte) (value >> 16));
+                }
+                break;
+            }
+            case C.ENCODING_PCM_32BIT: {
+                IntBuffer dst = out.asIntBuffer();
+                for (int i = 0; i < count; i++) {
+                    // (int) saturates at Integer.MIN_VALUE / MAX_VALUE
+                    dst.put(i, (int) samples[i]);
+                }
+                break;
+            }
+            default:
+                out.asFloatBuffer().put(samples, 0, count);
+                break;
         }
+        out.position(count * bytesPerSample(inputAudioFormat.encoding));
+        out.flip();
     }
 
-    private void processFloat(ByteBuffer in, ByteBuffer out) {
-        while (in.remaining() >= 4) {
+    private void applyGain(float[] samples, int count) {
+        int channels = Math.max(1, inputAudioFormat.channelCount);
+        int i = 0;
+
+        // Interpolate per frame only while ramping, then fall through to a constant gain
+        while (ramping && i + channels <= count) {
             float gain = advanceGain();
-            out.putFloat(in.getFloat() * gain);
+            for (int c = 0; c < channels; c++) {
+                samples[i++] *= gain;
+            }
+        }
+
+        float gain = activeGainLinear;
+        for (; i < count; i++) {
+            samples[i] *= gain;
         }
     }
 
+    private float[] scratch(int count) {
+        if (scratch.length < count) {
+            scratch = new float[count];
+        }
+        return scratch;
+    }
+
     private float advanceGain() {
         if (!ramping) return activeGainLinear;
 
@@ -246,6 +393,31 @@ public final class ReplayGainAudioProcessor extends BaseAudioProcessor {
         return gain;
     }
 
+    private static int bytesPerSample(int encoding) {
+        switch (encoding) {
+            case C.ENCODING_PCM_16BIT:
+                return 2;
+            case C.ENCODING_PCM_24BIT:
+                return 3;
+            default:
+                return 4;
+        }
+    }
+
+    // The limiter ceiling is full scale in the encoding's own sample range.
+    private static float fullScale(int encoding) {
+        switch (encoding) {
+            case C.ENCODING_PCM_16BIT:
+                return Short.MAX_VALUE;
+            case C.ENCODING_PCM_24BIT:
+                return PCM_24BIT_MAX;
+            case C.ENCODING_PCM_32BIT:
+                return Integer.MAX_VALUE;
+            default:
+                return 1.0f;
+        }
+    }
+
     private static float dbToLinear(float db) {
         db = Math.max(-60f, Math.min(15f, db));
         return (float) Math.pow(10.0, db / 20.0);
@@ -1,9 +1,11 @@
 package com.cappielloantonio.tempo.util;
 
+import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.OptIn;
 import androidx.media3.common.C;
 import androidx.media3.common.MediaItem;
@@ -12,23 +14,34 @@ import androidx.media3.common.TrackGroup;
 import androidx.media3.common.Tracks;
 import androidx.media3.common.util.UnstableApi;
 import androidx.media3.common.Player;
+import androidx.media3.common.Timeline;
+import androidx.media3.datasource.DataSpec;
+import androidx.media3.datasource.cache.Cache;
+import androidx.media3.datasource.cache.ContentMetadata;
 import androidx.media3.exoplayer.MetadataRetriever;
+import androidx.media3.exoplayer.source.ProgressiveMediaSource;
 import androidx.media3.exoplayer.source.TrackGroupArray;
 import androidx.media3.extractor.metadata.id3.InternalFrame;
 import androidx.media3.extractor.metadata.id3.TextInformationFrame;
 
 import com.cappielloantonio.tempo.App;
 import com.cappielloantonio.tempo.model.ReplayGain;
+import com.cappielloantonio.tempo.repository.ReplayGainRepository;
 import com.cappielloantonio.tempo.subsonic.models.ReplayGainInfo;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 @OptIn(markerClass = UnstableApi.class)
 public class ReplayGainUtil {
@@ -47,6 +60,16 @@ public class ReplayGainUtil {
     private static final ExecutorService prefetchExecutor =
             Executors.newFixedThreadPool(2);
 
+    // Prefetch window around the current item, in playback order
+    private static final int PREFETCH_BEHIND = 1;
+    private static final int PREFETCH_AHEAD = 10;
+
+    // Tags live at the start of the file; this much cached lets a probe skip the network
+    private static final long HEADER_BYTES = 64 * 1024;
+
+    private static final ReplayGainRepository replayGainRepository = new ReplayGainRepository();
+    private static final PrefetchStats stats = new PrefetchStats();
+
     // Audio processor that applies gain directly to PCM samples inside
     // ExoPlayer's audio pipeline.  Unlike player.setVolume() this is
     // sample-accurate across gapless transitions.
@@ -66,13 +89,26 @@ public class ReplayGainUtil {
         playerRef = new WeakReference<>(null);
     }
 
+    /**
+     * Resolves tag-based gains for a window around the current item, cheapest source
+     * first: server RG on the MediaItem, the in-memory map, the on-disk gain cache,
+     * the header bytes already in the streaming cache and, for the next track only, a
+     * network probe. Called again on every transition so the window slides along.
+     */
     public static void prefetchQueueGains(Player player) {
         if (Objects.equals(Preferences.getReplayGainMode(), "disabled")) return;
 
         playerRef = new WeakReference<>(player);
 
-        for (int i = 0; i < player.getMediaItemCount(); i++) {
-            MediaItem item = player.getMediaItemAt(i);
+        List<Integer> window = collectWindowIndexes(player);
+        stats.skippedOutsideWindow.addAndGet(Math.max(0, player.getMediaItemCount() - window.size()));
+
+        int nextIndex = player.getNextMediaItemIndex();
+        String nextMediaId = null;
+        List<MediaItem> candidates = new ArrayList<>();
+
+        for (int index : window) {
+            MediaItem item = player.getMediaItemAt(index);
 
             if (item.mediaId == null || item.localConfiguration == null) continue;
 
@@ -87,21 +123,130 @@ public class ReplayGainUtil {
             if (serverInfo != null) {
                 if (prefetchedIds.add(item.mediaId)) {
                     gainDataMap.put(item.mediaId, serverInfoToGains(serverInfo));
+                    stats.serverProvided.incrementAndGet();
                     Log.d(TAG, "Prefetch skip (server RG available) " + item.mediaId);
                 }
                 continue;
             }
 
-            if (!prefetchedIds.add(item.mediaId)) continue;
+            if (!prefetchedIds.add(item.mediaId)) {
+                stats.memoryHits.incrementAndGet();
+                continue;
+            }
+
+            if (index == nextIndex) nextMediaId = item.mediaId;
+            candidates.add(item);
+        }
+
+        if (candidates.isEmpty()) return;
+
+        String serverId = Preferences.getServerId();
+        if (serverId == null) {
+            probeCandidates(candidates, Collections.emptyMap(), nextMediaId);
+            return;
+        }
+
+        List<String> ids = new ArrayList<>(candidates.size());
+        for (MediaItem item : candidates) ids.add(item.mediaId);
+
+        String nextId = nextMediaId;
+        Futures.addCallback(replayGainRepository.getGains(serverId, ids), new FutureCallback<Map<String, ReplayGain>>() {
+            @Override
+            public void onSuccess(Map<String, ReplayGain> stored) {
+                probeCandidates(candidates, stored, nextId);
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                Log.d(TAG, "Gain cache lookup failed: " + t);
+                probeCandidates(candidates, Collections.emptyMap(), nextId);
+            }
+        }, prefetchExecutor);
+    }
+
+    public static PrefetchStats getPrefetchStats() {
+        return stats;
+    }
+
+    /**
+     * Current item, {@link #PREFETCH_BEHIND} before it and {@link #PREFETCH_AHEAD}
+     * after it, in playback order (shuffle and repeat included).
+     */
+    private static List<Integer> collectWindowIndexes(Player player) {
+        List<Integer> indexes = new ArrayList<>();
+        Timeline timeline = player.getCurrentTimeline();
+        int current = player.getCurrentMediaItemIndex();
+        if (timeline.isEmpty() || current == C.INDEX_UNSET) return indexes;
+
+        int repeatMode = player.getRepeatMode() == Player.REPEAT_MODE_ONE
+                ? Player.REPEAT_MODE_OFF : player.getRepeatMode();
+        boolean shuffle = player.getShuffleModeEnabled();
+
+        indexes.add(current);
+
+        int index = current;
+        for (int i = 0; i < PREFETCH_AHEAD; i++) {
+            index = timeline.getNextWindowIndex(index, repeatMode, shuffle);
+            if (index == C.INDEX_UNSET || indexes.contains(index)) break;
+            indexes.add(index);
+        }
+
+        index = current;
+        for (int i = 0; i < PREFETCH_BEHIND; i++) {
+            index = timeline.getPreviousWindowIndex(index, repeatMode, shuffle);
+            if (index == C.INDEX_UNSET || indexes.contains(index)) break;
+            indexes.add(index);
+        }
+
+        return indexes;
+    }
 
-            submitPrefetch(item);
+    private static void probeCandidates(List<MediaItem> candidates, Map<String, ReplayGain> stored, String nextMediaId) {
+        for (MediaItem item : candidates) {
+            ReplayGain storedGain = stored.get(item.mediaId);
+            if (storedGain != null) {
+                stats.diskHits.incrementAndGet();
+                List<ReplayGain> gains = fromStoredGain(storedGain);
+                gainDataMap.put(item.mediaId, gains);
+                onPrefetched(item, gains);
+            } else if (isHeaderCached(item)) {
+                stats.cacheProbes.incrementAndGet();
+                submitPrefetch(item, true);
+            } else if (item.mediaId.equals(nextMediaId)) {
+                stats.networkProbes.incrementAndGet();
+                submitPrefetch(item, false);
+            } else {
+                // Left for a later pass, once the window has moved closer or
+                // the streaming cache holds the header.
+                prefetchedIds.remove(item.mediaId);
+            }
         }
+        Log.d(TAG, "Prefetch stats: " + stats);
     }
 
-    private static void submitPrefetch(MediaItem item) {
+    private static boolean isHeaderCached(MediaItem item) {
+        try {
+            Cache cache = DownloadUtil.getStreamingCacheForPreload(App.getInstance());
+            String key = new StreamingCacheKeyFactory().buildCacheKey(
+                    new DataSpec.Builder().setUri(item.localConfiguration.uri).build());
+            long contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(key));
+            long needed = contentLength == C.LENGTH_UNSET
+                    ? HEADER_BYTES : Math.min(HEADER_BYTES, contentLength);
+            return cache.getCachedLength(key, 0, needed) >= needed;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static void submitPrefetch(MediaItem item, boolean fromCache) {
         prefetchExecutor.execute(() -> {
-            try (MetadataRetriever retriever =
-                         new MetadataRetriever.Builder(App.getInstance(), item).build()) {
+            MetadataRetriever.Builder builder = new MetadataRetriever.Builder(App.getInstance(), item);
+            if (fromCache) {
+                builder.setMediaSourceFactory(new ProgressiveMediaSource.Factory(
+                        DownloadUtil.getStreamingCacheReaderFactory(App.getInstance())));
+            }
+
+            try (MetadataRetriever retriever = builder.build()) {
 
                 TrackGroupArray trackGroups =
                         retriever.retrieveTrackGroups().get(20,
@@ -122,46 +267,14 @@ public class ReplayGainUtil {
                         || resolveAlbumGain(gains) != 0f;
                 if (prefetchedGainsValid) {
                     gainDataMap.put(item.mediaId, gains);
+                    persistGains(item.mediaId, gains);
                 }
                 Log.d(TAG, "Prefetched " + item.mediaId
+                        + (fromCache ? " from cache" : "")
                         + " trackGain=" + resolveTrackGain(gains)
                         + " valid=" + prefetchedGainsValid);
 
-                // Post back to the main thread.  Two things can happen:
-                //  1. If the prefetched item is the CURRENT playing track
-                //     (prefetch finished AFTER the transition to it already
-                //     happened, which is common on first play with a cold
-                //     network), apply its gain immediately.  This corrects
-                //     the audio without waiting for onTracksChanged.
-                //  2. Queue the pending gain for the next gapless transition.
-                mainHandler.post(() -> {
-                    Player p = playerRef.get();
-                    if (p == null) return;
-
-                    MediaItem current = p.getCurrentMediaItem();
-                    if (current != null && item.mediaId.equals(current.mediaId)) {
-                        float gain = resolveGain(p, gains);
-                        // Only apply if we have real gain data. Empty prefetch
-                        // gains (gain = 0f) must not call setGainImmediate —
-                        // that would write preamp-only (-6 dB) into
-                        // baselineGainLinear, poisoning every future seek
-                        // restore (onFlush reads baselineGainLinear) and every
-                        // reapplyCurrentTrackGain call, locking the volume at
-                        // the wrong level for the rest of the track.
-                        if (gain != 0f) {
-                            float peak = resolvePeak(p, gains);
-                            float totalGain = computeTotalGain(gain, peak);
-                            Log.d(TAG, "Late prefetch for current track " + item.mediaId
-                                    + " — applying gain immediately totalGain=" + totalGain);
-                            audioProcessor.setGainImmediate(totalGain);
-                        } else {
-                            Log.d(TAG, "Late prefetch for current track " + item.mediaId
-                                    + " — empty gains, skipping setGainImmediate");
-                        }
-                    }
-
-                    queuePendingForNextTrack(p);
-                });
+                onPrefetched(item, gains);
 
             } catch (Throwable e) {
                 Log.d(TAG, "Prefetch failed for " + item.mediaId + ": " + e);
@@ -170,8 +283,96 @@ public class ReplayGainUtil {
         });
     }
 
+    private static void onPrefetched(MediaItem item, List<ReplayGain> gains) {
+        // Post back to the main thread.  Two things can happen:
+        //  1. If the prefetched item is the CURRENT playing track
+        //     (prefetch finished AFTER the transition to it already
+        //     happened, which is common on first play with a cold
+        //     network), apply its gain immediately.  This corrects
+        //     the audio without waiting for onTracksChanged.
+        //  2. Queue the pending gain for the next gapless transition.
+        mainHandler.post(() -> {
+            Player p = playerRef.get();
+            if (p == null) return;
+
+            MediaItem current = p.getCurrentMediaItem();
+            if (current != null && item.mediaId.equals(current.mediaId)) {
+                float gain = resolveGain(p, gains);
+                // Only apply if we have real gain data. Empty prefetch
+                // gains (gain = 0f) must not call setGainImmediate —
+                // that would write preamp-only (-6 dB) into
+                // baselineGainLinear, poisoning every future seek
+                // restore (onFlush reads baselineGainLinear) and every
+                // reapplyCurrentTrackGain call, locking the volume at
+                // the wrong level for the rest of the track.
+                if (gain != 0f) {
+                    float peak = resolvePeak(p, gains);
+                    float totalGain = computeTotalGain(gain, peak);
+                    Log.d(TAG, "Late prefetch for current track " + item.mediaId
+                            + " — applying gain immediately totalGain=" + totalGain);
+                    audioProcessor.setGainImmediate(totalGain);
+                } else {
+                    Log.d(TAG, "Late prefetch for current track " + item.mediaId
+                            + " — empty gains, skipping setGainImmediate");
+                }
+            }
+
+            queuePendingForNextTrack(p);
+        });
+    }
+
+    /**
+     * Stores the resolved values (primary slot, falling back to the secondary one) so
+     * a later session gets the same gains without probing the file again.
+     */
+    private static void persistGains(String mediaId, List<ReplayGain> gains) {
+        String serverId = Preferences.getServerId();
+        if (serverId == null) return;
+
+        ReplayGain first = gains.get(0);
+        ReplayGain second = gains.get(1);
+        ReplayGain resolved = new ReplayGain(
+                first.getTrackGain() != 0f ? first.getTrackGain() : second.getTrackGain(),
+                first.getAlbumGain() != 0f ? first.getAlbumGain() : second.getAlbumGain(),
+                first.getTrackPeak() != 0f ? first.getTrackPeak() : second.getTrackPeak(),
+                first.getAlbumPeak() != 0f ? first.getAlbumPeak() : second.getAlbumPeak());
+        replayGainRepository.insert(serverId, mediaId, resolved);
+    }
+
+    private static List<ReplayGain> fromStoredGain(ReplayGain stored) {
+        List<ReplayGain> gains = new ArrayList<>();
+        gains.add(stored);
+        gains.add(new ReplayGain());
+        return gains;
+    }
+
+    /**
+     * How often each prefetch source was used. Everything except
+     * {@link #networkProbes} is a probe that did not open a second connection.
+     */
+    public static final class PrefetchStats {
+        public final AtomicLong serverProvided = new AtomicLong();
+        public final AtomicLong memoryHits = new AtomicLong();
+        public final AtomicLong diskHits = new AtomicLong();
+        public final AtomicLong cacheProbes = new AtomicLong();
+        public final AtomicLong networkProbes = new AtomicLong();
+        public final AtomicLong skippedOutsideWindow = new AtomicLong();
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "server=" + serverProvided.get()
+                    + " memory=" + memoryHits.get()
+                    + " disk=" + diskHits.get()
+                    + " cache=" + cacheProbes.get()
+                    + " network=" + networkProbes.get()
+                    + " outsideWindow=" + skippedOutsideWindow.get();
+        }
+    }
+
     public static void applyGain(Player player, MediaItem mediaItem) {
         audioProcessor.clearPendingGain();
+        audioProcessor.setLimiterEnabled(Preferences.isReplayGainLimiterEnabled());
 
         if (mediaItem == null || mediaItem.mediaId == null) {
             Log.d(TAG, "applyGain: null mediaItem or mediaId, skipping");
@@ -272,6 +473,7 @@ public class ReplayGainUtil {
         } else if (mediaId != null) {
             gainDataMap.put(mediaId, gains);
             prefetchedIds.add(mediaId);
+            if (!extractedIsEmpty && !gains.equals(cached)) persistGains(mediaId, gains);
         }
 
         float gain = resolveGain(player, gains);
@@ -625,8 +827,9 @@ public class ReplayGainUtil {
      */
     private static ReplayGainInfo extractServerInfo(MediaItem item) {
         if (item == null || item.mediaMetadata == null) return null;
-        if (!ReplayGainBundleUtil.isPresent(item.mediaMetadata.extras)) return null;
-        ReplayGainInfo info = ReplayGainBundleUtil.fromBundle(item.mediaMetadata.extras);
+        Bundle extras = MediaExtrasRegistry.get(item.mediaMetadata);
+        if (!ReplayGainBundleUtil.isPresent(extras)) return null;
+        ReplayGainInfo info = ReplayGainBundleUtil.fromBundle(extras);
         return (info != null && info.hasAnyValue()) ? info : null;
     }
 
@@ -0,0 +1,52 @@
+package com.cappielloantonio.tempo.util;
+
+import androidx.annotation.Nullable;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Turns what the user typed into something the local search can match: a full-text
+ * query for the search index, and a folded form for the in-list filters. Both ignore
+ * case and diacritics, so "bjork" finds "Björk".
+ */
+public class SearchQueryUtil {
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    /**
+     * An FTS MATCH expression that requires every word of {@code input} as a prefix,
+     * or null if {@code input} has no words. Operators and quotes are dropped, so any
+     * input gives a valid expression.
+     */
+    @Nullable
+    public static String toMatchQuery(@Nullable String input) {
+        if (input == null) return null;
+
+        StringBuilder query = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        String folded = fold(input);
+
+        for (int i = 0; i <= folded.length(); i++) {
+            char c = i < folded.length() ? folded.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                if (query.length() > 0) query.append(' ');
+                query.append(word).append('*');
+                word.setLength(0);
+            }
+        }
+
+        return query.length() > 0 ? query.toString() : null;
+    }
+
+    /**
+     * Lower case without diacritics, for comparing names the way the index does.
+     */
+    public static String fold(@Nullable String text) {
+        if (text == null) return "";
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
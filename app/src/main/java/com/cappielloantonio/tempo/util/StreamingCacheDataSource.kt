@@ -52,8 +52,14 @@ class StreamingCacheDataSource private constructor(
             val contentLength = ContentMetadata.getContentLength(cacheDataSource.cache.getContentMetadata(cacheKey));
 
             if (contentLength == C.LENGTH_UNSET.toLong()) {
-                Log.d(TAG, "Removing partial cache for $cacheKey")
-                cacheDataSource.cache.removeResource(cacheKey)
+                // Unfinished transcodes with a recorded time coverage are kept, and
+                // TranscodingMediaSource continues them with timeOffset.
+                if (TranscodeSegmentCache.isResumable(cacheDataSource.cache, cacheKey)) {
+                    Log.d(TAG, "Keeping resumable transcode segment $cacheKey")
+                } else {
+                    Log.d(TAG, "Removing partial cache for $cacheKey")
+                    cacheDataSource.cache.removeResource(cacheKey)
+                }
             } else {
                 Log.d(TAG, "Key $cacheKey has been fully cached")
             }
@@ -0,0 +1,227 @@
+package com.cappielloantonio.tempo.util
+
+import android.net.Uri
+import android.util.Log
+import androidx.media3.common.C
+import androidx.media3.common.util.UnstableApi
+import androidx.media3.datasource.DataSource
+import androidx.media3.datasource.DataSpec
+import androidx.media3.datasource.TransferListener
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.CacheDataSink
+import androidx.media3.datasource.cache.ContentMetadata
+import androidx.media3.datasource.cache.ContentMetadataMutations
+import androidx.media3.exoplayer.source.ProgressiveMediaSource
+import androidx.media3.extractor.DefaultExtractorsFactory
+import androidx.media3.extractor.Extractor
+import androidx.media3.extractor.ExtractorInput
+import androidx.media3.extractor.ExtractorsFactory
+import androidx.media3.extractor.PositionHolder
+import java.io.EOFException
+
+/**
+ * Time-addressed segments of transcoded streams in the streaming cache.
+ *
+ * A transcode has no content length until it finishes, and the server can't
+ * resume one with a byte range, so an interrupted transcode used to be thrown
+ * away. Instead, [TranscodingMediaSource] records in the cache metadata how
+ * much playback time each segment (one cache key per `timeOffset`) is known
+ * to cover, together with the committed bytes that time needs. Such a segment
+ * is kept: later plays read its cached prefix and continue from the server
+ * with `timeOffset` set to where the prefix ends.
+ */
+@UnstableApi
+object TranscodeSegmentCache {
+    private const val TAG = "TranscodeSegmentCache"
+
+    private const val METADATA_COVERED_US = "tempo-covered-us"
+    private const val METADATA_COVERED_BYTES = "tempo-covered-bytes"
+
+    fun keyFor(uri: Uri): String {
+        return StreamingCacheKeyFactory().buildCacheKey(DataSpec.Builder().setUri(uri).build())
+    }
+
+    /**
+     * Playback time from the segment start that its committed bytes cover, or
+     * [C.TIME_UNSET] when the cache holds fewer bytes than the recorded time needs.
+     */
+    fun getCoveredUs(cache: Cache, key: String): Long {
+        val metadata = cache.getContentMetadata(key)
+        return validCoverageUs(
+            metadata.get(METADATA_COVERED_US, C.TIME_UNSET),
+            metadata.get(METADATA_COVERED_BYTES, C.LENGTH_UNSET.toLong()),
+            getCommittedLength(cache, key)
+        )
+    }
+
+    /** Length of the contiguous prefix of [key] whose bytes have been committed to the cache. */
+    fun getCommittedLength(cache: Cache, key: String): Long {
+        return maxOf(0L, cache.getCachedLength(key, 0, C.LENGTH_UNSET.toLong()))
+    }
+
+    fun recordCoverage(cache: Cache, key: String, coverage: Coverage) {
+        try {
+            if (coverage.us <= getCoveredUs(cache, key)) return
+            val mutations = ContentMetadataMutations()
+            mutations.set(METADATA_COVERED_US, coverage.us)
+            mutations.set(METADATA_COVERED_BYTES, coverage.bytes)
+            cache.applyContentMetadataMutations(key, mutations)
+        } catch (exception: Exception) {
+            Log.w(TAG, "Failed to record coverage for $key: $exception")
+        }
+    }
+
+    /**
+     * Length of the contiguous cached prefix of an unfinished segment that can be
+     * played back, or 0 when there is none. Finished segments return 0 as well:
+     * they have a known length and the regular cache path serves them.
+     */
+    fun getResumableLength(cache: Cache, key: String): Long {
+        return try {
+            val contentLength = ContentMetadata.getContentLength(cache.getContentMetadata(key))
+            if (contentLength != C.LENGTH_UNSET.toLong()) return 0
+            if (getCoveredUs(cache, key) <= 0) return 0
+            getCommittedLength(cache, key)
+        } catch (exception: Exception) {
+            0
+        }
+    }
+
+    fun isResumable(cache: Cache, key: String): Boolean {
+        return getResumableLength(cache, key) > 0
+    }
+
+    /**
+     * Recorded coverage only counts while the cache still holds the bytes it was
+     * recorded for; metadata without a byte count predates that check.
+     */
+    internal fun validCoverageUs(coveredUs: Long, coveredBytes: Long, committedBytes: Long): Long {
+        if (coveredUs == C.TIME_UNSET || coveredBytes < 0 || committedBytes < coveredBytes) return C.TIME_UNSET
+        return coveredUs
+    }
+
+    /** Start of the segment that plays [positionUs], in whole seconds as `timeOffset` requires. */
+    internal fun segmentStartSeconds(positionUs: Long): Int = (positionUs / C.MICROS_PER_SECOND).toInt()
+
+    /**
+     * Where a cached prefix ends, relative to its segment. Loading from the cache
+     * outruns the buffered position polls, so a valid recorded coverage is the
+     * better bound; both only ever lag the real end, never pass it.
+     */
+    internal fun prefixEndUs(loadedUs: Long, coveredUs: Long): Long {
+        return if (coveredUs == C.TIME_UNSET) loadedUs else maxOf(loadedUs, coveredUs)
+    }
+
+    class Coverage(val us: Long, val bytes: Long)
+
+    /**
+     * Turns buffered positions of a live segment into coverage that is safe to
+     * record. The bytes behind a buffered position may still sit in the cache
+     * sink's open fragment, so a position only counts once the committed length
+     * has grown by a whole fragment past what it was when the position was seen.
+     */
+    class CoverageTracker(
+        private val stepUs: Long,
+        private val fragmentSize: Long = CacheDataSink.DEFAULT_FRAGMENT_SIZE
+    ) {
+        private var recordedUs = 0L
+        private var pendingUs = C.TIME_UNSET
+        private var pendingBytes = 0L
+
+        /**
+         * Returns the coverage that has just become safe to record, if any.
+         * [committedBytes] is only asked for when it is needed.
+         */
+        fun onLoaded(loadedUs: Long, committedBytes: () -> Long): Coverage? {
+            val waiting = pendingUs != C.TIME_UNSET
+            if (!waiting && loadedUs - recordedUs < stepUs) return null
+
+            val committed = committedBytes()
+            var ready: Coverage? = null
+            if (waiting && committed >= pendingBytes) {
+                ready = Coverage(pendingUs, pendingBytes)
+                recordedUs = pendingUs
+                pendingUs = C.TIME_UNSET
+            }
+            if (pendingUs == C.TIME_UNSET && loadedUs - recordedUs >= stepUs) {
+                pendingUs = loadedUs
+                pendingBytes = committed + fragmentSize
+            }
+            return ready
+        }
+
+        fun reset() {
+            recordedUs = 0L
+            pendingUs = C.TIME_UNSET
+            pendingBytes = 0L
+        }
+    }
+
+    /**
+     * Media sources that read only the first [length] bytes, all served from the
+     * cache, and treat a packet cut off at that boundary as the end of input.
+     */
+    fun createPrefixSourceFactory(upstream: DataSource.Factory, length: Long): ProgressiveMediaSource.Factory {
+        return ProgressiveMediaSource.Factory(
+            PrefixDataSource.Factory(upstream, length),
+            TruncatedInputExtractorsFactory(DefaultExtractorsFactory())
+        )
+    }
+
+    private class PrefixDataSource(
+        private val upstream: DataSource,
+        private val limit: Long
+    ) : DataSource {
+        private var opened = false
+
+        class Factory(private val upstream: DataSource.Factory, private val limit: Long) : DataSource.Factory {
+            override fun createDataSource(): DataSource = PrefixDataSource(upstream.createDataSource(), limit)
+        }
+
+        override fun open(dataSpec: DataSpec): Long {
+            val available = limit - dataSpec.position
+            if (available <= 0) return 0
+
+            val length = if (dataSpec.length == C.LENGTH_UNSET.toLong()) available
+            else minOf(dataSpec.length, available)
+            opened = true
+            return upstream.open(dataSpec.subrange(0, length))
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+            if (!opened) return C.RESULT_END_OF_INPUT
+            return upstream.read(buffer, offset, length)
+        }
+
+        override fun addTransferListener(transferListener: TransferListener) {
+            upstream.addTransferListener(transferListener)
+        }
+
+        override fun getUri(): Uri? = upstream.uri
+
+        override fun close() {
+            if (opened) {
+                opened = false
+                upstream.close()
+            }
+        }
+    }
+
+    private class TruncatedInputExtractorsFactory(private val delegate: ExtractorsFactory) : ExtractorsFactory {
+        override fun createExtractors(): Array<Extractor> {
+            return delegate.createExtractors().map { TruncatedInputExtractor(it) }.toTypedArray()
+        }
+    }
+
+    private class TruncatedInputExtractor(private val delegate: Extractor) : Extractor by delegate {
+        override fun read(input: ExtractorInput, seekPosition: PositionHolder): Int {
+            return try {
+                delegate.read(input, seekPosition)
+            } catch (exception: EOFException) {
+                Extractor.RESULT_END_OF_INPUT
+            }
+        }
+
+        override fun getUnderlyingImplementation(): Extractor = delegate.underlyingImplementation
+    }
+}
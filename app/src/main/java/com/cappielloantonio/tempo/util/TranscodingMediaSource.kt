@@ -1,5 +1,6 @@
 package com.cappielloantonio.tempo.util
 
+import android.util.Log
 import androidx.annotation.OptIn
 import androidx.media3.common.C
 import androidx.media3.common.MediaItem
@@ -8,6 +9,7 @@ import androidx.media3.common.util.UnstableApi
 import androidx.media3.common.util.Util
 import androidx.media3.datasource.DataSource
 import androidx.media3.datasource.TransferListener
+import androidx.media3.datasource.cache.Cache
 import androidx.media3.decoder.DecoderInputBuffer
 import androidx.media3.exoplayer.FormatHolder
 import androidx.media3.exoplayer.LoadingInfo
@@ -21,15 +23,25 @@ import androidx.media3.exoplayer.source.SampleStream
 import androidx.media3.exoplayer.trackselection.ExoTrackSelection
 import androidx.media3.exoplayer.upstream.Allocator
 
+/**
+ * Plays a transcoded stream as a chain of time-addressed segments, one per
+ * `timeOffset` request. Seeks start a new segment at the target second. A
+ * segment whose transcode was interrupted keeps its cached prefix (see
+ * [TranscodeSegmentCache]); it is played from the cache and, when it runs out,
+ * continued seamlessly by a new segment starting where it ended.
+ */
 @OptIn(UnstableApi::class)
 class TranscodingMediaSource(
         private val mediaItem: MediaItem,
         private val dataSourceFactory: DataSource.Factory,
-        private val progressiveMediaSourceFactory: ProgressiveMediaSource.Factory
-) : CompositeMediaSource<Void>() {
+        private val progressiveMediaSourceFactory: ProgressiveMediaSource.Factory,
+        private val cache: Cache? = null
+) : CompositeMediaSource<Int>() {
 
     private var durationUs: Long = C.TIME_UNSET
-    private var currentSource: MediaSource? = null
+    private var currentSegment: Segment? = null
+    private var initialChildId = 0
+    private var nextChildId = 0
 
     init {
         val extras = mediaItem.mediaMetadata.extras
@@ -43,29 +55,41 @@ class TranscodingMediaSource(
                 durationUs = Util.msToUs(seconds * 1000L)
             }
         }
+    }
 
-        currentSource = progressiveMediaSourceFactory.createMediaSource(mediaItem)
+    private class Segment(
+            val source: MediaSource,
+            val childId: Int,
+            val offsetUs: Long,
+            val cacheKey: String?,
+            /** Playback time the cached prefix covers when the segment is read from the cache only. */
+            val cachedCoverageUs: Long
+    ) {
+        val isCachedPrefix get() = cachedCoverageUs != C.TIME_UNSET
     }
 
     override fun getMediaItem() = mediaItem
 
     override fun prepareSourceInternal(mediaTransferListener: TransferListener?) {
         super.prepareSourceInternal(mediaTransferListener)
-        val initialSource = progressiveMediaSourceFactory.createMediaSource(mediaItem)
-        currentSource = initialSource
-        prepareChildSource(null, initialSource)
+        val initialSegment = openSegment(0)
+        initialChildId = initialSegment.childId
+        currentSegment = initialSegment
     }
 
     override fun onChildSourceInfoRefreshed(
-            childSourceId: Void?,
+            childSourceId: Int?,
             mediaSource: MediaSource,
             newTimeline: Timeline
     ) {
         val timeline =
                 if (durationUs != C.TIME_UNSET) {
                     DurationOverridingTimeline(newTimeline, durationUs)
-                } else {
+                } else if (childSourceId == initialChildId) {
                     newTimeline
+                } else {
+                    // A later segment only knows its own remaining duration
+                    return
                 }
         refreshSourceInfo(timeline)
     }
@@ -75,45 +99,94 @@ class TranscodingMediaSource(
             allocator: Allocator,
             startPositionUs: Long
     ): MediaPeriod {
-        val source = currentSource ?: throw IllegalStateException("Source not ready")
-        val childPeriod = source.createPeriod(id, allocator, startPositionUs)
-        return TranscodingMediaPeriod(childPeriod, source, id, allocator)
+        val segment = currentSegment ?: throw IllegalStateException("Source not ready")
+        val childPeriod = segment.source.createPeriod(id, allocator, startPositionUs)
+        return TranscodingMediaPeriod(childPeriod, segment, id, allocator)
     }
 
     override fun releasePeriod(mediaPeriod: MediaPeriod) {
         val transcodingPeriod = mediaPeriod as TranscodingMediaPeriod
         transcodingPeriod.release()
-        
-        if (transcodingPeriod.currentOffsetUs > 0) {
-            releaseChildSource(null)
-            val initialSource = progressiveMediaSourceFactory.createMediaSource(mediaItem)
-            currentSource = initialSource
-            prepareChildSource(null, initialSource)
+
+        if (transcodingPeriod.segment.childId != initialChildId) {
+            releaseChildSource(transcodingPeriod.segment.childId)
+            val initialSegment = openSegment(0)
+            initialChildId = initialSegment.childId
+            currentSegment = initialSegment
         }
     }
 
     override fun getMediaPeriodIdForChildMediaPeriodId(
-            childSourceId: Void?,
+            childSourceId: Int?,
             mediaPeriodId: MediaSource.MediaPeriodId
     ) = mediaPeriodId
 
+    /**
+     * Prepares the child source of the segment starting at [offsetUs], rounded down
+     * to whole seconds as timeOffset requires. An unfinished cached transcode for
+     * that offset is read from the cache only.
+     */
+    private fun openSegment(offsetUs: Long): Segment {
+        val seconds = TranscodeSegmentCache.segmentStartSeconds(offsetUs)
+        val segmentItem =
+                if (seconds == 0) mediaItem
+                else mediaItem.buildUpon().setUri(MusicUtil.getStreamUri(mediaItem.mediaId, seconds)).build()
+
+        val cacheKey = segmentItem.localConfiguration?.uri?.let { TranscodeSegmentCache.keyFor(it) }
+        val resumableLength =
+                if (cache != null && cacheKey != null) TranscodeSegmentCache.getResumableLength(cache, cacheKey)
+                else 0L
+
+        val source: MediaSource
+        val cachedCoverageUs: Long
+        if (resumableLength > 0) {
+            source = TranscodeSegmentCache.createPrefixSourceFactory(dataSourceFactory, resumableLength)
+                    .createMediaSource(segmentItem)
+            cachedCoverageUs = TranscodeSegmentCache.getCoveredUs(cache!!, cacheKey!!)
+            Log.d(TAG, "Reusing $resumableLength cached bytes of $cacheKey")
+        } else {
+            source = progressiveMediaSourceFactory.createMediaSource(segmentItem)
+            cachedCoverageUs = C.TIME_UNSET
+        }
+
+        val childId = nextChildId++
+        prepareChildSource(childId, source)
+        return Segment(source, childId, seconds * C.MICROS_PER_SECOND, cacheKey, cachedCoverageUs)
+    }
+
     private inner class TranscodingMediaPeriod(
             private var currentPeriod: MediaPeriod,
-            private var source: MediaSource,
+            internal var segment: Segment,
             private val id: MediaSource.MediaPeriodId,
             private val allocator: Allocator
     ) : MediaPeriod, MediaPeriod.Callback {
 
         private var localCallback: MediaPeriod.Callback? = null
-        internal var currentOffsetUs: Long = 0
+        private val currentOffsetUs get() = segment.offsetUs
         private var isReloading = false
 
         private var lastSelections: Array<out ExoTrackSelection?>? = null
         private var lastMayRetainStreamFlags: BooleanArray? = null
         private var activeWrappers: Array<OffsetSampleStream?> = emptyArray()
 
+        // Largest buffered position of the current segment, relative to its start
+        private var loadedUs = 0L
+        private val coverageTracker = TranscodeSegmentCache.CoverageTracker(COVERAGE_STEP_US)
+
+        // Segment that takes over once a cached prefix has been read to its end
+        private var continuation: Segment? = null
+        private var continuationPeriod: MediaPeriod? = null
+        private var continuationStreams: Array<SampleStream?>? = null
+
+        // Absolute time of the last sample handed to the renderer
+        private var lastReadUs = C.TIME_UNSET
+
+        // Absolute time before which samples of the continuation repeat the prefix
+        private var dropBeforeUs = C.TIME_UNSET
+
         fun release() {
-            source.releasePeriod(currentPeriod)
+            releaseContinuation()
+            segment.source.releasePeriod(currentPeriod)
         }
 
         override fun prepare(callback: MediaPeriod.Callback, positionUs: Long) {
@@ -189,14 +262,22 @@ class TranscodingMediaSource(
         }
 
         override fun seekToUs(positionUs: Long): Long {
+            releaseContinuation()
+            lastReadUs = C.TIME_UNSET
+
             if (positionUs == 0L && currentOffsetUs == 0L) {
                 return currentPeriod.seekToUs(positionUs)
             }
 
             // Don't reload the source if we can already seek to the desired position. This can
-            // occur if the music server decided to direct play instead of transcoding.
-            if (currentPeriod.getAdjustedSeekPositionUs(positionUs, SeekParameters.DEFAULT) != 0L) {
-                return currentPeriod.seekToUs(positionUs)
+            // occur if the music server decided to direct play instead of transcoding, or when
+            // the target lies inside the cached part of the current segment.
+            val relativeUs = positionUs - currentOffsetUs
+            val insideSegment = relativeUs >= 0 &&
+                    (!segment.isCachedPrefix || relativeUs < segment.cachedCoverageUs)
+            if (insideSegment &&
+                    currentPeriod.getAdjustedSeekPositionUs(relativeUs, SeekParameters.DEFAULT) != 0L) {
+                return currentPeriod.seekToUs(relativeUs) + currentOffsetUs
             }
 
             reloadSource(positionUs)
@@ -209,15 +290,39 @@ class TranscodingMediaSource(
         override fun getBufferedPositionUs(): Long {
             if (isReloading) return currentOffsetUs
             val buffered = currentPeriod.bufferedPositionUs
+
+            if (buffered != C.TIME_END_OF_SOURCE && buffered != C.TIME_UNSET) {
+                loadedUs = maxOf(loadedUs, buffered)
+                maybeRecordCoverage()
+            } else if (buffered == C.TIME_END_OF_SOURCE && segment.isCachedPrefix) {
+                maybeStartContinuation()
+            }
+
+            val next = continuationPeriod
+            if (next != null) {
+                val nextBuffered = if (continuationStreams != null) next.bufferedPositionUs else C.TIME_UNSET
+                if (nextBuffered == C.TIME_END_OF_SOURCE) return C.TIME_END_OF_SOURCE
+                val seamUs = currentOffsetUs + prefixEndUs()
+                return if (nextBuffered == C.TIME_UNSET) seamUs
+                else maxOf(seamUs, nextBuffered + continuation!!.offsetUs)
+            }
+
             if (buffered == C.TIME_END_OF_SOURCE) return C.TIME_END_OF_SOURCE
             return if (buffered == C.TIME_UNSET) C.TIME_UNSET else buffered + currentOffsetUs
         }
 
         override fun getNextLoadPositionUs(): Long {
             if (isReloading) return C.TIME_UNSET
-            val next = currentPeriod.nextLoadPositionUs
-            if (next == C.TIME_END_OF_SOURCE) return C.TIME_END_OF_SOURCE
-            return if (next == C.TIME_UNSET) C.TIME_UNSET else next + currentOffsetUs
+            val next = continuationPeriod
+            if (next != null) {
+                if (continuationStreams == null) return currentOffsetUs + prefixEndUs()
+                val nextLoad = next.nextLoadPositionUs
+                if (nextLoad == C.TIME_END_OF_SOURCE) return C.TIME_END_OF_SOURCE
+                return if (nextLoad == C.TIME_UNSET) C.TIME_UNSET else nextLoad + continuation!!.offsetUs
+            }
+            val nextLoad = currentPeriod.nextLoadPositionUs
+            if (nextLoad == C.TIME_END_OF_SOURCE) return C.TIME_END_OF_SOURCE
+            return if (nextLoad == C.TIME_UNSET) C.TIME_UNSET else nextLoad + currentOffsetUs
         }
 
         override fun reevaluateBuffer(positionUs: Long) {
@@ -226,15 +331,30 @@ class TranscodingMediaSource(
 
         override fun continueLoading(isLoading: LoadingInfo): Boolean {
             if (isReloading) return false
+            val next = continuationPeriod
+            if (next != null) {
+                if (continuationStreams == null) return false
+                val builder = isLoading.buildUpon()
+                builder.setPlaybackPositionUs(maxOf(0L, isLoading.playbackPositionUs - continuation!!.offsetUs))
+                return next.continueLoading(builder.build())
+            }
             val builder = isLoading.buildUpon()
             builder.setPlaybackPositionUs(isLoading.playbackPositionUs - currentOffsetUs)
             return currentPeriod.continueLoading(builder.build())
         }
 
-        override fun isLoading() = isReloading || currentPeriod.isLoading
+        override fun isLoading(): Boolean {
+            if (isReloading) return true
+            val next = continuationPeriod
+            if (next != null) return continuationStreams == null || next.isLoading
+            return currentPeriod.isLoading
+        }
 
         override fun onPrepared(mediaPeriod: MediaPeriod) {
-            if (isReloading && mediaPeriod == currentPeriod) {
+            if (mediaPeriod === continuationPeriod) {
+                continuationStreams = selectRetainedTracks(mediaPeriod)
+                localCallback?.onContinueLoadingRequested(this)
+            } else if (isReloading && mediaPeriod == currentPeriod) {
                 isReloading = false
                 restoreTracks()
                 localCallback?.onContinueLoadingRequested(this)
@@ -249,47 +369,123 @@ class TranscodingMediaSource(
 
         private fun reloadSource(positionUs: Long) {
             isReloading = true
-            currentOffsetUs = positionUs
 
             activeWrappers.forEach { it?.childStream = null }
 
-            source.releasePeriod(currentPeriod)
-            releaseChildSource(null)
-
-            val seconds = Util.usToMs(positionUs) / 1000
-            val newUri = MusicUtil.getStreamUri(mediaItem.mediaId, seconds.toInt())
-            val newMediaItem = mediaItem.buildUpon().setUri(newUri).build()
-
-            val newSource = progressiveMediaSourceFactory.createMediaSource(newMediaItem)
+            segment.source.releasePeriod(currentPeriod)
+            releaseChildSource(segment.childId)
 
-            source = newSource
-            currentSource = newSource
-            prepareChildSource(null, newSource)
+            val newSegment = openSegment(positionUs)
+            segment = newSegment
+            currentSegment = newSegment
+            loadedUs = 0L
+            coverageTracker.reset()
 
-            val newPeriod = newSource.createPeriod(id, allocator, 0)
+            val newPeriod = newSegment.source.createPeriod(id, allocator, 0)
             currentPeriod = newPeriod
             newPeriod.prepare(this, 0)
         }
 
+        /**
+         * Writes down how far the live transcode of this segment has been loaded and
+         * committed to the cache, so an interruption leaves a prefix that later plays
+         * can reuse.
+         */
+        private fun maybeRecordCoverage() {
+            val cache = cache ?: return
+            val key = segment.cacheKey ?: return
+            if (segment.isCachedPrefix) return
+
+            val coverage = coverageTracker.onLoaded(loadedUs) {
+                TranscodeSegmentCache.getCommittedLength(cache, key)
+            } ?: return
+            TranscodeSegmentCache.recordCoverage(cache, key, coverage)
+        }
+
+        /**
+         * Where the cached prefix is known to end, relative to the segment; the exact
+         * seam is only known once the last sample has been read.
+         */
+        private fun prefixEndUs() = TranscodeSegmentCache.prefixEndUs(loadedUs, segment.cachedCoverageUs)
+
+        private fun maybeStartContinuation() {
+            if (continuationPeriod != null || activeWrappers.isEmpty()) return
+
+            val seamUs = currentOffsetUs + prefixEndUs()
+            if (durationUs != C.TIME_UNSET && seamUs >= durationUs - C.MICROS_PER_SECOND) return
+
+            val next = openSegment(seamUs)
+            if (next.offsetUs <= currentOffsetUs) {
+                // Less than a second cached; nothing to gain over reloading at the seam
+                releaseChildSource(next.childId)
+                return
+            }
+
+            Log.d(TAG, "Continuing ${mediaItem.mediaId} at ${next.offsetUs}us after cached prefix")
+            continuation = next
+            val period = next.source.createPeriod(id, allocator, 0)
+            continuationPeriod = period
+            period.prepare(this, 0)
+        }
+
+        private fun releaseContinuation() {
+            dropBeforeUs = C.TIME_UNSET
+            val next = continuation ?: return
+            continuationPeriod?.let { next.source.releasePeriod(it) }
+            releaseChildSource(next.childId)
+            continuation = null
+            continuationPeriod = null
+            continuationStreams = null
+        }
+
+        /** Called once the cached prefix has been read to its end by the renderer. */
+        private fun switchToContinuation(): Boolean {
+            val next = continuation ?: return false
+            val period = continuationPeriod ?: return false
+            val streams = continuationStreams ?: return false
+
+            segment.source.releasePeriod(currentPeriod)
+            releaseChildSource(segment.childId)
+
+            segment = next
+            currentSegment = next
+            currentPeriod = period
+            loadedUs = 0L
+            coverageTracker.reset()
+            dropBeforeUs = if (lastReadUs == C.TIME_UNSET) C.TIME_UNSET else lastReadUs + 1
+            for (i in activeWrappers.indices) {
+                activeWrappers[i]?.childStream = streams.getOrNull(i)
+            }
+
+            continuation = null
+            continuationPeriod = null
+            continuationStreams = null
+            return true
+        }
+
         private fun restoreTracks() {
-            val selections = lastSelections ?: return
-            val flags = lastMayRetainStreamFlags ?: return
+            val childStreams = selectRetainedTracks(currentPeriod) ?: return
+            for (i in childStreams.indices) {
+                activeWrappers[i]?.childStream = childStreams[i]
+            }
+        }
+
+        private fun selectRetainedTracks(period: MediaPeriod): Array<SampleStream?>? {
+            val selections = lastSelections ?: return null
+            val flags = lastMayRetainStreamFlags ?: return null
 
             // Ensure the selections array size matches activeWrappers size
             // to prevent ArrayIndexOutOfBoundsException during selectTracks
             val validSize = minOf(selections.size, activeWrappers.size)
-            if (validSize == 0) return
+            if (validSize == 0) return null
 
             val childStreams = arrayOfNulls<SampleStream>(validSize)
             val streamResetFlags = BooleanArray(validSize)
             val validSelections = selections.sliceArray(0 until validSize)
             val validFlags = flags.sliceArray(0 until validSize)
 
-            currentPeriod.selectTracks(validSelections, validFlags, childStreams, streamResetFlags, 0)
-
-            for (i in 0 until validSize) {
-                activeWrappers[i]?.childStream = childStreams[i]
-            }
+            period.selectTracks(validSelections, validFlags, childStreams, streamResetFlags, 0)
+            return childStreams
         }
 
         private inner class OffsetSampleStream(var childStream: SampleStream?) : SampleStream {
@@ -304,9 +500,30 @@ class TranscodingMediaSource(
                     readFlags: Int
             ): Int {
                 val stream = childStream ?: return C.RESULT_NOTHING_READ
+
+                if (dropBeforeUs != C.TIME_UNSET) {
+                    // The continuation restarts at a whole second; skip what the prefix already played
+                    stream.skipData(dropBeforeUs - currentOffsetUs)
+                }
+
                 val result = stream.readData(formatHolder, buffer, readFlags)
+                if (result == C.RESULT_BUFFER_READ && buffer.isEndOfStream && continuation != null) {
+                    buffer.clear()
+                    switchToContinuation()
+                    return C.RESULT_NOTHING_READ
+                }
                 if (result == C.RESULT_BUFFER_READ && !buffer.isEndOfStream) {
                     buffer.timeUs += currentOffsetUs
+                    if (dropBeforeUs != C.TIME_UNSET) {
+                        // Only a sample loaded between the skip and the read can land here
+                        if (buffer.timeUs < dropBeforeUs - SEAM_TOLERANCE_US &&
+                                readFlags and SampleStream.FLAG_PEEK == 0) {
+                            buffer.clear()
+                            return C.RESULT_NOTHING_READ
+                        }
+                        dropBeforeUs = C.TIME_UNSET
+                    }
+                    lastReadUs = maxOf(lastReadUs, buffer.timeUs)
                 }
                 return result
             }
@@ -316,6 +533,16 @@ class TranscodingMediaSource(
         }
     }
 
+    private companion object {
+        const val TAG = "TranscodingMediaSource"
+
+        /** How much newly loaded playback time is worth a cache metadata update. */
+        const val COVERAGE_STEP_US = 2 * C.MICROS_PER_SECOND
+
+        /** A frame straddling the seam may be played twice rather than dropped. */
+        const val SEAM_TOLERANCE_US = 100_000L
+    }
+
     private class DurationOverridingTimeline(timeline: Timeline, private val durationUs: Long) :
             ForwardingTimeline(timeline) {
 
@@ -1,32 +1,50 @@
 package com.cappielloantonio.tempo.viewmodel;
 
 import android.app.Application;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import com.cappielloantonio.tempo.App;
-import com.cappielloantonio.tempo.interfaces.MediaCallback;
-import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
+import com.cappielloantonio.tempo.repository.LibraryRepository;
 import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 
 import java.util.ArrayList;
 import java.util.List;
-
-import retrofit2.Call;
-import retrofit2.Callback;
+import java.util.function.Consumer;
 
 public class AlbumCatalogueViewModel extends AndroidViewModel {
+    private static final String TAG = "AlbumCatalogueViewModel";
+
+    private final LibraryRepository libraryRepository;
+
     private final MutableLiveData<List<AlbumID3>> albumList = new MutableLiveData<>(new ArrayList<>());
     private final MutableLiveData<Boolean> loading = new MutableLiveData<>(true);
 
-    private int page = 0;
-    private Status status = Status.STOPPED;
+    private final LibraryRepository.SyncCallback syncCallback = new LibraryRepository.SyncCallback() {
+        @Override
+        public void onProgress() {
+            // First sync: show the first pages rather than wait for all of them
+            List<AlbumID3> albums = albumList.getValue();
+            if (albums == null || albums.isEmpty()) readMirror(albumList::setValue);
+        }
+
+        @Override
+        public void onFinished(boolean changed) {
+            if (changed) readMirror(albumList::setValue);
+            loading.setValue(false);
+        }
+    };
 
     public AlbumCatalogueViewModel(@NonNull Application application) {
         super(application);
+
+        libraryRepository = new LibraryRepository();
     }
 
     public LiveData<List<AlbumID3>> getAlbumList() {
@@ -37,69 +55,39 @@ public class AlbumCatalogueViewModel extends AndroidViewModel {
         return loading;
     }
 
+    /**
+     * Shows the mirrored albums, then syncs the mirror and shows it again if it changed.
+     */
     public void loadAlbums() {
-        page = 0;
-        status = Status.RUNNING;
-        albumList.setValue(new ArrayList<>());
-        loadAlbums(500);
+        loading.setValue(true);
+        readMirror(albums -> {
+            if (albums.isEmpty()) return;
+            albumList.setValue(albums);
+            loading.setValue(false);
+        });
+        libraryRepository.sync(syncCallback);
     }
 
     public void stopLoading() {
-        status = Status.STOPPED;
+        libraryRepository.removeSyncCallback(syncCallback);
     }
 
-    private void loadAlbums(int size) {
-        retrieveAlbums(new MediaCallback() {
+    private void readMirror(Consumer<List<AlbumID3>> onRead) {
+        Futures.addCallback(libraryRepository.getAlbums(), new FutureCallback<List<AlbumID3>>() {
             @Override
-            public void onError(Exception exception) {
+            public void onSuccess(List<AlbumID3> albums) {
+                onRead.accept(albums);
             }
 
             @Override
-            public void onLoadMedia(List<?> media) {
-                if (status == Status.STOPPED) {
-                    loading.setValue(false);
-                    return;
-                }
-
-                List<AlbumID3> liveAlbum = albumList.getValue();
-
-                liveAlbum.addAll((List<AlbumID3>) media);
-                albumList.setValue(liveAlbum);
-
-                if (media.size() == size) {
-                    loadAlbums(size);
-                    loading.setValue(true);
-                } else {
-                    status = Status.STOPPED;
-                    loading.setValue(false);
-                }
+            public void onFailure(@NonNull Throwable t) {
+                Log.w(TAG, "Reading the library mirror failed: " + t);
             }
-        }, size, size * page++);
-    }
-
-
-    private void retrieveAlbums(MediaCallback callback, int size, int offset) {
-        App.getSubsonicClientInstance(false)
-                .getAlbumSongListClient()
-                .getAlbumList2("alphabeticalByName", size, offset, null, null)
-                .enqueue(new Callback<ApiResponse>() {
-                    @Override
-                    public void onResponse(@NonNull Call<ApiResponse> call, @NonNull retrofit2.Response<ApiResponse> response) {
-                        if (response.isSuccessful() && response.body() != null && response.body().getSubsonicResponse().getAlbumList2() != null && response.body().getSubsonicResponse().getAlbumList2().getAlbums() != null) {
-                            List<AlbumID3> albumList = new ArrayList<>(response.body().getSubsonicResponse().getAlbumList2().getAlbums());
-                            callback.onLoadMedia(albumList);
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
-                        callback.onError(new Exception(t.getMessage()));
-                    }
-                });
+        }, ContextCompat.getMainExecutor(getApplication()));
     }
 
-    private enum Status {
-        RUNNING,
-        STOPPED
+    @Override
+    protected void onCleared() {
+        stopLoading();
     }
-}
\ No newline at end of file
+}
@@ -101,20 +101,19 @@ public class ArtistBottomSheetViewModel extends AndroidViewModel {
         if (Preferences.isStarredArtistsSyncEnabled()) {
             Log.d("ArtistSync", "Starting artist sync for: " + artist.getName());
             
-            artistRepository.getArtistAllSongs(artist.getId(), new ArtistRepository.ArtistSongsCallback() {
+            // Downloads album by album as they load, rather than after the last one
+            artistRepository.loadArtistSongs(artist.getId(), new ArtistRepository.ArtistSongsListener() {
                 @OptIn(markerClass = UnstableApi.class)
                 @Override
-                public void onSongsCollected(List<Child> songs) {
-                    Log.d("ArtistSync", "Callback triggered with songs: " + (songs != null ? songs.size() : 0));
-                    if (songs != null && !songs.isEmpty()) {
+                public void onSongs(List<Child> songs, boolean complete) {
+                    Log.d("ArtistSync", "Callback triggered with songs: " + songs.size());
+                    if (!songs.isEmpty()) {
                         Log.d("ArtistSync", "Starting download of " + songs.size() + " songs");
                         DownloadUtil.getDownloadTracker(context).download(
                                 MappingUtil.mapDownloads(songs),
                                 songs.stream().map(Download::new).collect(Collectors.toList())
                         );
                         Log.d("ArtistSync", "Download started successfully");
-                    } else {
-                        Log.d("ArtistSync", "No songs to download");
                     }
                 }
             });
@@ -1,56 +1,66 @@
 package com.cappielloantonio.tempo.viewmodel;
 
 import android.app.Application;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import com.cappielloantonio.tempo.App;
-import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
+import com.cappielloantonio.tempo.repository.LibraryRepository;
 import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
-import com.cappielloantonio.tempo.subsonic.models.IndexID3;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 
 import java.util.ArrayList;
 import java.util.List;
 
-import retrofit2.Call;
-import retrofit2.Callback;
-
 public class ArtistCatalogueViewModel extends AndroidViewModel {
+    private static final String TAG = "ArtistCatalogueViewModel";
+
+    private final LibraryRepository libraryRepository;
     private final MutableLiveData<List<ArtistID3>> artistList = new MutableLiveData<>(new ArrayList<>());
 
+    private final LibraryRepository.SyncCallback syncCallback = changed -> {
+        if (changed) readMirror();
+    };
+
     public ArtistCatalogueViewModel(@NonNull Application application) {
         super(application);
+
+        libraryRepository = new LibraryRepository();
     }
 
     public LiveData<List<ArtistID3>> getArtistList() {
         return artistList;
     }
 
+    /**
+     * Shows the mirrored artists, then syncs the mirror and shows it again if it changed.
+     */
     public void loadArtists() {
-        App.getSubsonicClientInstance(false)
-                .getBrowsingClient()
-                .getArtists()
-                .enqueue(new Callback<ApiResponse>() {
-                    @Override
-                    public void onResponse(@NonNull Call<ApiResponse> call, @NonNull retrofit2.Response<ApiResponse> response) {
-                        if (response.isSuccessful() && response.body() != null && response.body().getSubsonicResponse().getArtists() != null) {
-                            List<ArtistID3> artists = new ArrayList<>();
-
-                            for (IndexID3 index : response.body().getSubsonicResponse().getArtists().getIndices()) {
-                                artists.addAll(index.getArtists());
-                            }
-
-                            artistList.setValue(artists);
-                        }
-                    }
-
-                    @Override
-                    public void onFailure(@NonNull Call<ApiResponse> call, @NonNull Throwable t) {
-
-                    }
-                });
+        readMirror();
+        libraryRepository.sync(syncCallback);
+    }
+
+    private void readMirror() {
+        Futures.addCallback(libraryRepository.getArtists(), new FutureCallback<List<ArtistID3>>() {
+            @Override
+            public void onSuccess(List<ArtistID3> artists) {
+                if (!artists.isEmpty()) artistList.setValue(artists);
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                Log.w(TAG, "Reading the library mirror failed: " + t);
+            }
+        }, ContextCompat.getMainExecutor(getApplication()));
+    }
+
+    @Override
+    protected void onCleared() {
+        libraryRepository.removeSyncCallback(syncCallback);
     }
 }
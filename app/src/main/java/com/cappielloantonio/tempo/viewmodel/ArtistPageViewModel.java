@@ -18,6 +18,7 @@ import com.cappielloantonio.tempo.interfaces.StarCallback;
 import com.cappielloantonio.tempo.repository.AlbumRepository;
 import com.cappielloantonio.tempo.repository.ArtistRepository;
 import com.cappielloantonio.tempo.repository.FavoriteRepository;
+import com.cappielloantonio.tempo.repository.PagedFetcher;
 import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
 import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
 import com.cappielloantonio.tempo.subsonic.models.ArtistInfo2;
@@ -43,6 +44,7 @@ public class ArtistPageViewModel extends AndroidViewModel {
     private final FavoriteRepository favoriteRepository;
 
     private ArtistID3 artist;
+    private PagedFetcher.Handle shuffleLoad;
 
     private final MutableLiveData<List<AlbumID3>> appearsOn = new MutableLiveData<>();
     private final MutableLiveData<Map<String, List<AlbumID3>>> mapOfAlbums = new MutableLiveData<>();
@@ -116,8 +118,12 @@ public class ArtistPageViewModel extends AndroidViewModel {
         return artistRepository.getTopSongs(artist.getName(), 20);
     }
 
-    public LiveData<List<Child>> getArtistShuffleList() {
-        return artistRepository.getRandomSong(artist, 50);
+    /**
+     * Shuffled songs of the artist, as their albums load; replaces a shuffle still loading.
+     */
+    public void loadArtistShuffle(ArtistRepository.ArtistSongsListener listener) {
+        if (shuffleLoad != null) shuffleLoad.cancel();
+        shuffleLoad = artistRepository.getRandomSongs(artist, 50, listener);
     }
 
     public LiveData<List<Child>> getArtistInstantMix() {
@@ -180,11 +186,12 @@ public class ArtistPageViewModel extends AndroidViewModel {
         artist.setStarred(new Date());
 
         if (Preferences.isStarredArtistsSyncEnabled()) {
-            artistRepository.getArtistAllSongs(artist.getId(), new ArtistRepository.ArtistSongsCallback() {
+            // Downloads album by album as they load, rather than after the last one
+            artistRepository.loadArtistSongs(artist.getId(), new ArtistRepository.ArtistSongsListener() {
                 @OptIn(markerClass = UnstableApi.class)
                 @Override
-                public void onSongsCollected(List<Child> songs) {
-                    if (songs != null && !songs.isEmpty()) {
+                public void onSongs(List<Child> songs, boolean complete) {
+                    if (!songs.isEmpty()) {
                         DownloadUtil.getDownloadTracker(context).download(
                                 MappingUtil.mapDownloads(songs),
                                 songs.stream().map(Download::new).collect(Collectors.toList())
@@ -197,4 +204,8 @@ public class ArtistPageViewModel extends AndroidViewModel {
         }
     }
 
+    @Override
+    protected void onCleared() {
+        if (shuffleLoad != null) shuffleLoad.cancel();
+    }
 }
@@ -1,33 +1,65 @@
 package com.cappielloantonio.tempo.viewmodel;
 
 import android.app.Application;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
 
-import com.cappielloantonio.tempo.repository.GenreRepository;
+import com.cappielloantonio.tempo.repository.LibraryRepository;
 import com.cappielloantonio.tempo.subsonic.models.Genre;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 
 import java.util.List;
 
 public class GenreCatalogueViewModel extends AndroidViewModel {
-    private final GenreRepository genreRepository;
-    private LiveData<List<Genre>> genres;
+    private static final String TAG = "GenreCatalogueViewModel";
+
+    private final LibraryRepository libraryRepository;
+    private final MutableLiveData<List<Genre>> genres = new MutableLiveData<>();
+
+    private final LibraryRepository.SyncCallback syncCallback = changed -> {
+        if (changed) readMirror();
+    };
 
     public GenreCatalogueViewModel(@NonNull Application application) {
         super(application);
 
-        genreRepository = new GenreRepository();
+        libraryRepository = new LibraryRepository();
     }
 
+    /**
+     * Shows the mirrored genres, then syncs the mirror and shows it again if it changed.
+     */
     public void loadGenreList() {
-        if (genres == null) {
-            genres = genreRepository.getGenres(false, -1);
-        }
+        readMirror();
+        libraryRepository.sync(syncCallback);
     }
 
     public LiveData<List<Genre>> getGenreList() {
         return genres;
     }
+
+    private void readMirror() {
+        Futures.addCallback(libraryRepository.getGenres(), new FutureCallback<List<Genre>>() {
+            @Override
+            public void onSuccess(List<Genre> result) {
+                if (!result.isEmpty()) genres.setValue(result);
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                Log.w(TAG, "Reading the library mirror failed: " + t);
+            }
+        }, ContextCompat.getMainExecutor(getApplication()));
+    }
+
+    @Override
+    protected void onCleared() {
+        libraryRepository.removeSyncCallback(syncCallback);
+    }
 }
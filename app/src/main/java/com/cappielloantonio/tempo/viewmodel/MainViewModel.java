@@ -3,6 +3,7 @@ package com.cappielloantonio.tempo.viewmodel;
 import android.app.Application;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 
@@ -11,8 +12,11 @@ import com.cappielloantonio.tempo.repository.QueueRepository;
 import com.cappielloantonio.tempo.repository.SystemRepository;
 import com.cappielloantonio.tempo.subsonic.models.OpenSubsonicExtension;
 import com.cappielloantonio.tempo.subsonic.models.SubsonicResponse;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public class MainViewModel extends AndroidViewModel {
     private static final String TAG = "SearchViewModel";
@@ -25,9 +29,19 @@ public class MainViewModel extends AndroidViewModel {
         systemRepository = new SystemRepository();
     }
 
-    public boolean isQueueLoaded() {
+    public void isQueueLoaded(Consumer<Boolean> callback) {
         QueueRepository queueRepository = new QueueRepository();
-        return queueRepository.count() != 0;
+        Futures.addCallback(queueRepository.count(), new FutureCallback<Integer>() {
+            @Override
+            public void onSuccess(Integer count) {
+                callback.accept(count != null && count != 0);
+            }
+
+            @Override
+            public void onFailure(@NonNull Throwable t) {
+                callback.accept(false);
+            }
+        }, ContextCompat.getMainExecutor(getApplication()));
     }
 
     public LiveData<SubsonicResponse> ping() {
@@ -36,6 +36,9 @@ import com.cappielloantonio.tempo.util.MappingUtil;
 import com.cappielloantonio.tempo.util.NetworkUtil;
 import com.cappielloantonio.tempo.util.OpenSubsonicExtensionsUtil;
 import com.cappielloantonio.tempo.util.Preferences;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.Gson;
 
 import java.util.Collections;
@@ -288,13 +291,22 @@ public class PlayerBottomSheetViewModel extends AndroidViewModel {
 
     public boolean savePlayQueue() {
         Child media = getLiveMedia().getValue();
-        List<Child> queue = queueRepository.getMedia();
-        List<String> ids = queue.stream().map(Child::getId).collect(Collectors.toList());
 
         if (media != null) {
-            // TODO: We need to get the actual playback position here
-            Log.d(TAG, "Saving play queue - Current: " + media.getId() + ", Items: " + ids.size());
-            queueRepository.savePlayQueue(ids, media.getId(), 0); // Still hardcoded to 0 for now
+            Futures.addCallback(queueRepository.getMedia(), new FutureCallback<List<Child>>() {
+                @Override
+                public void onSuccess(List<Child> queue) {
+                    List<String> ids = queue.stream().map(Child::getId).collect(Collectors.toList());
+                    // TODO: We need to get the actual playback position here
+                    Log.d(TAG, "Saving play queue - Current: " + media.getId() + ", Items: " + ids.size());
+                    queueRepository.savePlayQueue(ids, media.getId(), 0); // Still hardcoded to 0 for now
+                }
+
+                @Override
+                public void onFailure(@NonNull Throwable t) {
+                    Log.e(TAG, "Failed to read the queue to save", t);
+                }
+            }, MoreExecutors.directExecutor());
             return true;
         }
         return false;
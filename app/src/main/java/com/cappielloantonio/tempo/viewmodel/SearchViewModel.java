@@ -5,13 +5,14 @@ import android.app.Application;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
-import androidx.media3.common.util.UnstableApi;
+import androidx.lifecycle.MutableLiveData;
 
 import com.cappielloantonio.tempo.model.RecentSearch;
+import com.cappielloantonio.tempo.repository.SearchEngine;
 import com.cappielloantonio.tempo.repository.SearchingRepository;
+import com.cappielloantonio.tempo.subsonic.models.Child;
 import com.cappielloantonio.tempo.subsonic.models.SearchResult2;
 import com.cappielloantonio.tempo.subsonic.models.SearchResult3;
-import com.cappielloantonio.tempo.ui.fragment.SearchFragment;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -22,6 +23,11 @@ public class SearchViewModel extends AndroidViewModel {
     private String query = "";
 
     private final SearchingRepository searchingRepository;
+    private final SearchEngine searchEngine = new SearchEngine();
+
+    private final MutableLiveData<SearchResult3> searchResult = new MutableLiveData<>();
+    private final MutableLiveData<List<Child>> allSongs = new MutableLiveData<>();
+    private final MutableLiveData<List<String>> searchSuggestions = new MutableLiveData<>();
 
     public SearchViewModel(@NonNull Application application) {
         super(application);
@@ -45,9 +51,21 @@ public class SearchViewModel extends AndroidViewModel {
         return searchingRepository.search2(title);
     }
 
-    @UnstableApi
-    public LiveData<SearchResult3> search3(SearchFragment sf, String title) {
-        return searchingRepository.search3(sf, title);
+    public LiveData<SearchResult3> getSearchResult() {
+        return searchResult;
+    }
+
+    /**
+     * Every song matching the current search, growing page by page while it loads.
+     */
+    public LiveData<List<Child>> getAllSongs() {
+        return allSongs;
+    }
+
+    public void search(String title) {
+        searchResult.setValue(null);
+        allSongs.setValue(null);
+        searchEngine.search(title, searchResult::setValue, (songs, complete) -> allSongs.setValue(songs));
     }
 
     public void insertNewSearch(String search) {
@@ -58,8 +76,24 @@ public class SearchViewModel extends AndroidViewModel {
         searchingRepository.delete(new RecentSearch(search, 0));
     }
 
-    public LiveData<List<String>> getSearchSuggestion(String query) {
-        return searchingRepository.getSuggestions(query);
+    public LiveData<List<String>> getSearchSuggestions() {
+        return searchSuggestions;
+    }
+
+    public void requestSearchSuggestions(String query) {
+        searchEngine.suggest(query, searchSuggestions::setValue);
+    }
+
+    public void clearSearchSuggestions() {
+        searchEngine.cancel();
+        searchSuggestions.setValue(null);
+    }
+
+    /**
+     * Forgets the last suggestions without cancelling a search still loading.
+     */
+    public void resetSearchSuggestions() {
+        searchSuggestions.setValue(null);
     }
 
     public List<String> getRecentSearchSuggestion() {
@@ -68,4 +102,10 @@ public class SearchViewModel extends AndroidViewModel {
 
         return suggestions;
     }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        searchEngine.release();
+    }
 }
@@ -4,12 +4,14 @@ import android.app.Application;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.cappielloantonio.tempo.repository.ArtistRepository;
+import com.cappielloantonio.tempo.repository.PagedFetcher;
 import com.cappielloantonio.tempo.repository.SongRepository;
 import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
 import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
@@ -31,6 +33,10 @@ public class SongListPageViewModel extends AndroidViewModel {
     public AlbumID3 album;
 
     private MutableLiveData<List<Child>> songList;
+    @Nullable
+    private MutableLiveData<List<Child>> genresSongList;
+    @Nullable
+    private PagedFetcher.Handle genresLoad;
 
     public ArrayList<String> filters = new ArrayList<>();
     public ArrayList<String> filterNames = new ArrayList<>();
@@ -57,7 +63,11 @@ public class SongListPageViewModel extends AndroidViewModel {
                 songList = artistRepository.getTopSongs(artist.getName(), 50);
                 break;
             case Constants.MEDIA_BY_GENRES:
-                songList = songRepository.getSongsByGenres(filters);
+                // One list for every caller; a new load replaces the one still running
+                if (genresSongList == null) genresSongList = songList;
+                songList = genresSongList;
+                if (genresLoad != null) genresLoad.cancel();
+                genresLoad = songRepository.getSongsByGenres(filters, songList);
                 break;
             case Constants.MEDIA_BY_YEAR:
                 songList = songRepository.getRandomSample(maxNumberByYear, year, year + 10);
@@ -97,4 +107,9 @@ public class SongListPageViewModel extends AndroidViewModel {
     public String getFiltersTitle() {
         return TextUtils.join(", ", filterNames);
     }
+
+    @Override
+    protected void onCleared() {
+        if (genresLoad != null) genresLoad.cancel();
+    }
 }
@@ -6,6 +6,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.os.PowerManager;
 import android.text.TextUtils;
 
 import com.bumptech.glide.request.target.CustomTarget;
@@ -82,6 +83,8 @@ public final class WidgetUpdateManager {
                                        String albumLink,
                                        String artistLink) {
         final Context appCtx = ctx.getApplicationContext();
+        if (!hasWidgets(appCtx)) return;
+
         final String t = TextUtils.isEmpty(title) ? appCtx.getString(R.string.widget_not_playing) : title;
         final String a = TextUtils.isEmpty(artist) ? appCtx.getString(R.string.widget_placeholder_subtitle) : artist;
         final String alb = !TextUtils.isEmpty(album) ? album : "";
@@ -136,6 +139,33 @@ public final class WidgetUpdateManager {
         }
     }
 
+    /**
+     * Per-second update while playing. Sends only the elapsed time and the progress bar
+     * through {@code partiallyUpdateAppWidget}, so no art is loaded or resent; the
+     * full update with art happens on track and state changes only.
+     */
+    public static void updateProgress(Context ctx, long positionMs, long durationMs) {
+        final Context appCtx = ctx.getApplicationContext();
+        PowerManager powerManager = appCtx.getSystemService(PowerManager.class);
+        if (powerManager != null && !powerManager.isInteractive()) return;
+
+        AppWidgetManager mgr = AppWidgetManager.getInstance(appCtx);
+        int[] ids = mgr.getAppWidgetIds(new ComponentName(appCtx, WidgetProvider4x1.class));
+        if (ids.length == 0) return;
+
+        final TimingInfo timing = createTimingInfo(positionMs, durationMs);
+        for (int id : ids) {
+            android.widget.RemoteViews rv = WidgetViewsFactory.buildProgress(appCtx,
+                    resolveLayoutRes(appCtx, id), timing.elapsedText, timing.totalText, timing.progress);
+            mgr.partiallyUpdateAppWidget(id, rv);
+        }
+    }
+
+    public static boolean hasWidgets(Context ctx) {
+        AppWidgetManager mgr = AppWidgetManager.getInstance(ctx);
+        return mgr.getAppWidgetIds(new ComponentName(ctx, WidgetProvider4x1.class)).length > 0;
+    }
+
     public static void refreshFromController(Context ctx) {
         final Context appCtx = ctx.getApplicationContext();
         SessionToken token = new SessionToken(appCtx, new ComponentName(appCtx, MediaService.class));
@@ -274,6 +304,20 @@ public final class WidgetUpdateManager {
         }
     }
 
+    private static int resolveLayoutRes(Context ctx, int appWidgetId) {
+        switch (resolveLayoutSize(ctx, appWidgetId)) {
+            case MEDIUM:
+                return R.layout.widget_layout_medium;
+            case LARGE:
+                return R.layout.widget_layout_large_short;
+            case EXPANDED:
+                return R.layout.widget_layout_large;
+            case COMPACT:
+            default:
+                return R.layout.widget_layout_compact;
+        }
+    }
+
     private static LayoutSize resolveLayoutSize(Context ctx, int appWidgetId) {
         AppWidgetManager mgr = AppWidgetManager.getInstance(ctx);
         android.os.Bundle opts = mgr.getAppWidgetOptions(appWidgetId);
@@ -191,6 +191,26 @@ public final class WidgetViewsFactory {
         return rv;
     }
 
+    /**
+     * Only the timing views, for {@code partiallyUpdateAppWidget}: everything else
+     * (art, texts, intents) stays as the last full update left it.
+     */
+    public static RemoteViews buildProgress(Context ctx,
+                                            int layoutRes,
+                                            String elapsedText,
+                                            String totalText,
+                                            int progress) {
+        RemoteViews rv = new RemoteViews(ctx.getPackageName(), layoutRes);
+        rv.setTextViewText(R.id.time_elapsed, !TextUtils.isEmpty(elapsedText)
+                ? elapsedText
+                : ctx.getString(R.string.widget_time_elapsed_placeholder));
+        rv.setTextViewText(R.id.time_total, !TextUtils.isEmpty(totalText)
+                ? totalText
+                : ctx.getString(R.string.widget_time_duration_placeholder));
+        rv.setProgressBar(R.id.progress, PROGRESS_MAX, Math.max(0, Math.min(PROGRESS_MAX, progress)), false);
+        return rv;
+    }
+
     private static Bitmap maybeRoundBitmap(Context ctx, Bitmap source) {
         if (source == null || source.isRecycled()) {
             return null;
@@ -18,6 +18,7 @@ import com.cappielloantonio.tempo.App;
 import com.cappielloantonio.tempo.BuildConfig;
 import com.cappielloantonio.tempo.R;
 import com.cappielloantonio.tempo.database.AppDatabase;
+import com.cappielloantonio.tempo.database.DatabaseExecutor;
 import com.cappielloantonio.tempo.database.dao.ChronologyDao;
 import com.cappielloantonio.tempo.database.dao.SessionMediaItemDao;
 import com.cappielloantonio.tempo.model.Chronology;
@@ -1303,38 +1304,17 @@ public class AutomotiveRepository {
         thread.start();
     }
 
-    public SessionMediaItem getSessionMediaItem(String id) {
-        SessionMediaItem sessionMediaItem = null;
-
-        GetMediaItemThreadSafe getMediaItemThreadSafe = new GetMediaItemThreadSafe(sessionMediaItemDao, id);
-        Thread thread = new Thread(getMediaItemThreadSafe);
-        thread.start();
-
-        try {
-            thread.join();
-            sessionMediaItem = getMediaItemThreadSafe.getSessionMediaItem();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        return sessionMediaItem;
+    public ListenableFuture<SessionMediaItem> getSessionMediaItem(String id) {
+        return DatabaseExecutor.submit(() -> sessionMediaItemDao.get(id));
     }
 
-    public List<MediaItem> getMetadatas(long timestamp) {
-        List<MediaItem> mediaItems = Collections.emptyList();
-
-        GetMediaItemsThreadSafe getMediaItemsThreadSafe = new GetMediaItemsThreadSafe(sessionMediaItemDao, timestamp);
-        Thread thread = new Thread(getMediaItemsThreadSafe);
-        thread.start();
-
-        try {
-            thread.join();
-            mediaItems = getMediaItemsThreadSafe.getMediaItems();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-
-        return mediaItems;
+    @OptIn(markerClass = UnstableApi.class)
+    public ListenableFuture<List<MediaItem>> getMetadatas(long timestamp) {
+        return DatabaseExecutor.submit(() -> {
+            List<MediaItem> mediaItems = new ArrayList<>();
+            sessionMediaItemDao.get(timestamp).forEach(sessionMediaItem -> mediaItems.add(sessionMediaItem.getMediaItem()));
+            return mediaItems;
+        });
     }
 
     public void deleteMetadata() {
@@ -1453,49 +1433,6 @@ public class AutomotiveRepository {
         return getSongsByGenre(genre, count, false);
     }
 
-    private static class GetMediaItemThreadSafe implements Runnable {
-        private final SessionMediaItemDao sessionMediaItemDao;
-        private final String id;
-
-        private SessionMediaItem sessionMediaItem;
-
-        public GetMediaItemThreadSafe(SessionMediaItemDao sessionMediaItemDao, String id) {
-            this.sessionMediaItemDao = sessionMediaItemDao;
-            this.id = id;
-        }
-
-        @Override
-        public void run() {
-            sessionMediaItem = sessionMediaItemDao.get(id);
-        }
-
-        public SessionMediaItem getSessionMediaItem() {
-            return sessionMediaItem;
-        }
-    }
-
-    @OptIn(markerClass = UnstableApi.class)
-    private static class GetMediaItemsThreadSafe implements Runnable {
-        private final SessionMediaItemDao sessionMediaItemDao;
-        private final Long timestamp;
-        private final List<MediaItem> mediaItems = new ArrayList<>();
-
-        public GetMediaItemsThreadSafe(SessionMediaItemDao sessionMediaItemDao, Long timestamp) {
-            this.sessionMediaItemDao = sessionMediaItemDao;
-            this.timestamp = timestamp;
-        }
-
-        @Override
-        public void run() {
-            List<SessionMediaItem> sessionMediaItems = sessionMediaItemDao.get(timestamp);
-            sessionMediaItems.forEach(sessionMediaItem -> mediaItems.add(sessionMediaItem.getMediaItem()));
-        }
-
-        public List<MediaItem> getMediaItems() {
-            return mediaItems;
-        }
-    }
-
     private static class InsertAllThreadSafe implements Runnable {
         private final SessionMediaItemDao sessionMediaItemDao;
         private final List<SessionMediaItem> sessionMediaItems;
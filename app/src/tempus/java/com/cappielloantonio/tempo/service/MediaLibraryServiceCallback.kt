@@ -169,6 +169,21 @@ class MediaLibrarySessionCallback(
         )
     }
 
+    private fun resolveSessionItem(mediaId: String): ListenableFuture<List<MediaItem>> {
+        return Futures.transformAsync(
+            automotiveRepository.getSessionMediaItem(mediaId),
+            { session ->
+                val timestamp = session?.timestamp
+                if (timestamp == null) {
+                    Futures.immediateFuture(emptyList<MediaItem>())
+                } else {
+                    automotiveRepository.getMetadatas(timestamp)
+                }
+            },
+            MoreExecutors.directExecutor()
+        )
+    }
+
     private fun resolveQueueForItem(
         firstItem: MediaItem,
         mediaItems: List<MediaItem>
@@ -223,22 +238,23 @@ class MediaLibrarySessionCallback(
 
             else -> {
                 Log.d(TAG, "Fallback queue for item ${firstItem.mediaId}")
-                val resolvedItems = ArrayList<MediaItem>()
-                mediaItems.forEach { item ->
-                    val sessionItem = item.localConfiguration?.uri?.let { item }
-                        ?: automotiveRepository.getSessionMediaItem(item.mediaId)?.let { session ->
-                            automotiveRepository.getMetadatas(session.timestamp!!)
-                        }
-                    sessionItem?.let { resolved ->
-                        when (resolved) {
-                            is List<*> -> resolvedItems.addAll(resolved.filterIsInstance<MediaItem>())
-                            is MediaItem -> resolvedItems.add(resolved)
-                            else -> { /* ignore */ }
-                        }
+                val itemFutures = mediaItems.map { item ->
+                    if (item.localConfiguration?.uri != null) {
+                        Futures.immediateFuture(listOf(item))
+                    } else {
+                        resolveSessionItem(item.mediaId)
                     }
                 }
-                if (resolvedItems.isEmpty()) resolvedItems.add(firstItem)
-                Futures.immediateFuture(resolvedItems)
+                Futures.transform(
+                    Futures.allAsList(itemFutures),
+                    { resolved ->
+                        val resolvedItems = ArrayList<MediaItem>()
+                        resolved.forEach { resolvedItems.addAll(it) }
+                        if (resolvedItems.isEmpty()) resolvedItems.add(firstItem)
+                        resolvedItems
+                    },
+                    MoreExecutors.directExecutor()
+                )
             }
         }
 
@@ -0,0 +1,151 @@
+package com.cappielloantonio.tempo.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class AlbumTrackLoaderTest {
+    private static final int DISCS = 2;
+    private static final int TRACKS = 5;
+
+    private final ExecutorService fetchExecutor = Executors.newCachedThreadPool();
+    private final FakeServer server = new FakeServer();
+    private long now = 0;
+
+    private final AlbumTrackLoader loader = new AlbumTrackLoader(server, fetchExecutor, Runnable::run, () -> now);
+
+    @After
+    public void tearDown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void manyAlbums_comeBackInAlbumDiscAndTrackOrderWithinTheCap() throws Exception {
+        List<AlbumID3> albums = albums(30);
+        List<Child> songs = load(albums);
+
+        List<String> expected = new ArrayList<>();
+        for (AlbumID3 album : albums) {
+            for (int disc = 1; disc <= DISCS; disc++) {
+                for (int track = 1; track <= TRACKS; track++) expected.add(songId(album.getId(), disc, track));
+            }
+        }
+        assertEquals(expected, ids(songs));
+        assertTrue(server.maxInFlight.get() <= AlbumTrackLoader.CONCURRENCY);
+    }
+
+    @Test
+    public void recentlyLoadedAlbums_comeFromMemory() throws Exception {
+        List<AlbumID3> albums = albums(5);
+        load(albums);
+        assertEquals(5, server.requests.get());
+
+        load(albums);
+        assertEquals(5, server.requests.get());
+
+        now += AlbumTrackLoader.CACHE_MAX_AGE_MS;
+        load(albums);
+        assertEquals(10, server.requests.get());
+    }
+
+    @Test
+    public void failedAlbum_isLeftOut() throws Exception {
+        List<AlbumID3> albums = albums(3);
+        server.failing.add("album1");
+
+        List<Child> songs = load(albums);
+
+        assertEquals(2 * DISCS * TRACKS, songs.size());
+        for (Child song : songs) assertTrue(!song.getId().startsWith("album1/"));
+    }
+
+    private List<Child> load(List<AlbumID3> albums) throws InterruptedException {
+        List<Child> songs = new CopyOnWriteArrayList<>();
+        loader.load(albums, (items, complete) -> songs.addAll(items)).await();
+        return songs;
+    }
+
+    private static List<AlbumID3> albums(int count) {
+        List<AlbumID3> albums = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            AlbumID3 album = new AlbumID3();
+            album.setId("album" + i);
+            albums.add(album);
+        }
+        return albums;
+    }
+
+    private static String songId(String albumId, int disc, int track) {
+        return albumId + "/" + disc + "-" + track;
+    }
+
+    private static List<String> ids(List<Child> songs) {
+        List<String> ids = new ArrayList<>();
+        for (Child song : songs) ids.add(song.getId());
+        return ids;
+    }
+
+    /**
+     * Answers after a random delay, with the songs of every album in no particular order.
+     */
+    private static class FakeServer implements AlbumTrackLoader.Source {
+        final Random random = new Random(4);
+        final Set<String> failing = Collections.synchronizedSet(new HashSet<>());
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public List<Child> getAlbumSongs(String albumId) throws IOException {
+            requests.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                int latency;
+                synchronized (random) {
+                    latency = random.nextInt(15);
+                }
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            if (failing.contains(albumId)) throw new IOException("HTTP 404");
+
+            List<Child> songs = new ArrayList<>();
+            for (int disc = 1; disc <= DISCS; disc++) {
+                for (int track = 1; track <= TRACKS; track++) {
+                    Child song = new Child(songId(albumId, disc, track));
+                    song.setDiscNumber(disc);
+                    song.setTrack(track);
+                    songs.add(song);
+                }
+            }
+            synchronized (random) {
+                Collections.shuffle(songs, random);
+            }
+            return songs;
+        }
+    }
+}
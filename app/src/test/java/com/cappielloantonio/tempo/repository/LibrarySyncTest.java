@@ -0,0 +1,427 @@
+package com.cappielloantonio.tempo.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.Nullable;
+
+import com.cappielloantonio.tempo.model.LibrarySyncState;
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.ArtistID3;
+import com.cappielloantonio.tempo.subsonic.models.Genre;
+import com.cappielloantonio.tempo.subsonic.models.ScanStatus;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class LibrarySyncTest {
+    private static final String SERVER = "server";
+
+    private final FakeServer server = new FakeServer();
+    private final FakeStore store = new FakeStore();
+    private long now = TimeUnit.DAYS.toMillis(1000);
+
+    // One page at a time keeps the request counts exact
+    private final LibrarySync sync = new LibrarySync(server, store, () -> now, 1);
+
+    @Test
+    public void firstSync_pagesEveryAlbum() {
+        server.addArtist("a1", 1200);
+
+        assertEquals(LibrarySync.Result.UPDATED, sync.run(SERVER, () -> {
+        }));
+
+        assertEquals(server.albums.keySet(), store.albums.keySet());
+        assertEquals(3, server.albumPageRequests);
+        assertEquals(1, store.artists.size());
+    }
+
+    @Test
+    public void unchangedServer_requestsNothingElse() {
+        server.addArtist("a1", 10);
+        sync.run(SERVER, () -> {
+        });
+        server.resetCounters();
+
+        now += TimeUnit.HOURS.toMillis(1);
+        assertEquals(LibrarySync.Result.UNCHANGED, sync.run(SERVER, () -> {
+        }));
+
+        assertEquals(0, server.albumPageRequests);
+        assertEquals(0, server.artistRequests);
+        // One "recent" page and one "starred" page
+        assertEquals(2, server.activityRequests);
+    }
+
+    @Test
+    public void playsAndStars_areRefreshedWhenTheLibraryIsUnchanged() {
+        server.addArtist("a1", 10);
+        server.play("a1-3", 100);
+        server.star("a1-5", 200);
+        sync.run(SERVER, () -> {
+        });
+        server.resetCounters();
+
+        now += TimeUnit.HOURS.toMillis(1);
+        server.play("a1-7", 300);
+        server.play("a1-3", 400);
+        server.star("a1-6", 500);
+        server.unstar("a1-5");
+
+        assertEquals(LibrarySync.Result.ACTIVITY_UPDATED, sync.run(SERVER, () -> {
+        }));
+
+        assertEquals(400, store.albums.get("a1-3").getPlayed().getTime());
+        assertEquals(Long.valueOf(2), store.albums.get("a1-3").getPlayCount());
+        assertEquals(300, store.albums.get("a1-7").getPlayed().getTime());
+        assertEquals(500, store.albums.get("a1-6").getStarred().getTime());
+        assertNull(store.albums.get("a1-5").getStarred());
+        assertEquals(0, server.albumPageRequests);
+    }
+
+    @Test
+    public void noNewPlaysOrStars_leaveTheResultUnchanged() {
+        server.addArtist("a1", 10);
+        server.play("a1-3", 100);
+        server.star("a1-5", 200);
+        sync.run(SERVER, () -> {
+        });
+
+        now += TimeUnit.HOURS.toMillis(1);
+        assertEquals(LibrarySync.Result.UNCHANGED, sync.run(SERVER, () -> {
+        }));
+    }
+
+    @Test
+    public void newAlbums_areReadFromNewestUntilKnownOnes() {
+        server.addArtist("a1", 2000);
+        server.addArtist("a2", 3);
+        sync.run(SERVER, () -> {
+        });
+        server.resetCounters();
+
+        now += TimeUnit.HOURS.toMillis(1);
+        server.addAlbums("a1", 5);
+        server.lastModified++;
+
+        assertEquals(LibrarySync.Result.UPDATED, sync.run(SERVER, () -> {
+        }));
+
+        assertEquals(server.albums.keySet(), store.albums.keySet());
+        // One "newest" page, and only the artist whose count moved is re-read
+        assertEquals(1, server.albumPageRequests);
+        assertEquals(Collections.singletonList("a1"), server.artistAlbumRequests);
+        assertEquals(2, server.activityRequests);
+    }
+
+    @Test
+    public void removedArtistAndAlbums_leaveTheMirror() {
+        server.addArtist("a1", 4);
+        server.addArtist("a2", 4);
+        sync.run(SERVER, () -> {
+        });
+
+        now += TimeUnit.HOURS.toMillis(1);
+        server.removeArtist("a2");
+        server.removeAlbum("a1-0");
+        server.lastModified++;
+        sync.run(SERVER, () -> {
+        });
+
+        assertEquals(server.albums.keySet(), store.albums.keySet());
+        assertEquals(Collections.singleton("a1"), store.artists.keySet());
+    }
+
+    @Test
+    public void otherServer_startsFromAnEmptyMirror() {
+        server.addArtist("a1", 3);
+        sync.run(SERVER, () -> {
+        });
+        store.albums.put("stale", album("stale", "gone", 0));
+
+        sync.run("other", () -> {
+        });
+
+        assertEquals(server.albums.keySet(), store.albums.keySet());
+        assertTrue(store.states.containsKey("other"));
+        assertTrue(!store.states.containsKey(SERVER));
+    }
+
+    private static AlbumID3 album(String id, String artistId, long created) {
+        AlbumID3 album = new AlbumID3();
+        album.setId(id);
+        album.setName(id);
+        album.setArtistId(artistId);
+        album.setCreated(new Date(created));
+        album.setPlayCount(0L);
+        album.setPlayed(null);
+        return album;
+    }
+
+    private static AlbumID3 copy(AlbumID3 album) {
+        AlbumID3 copy = album(album.getId(), album.getArtistId(), album.getCreated().getTime());
+        copy.setPlayCount(album.getPlayCount());
+        copy.setPlayed(album.getPlayed());
+        copy.setStarred(album.getStarred());
+        return copy;
+    }
+
+    private static class FakeServer implements LibrarySync.Source {
+        final Map<String, ArtistID3> artists = new LinkedHashMap<>();
+        final Map<String, AlbumID3> albums = new LinkedHashMap<>();
+        long lastModified = 1;
+        long created = 0;
+
+        int albumPageRequests;
+        int activityRequests;
+        int artistRequests;
+        final List<String> artistAlbumRequests = new ArrayList<>();
+
+        void addArtist(String id, int albumCount) {
+            ArtistID3 artist = new ArtistID3();
+            artist.setId(id);
+            artist.setName(id);
+            artists.put(id, artist);
+            addAlbums(id, albumCount);
+        }
+
+        void addAlbums(String artistId, int count) {
+            ArtistID3 artist = artists.get(artistId);
+            for (int i = 0; i < count; i++) {
+                String id = artistId + "-" + artist.getAlbumCount();
+                albums.put(id, album(id, artistId, ++created));
+                artist.setAlbumCount(artist.getAlbumCount() + 1);
+            }
+        }
+
+        void removeArtist(String artistId) {
+            artists.remove(artistId);
+            albums.values().removeIf(album -> artistId.equals(album.getArtistId()));
+        }
+
+        void removeAlbum(String id) {
+            AlbumID3 album = albums.remove(id);
+            ArtistID3 artist = artists.get(album.getArtistId());
+            artist.setAlbumCount(artist.getAlbumCount() - 1);
+        }
+
+        void play(String id, long at) {
+            AlbumID3 album = albums.get(id);
+            album.setPlayCount(album.getPlayCount() + 1);
+            album.setPlayed(new Date(at));
+        }
+
+        void star(String id, long at) {
+            albums.get(id).setStarred(new Date(at));
+        }
+
+        void unstar(String id) {
+            albums.get(id).setStarred(null);
+        }
+
+        void resetCounters() {
+            albumPageRequests = 0;
+            activityRequests = 0;
+            artistRequests = 0;
+            artistAlbumRequests.clear();
+        }
+
+        @Override
+        public ScanStatus getScanStatus() {
+            ScanStatus status = new ScanStatus();
+            status.setCount((long) albums.size());
+            return status;
+        }
+
+        @Override
+        public long getIndexLastModified(@Nullable Long ifModifiedSince) {
+            return lastModified;
+        }
+
+        @Override
+        public List<ArtistID3> getArtists() {
+            artistRequests++;
+            return new ArrayList<>(artists.values());
+        }
+
+        @Override
+        public List<Genre> getGenres() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<AlbumID3> getAlbums(String type, int size, int offset) {
+            List<AlbumID3> sorted = new ArrayList<>(albums.values());
+            if (type.equals("recent") || type.equals("starred")) {
+                activityRequests++;
+            } else {
+                albumPageRequests++;
+            }
+
+            if (type.equals("newest")) {
+                sorted.sort(Comparator.comparing(AlbumID3::getCreated).reversed());
+            } else if (type.equals("recent")) {
+                sorted.removeIf(album -> album.getPlayed() == null);
+                sorted.sort(Comparator.comparing(AlbumID3::getPlayed).reversed());
+            } else if (type.equals("starred")) {
+                sorted.removeIf(album -> album.getStarred() == null);
+                sorted.sort(Comparator.comparing(AlbumID3::getName));
+            } else {
+                sorted.sort(Comparator.comparing(AlbumID3::getName));
+            }
+            List<AlbumID3> page = new ArrayList<>();
+            for (AlbumID3 album : sorted.subList(Math.min(offset, sorted.size()), Math.min(offset + size, sorted.size()))) {
+                // Copies, so later changes on the server side don't leak into the mirror
+                page.add(copy(album));
+            }
+            return page;
+        }
+
+        @Override
+        public List<AlbumID3> getArtistAlbums(String artistId) {
+            artistAlbumRequests.add(artistId);
+            List<AlbumID3> result = new ArrayList<>();
+            for (AlbumID3 album : albums.values()) {
+                if (artistId.equals(album.getArtistId())) result.add(copy(album));
+            }
+            return result;
+        }
+    }
+
+    private static class FakeStore implements LibrarySync.Store {
+        final Map<String, LibrarySyncState> states = new HashMap<>();
+        final Map<String, ArtistID3> artists = new HashMap<>();
+        final Map<String, AlbumID3> albums = new HashMap<>();
+
+        @Nullable
+        @Override
+        public LibrarySyncState getState(String serverId) {
+            return states.get(serverId);
+        }
+
+        @Override
+        public void putState(LibrarySyncState state) {
+            states.put(state.getServerId(), state);
+        }
+
+        @Override
+        public void clear() {
+            states.clear();
+            artists.clear();
+            albums.clear();
+        }
+
+        @Override
+        public Map<String, Integer> getArtistAlbumCounts() {
+            Map<String, Integer> counts = new HashMap<>();
+            for (ArtistID3 artist : artists.values()) counts.put(artist.getId(), artist.getAlbumCount());
+            return counts;
+        }
+
+        @Override
+        public void replaceArtists(List<ArtistID3> newArtists) {
+            artists.clear();
+            for (ArtistID3 artist : newArtists) {
+                // Copy, so later changes on the server side don't leak into the mirror
+                ArtistID3 copy = new ArtistID3();
+                copy.setId(artist.getId());
+                copy.setAlbumCount(artist.getAlbumCount());
+                artists.put(copy.getId(), copy);
+            }
+        }
+
+        @Override
+        public void replaceGenres(List<Genre> genres) {
+        }
+
+        @Override
+        public Set<String> getAlbumIds() {
+            return new HashSet<>(albums.keySet());
+        }
+
+        @Override
+        public Set<String> getKnownAlbumIds(List<String> ids) {
+            Set<String> known = new HashSet<>(ids);
+            known.retainAll(albums.keySet());
+            return known;
+        }
+
+        @Override
+        public void upsertAlbums(List<AlbumID3> newAlbums) {
+            for (AlbumID3 album : newAlbums) albums.put(album.getId(), album);
+        }
+
+        @Override
+        public void replaceArtistAlbums(String artistId, List<AlbumID3> newAlbums) {
+            albums.values().removeIf(album -> artistId.equals(album.getArtistId()));
+            upsertAlbums(newAlbums);
+        }
+
+        @Override
+        public void deleteAlbums(Collection<String> ids) {
+            albums.keySet().removeAll(ids);
+        }
+
+        @Override
+        public Map<String, Long> getPlayedAt(List<String> ids) {
+            Map<String, Long> playedAt = new HashMap<>();
+            for (String id : ids) {
+                AlbumID3 album = albums.get(id);
+                if (album != null) playedAt.put(id, album.getPlayed() != null ? album.getPlayed().getTime() : 0);
+            }
+            return playedAt;
+        }
+
+        @Override
+        public void updatePlays(List<AlbumID3> updated) {
+            for (AlbumID3 album : updated) {
+                AlbumID3 mirrored = albums.get(album.getId());
+                if (mirrored == null) continue;
+                mirrored.setPlayCount(album.getPlayCount());
+                mirrored.setPlayed(album.getPlayed());
+            }
+        }
+
+        @Override
+        public Map<String, Date> getStarred() {
+            Map<String, Date> starred = new HashMap<>();
+            for (AlbumID3 album : albums.values()) {
+                if (album.getStarred() != null) starred.put(album.getId(), album.getStarred());
+            }
+            return starred;
+        }
+
+        @Override
+        public int updateStarred(Map<String, Date> starred) {
+            int updated = 0;
+            for (Map.Entry<String, Date> entry : starred.entrySet()) {
+                AlbumID3 mirrored = albums.get(entry.getKey());
+                if (mirrored == null) continue;
+                mirrored.setStarred(entry.getValue());
+                updated++;
+            }
+            return updated;
+        }
+
+        @Override
+        public void deleteOrphans() {
+            albums.values().removeIf(album -> !artists.containsKey(album.getArtistId()));
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.cappielloantonio.tempo.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class PagedFetcherTest {
+    private static final int PAGE_SIZE = 10;
+    private static final int CONCURRENCY = 3;
+
+    private final ExecutorService fetchExecutor = Executors.newCachedThreadPool();
+    private final PagedFetcher<Integer> fetcher = new PagedFetcher<>(fetchExecutor, Runnable::run, CONCURRENCY);
+
+    @After
+    public void tearDown() {
+        fetchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void randomLatency_deliversEveryItemInOrderWithinTheCap() throws Exception {
+        SlowServer server = new SlowServer(95, new Random(1), 20);
+        Collector collector = new Collector();
+
+        fetcher.fetchUntilShort(PAGE_SIZE, server, collector).await();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 95; i++) expected.add(i);
+        assertEquals(expected, collector.items);
+        assertEquals(Collections.singletonList(true), collector.completions.subList(collector.completions.size() - 1, collector.completions.size()));
+        assertTrue(server.maxInFlight.get() <= CONCURRENCY);
+        // Ten pages hold the items; only pages requested while the end wasn't known are extra
+        assertTrue(server.requests.get() <= 10 + CONCURRENCY - 1);
+    }
+
+    @Test
+    public void shortList_costsOneRequest() throws Exception {
+        SlowServer server = new SlowServer(4, new Random(2), 5);
+        Collector collector = new Collector();
+
+        fetcher.fetchUntilShort(PAGE_SIZE, server, collector).await();
+
+        assertEquals(1, server.requests.get());
+        assertEquals(4, collector.items.size());
+        assertEquals(Collections.singletonList(true), collector.completions);
+    }
+
+    @Test
+    public void slowFirstPage_deliversTheOthersWithItInOneBatch() throws Exception {
+        CountDownLatch othersDone = new CountDownLatch(2);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        Collector collector = new Collector();
+
+        fetcher.fetch(3, page -> {
+            if (page == 0) {
+                try {
+                    releaseFirst.await(2, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            } else {
+                othersDone.countDown();
+                if (othersDone.getCount() == 0) releaseFirst.countDown();
+            }
+            return Collections.singletonList(page);
+        }, collector).await();
+
+        assertEquals(1, collector.completions.size());
+        assertEquals(Arrays.asList(0, 1, 2), collector.items);
+    }
+
+    @Test
+    public void cancel_stopsRequestsAndDeliveries() throws Exception {
+        SlowServer server = new SlowServer(10_000, new Random(3), 20);
+        Collector collector = new Collector();
+
+        PagedFetcher.Handle handle = fetcher.fetchUntilShort(PAGE_SIZE, server, collector);
+        Thread.sleep(100);
+        handle.cancel();
+        int requestsAtCancel = server.requests.get();
+        int deliveriesAtCancel = collector.completions.size();
+        Thread.sleep(200);
+
+        // Requests already in flight may finish, but nothing new starts and nothing more arrives
+        assertTrue(server.requests.get() <= requestsAtCancel + CONCURRENCY);
+        assertEquals(deliveriesAtCancel, collector.completions.size());
+        assertTrue(!collector.completions.contains(true));
+    }
+
+    @Test
+    public void failedPage_endsTheFetch() throws Exception {
+        Collector collector = new Collector();
+
+        fetcher.fetch(5, page -> {
+            if (page == 2) throw new IOException("HTTP 500");
+            return Collections.singletonList(page);
+        }, collector).await();
+
+        assertEquals(1, collector.failures.get());
+        assertTrue(!collector.completions.contains(true));
+    }
+
+    /**
+     * Serves {@code total} consecutive numbers in pages, each after a random delay.
+     */
+    private static class SlowServer implements PagedFetcher.Source<Integer> {
+        final int total;
+        final Random random;
+        final int maxLatencyMs;
+
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        SlowServer(int total, Random random, int maxLatencyMs) {
+            this.total = total;
+            this.random = random;
+            this.maxLatencyMs = maxLatencyMs;
+        }
+
+        @Override
+        public List<Integer> fetch(int page) throws IOException {
+            requests.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                int latency;
+                synchronized (random) {
+                    latency = random.nextInt(maxLatencyMs + 1);
+                }
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            List<Integer> items = new ArrayList<>();
+            for (int i = page * PAGE_SIZE; i < Math.min(total, (page + 1) * PAGE_SIZE); i++) items.add(i);
+            return items;
+        }
+    }
+
+    private static class Collector implements PagedFetcher.Listener<Integer> {
+        final List<Integer> items = new CopyOnWriteArrayList<>();
+        final List<Boolean> completions = new CopyOnWriteArrayList<>();
+        final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public void onItems(List<Integer> batch, boolean complete) {
+            items.addAll(batch);
+            completions.add(complete);
+        }
+
+        @Override
+        public void onFailure(IOException e) {
+            failures.incrementAndGet();
+        }
+    }
+}
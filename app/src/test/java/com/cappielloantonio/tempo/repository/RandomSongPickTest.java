@@ -0,0 +1,129 @@
+package com.cappielloantonio.tempo.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.cappielloantonio.tempo.subsonic.models.AlbumID3;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class RandomSongPickTest {
+    private static final int COUNT = 50;
+
+    private final List<List<Child>> deliveries = new ArrayList<>();
+    private boolean completed = false;
+
+    @Test
+    public void fiftySongPick_mixesAlbums() {
+        RandomSongPick pick = new RandomSongPick(COUNT, new Random(7), this::onSongs);
+        List<AlbumID3> picked = pick.pickAlbums(albums(12, 12));
+
+        // Every picked album is needed to reach four times the songs asked for
+        assertEquals(12, picked.size());
+        loadOneByOne(pick, picked);
+
+        List<Child> songs = all();
+        assertTrue(completed);
+        assertEquals(COUNT, songs.size());
+        assertEquals(COUNT, ids(songs).size());
+
+        // No album gives more than its share of ceil(50 / 12) songs
+        Map<String, Integer> perAlbum = new HashMap<>();
+        for (Child song : songs) perAlbum.merge(song.getAlbumId(), 1, Integer::sum);
+        for (int share : perAlbum.values()) assertTrue(share <= 5);
+
+        // Past the first album's share, neighbours mostly come from different albums
+        List<Child> rest = songs.subList(deliveries.get(0).size(), songs.size());
+        int sameAlbumNeighbours = 0;
+        for (int i = 1; i < rest.size(); i++) {
+            if (rest.get(i).getAlbumId().equals(rest.get(i - 1).getAlbumId())) sameAlbumNeighbours++;
+        }
+        assertTrue("same-album neighbours: " + sameAlbumNeighbours, sameAlbumNeighbours < rest.size() / 4);
+    }
+
+    @Test
+    public void firstAlbumsShare_goesOutBeforeTheRestHasLoaded() {
+        RandomSongPick pick = new RandomSongPick(COUNT, new Random(7), this::onSongs);
+        List<AlbumID3> picked = pick.pickAlbums(albums(12, 12));
+
+        pick.onSongs(songs(picked.get(0).getId(), 12), false);
+
+        assertEquals(1, deliveries.size());
+        assertEquals(5, deliveries.get(0).size());
+    }
+
+    @Test
+    public void shortAlbums_areMadeUpForFromTheLongerOnes() {
+        List<AlbumID3> albums = albums(5, 2);
+        albums.add(album("long", 60));
+        RandomSongPick pick = new RandomSongPick(COUNT, new Random(7), this::onSongs);
+
+        loadOneByOne(pick, pick.pickAlbums(albums));
+
+        assertEquals(COUNT, all().size());
+        assertEquals(COUNT, ids(all()).size());
+    }
+
+    private void onSongs(List<Child> songs, boolean complete) {
+        deliveries.add(new ArrayList<>(songs));
+        completed = complete;
+    }
+
+    private static void loadOneByOne(RandomSongPick pick, List<AlbumID3> albums) {
+        for (int i = 0; i < albums.size(); i++) {
+            AlbumID3 album = albums.get(i);
+            pick.onSongs(songs(album.getId(), album.getSongCount()), i == albums.size() - 1);
+        }
+    }
+
+    private List<Child> all() {
+        List<Child> songs = new ArrayList<>();
+        for (List<Child> delivery : deliveries) songs.addAll(delivery);
+        return songs;
+    }
+
+    private static Set<String> ids(List<Child> songs) {
+        Set<String> ids = new HashSet<>();
+        for (Child song : songs) ids.add(song.getId());
+        return ids;
+    }
+
+    private static List<AlbumID3> albums(int count, int songs) {
+        List<AlbumID3> albums = new ArrayList<>();
+        for (int i = 0; i < count; i++) albums.add(album("album" + i, songs));
+        return albums;
+    }
+
+    private static AlbumID3 album(String id, int songs) {
+        AlbumID3 album = new AlbumID3();
+        album.setId(id);
+        album.setSongCount(songs);
+        return album;
+    }
+
+    /**
+     * The album's songs in track order, as the loader hands them over.
+     */
+    private static List<Child> songs(String albumId, int count) {
+        List<Child> songs = new ArrayList<>();
+        for (int track = 1; track <= count; track++) {
+            Child song = new Child(albumId + "/" + track);
+            song.setAlbumId(albumId);
+            song.setTrack(track);
+            songs.add(song);
+        }
+        return songs;
+    }
+}
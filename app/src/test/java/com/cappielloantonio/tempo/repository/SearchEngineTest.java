@@ -0,0 +1,203 @@
+package com.cappielloantonio.tempo.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.annotation.NonNull;
+
+import com.cappielloantonio.tempo.subsonic.base.ApiResponse;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+import com.cappielloantonio.tempo.subsonic.models.SearchResult3;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okio.Timeout;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+@RunWith(JUnit4.class)
+public class SearchEngineTest {
+
+    private final List<FakeCall> calls = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstPageStarted = new CountDownLatch(1);
+    private SearchEngine engine;
+
+    @After
+    public void tearDown() {
+        if (engine != null) engine.release();
+    }
+
+    @Test
+    public void newSearch_cancelsSupersededPagingAndStopsDelivery() throws Exception {
+        engine = new SearchEngine((query, songCount, songOffset, albumCount, albumOffset, artistCount, artistOffset) -> {
+            // "slow" pages block until cancelled, "fast" ones return a single, final page
+            FakeCall call = new FakeCall(query, songOffset, query.equals("slow"));
+            calls.add(call);
+            return call;
+        }, Runnable::run, 0);
+
+        List<Integer> slowDeliveries = new CopyOnWriteArrayList<>();
+        List<Boolean> fastCompletions = new CopyOnWriteArrayList<>();
+        CountDownLatch fastDone = new CountDownLatch(1);
+
+        engine.search("slow", result -> {
+        }, (songs, complete) -> slowDeliveries.add(songs.size()));
+        assertTrue(firstPageStarted.await(2, TimeUnit.SECONDS));
+
+        engine.search("fast", result -> {
+        }, (songs, complete) -> {
+            fastCompletions.add(complete);
+            if (complete) fastDone.countDown();
+        });
+        assertTrue(fastDone.await(2, TimeUnit.SECONDS));
+
+        List<FakeCall> slowCalls = new ArrayList<>();
+        for (FakeCall call : calls) if (call.query.equals("slow")) slowCalls.add(call);
+
+        // One top-results call and exactly one page: paging stopped after the cancel
+        assertEquals(2, slowCalls.size());
+        for (FakeCall call : slowCalls) assertTrue(call.isCanceled());
+        assertEquals(Collections.emptyList(), slowDeliveries);
+        assertEquals(Collections.singletonList(true), fastCompletions);
+    }
+
+    @Test
+    public void suggest_debouncesToLastQuery() throws Exception {
+        engine = new SearchEngine((query, songCount, songOffset, albumCount, albumOffset, artistCount, artistOffset) -> {
+            FakeCall call = new FakeCall(query, songOffset, false);
+            calls.add(call);
+            return call;
+        }, Runnable::run, 100);
+
+        CountDownLatch delivered = new CountDownLatch(1);
+        for (String query : new String[]{"ab", "abc", "abcd", "abcde"}) {
+            engine.suggest(query, suggestions -> delivered.countDown());
+        }
+
+        assertTrue(delivered.await(2, TimeUnit.SECONDS));
+        Thread.sleep(200);
+
+        assertEquals(1, calls.size());
+        assertEquals("abcde", calls.get(0).query);
+    }
+
+    @Test
+    public void localMatches_answerWithoutTheServer() throws Exception {
+        SearchResult3 local = new SearchResult3();
+        local.setSongs(Collections.singletonList(new Child("local")));
+
+        engine = new SearchEngine((query, songCount, songOffset, albumCount, albumOffset, artistCount, artistOffset) -> {
+            FakeCall call = new FakeCall(query, songOffset, false);
+            calls.add(call);
+            return call;
+        }, (query, limit) -> local, Runnable::run, 0);
+
+        CountDownLatch topDelivered = new CountDownLatch(1);
+        CountDownLatch songsDone = new CountDownLatch(1);
+        List<SearchResult3> topResults = new CopyOnWriteArrayList<>();
+        engine.search("q", result -> {
+            topResults.add(result);
+            topDelivered.countDown();
+        }, (songs, complete) -> {
+            if (complete) songsDone.countDown();
+        });
+
+        assertTrue(topDelivered.await(2, TimeUnit.SECONDS));
+        assertTrue(songsDone.await(2, TimeUnit.SECONDS));
+
+        // Only the "all songs" page went to the server
+        assertEquals(Collections.singletonList(local), topResults);
+        assertEquals(1, calls.size());
+    }
+
+    private class FakeCall implements Call<ApiResponse> {
+        final String query;
+        final int songOffset;
+        final boolean blocking;
+
+        private final CountDownLatch cancelled = new CountDownLatch(1);
+        private volatile boolean executed;
+
+        FakeCall(String query, int songOffset, boolean blocking) {
+            this.query = query;
+            this.songOffset = songOffset;
+            this.blocking = blocking;
+        }
+
+        @NonNull
+        @Override
+        public Response<ApiResponse> execute() throws IOException {
+            executed = true;
+            if (blocking) {
+                firstPageStarted.countDown();
+                try {
+                    cancelled.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("Canceled");
+            }
+            return Response.success(page());
+        }
+
+        @Override
+        public void enqueue(@NonNull Callback<ApiResponse> callback) {
+            executed = true;
+            if (!blocking) callback.onResponse(this, Response.success(page()));
+        }
+
+        private ApiResponse page() {
+            SearchResult3 result = new SearchResult3();
+            result.setSongs(Collections.singletonList(new Child(query + songOffset)));
+            ApiResponse response = new ApiResponse();
+            response.getSubsonicResponse().setSearchResult3(result);
+            return response;
+        }
+
+        @Override
+        public boolean isExecuted() {
+            return executed;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled.countDown();
+        }
+
+        @Override
+        public boolean isCanceled() {
+            return cancelled.getCount() == 0;
+        }
+
+        @NonNull
+        @Override
+        public Call<ApiResponse> clone() {
+            return new FakeCall(query, songOffset, blocking);
+        }
+
+        @NonNull
+        @Override
+        public Request request() {
+            return new Request.Builder().url("http://localhost/rest/search3").build();
+        }
+
+        @NonNull
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+    }
+}
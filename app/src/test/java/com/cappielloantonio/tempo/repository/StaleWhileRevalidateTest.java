@@ -0,0 +1,123 @@
+package com.cappielloantonio.tempo.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class StaleWhileRevalidateTest {
+
+    @Test
+    public void slowServer_cachedValueEmittedBeforeNetworkAnswers() throws Exception {
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        ExecutorService server = Executors.newSingleThreadExecutor();
+        List<String> emitted = new CopyOnWriteArrayList<>();
+        CountDownLatch cachedShown = new CountDownLatch(1);
+        CountDownLatch releaseNetwork = new CountDownLatch(1);
+        CountDownLatch freshShown = new CountDownLatch(1);
+
+        // The network only answers once released, like a connect that runs into its timeout
+        StaleWhileRevalidate.load(() -> "cached", (onFresh, onFailed) -> server.execute(() -> {
+            try {
+                releaseNetwork.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            onFresh.accept("fresh");
+        }), io, Runnable::run, value -> {
+            emitted.add(value);
+            if (value.equals("cached")) cachedShown.countDown();
+            else freshShown.countDown();
+        });
+
+        assertTrue(cachedShown.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList("cached"), emitted);
+
+        releaseNetwork.countDown();
+        assertTrue(freshShown.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("cached", "fresh"), emitted);
+
+        io.shutdownNow();
+        server.shutdownNow();
+    }
+
+    @Test
+    public void lateCacheRead_doesNotOverwriteFreshValue() throws Exception {
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        CountDownLatch releaseCache = new CountDownLatch(1);
+        List<String> emitted = new CopyOnWriteArrayList<>();
+
+        StaleWhileRevalidate.load(() -> {
+            releaseCache.await(1, TimeUnit.SECONDS);
+            return "cached";
+        }, (onFresh, onFailed) -> onFresh.accept("fresh"), io, Runnable::run, emitted::add);
+
+        releaseCache.countDown();
+        io.shutdown();
+        assertTrue(io.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("fresh"), emitted);
+    }
+
+    @Test
+    public void emptyCache_onlyFreshValueEmitted() throws Exception {
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        List<String> emitted = new CopyOnWriteArrayList<>();
+
+        StaleWhileRevalidate.<String>load(() -> null, (onFresh, onFailed) -> onFresh.accept("fresh"), io, Runnable::run, emitted::add);
+
+        io.shutdown();
+        assertTrue(io.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList("fresh"), emitted);
+    }
+
+    @Test
+    public void failedNetwork_beforeTheCacheIsRead_keepsTheCachedValue() throws Exception {
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        CountDownLatch releaseCache = new CountDownLatch(1);
+        List<String> emitted = new CopyOnWriteArrayList<>();
+
+        StaleWhileRevalidate.load(() -> {
+            releaseCache.await(1, TimeUnit.SECONDS);
+            return "cached";
+        }, (onFresh, onFailed) -> onFailed.run(), io, Runnable::run, emitted::add);
+
+        releaseCache.countDown();
+        io.shutdown();
+        assertTrue(io.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList("cached"), emitted);
+    }
+
+    @Test
+    public void failedNetwork_emptyCache_emitsNullOnce() throws Exception {
+        ExecutorService io = Executors.newSingleThreadExecutor();
+        CountDownLatch releaseCache = new CountDownLatch(1);
+        List<String> emitted = new CopyOnWriteArrayList<>();
+
+        StaleWhileRevalidate.<String>load(() -> {
+            releaseCache.await(1, TimeUnit.SECONDS);
+            return null;
+        }, (onFresh, onFailed) -> onFailed.run(), io, Runnable::run, emitted::add);
+        assertTrue(emitted.isEmpty());
+
+        releaseCache.countDown();
+        io.shutdown();
+        assertTrue(io.awaitTermination(1, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList(null), emitted);
+    }
+}
@@ -0,0 +1,229 @@
+package com.cappielloantonio.tempo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.cappielloantonio.tempo.database.dao.DownloadDao;
+import com.cappielloantonio.tempo.model.Download;
+import com.cappielloantonio.tempo.repository.DownloadRepository;
+import com.cappielloantonio.tempo.subsonic.models.Child;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class BulkDownloaderTest {
+    private static final int BATCH_SIZE = 100;
+
+    private final ExecutorService mainExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "main"));
+
+    private final List<List<Integer>> stored = new CopyOnWriteArrayList<>();
+    private final List<List<Integer>> submitted = new CopyOnWriteArrayList<>();
+    private final List<Integer> unstored = new CopyOnWriteArrayList<>();
+    private final List<int[]> progress = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch done;
+
+    private final BulkDownloader<Integer> downloader = new BulkDownloader<>(
+            mainExecutor,
+            items -> stored.add(new ArrayList<>(items)),
+            batch -> {
+                submitted.add(new ArrayList<>(batch));
+                return Collections.emptyList();
+            },
+            unstored::addAll,
+            BATCH_SIZE,
+            this::onProgress);
+
+    @After
+    public void tearDown() {
+        mainExecutor.shutdownNow();
+    }
+
+    @Test
+    public void manyItems_takeOneWriteOnTheDatabaseExecutor() throws Exception {
+        DownloadDao dao = mock(DownloadDao.class);
+        CountingExecutor dbExecutor = new CountingExecutor();
+        DownloadRepository repository = new DownloadRepository(dao, dbExecutor);
+
+        List<String> submittedIds = new CopyOnWriteArrayList<>();
+        BulkDownloader<Download> rows = new BulkDownloader<>(
+                mainExecutor,
+                repository::insertAll,
+                batch -> {
+                    for (Download download : batch) submittedIds.add(download.getId());
+                    return Collections.emptyList();
+                },
+                failed -> {
+                    List<String> ids = new ArrayList<>();
+                    for (Download download : failed) ids.add(download.getId());
+                    repository.delete(ids);
+                },
+                BATCH_SIZE,
+                this::onProgress);
+
+        done = new CountDownLatch(1);
+        rows.download(downloads(10));
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        dbExecutor.drain();
+        int tasksForFew = dbExecutor.tasks.get();
+
+        done = new CountDownLatch(1);
+        rows.download(downloads(2_000));
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        dbExecutor.drain();
+
+        // As many writes and threads for 2,000 rows as for 10: one transaction, on the one thread
+        assertEquals(1, tasksForFew);
+        assertEquals(2, dbExecutor.tasks.get());
+        assertEquals(1, dbExecutor.threads.get());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Download>> written = ArgumentCaptor.forClass(List.class);
+        verify(dao, times(2)).insertAll(written.capture());
+        assertEquals(10, written.getAllValues().get(0).size());
+        assertEquals(2_000, written.getAllValues().get(1).size());
+        verify(dao, never()).insert(any());
+        verify(dao, never()).deleteByIds(anyList());
+        verify(dao, never()).delete(anyString());
+        assertEquals(2_010, submittedIds.size());
+    }
+
+    @Test
+    public void rows_areStoredOnceAndRequestsGoOutInBatches() throws Exception {
+        download(250);
+
+        assertEquals(1, stored.size());
+        assertEquals(range(250), stored.get(0));
+
+        assertEquals(3, submitted.size());
+        assertEquals(BATCH_SIZE, submitted.get(0).size());
+        assertEquals(BATCH_SIZE, submitted.get(1).size());
+        assertEquals(50, submitted.get(2).size());
+
+        List<Integer> all = new ArrayList<>();
+        for (List<Integer> batch : submitted) all.addAll(batch);
+        assertEquals(range(250), all);
+
+        assertEquals(3, progress.size());
+        assertEquals(100, progress.get(0)[0]);
+        assertEquals(200, progress.get(1)[0]);
+        assertEquals(250, progress.get(2)[0]);
+        for (int[] counts : progress) assertEquals(250, counts[1]);
+    }
+
+    @Test
+    public void failedItems_areUnstoredAndTheRestStillGoOut() throws Exception {
+        List<Integer> sent = new CopyOnWriteArrayList<>();
+        BulkDownloader<Integer> picky = new BulkDownloader<>(mainExecutor, items -> {
+        }, batch -> {
+            List<Integer> failed = new ArrayList<>();
+            for (Integer item : batch) {
+                if (item % 7 == 0) {
+                    failed.add(item);
+                } else {
+                    sent.add(item);
+                }
+            }
+            return failed;
+        }, unstored::addAll, BATCH_SIZE, this::onProgress);
+
+        done = new CountDownLatch(1);
+        picky.download(range(300));
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+
+        List<Integer> expectedFailed = new ArrayList<>();
+        List<Integer> expectedSent = new ArrayList<>();
+        for (int item : range(300)) (item % 7 == 0 ? expectedFailed : expectedSent).add(item);
+        assertEquals(expectedFailed, unstored);
+        assertEquals(expectedSent, sent);
+    }
+
+    @Test
+    public void failedBatch_isUnstoredAndDoesNotStopTheRest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        List<Integer> sent = new CopyOnWriteArrayList<>();
+        BulkDownloader<Integer> flaky = new BulkDownloader<>(mainExecutor, items -> {
+        }, batch -> {
+            if (calls.incrementAndGet() == 1) throw new IllegalStateException("bad request");
+            sent.addAll(batch);
+            return Collections.emptyList();
+        }, unstored::addAll, BATCH_SIZE, this::onProgress);
+
+        done = new CountDownLatch(1);
+        flaky.download(range(300));
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(range(300).subList(0, BATCH_SIZE), unstored);
+        assertEquals(range(300).subList(BATCH_SIZE, 300), sent);
+    }
+
+    private void onProgress(int handled, int total) {
+        progress.add(new int[]{handled, total});
+        if (handled == total) done.countDown();
+    }
+
+    private void download(int count) throws InterruptedException {
+        done = new CountDownLatch(1);
+        downloader.download(range(count));
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) items.add(i);
+        return items;
+    }
+
+    private static List<Download> downloads(int count) {
+        List<Download> downloads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) downloads.add(new Download(new Child("song" + i)));
+        return downloads;
+    }
+
+    /**
+     * Single-threaded, like the repository's sequential executor, counting the tasks it runs
+     * and the threads it starts.
+     */
+    private static final class CountingExecutor implements Executor {
+        final AtomicInteger tasks = new AtomicInteger();
+        final AtomicInteger threads = new AtomicInteger();
+        private final ExecutorService delegate = Executors.newSingleThreadExecutor(runnable -> {
+            threads.incrementAndGet();
+            Thread thread = new Thread(runnable, "db");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.incrementAndGet();
+            delegate.execute(command);
+        }
+
+        void drain() throws Exception {
+            delegate.submit(() -> {
+            }).get(2, TimeUnit.SECONDS);
+        }
+    }
+}
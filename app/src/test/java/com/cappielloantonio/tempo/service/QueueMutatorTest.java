@@ -0,0 +1,380 @@
+package com.cappielloantonio.tempo.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.Player;
+import androidx.media3.common.Timeline;
+
+import com.cappielloantonio.tempo.subsonic.models.Child;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class QueueMutatorTest {
+    private static final int CHUNK_SIZE = 4;
+
+    private final ArrayDeque<Runnable> mainLoop = new ArrayDeque<>();
+    private final FakePlayer player = new FakePlayer();
+    private final List<String> stored = new ArrayList<>();
+
+    private final QueueMutator.StoredQueue storedQueue = new QueueMutator.StoredQueue() {
+        @Override
+        public void replace(List<Child> media) {
+            stored.clear();
+            stored.addAll(ids(media));
+        }
+
+        @Override
+        public void insertAt(int index, List<Child> media) {
+            stored.addAll(index, ids(media));
+        }
+
+        @Override
+        public void move(int from, int to) {
+            stored.add(to, stored.remove(from));
+        }
+
+        @Override
+        public void deleteRange(int fromIndex, int toIndex) {
+            stored.subList(fromIndex, toIndex).clear();
+        }
+
+        @Override
+        public List<Child> excludeQueued(List<Child> media) {
+            List<Child> notQueued = new ArrayList<>();
+            for (Child child : media) {
+                if (!stored.contains(child.getId())) notQueued.add(child);
+            }
+            return notQueued;
+        }
+    };
+
+    private final QueueMutator<String> mutator = new QueueMutator<>(
+            storedQueue, child -> child.getId().startsWith("bad") ? null : child.getId(), mainLoop::add, CHUNK_SIZE);
+
+    @Test
+    public void start_playsStartTrackBeforeTheRestIsAdded() {
+        mutator.start(player, songs("a", 10), 6);
+
+        runOne();
+        assertEquals(Collections.singletonList("a6"), player.items.subList(0, 1));
+        assertEquals(CHUNK_SIZE, player.items.size());
+        assertEquals(player.items, stored);
+
+        runAll();
+        assertEquals(ids(songs("a", 10)), player.items);
+        assertEquals("a6", player.items.get(player.current));
+        assertEquals(player.items, stored);
+    }
+
+    @Test
+    public void start_keepsPlayingTheTappedTrackWhileEarlierOnesArePrepended() {
+        PlayerModel model = new PlayerModel();
+        QueueMutator<MediaItem> items = new QueueMutator<>(
+                storedQueue, child -> new MediaItem.Builder().setMediaId(child.getId()).build(), mainLoop::add, CHUNK_SIZE);
+
+        // Track 5 of a 12-track album: its chunk goes first, the tracks before it are prepended
+        items.start(new BrowserPlayerQueue(model.player, () -> {
+        }), songs("t", 12), 5);
+        runOne();
+        assertEquals("t5", model.currentId());
+        runAll(false);
+
+        assertEquals(ids(songs("t", 12)), model.ids());
+        assertEquals(model.ids(), stored);
+        assertEquals("t5", model.currentId());
+        verify(model.player).play();
+        verify(model.player, never()).seekTo(anyInt(), anyLong());
+    }
+
+    @Test
+    public void enqueue_skipsTracksAlreadyQueuedOnBothSides() {
+        mutator.start(player, songs("a", 3), 0);
+        runAll();
+
+        List<Child> media = songs("a", 5);
+        media.add(new Child("a4"));
+        mutator.enqueue(player, media, false);
+        runAll();
+
+        assertEquals(ids(songs("a", 5)), player.items);
+        assertEquals(player.items, stored);
+    }
+
+    @Test
+    public void enqueue_readsTheIndexInsteadOfThePlayer() {
+        mutator.start(player, songs("a", 50), 0);
+        runAll();
+        player.idReads = 0;
+
+        mutator.enqueue(player, songs("a", 60), false);
+        mutator.enqueue(player, songs("b", 3), true);
+        runAll();
+
+        assertEquals(0, player.idReads);
+        assertEquals(63, player.items.size());
+    }
+
+    @Test
+    public void playNext_movesQueuedTracksUpInTheOrderGiven() {
+        mutator.start(player, songs("a", 8), 2);
+        runAll();
+
+        // a6 and a0 are queued already, n0 and n1 are new
+        List<Child> media = new ArrayList<>();
+        media.add(new Child("n0"));
+        media.add(new Child("a6"));
+        media.add(new Child("n1"));
+        media.add(new Child("a0"));
+        media.add(new Child("a2"));
+        mutator.enqueue(player, media, true);
+        runAll();
+
+        assertEquals(Arrays.asList("a1", "a2", "n0", "a6", "n1", "a0", "a3", "a4", "a5", "a7"), player.items);
+        assertEquals("a2", player.items.get(player.current));
+        assertEquals(player.items, stored);
+    }
+
+    @Test
+    public void editsDuringRestore_waitUntilThePlayerHoldsTheWholeQueue() {
+        // The stored queue has ten rows; the restore put only rows 4..7 into the player so far
+        stored.addAll(ids(songs("q", 10)));
+        player.start(new ArrayList<>(stored.subList(4, 8)), 0);
+        int[] superseded = {0};
+        mutator.hold(() -> superseded[0]++);
+
+        mutator.remove(player, 0, 1);
+        mutator.move(player, 0, 2);
+        mutator.enqueue(player, songs("e", 2), false);
+        runAll(false);
+        assertEquals(ids(songs("q", 10)), stored);
+        assertEquals(4, player.items.size());
+
+        // The restore adds the rows after the window, then the ones before it, and lets go
+        player.add(4, new ArrayList<>(stored.subList(8, 10)));
+        player.add(0, new ArrayList<>(stored.subList(0, 4)));
+        mutator.release();
+        runAll();
+
+        List<String> expected = new ArrayList<>(ids(songs("q", 10)));
+        expected.remove(0);
+        expected.add(2, expected.remove(0));
+        expected.addAll(ids(songs("e", 2)));
+        assertEquals(expected, player.items);
+        assertEquals(expected, stored);
+        assertEquals(0, superseded[0]);
+    }
+
+    @Test
+    public void newQueueDuringRestore_dropsHeldEditsAndStopsTheRestore() {
+        stored.addAll(ids(songs("q", 10)));
+        player.start(new ArrayList<>(stored.subList(4, 8)), 0);
+        int[] superseded = {0};
+        mutator.hold(() -> superseded[0]++);
+
+        mutator.remove(player, 0, 1);
+        mutator.start(player, songs("n", 3), 0);
+        runOne();
+        assertEquals(1, superseded[0]);
+        runAll();
+
+        assertEquals(ids(songs("n", 3)), player.items);
+        assertEquals(player.items, stored);
+    }
+
+    @Test
+    public void randomOperations_playerAndStoreAgreeAfterEveryStep() {
+        Random random = new Random(42);
+
+        for (int round = 0; round < 200; round++) {
+            int size = player.items.size();
+            int operation = random.nextInt(6);
+
+            if (operation == 0 || size == 0) {
+                List<Child> media = songs("s" + round + "-", random.nextInt(3 * CHUNK_SIZE) + 1);
+                if (random.nextInt(4) == 0) media.add(random.nextInt(media.size()), new Child("bad" + round));
+                mutator.start(player, media, random.nextInt(media.size()));
+            } else if (operation == 1) {
+                mutator.enqueue(player, songs("e" + round + "-", random.nextInt(3 * CHUNK_SIZE) + 1), random.nextBoolean());
+            } else if (operation == 2) {
+                mutator.move(player, random.nextInt(size), random.nextInt(size));
+            } else if (operation == 3) {
+                int from = random.nextInt(size);
+                mutator.remove(player, from, from + 1 + random.nextInt(size - from));
+            } else if (operation == 4) {
+                int from = random.nextInt(size);
+                List<Child> shuffled = songs("r" + round + "-", size - from);
+                mutator.replace(player, from, shuffled);
+            } else {
+                // Let some of the pending steps run before the next change comes in
+                for (int i = random.nextInt(4); i > 0 && !mainLoop.isEmpty(); i--) {
+                    runOne();
+                    assertEquals(player.items, stored);
+                }
+            }
+        }
+
+        runAll();
+        assertEquals(player.items, stored);
+        for (String id : stored) assertTrue(!id.startsWith("bad"));
+    }
+
+    private void runOne() {
+        Runnable runnable = mainLoop.poll();
+        if (runnable != null) runnable.run();
+    }
+
+    private void runAll() {
+        runAll(true);
+    }
+
+    private void runAll(boolean checkStore) {
+        while (!mainLoop.isEmpty()) {
+            runOne();
+            if (checkStore) assertEquals(player.items, stored);
+        }
+    }
+
+    private static List<Child> songs(String prefix, int count) {
+        List<Child> songs = new ArrayList<>();
+        for (int i = 0; i < count; i++) songs.add(new Child(prefix + i));
+        return songs;
+    }
+
+    private static List<String> ids(List<Child> media) {
+        List<String> ids = new ArrayList<>();
+        for (Child child : media) ids.add(child.getId());
+        return ids;
+    }
+
+    /**
+     * A player that, like a MediaBrowser changing its own timeline, tells its listeners
+     * synchronously.
+     */
+    private static class PlayerModel {
+        final List<MediaItem> items = new ArrayList<>();
+        final List<Player.Listener> listeners = new ArrayList<>();
+        final Player player = mock(Player.class);
+        int current = -1;
+
+        PlayerModel() {
+            when(player.getMediaItemCount()).thenAnswer(invocation -> items.size());
+            when(player.getMediaItemAt(anyInt())).thenAnswer(invocation -> items.get(invocation.getArgument(0)));
+            when(player.getNextMediaItemIndex()).thenAnswer(invocation -> current + 1 < items.size() ? current + 1 : C.INDEX_UNSET);
+            doAnswer(invocation -> listeners.add(invocation.getArgument(0))).when(player).addListener(any());
+            doAnswer(invocation -> listeners.remove(invocation.getArgument(0))).when(player).removeListener(any());
+            doAnswer(invocation -> {
+                items.clear();
+                items.addAll(invocation.getArgument(0));
+                current = invocation.getArgument(1);
+                timelineChanged();
+                return null;
+            }).when(player).setMediaItems(anyList(), anyInt(), anyLong());
+            doAnswer(invocation -> {
+                int index = invocation.getArgument(0);
+                List<MediaItem> added = invocation.getArgument(1);
+                items.addAll(index, added);
+                if (current >= index) current += added.size();
+                timelineChanged();
+                return null;
+            }).when(player).addMediaItems(anyInt(), anyList());
+            doAnswer(invocation -> {
+                current = invocation.getArgument(0);
+                return null;
+            }).when(player).seekTo(anyInt(), anyLong());
+        }
+
+        String currentId() {
+            return items.get(current).mediaId;
+        }
+
+        List<String> ids() {
+            List<String> ids = new ArrayList<>();
+            for (MediaItem item : items) ids.add(item.mediaId);
+            return ids;
+        }
+
+        private void timelineChanged() {
+            for (Player.Listener listener : new ArrayList<>(listeners)) {
+                listener.onTimelineChanged(Timeline.EMPTY, Player.TIMELINE_CHANGE_REASON_PLAYLIST_CHANGED);
+            }
+        }
+    }
+
+    private static class FakePlayer implements QueueMutator.PlayerQueue<String> {
+        final List<String> items = new ArrayList<>();
+        int current = -1;
+        int idReads = 0;
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @Override
+        public int nextIndex() {
+            return current + 1 < items.size() ? current + 1 : -1;
+        }
+
+        @Override
+        public int currentIndex() {
+            return current;
+        }
+
+        @Override
+        public String idAt(int index) {
+            idReads++;
+            return items.get(index);
+        }
+
+        @Override
+        public void start(List<String> newItems, int startIndex) {
+            items.clear();
+            items.addAll(newItems);
+            current = newItems.isEmpty() ? -1 : startIndex;
+        }
+
+        @Override
+        public void add(int index, List<String> newItems) {
+            items.addAll(index, newItems);
+            if (current >= index) current += newItems.size();
+            if (current == -1 && !items.isEmpty()) current = 0;
+        }
+
+        @Override
+        public void move(int from, int to) {
+            items.add(to, items.remove(from));
+            if (current == from) current = to;
+            else if (from < current && to >= current) current--;
+            else if (from > current && to <= current) current++;
+        }
+
+        @Override
+        public void remove(int fromIndex, int toIndex) {
+            items.subList(fromIndex, toIndex).clear();
+            if (current >= toIndex) current -= toIndex - fromIndex;
+            else if (current >= fromIndex) current = items.isEmpty() ? -1 : Math.min(fromIndex, items.size() - 1);
+        }
+    }
+}
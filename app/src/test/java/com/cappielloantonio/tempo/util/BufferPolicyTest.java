@@ -0,0 +1,77 @@
+package com.cappielloantonio.tempo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class BufferPolicyTest {
+    private static final int NO_HEAP_CAP = BufferPolicy.heapCapBytes(0);
+
+    @Test
+    public void of_unmeteredLink_doublesThePreloadPreference() {
+        BufferPolicy metered = BufferPolicy.of(60, 320, false, false, NO_HEAP_CAP);
+        BufferPolicy unmetered = BufferPolicy.of(60, 320, true, false, NO_HEAP_CAP);
+
+        assertEquals(60_000, metered.targetMs);
+        assertEquals(120_000, unmetered.targetMs);
+        assertTrue(unmetered.maxBytes > metered.maxBytes);
+    }
+
+    @Test
+    public void of_highBitrate_targetFitsTheByteBudget() {
+        // 24 MiB of 4608 kbps (24-bit 96 kHz stereo) is about 43 seconds
+        BufferPolicy policy = BufferPolicy.of(300, 4608, false, false, NO_HEAP_CAP);
+
+        assertTrue(policy.targetMs < 300_000);
+        assertTrue(policy.targetMs * 4608 / 8 <= policy.maxBytes);
+    }
+
+    @Test
+    public void of_memoryPressure_shrinksTargetAndBudget() {
+        BufferPolicy policy = BufferPolicy.of(300, 320, true, true, NO_HEAP_CAP);
+
+        assertEquals(30_000, policy.targetMs);
+        assertEquals(BufferPolicy.CONSTRAINED_MAX_BYTES, policy.maxBytes);
+    }
+
+    @Test
+    public void of_targetStaysWithinBounds() {
+        assertEquals(BufferPolicy.MIN_TARGET_MS, BufferPolicy.of(0, 320, false, false, NO_HEAP_CAP).targetMs);
+        assertEquals(BufferPolicy.MIN_TARGET_MS, BufferPolicy.of(60, 100_000, false, true, NO_HEAP_CAP).targetMs);
+        assertEquals(BufferPolicy.MAX_TARGET_MS, BufferPolicy.of(3600, 64, true, false, NO_HEAP_CAP).targetMs);
+    }
+
+    @Test
+    public void of_unknownBitrate_usesTheDefault() {
+        assertEquals(BufferPolicy.of(300, BufferPolicy.DEFAULT_BITRATE_KBPS, false, false, NO_HEAP_CAP).targetMs,
+                BufferPolicy.of(300, 0, false, false, NO_HEAP_CAP).targetMs);
+    }
+
+    @Test
+    public void of_smallHeap_capsEveryBudget() {
+        // A 64 MiB memory class leaves an 8 MiB budget, less than either link type allows
+        int heapCap = BufferPolicy.heapCapBytes(64L * 1024 * 1024);
+
+        assertEquals(8 * 1024 * 1024, heapCap);
+        assertEquals(heapCap, BufferPolicy.of(60, 320, true, false, heapCap).maxBytes);
+        assertEquals(heapCap, BufferPolicy.of(60, 320, false, false, heapCap).maxBytes);
+    }
+
+    @Test
+    public void heapCap_neverExceedsTheUnmeteredBudget() {
+        assertEquals(BufferPolicy.UNMETERED_MAX_BYTES, BufferPolicy.heapCapBytes(4096L * 1024 * 1024));
+    }
+
+    @Test
+    public void streamBitrate_usesTheTranscodeCap() {
+        // A 4608 kbps FLAC transcoded down to 192 kbps
+        assertEquals(192, BufferPolicy.streamBitrateKbps(4608, 192));
+        assertEquals(128, BufferPolicy.streamBitrateKbps(128, 320));
+        assertEquals(320, BufferPolicy.streamBitrateKbps(0, 320));
+        assertEquals(4608, BufferPolicy.streamBitrateKbps(4608, 0));
+    }
+}
@@ -0,0 +1,73 @@
+package com.cappielloantonio.tempo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class ExternalDownloadSizeLogTest {
+
+    private static final int ENTRIES = 10_000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rebuildOverTenThousandEntries_writesOnceAndSurvivesReload() throws Exception {
+        File file = folder.newFile("sizes.log");
+        ExternalDownloadSizeLog log = new ExternalDownloadSizeLog(file);
+
+        Map<String, Long> sizes = new HashMap<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            sizes.put("artist " + i + " - title " + i, 1_000L + i);
+        }
+        log.putAll(sizes);
+        assertEquals(1, log.writes());
+
+        // A rebuild that finds every other file stale
+        List<String> stale = new ArrayList<>();
+        for (int i = 0; i < ENTRIES; i += 2) {
+            stale.add("artist " + i + " - title " + i);
+        }
+
+        int writesBefore = log.writes();
+        log.removeAll(stale);
+
+        // One write for the whole batch, which here compacts the log down to the live entries
+        assertEquals(writesBefore + 1, log.writes());
+        assertEquals(ENTRIES / 2, Files.readAllLines(file.toPath()).size());
+
+        ExternalDownloadSizeLog reloaded = new ExternalDownloadSizeLog(file);
+        assertEquals(ENTRIES / 2, reloaded.snapshot().size());
+        assertNull(reloaded.get("artist 0 - title 0"));
+        assertEquals(Long.valueOf(1_001L), reloaded.get("artist 1 - title 1"));
+    }
+
+    @Test
+    public void putAndRemove_lastWriteWins() throws Exception {
+        File file = folder.newFile("sizes.log");
+        ExternalDownloadSizeLog log = new ExternalDownloadSizeLog(file);
+
+        log.put("a", 10L);
+        log.put("a", 20L);
+        log.put("b", 30L);
+        log.removeAll(Collections.singleton("b"));
+
+        ExternalDownloadSizeLog reloaded = new ExternalDownloadSizeLog(file);
+        assertEquals(Long.valueOf(20L), reloaded.get("a"));
+        assertNull(reloaded.get("b"));
+    }
+}
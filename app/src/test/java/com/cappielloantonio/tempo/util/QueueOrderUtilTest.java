@@ -0,0 +1,57 @@
+package com.cappielloantonio.tempo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class QueueOrderUtilTest {
+
+    @Test
+    public void between_emptyQueue_startsAtZeroWithGaps() {
+        long[] keys = QueueOrderUtil.between(null, null, 3);
+
+        assertNotNull(keys);
+        assertEquals(0, keys[0]);
+        assertEquals(QueueOrderUtil.GAP, keys[1]);
+        assertEquals(2 * QueueOrderUtil.GAP, keys[2]);
+    }
+
+    @Test
+    public void between_neighbours_keysAreStrictlyInside() {
+        long lower = QueueOrderUtil.keyAt(4);
+        long upper = QueueOrderUtil.keyAt(5);
+
+        long[] keys = QueueOrderUtil.between(lower, upper, 100);
+
+        assertNotNull(keys);
+        long previous = lower;
+        for (long key : keys) {
+            assertTrue(key > previous);
+            previous = key;
+        }
+        assertTrue(previous < upper);
+    }
+
+    @Test
+    public void between_headAndTail_stayOutsideTheBound() {
+        long[] head = QueueOrderUtil.between(null, 0L, 2);
+        long[] tail = QueueOrderUtil.between(10L, null, 2);
+
+        assertNotNull(head);
+        assertNotNull(tail);
+        assertTrue(head[1] < 0);
+        assertTrue(tail[0] > 10);
+    }
+
+    @Test
+    public void between_noGapLeft_requestsRenumber() {
+        assertNull(QueueOrderUtil.between(1L, 2L, 1));
+        assertNull(QueueOrderUtil.between(1L, 3L, 2));
+    }
+}
@@ -0,0 +1,279 @@
+package com.cappielloantonio.tempo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.media3.common.C;
+import androidx.media3.common.audio.AudioProcessor;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+@RunWith(JUnit4.class)
+public class ReplayGainAudioProcessorTest {
+
+    private static final int SAMPLE_RATE = 48_000;
+    private static final int CHANNELS = 2;
+    private static final float HALF_GAIN_DB = -6.0206f;
+
+    @Test
+    public void pcm16_constantGainIsApplied() throws Exception {
+        ReplayGainAudioProcessor processor = configured(C.ENCODING_PCM_16BIT, HALF_GAIN_DB);
+
+        ByteBuffer input = allocate(4);
+        input.putShort((short) 10_000).putShort((short) -10_000).flip();
+        processor.queueInput(input);
+        ByteBuffer output = processor.getOutput().order(ByteOrder.nativeOrder());
+
+        assertEquals(5_000, output.getShort(), 1);
+        assertEquals(-5_000, output.getShort(), 1);
+    }
+
+    @Test
+    public void pcm24_constantGainIsApplied() throws Exception {
+        ReplayGainAudioProcessor processor = configured(C.ENCODING_PCM_24BIT, HALF_GAIN_DB);
+
+        ByteBuffer input = allocate(6);
+        put24(input, 4_000_000);
+        put24(input, -4_000_000);
+        input.flip();
+        processor.queueInput(input);
+        ByteBuffer output = processor.getOutput();
+
+        assertEquals(2_000_000, get24(output), 4);
+        assertEquals(-2_000_000, get24(output), 4);
+    }
+
+    @Test
+    public void pcm32_constantGainIsApplied() throws Exception {
+        ReplayGainAudioProcessor processor = configured(C.ENCODING_PCM_32BIT, HALF_GAIN_DB);
+
+        ByteBuffer input = allocate(8);
+        input.putInt(1 << 30).putInt(-(1 << 30)).flip();
+        processor.queueInput(input);
+        ByteBuffer output = processor.getOutput().order(ByteOrder.nativeOrder());
+
+        assertEquals(1 << 29, output.getInt(), 1 << 10);
+        assertEquals(-(1 << 29), output.getInt(), 1 << 10);
+    }
+
+    @Test
+    public void pcm16_limiterKeepsBoostedPeaksBelowFullScale() throws Exception {
+        ReplayGainAudioProcessor processor = configured(C.ENCODING_PCM_16BIT, 12f, true);
+
+        int frames = 4_800;
+        ByteBuffer input = allocate(frames * CHANNELS * 2);
+        for (int i = 0; i < frames; i++) {
+            short value = (short) (20_000 * Math.sin(2 * Math.PI * 1_000 * i / SAMPLE_RATE));
+            input.putShort(value).putShort(value);
+        }
+        input.flip();
+        processor.queueInput(input);
+        ByteBuffer output = processor.getOutput().order(ByteOrder.nativeOrder());
+
+        int atFullScale = 0;
+        int loudest = 0;
+        while (output.hasRemaining()) {
+            int sample = Math.abs(output.getShort());
+            loudest = Math.max(loudest, sample);
+            if (sample >= Short.MAX_VALUE) atFullScale++;
+        }
+        // A hard clip of a +12 dB boosted sine would flatten about three quarters of all samples
+        assertTrue("limited output is too quiet: " + loudest, loudest > 30_000);
+        assertTrue("too many clipped samples: " + atFullScale, atFullScale < frames * CHANNELS / 10);
+    }
+
+    @Test
+    public void float_limiterClampsToUnity() throws Exception {
+        ReplayGainAudioProcessor processor = configured(C.ENCODING_PCM_FLOAT, 12f, true);
+
+        ByteBuffer input = allocate(1_024 * CHANNELS * 4);
+        while (input.hasRemaining()) {
+            input.putFloat(0.9f);
+        }
+        input.flip();
+        processor.queueInput(input);
+        ByteBuffer output = processor.getOutput().order(ByteOrder.nativeOrder());
+
+        while (output.hasRemaining()) {
+            assertTrue(Math.abs(output.getFloat()) <= 1.0f);
+        }
+    }
+
+    @Test
+    public void limiterTailIsDrainedAtEndOfStream() throws Exception {
+        ReplayGainAudioProcessor processor = configured(C.ENCODING_PCM_16BIT, 0f, true);
+
+        int samples = 1_000 * CHANNELS;
+        ByteBuffer input = allocate(samples * 2);
+        while (input.hasRemaining()) {
+            input.putShort((short) 1_000);
+        }
+        input.flip();
+        processor.queueInput(input);
+
+        // The look-ahead delay is leading silence; every input sample must still come out
+        int delivered = countSamples(processor.getOutput(), (short) 1_000);
+        processor.queueEndOfStream();
+        while (!processor.isEnded()) {
+            delivered += countSamples(processor.getOutput(), (short) 1_000);
+        }
+
+        assertEquals(samples, delivered);
+    }
+
+    @Test
+    public void pcm24_fullBufferIsGainedAndClampedToFullScale() throws Exception {
+        ReplayGainAudioProcessor processor = configured(C.ENCODING_PCM_24BIT, -HALF_GAIN_DB);
+
+        int frames = 1_024;
+        ByteBuffer input = allocate(frames * CHANNELS * 3);
+        for (int i = 0; i < frames; i++) {
+            int value = i % 2 == 0 ? 6_000_000 : 1_000;
+            put24(input, value);
+            put24(input, -value);
+        }
+        input.flip();
+        processor.queueInput(input);
+        ByteBuffer output = processor.getOutput();
+
+        assertEquals(frames * CHANNELS * 3, output.remaining());
+        for (int i = 0; i < frames; i++) {
+            if (i % 2 == 0) {
+                assertEquals(0x7FFFFF, get24(output));
+                assertEquals(-0x800000, get24(output));
+            } else {
+                assertEquals(2_000, get24(output), 2);
+                assertEquals(-2_000, get24(output), 2);
+            }
+        }
+    }
+
+    @Test
+    public void pcm32_fullBufferIsGainedAndSaturates() throws Exception {
+        ReplayGainAudioProcessor processor = configured(C.ENCODING_PCM_32BIT, -HALF_GAIN_DB);
+
+        int frames = 1_024;
+        ByteBuffer input = allocate(frames * CHANNELS * 4);
+        for (int i = 0; i < frames; i++) {
+            int value = i % 2 == 0 ? 3 << 29 : 1 << 20;
+            input.putInt(value).putInt(-value);
+        }
+        input.flip();
+        processor.queueInput(input);
+        ByteBuffer output = processor.getOutput().order(ByteOrder.nativeOrder());
+
+        assertEquals(frames * CHANNELS * 4, output.remaining());
+        for (int i = 0; i < frames; i++) {
+            if (i % 2 == 0) {
+                assertEquals(Integer.MAX_VALUE, output.getInt());
+                assertEquals(Integer.MIN_VALUE, output.getInt());
+            } else {
+                assertEquals(1 << 21, output.getInt(), 1 << 6);
+                assertEquals(-(1 << 21), output.getInt(), 1 << 6);
+            }
+        }
+    }
+
+    // Prints the limiter's cost per buffer next to its budget; a timed assert would be flaky
+    @Ignore("Benchmark; run by hand")
+    @Test
+    public void limiterOverheadPerBuffer() throws Exception {
+        // 1024 frames at 48 kHz is ~21 ms of audio; the limiter may use a small fraction of that
+        long budgetNanos = 1_000_000;
+        int samplesPerBuffer = 1024 * CHANNELS;
+        int iterations = 5_000;
+        ByteBuffer input = allocate(samplesPerBuffer * 2);
+
+        ReplayGainAudioProcessor plain = configured(C.ENCODING_PCM_16BIT, 6f, false);
+        ReplayGainAudioProcessor limited = configured(C.ENCODING_PCM_16BIT, 6f, true);
+        run(plain, input, iterations / 10);
+        run(limited, input, iterations / 10);
+
+        long start = System.nanoTime();
+        run(plain, input, iterations);
+        long plainNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        run(limited, input, iterations);
+        long limitedNanos = System.nanoTime() - start;
+
+        long overheadPerBuffer = Math.max(0, limitedNanos - plainNanos) / iterations;
+        System.out.printf("ReplayGain limiter: %d ns per 1024-frame buffer (budget %d ns)%n",
+                overheadPerBuffer, budgetNanos);
+    }
+
+    // Prints samples per second and asserts nothing, as timings depend on the machine
+    @Ignore("Benchmark; run by hand")
+    @Test
+    public void throughputPerEncoding() throws Exception {
+        int[] encodings = {C.ENCODING_PCM_16BIT, C.ENCODING_PCM_24BIT, C.ENCODING_PCM_32BIT, C.ENCODING_PCM_FLOAT};
+        String[] names = {"16-bit", "24-bit", "32-bit", "float"};
+        int[] bytesPerSample = {2, 3, 4, 4};
+        int samplesPerBuffer = 1024 * CHANNELS;
+        int iterations = 5_000;
+
+        for (int e = 0; e < encodings.length; e++) {
+            ReplayGainAudioProcessor processor = configured(encodings[e], HALF_GAIN_DB);
+            ByteBuffer input = allocate(samplesPerBuffer * bytesPerSample[e]);
+
+            // Warm up before timing
+            run(processor, input, iterations / 10);
+
+            long start = System.nanoTime();
+            run(processor, input, iterations);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("ReplayGain %s: %.0f samples/s%n",
+                    names[e], (double) samplesPerBuffer * iterations / seconds);
+        }
+    }
+
+    private static ReplayGainAudioProcessor configured(int encoding, float gainDb) throws Exception {
+        return configured(encoding, gainDb, false);
+    }
+
+    private static ReplayGainAudioProcessor configured(int encoding, float gainDb, boolean limiter)
+            throws Exception {
+        ReplayGainAudioProcessor processor = new ReplayGainAudioProcessor();
+        processor.setGainImmediate(gainDb);
+        processor.setLimiterEnabled(limiter);
+        processor.configure(new AudioProcessor.AudioFormat(SAMPLE_RATE, CHANNELS, encoding));
+        processor.flush();
+        return processor;
+    }
+
+    private static void run(ReplayGainAudioProcessor processor, ByteBuffer input, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            input.position(0);
+            processor.queueInput(input);
+            processor.getOutput();
+        }
+    }
+
+    private static int countSamples(ByteBuffer buffer, short value) {
+        ByteBuffer view = buffer.order(ByteOrder.nativeOrder());
+        int count = 0;
+        while (view.hasRemaining()) {
+            if (view.getShort() == value) count++;
+        }
+        return count;
+    }
+
+    private static ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+    }
+
+    private static void put24(ByteBuffer buffer, int value) {
+        buffer.put((byte) value).put((byte) (value >> 8)).put((byte) (value >> 16));
+    }
+
+    private static int get24(ByteBuffer buffer) {
+        return (buffer.get() & 0xFF) | ((buffer.get() & 0xFF) << 8) | (buffer.get() << 16);
+    }
+}
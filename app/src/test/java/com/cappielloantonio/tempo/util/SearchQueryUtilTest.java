@@ -0,0 +1,34 @@
+package com.cappielloantonio.tempo.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SearchQueryUtilTest {
+
+    @Test
+    public void toMatchQuery_everyWordBecomesAPrefix() {
+        assertEquals("dark* side*", SearchQueryUtil.toMatchQuery("Dark  Side"));
+    }
+
+    @Test
+    public void toMatchQuery_dropsOperatorsAndDiacritics() {
+        assertEquals("bjork* or* sigur* ros*", SearchQueryUtil.toMatchQuery("\"Björk\" OR -sigur* (rós)"));
+    }
+
+    @Test
+    public void toMatchQuery_noWords_isNull() {
+        assertNull(SearchQueryUtil.toMatchQuery(" *-\" "));
+        assertNull(SearchQueryUtil.toMatchQuery(null));
+    }
+
+    @Test
+    public void fold_ignoresCaseAndDiacritics() {
+        assertEquals("motorhead", SearchQueryUtil.fold("Motörhead"));
+        assertEquals("", SearchQueryUtil.fold(null));
+    }
+}
@@ -0,0 +1,108 @@
+package com.cappielloantonio.tempo.util
+
+import androidx.media3.common.C
+import androidx.media3.datasource.cache.Cache
+import androidx.media3.datasource.cache.ContentMetadataMutations
+import androidx.media3.datasource.cache.DefaultContentMetadata
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.mockito.ArgumentMatchers.anyLong
+import org.mockito.kotlin.eq
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.whenever
+
+class TranscodeSegmentCacheTest {
+
+    private val second = C.MICROS_PER_SECOND
+
+    @Test
+    fun segmentStart_roundsDownToWholeSeconds() {
+        assertEquals(0, TranscodeSegmentCache.segmentStartSeconds(999_999L))
+        assertEquals(1, TranscodeSegmentCache.segmentStartSeconds(second))
+        assertEquals(61, TranscodeSegmentCache.segmentStartSeconds(61 * second + 500_000L))
+    }
+
+    @Test
+    fun prefixEnd_usesTheLaterOfLoadedAndCoveredTime() {
+        assertEquals(30 * second, TranscodeSegmentCache.prefixEndUs(12 * second, 30 * second))
+        assertEquals(40 * second, TranscodeSegmentCache.prefixEndUs(40 * second, 30 * second))
+        assertEquals(12 * second, TranscodeSegmentCache.prefixEndUs(12 * second, C.TIME_UNSET))
+    }
+
+    @Test
+    fun continuationOfASegment_startsAtTheSeamSecondAfterTheSegmentOffset() {
+        val segmentOffsetUs = 20 * second
+        val seamUs = segmentOffsetUs + TranscodeSegmentCache.prefixEndUs(3 * second, 45 * second + 700_000L)
+
+        // The continuation restarts at the whole second at or before the seam; the overlap is dropped
+        assertEquals(65, TranscodeSegmentCache.segmentStartSeconds(seamUs))
+    }
+
+    @Test
+    fun coverage_isOnlyValidWhileItsBytesAreCommitted() {
+        assertEquals(30 * second, TranscodeSegmentCache.validCoverageUs(30 * second, 1_000L, 1_000L))
+        assertEquals(C.TIME_UNSET, TranscodeSegmentCache.validCoverageUs(30 * second, 1_000L, 999L))
+        // Recorded before the byte count was kept
+        assertEquals(C.TIME_UNSET, TranscodeSegmentCache.validCoverageUs(30 * second, C.LENGTH_UNSET.toLong(), 1_000L))
+    }
+
+    @Test
+    fun staleCoverage_isNotResumableAndDoesNotMoveTheSeam() {
+        val cache = cacheWith(coveredUs = 90 * second, coveredBytes = 2_000_000L, committed = 1_200_000L)
+
+        assertEquals(C.TIME_UNSET, TranscodeSegmentCache.getCoveredUs(cache, KEY))
+        assertEquals(0L, TranscodeSegmentCache.getResumableLength(cache, KEY))
+        assertEquals(10 * second, TranscodeSegmentCache.prefixEndUs(10 * second, TranscodeSegmentCache.getCoveredUs(cache, KEY)))
+    }
+
+    @Test
+    fun committedCoverage_isResumable() {
+        val cache = cacheWith(coveredUs = 90 * second, coveredBytes = 2_000_000L, committed = 2_500_000L)
+
+        assertEquals(90 * second, TranscodeSegmentCache.getCoveredUs(cache, KEY))
+        assertEquals(2_500_000L, TranscodeSegmentCache.getResumableLength(cache, KEY))
+    }
+
+    @Test
+    fun tracker_recordsAPositionOnlyOnceAWholeFragmentHasBeenCommittedAfterIt() {
+        val tracker = TranscodeSegmentCache.CoverageTracker(2 * second, FRAGMENT)
+
+        assertNull(tracker.onLoaded(second) { 0L })
+        // Seen with 100 bytes committed; its bytes may still be in the open fragment
+        assertNull(tracker.onLoaded(3 * second) { 100L })
+        assertNull(tracker.onLoaded(8 * second) { 100L + FRAGMENT - 1 })
+
+        val coverage = tracker.onLoaded(9 * second) { 100L + FRAGMENT }
+        assertNotNull(coverage)
+        assertEquals(3 * second, coverage!!.us)
+        assertEquals(100L + FRAGMENT, coverage.bytes)
+    }
+
+    @Test
+    fun tracker_startsOverAfterReset() {
+        val tracker = TranscodeSegmentCache.CoverageTracker(2 * second, FRAGMENT)
+        tracker.onLoaded(3 * second) { 0L }
+
+        tracker.reset()
+
+        assertNull(tracker.onLoaded(5 * second) { 10L * FRAGMENT })
+        assertEquals(5 * second, tracker.onLoaded(6 * second) { 11L * FRAGMENT + 10L }!!.us)
+    }
+
+    private fun cacheWith(coveredUs: Long, coveredBytes: Long, committed: Long): Cache {
+        val mutations = ContentMetadataMutations()
+        mutations.set("tempo-covered-us", coveredUs)
+        mutations.set("tempo-covered-bytes", coveredBytes)
+        val cache = mock<Cache>()
+        whenever(cache.getContentMetadata(KEY)).thenReturn(DefaultContentMetadata.EMPTY.copyWithMutationsApplied(mutations))
+        whenever(cache.getCachedLength(eq(KEY), anyLong(), anyLong())).thenReturn(committed)
+        return cache
+    }
+
+    private companion object {
+        const val KEY = "segment"
+        const val FRAGMENT = 1_000L
+    }
+}